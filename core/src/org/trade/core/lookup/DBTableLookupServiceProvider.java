@@ -37,9 +37,11 @@ package org.trade.core.lookup;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import javax.persistence.EntityManager;
@@ -61,10 +63,13 @@ import org.trade.core.valuetype.Decode;
  */
 public class DBTableLookupServiceProvider implements LookupServiceProvider {
 	/*
-	 * This will be a hashtable of hashtables of Lookup objects. The first key
-	 * is the lookup name and the second key is the LookupQualifier.
+	 * Immutable snapshot of the Lookup objects keyed by lookup name and
+	 * LookupQualifier. Readers never lock, a new snapshot is built and
+	 * published whenever a lookup is added or the cache is refreshed.
 	 */
-	private static Hashtable<String, Hashtable<String, Lookup>> _lookups = new Hashtable<String, Hashtable<String, Lookup>>();
+	private static volatile Map<String, CachedLookup> _lookups = Collections
+			.emptyMap();
+	private static final Object _lookupsLock = new Object();
 
 	/**
 	 * Default Constructor
@@ -72,8 +77,38 @@ public class DBTableLookupServiceProvider implements LookupServiceProvider {
 	public DBTableLookupServiceProvider() {
 	}
 
+	/**
+	 * Method clearLookup. Drop every cached lookup, they will be reloaded from
+	 * the DB the next time they are used.
+	 */
 	public static void clearLookup() {
-		_lookups.clear();
+		synchronized (_lookupsLock) {
+			_lookups = Collections.emptyMap();
+			Decode.clearInterned();
+		}
+	}
+
+	/**
+	 * Method refreshLookup. Reload every cached lookup from the DB and publish
+	 * them in one step so readers see either the old or the new values.
+	 */
+	public static void refreshLookup() {
+		DBTableLookupServiceProvider provider = new DBTableLookupServiceProvider();
+		synchronized (_lookupsLock) {
+			Map<String, CachedLookup> lookups = new HashMap<String, CachedLookup>();
+			for (Map.Entry<String, CachedLookup> entry : _lookups.entrySet()) {
+				CachedLookup cached = entry.getValue();
+				Lookup lookup = provider.loadLookup(cached.lookupName,
+						cached.qualifier, cached.optional);
+				if (null != lookup) {
+					lookups.put(entry.getKey(), new CachedLookup(
+							cached.lookupName, cached.qualifier,
+							cached.optional, lookup));
+				}
+			}
+			_lookups = Collections.unmodifiableMap(lookups);
+			Decode.clearInterned();
+		}
 	}
 
 	/**
@@ -91,152 +126,176 @@ public class DBTableLookupServiceProvider implements LookupServiceProvider {
 	 * @see org.trade.core.lookup.LookupServiceProvider#getLookup(String,
 	 *      LookupQualifier)
 	 */
-	public synchronized Lookup getLookup(String lookupName,
-			LookupQualifier qualifier, boolean optional) throws LookupException {
+	public Lookup getLookup(String lookupName, LookupQualifier qualifier,
+			boolean optional) throws LookupException {
 		Lookup lookup = getCachedLookup(lookupName, qualifier);
 
 		if (null == lookup) {
-			try {
-				Vector<Vector<Object>> rows = new Vector<Vector<Object>>();
-				Vector<String> colNames = new Vector<String>();
-				Enumeration<?> en = ConfigProperties
-						.getPropAsEnumeration(lookupName + "_DBTable");
-
-				while (en.hasMoreElements()) {
-					colNames.addElement((String) en.nextElement());
+			synchronized (_lookupsLock) {
+				lookup = getCachedLookup(lookupName, qualifier);
+				if (null == lookup) {
+					lookup = loadLookup(lookupName, qualifier, optional);
+					if (null != lookup) {
+						addLookupToCache(lookupName, qualifier, optional,
+								lookup);
+						lookup = (Lookup) lookup.clone();
+					}
 				}
+			}
+		}
+		return lookup;
+	}
 
-				// Have all of the columns - want to get a vector for each
-				// column value
-				Vector<Enumeration<?>> colRows = new Vector<Enumeration<?>>();
-				int i;
-				int colNamesSize = colNames.size();
+	/**
+	 * Method loadLookup. Build the lookup from the DB.
+	 * 
+	 * @param lookupName
+	 *            String
+	 * @param qualifier
+	 *            LookupQualifier
+	 * @param optional
+	 *            boolean
+	 * @return Lookup null if this provider cannot provide the lookup.
+	 */
+	private Lookup loadLookup(String lookupName, LookupQualifier qualifier,
+			boolean optional) {
+		Lookup lookup = null;
+		try {
+			Vector<Vector<Object>> rows = new Vector<Vector<Object>>();
+			Vector<String> colNames = new Vector<String>();
+			Enumeration<?> en = ConfigProperties
+					.getPropAsEnumeration(lookupName + "_DBTable");
 
-				for (i = 0; i < colNamesSize; i++) {
-					colRows.addElement(ConfigProperties
-							.getPropAsEnumeration(colNames.elementAt(i)));
-				}
+			while (en.hasMoreElements()) {
+				colNames.addElement((String) en.nextElement());
+			}
 
-				// Now construct a Vector Vector - representing the table of
-				// data
-				boolean exit = false;
+			// Have all of the columns - want to get a vector for each
+			// column value
+			Vector<Enumeration<?>> colRows = new Vector<Enumeration<?>>();
+			int i;
+			int colNamesSize = colNames.size();
 
-				do {
-					Vector<Object> row = new Vector<Object>();
-					boolean foundOne = false;
-					boolean addIt = true;
-					int colRowsSize = colRows.size();
+			for (i = 0; i < colNamesSize; i++) {
+				colRows.addElement(ConfigProperties
+						.getPropAsEnumeration(colNames.elementAt(i)));
+			}
 
-					for (i = 0; i < colRowsSize; i++) {
-						Object value = null;
+			// Now construct a Vector Vector - representing the table of
+			// data
+			boolean exit = false;
 
-						en = colRows.elementAt(i);
+			do {
+				Vector<Object> row = new Vector<Object>();
+				boolean foundOne = false;
+				boolean addIt = true;
+				int colRowsSize = colRows.size();
 
-						if (en.hasMoreElements()) {
-							foundOne = true;
-							value = en.nextElement();
+				for (i = 0; i < colRowsSize; i++) {
+					Object value = null;
 
-							row.addElement(value);
-						} else {
-							// Represent an empty value
-							row.addElement("");
-						}
+					en = colRows.elementAt(i);
 
-						// Check to see if the returned lookup is to be
-						// constrained
-						if (foundOne && (qualifier != null)) {
-							Object qualVal = qualifier.getValue(""
-									+ colNames.elementAt(i));
+					if (en.hasMoreElements()) {
+						foundOne = true;
+						value = en.nextElement();
 
-							if (null != qualVal) {
-								if (!qualVal.equals(value)) {
-									addIt = false;
-								}
-							}
-						}
+						row.addElement(value);
+					} else {
+						// Represent an empty value
+						row.addElement("");
 					}
 
-					if (foundOne) {
-						if (addIt) {
-							rows.addElement(row);
+					// Check to see if the returned lookup is to be
+					// constrained
+					if (foundOne && (qualifier != null)) {
+						Object qualVal = qualifier.getValue(""
+								+ colNames.elementAt(i));
+
+						if (null != qualVal) {
+							if (!qualVal.equals(value)) {
+								addIt = false;
+							}
 						}
-					} else {
-						exit = true;
 					}
-				} while (!exit);
-
-				// There should be only one row per table that
-				// contains the DAO name and method name for the display name
-				String dao = null;
-				String type = null;
-				String methodName = null;
-				int rowsSize = rows.size();
-				for (i = 0; i < rowsSize; i++) {
-					Vector<Object> row = rows.elementAt(i);
-					int rowSize = row.size();
-
-					for (int y = 0; y < rowSize; y++) {
-
-						if ("DAO_DECODE_TYPE".equals(colNames.elementAt(y))) {
-							type = (String) row.elementAt(y);
-
-						} else if ("DAO_DECODE_CODE".equals(colNames
-								.elementAt(y))) {
-							dao = (String) row.elementAt(y);
-						} else if ("DAO_DECODE_DISPLAY_NAME".equals(colNames
-								.elementAt(y))) {
-							methodName = (String) row.elementAt(y);
-						}
+				}
+
+				if (foundOne) {
+					if (addIt) {
+						rows.addElement(row);
 					}
-					// Clear the first row and add the objects and display name
-					// from the DB
-					rows.clear();
-					/*
-					 * Add the None selected row.
-					 */
-					if (optional) {
-						Vector<Object> newRowNone = new Vector<Object>();
-						Class<?> clazz = Class.forName(dao);
-						Object daoObjectNone = clazz.newInstance();
-						newRowNone.add(type);
-						newRowNone.add(daoObjectNone);
-						newRowNone.add(Decode.NONE);
-						rows.add(newRowNone);
+				} else {
+					exit = true;
+				}
+			} while (!exit);
+
+			// There should be only one row per table that
+			// contains the DAO name and method name for the display name
+			String dao = null;
+			String type = null;
+			String methodName = null;
+			int rowsSize = rows.size();
+			for (i = 0; i < rowsSize; i++) {
+				Vector<Object> row = rows.elementAt(i);
+				int rowSize = row.size();
+
+				for (int y = 0; y < rowSize; y++) {
+
+					if ("DAO_DECODE_TYPE".equals(colNames.elementAt(y))) {
+						type = (String) row.elementAt(y);
+
+					} else if ("DAO_DECODE_CODE".equals(colNames
+							.elementAt(y))) {
+						dao = (String) row.elementAt(y);
+					} else if ("DAO_DECODE_DISPLAY_NAME".equals(colNames
+							.elementAt(y))) {
+						methodName = (String) row.elementAt(y);
 					}
+				}
+				// Clear the first row and add the objects and display name
+				// from the DB
+				rows.clear();
+				/*
+				 * Add the None selected row.
+				 */
+				if (optional) {
+					Vector<Object> newRowNone = new Vector<Object>();
+					Class<?> clazz = Class.forName(dao);
+					Object daoObjectNone = clazz.newInstance();
+					newRowNone.add(type);
+					newRowNone.add(daoObjectNone);
+					newRowNone.add(Decode.NONE);
+					rows.add(newRowNone);
+				}
 
-					List<?> codes = getCodes(dao);
-					for (Object daoObject : codes) {
-
-						Method method = Reflector.findMethod(
-								daoObject.getClass(), methodName, null);
-						if (null != method) {
-							Object[] o = new Object[0];
-							Object displayNameValue = method.invoke(daoObject,
-									o);
-							if (null != displayNameValue) {
-								Vector<Object> newRow = new Vector<Object>();
-								newRow.add(type);
-								newRow.add(daoObject);
-								newRow.add(displayNameValue);
-								rows.add(newRow);
-							}
+				List<?> codes = getCodes(dao);
+				for (Object daoObject : codes) {
+
+					Method method = Reflector.findMethod(
+							daoObject.getClass(), methodName, null);
+					if (null != method) {
+						Object[] o = new Object[0];
+						Object displayNameValue = method.invoke(daoObject,
+								o);
+						if (null != displayNameValue) {
+							Vector<Object> newRow = new Vector<Object>();
+							newRow.add(type);
+							newRow.add(daoObject);
+							newRow.add(displayNameValue);
+							rows.add(newRow);
 						}
 					}
 				}
-
-				// If rows where found then I managed to provide the lookup
-				if (rows.size() > 0) {
-					lookup = new PropertiesLookup(colNames, rows);
-				}
-			} catch (Throwable t) {
-				// If this occurs means this provider is unable to provide
-				// the lookup ignore the exception.
 			}
-			if (null != lookup) {
-				addLookupToCache(lookupName, qualifier, lookup);
+
+			// If rows where found then I managed to provide the lookup
+			if (rows.size() > 0) {
+				lookup = new PropertiesLookup(colNames, rows);
 			}
+		} catch (Throwable t) {
+			// If this occurs means this provider is unable to provide
+			// the lookup ignore the exception.
 		}
-
 		return lookup;
 	}
 
@@ -251,43 +310,52 @@ public class DBTableLookupServiceProvider implements LookupServiceProvider {
 	 */
 	private Lookup getCachedLookup(String lookupName, LookupQualifier qualifier) {
 		Lookup lookup = null;
-		Hashtable<?, ?> lookupsByQualifier = _lookups.get(lookupName);
-
-		if (null != lookupsByQualifier) {
-			lookup = (Lookup) lookupsByQualifier.get(qualifier.toString());
-		}
+		CachedLookup cached = _lookups.get(getKey(lookupName, qualifier));
 
 		/*
 		 * Need to clone the object otherwise changes in position in the object
 		 * returned would effect everyone using the object.
 		 */
-		if (null != lookup) {
-			lookup = (Lookup) lookup.clone();
+		if (null != cached) {
+			lookup = (Lookup) cached.lookup.clone();
 		}
 
 		return (lookup);
 	}
 
 	/**
-	 * Method addLookupToCache.
+	 * Method addLookupToCache. Publish a new snapshot containing the lookup.
+	 * Must be called holding the _lookupsLock.
 	 * 
 	 * @param lookupName
 	 *            String
 	 * @param qualifier
 	 *            LookupQualifier
+	 * @param optional
+	 *            boolean
 	 * @param lookup
 	 *            Lookup
 	 */
-	private synchronized void addLookupToCache(String lookupName,
-			LookupQualifier qualifier, Lookup lookup) {
-		Hashtable<String, Lookup> lookupsByQualifier = _lookups.get(lookupName);
-
-		if (null == lookupsByQualifier) {
-			lookupsByQualifier = new Hashtable<String, Lookup>();
-			_lookups.put(lookupName, lookupsByQualifier);
-		}
+	private void addLookupToCache(String lookupName,
+			LookupQualifier qualifier, boolean optional, Lookup lookup) {
+		Map<String, CachedLookup> lookups = new HashMap<String, CachedLookup>(
+				_lookups);
+		lookups.put(getKey(lookupName, qualifier), new CachedLookup(
+				lookupName, qualifier, optional, lookup));
+		_lookups = Collections.unmodifiableMap(lookups);
+	}
 
-		lookupsByQualifier.put(qualifier.toString(), lookup);
+	/**
+	 * Method getKey.
+	 * 
+	 * @param lookupName
+	 *            String
+	 * @param qualifier
+	 *            LookupQualifier
+	 * @return String
+	 */
+	private static String getKey(String lookupName, LookupQualifier qualifier) {
+		return lookupName + qualifier.toString();
 	}
 
 	/**
@@ -326,4 +394,24 @@ public class DBTableLookupServiceProvider implements LookupServiceProvider {
 		}
 		return new ArrayList<Object>(0);
 	}
+
+	/**
+	 * A cached lookup and the arguments used to load it so it can be
+	 * reloaded.
+	 */
+	private static class CachedLookup {
+
+		private final String lookupName;
+		private final LookupQualifier qualifier;
+		private final boolean optional;
+		private final Lookup lookup;
+
+		CachedLookup(String lookupName, LookupQualifier qualifier,
+				boolean optional, Lookup lookup) {
+			this.lookupName = lookupName;
+			this.qualifier = qualifier;
+			this.optional = optional;
+			this.lookup = lookup;
+		}
+	}
 }
@@ -36,21 +36,54 @@
 
 package org.trade.core.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,6 +94,7 @@ public final class DynamicCode {
 
 	private final static Logger _log = LoggerFactory
 			.getLogger(DynamicCode.class);
+	private final static Object[] NO_ARGS = new Object[0];
 	private String compileClasspath;
 	private ClassLoader parentClassLoader;
 	private List<SourceDir> sourceDirs = new ArrayList<SourceDir>();
@@ -68,6 +102,16 @@ public final class DynamicCode {
 	// class name => LoadedClass
 	private HashMap<String, LoadedClass> loadedClasses = new HashMap<String, LoadedClass>();
 
+	/*
+	 * The source directories are watched for changes, each change moves the
+	 * generation on. Proxies only look for a new implementation when the
+	 * generation has changed. If the directories cannot be watched the
+	 * generation is -1 and proxies check the source files on every call.
+	 */
+	private volatile long generation = 0;
+	private WatchService watchService = null;
+	private Thread watchThread = null;
+
 	public DynamicCode() {
 		this(Thread.currentThread().getContextClassLoader());
 	}
@@ -125,9 +169,160 @@ public final class DynamicCode {
 			sourceDirs.add(src);
 		}
 
+		synchronized (this) {
+			if (null != watchService) {
+				watch(srcDir.toPath());
+				generation++;
+			}
+		}
 		return true;
 	}
 
+	/**
+	 * Compile every source file in the added source directories that is not
+	 * already in the class cache. All the files for a directory are compiled
+	 * in one compiler task. This is usually called at start up so strategies
+	 * are ready before they are first loaded.
+	 * 
+	 * @return Map<String, String> the compile errors by class name, empty if
+	 *         everything compiled.
+	 */
+	public Map<String, String> compileAll() {
+		List<SourceDir> dirs = null;
+		synchronized (sourceDirs) {
+			dirs = new ArrayList<SourceDir>(sourceDirs);
+		}
+		Map<String, String> errors = new LinkedHashMap<String, String>();
+		synchronized (this) {
+			for (SourceDir src : dirs) {
+				List<File> srcFiles = new ArrayList<File>();
+				for (File srcFile : src.listSourceFiles()) {
+					if (!src.isCompiled(srcFile))
+						srcFiles.add(srcFile);
+				}
+				if (!srcFiles.isEmpty()) {
+					errors.putAll(src.compile(srcFiles));
+				}
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Method getGeneration.
+	 * 
+	 * @return long the number of changes seen in the source directories, -1
+	 *         if they are not being watched.
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Method startWatching. Start the thread that watches the source
+	 * directories, this is done when the first proxy is created.
+	 */
+	private synchronized void startWatching() {
+		if (null != watchService || generation < 0)
+			return;
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			synchronized (sourceDirs) {
+				for (SourceDir src : sourceDirs) {
+					watch(src.srcDir.toPath());
+				}
+			}
+		} catch (IOException ex) {
+			_log.warn("Could not watch DynaCode source directories, will check the source on each call. Msg: "
+					+ ex.getMessage());
+			close();
+			generation = -1;
+			return;
+		}
+		watchThread = new Thread(new Runnable() {
+			public void run() {
+				processWatchEvents();
+			}
+		}, "DynamicCodeWatcher");
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+
+	/**
+	 * Method watch. Register a directory and all its sub directories with
+	 * the watch service.
+	 * 
+	 * @param dir
+	 *            Path
+	 */
+	private void watch(Path dir) {
+		try {
+			if (!Files.isDirectory(dir))
+				return;
+			Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+				public FileVisitResult preVisitDirectory(Path path,
+						BasicFileAttributes attrs) throws IOException {
+					path.register(watchService,
+							StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_DELETE,
+							StandardWatchEventKinds.ENTRY_MODIFY);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException ex) {
+			_log.warn("Could not watch DynaCode directory: " + dir + " Msg: "
+					+ ex.getMessage());
+		}
+	}
+
+	/**
+	 * Method processWatchEvents. Runs on the watch thread until the watch
+	 * service is closed. New directories are watched and any change moves
+	 * the generation on.
+	 */
+	private void processWatchEvents() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				Path dir = (Path) key.watchable();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (StandardWatchEventKinds.ENTRY_CREATE.equals(event
+							.kind())) {
+						synchronized (this) {
+							watch(dir.resolve((Path) event.context()));
+						}
+					}
+				}
+				key.reset();
+				synchronized (this) {
+					if (generation > -1)
+						generation++;
+				}
+			}
+		} catch (ClosedWatchServiceException ex) {
+			// Do nothing we are closed.
+		} catch (InterruptedException ex) {
+			// Do nothing.
+		}
+	}
+
+	/**
+	 * Method close. Stop watching the source directories. Proxies created
+	 * after this will check the source on each call.
+	 */
+	public synchronized void close() {
+		if (null != watchService) {
+			try {
+				watchService.close();
+			} catch (IOException ex) {
+				// ignore
+			}
+			watchService = null;
+			watchThread = null;
+		}
+		generation = -1;
+	}
+
 	/**
 	 * Returns the up-to-date dynamic class by name.
 	 * 
@@ -255,6 +450,7 @@ public final class DynamicCode {
 	 */
 	public Object newProxyInstance(Class<?> interfaceClass, String implClassName)
 			throws Exception {
+		startWatching();
 		MyInvocationHandler handler = new MyInvocationHandler(implClassName);
 		return Proxy.newProxyInstance(interfaceClass.getClassLoader(),
 				new Class[] { interfaceClass }, handler);
@@ -274,6 +470,7 @@ public final class DynamicCode {
 	 */
 	public Object newProxyInstance(Class<?> interfaceClass,
 			String implClassName, Vector<Object> parm) throws Exception {
+		startWatching();
 		MyInvocationHandler handler = new MyInvocationHandler(implClassName,
 				parm);
 		return Proxy.newProxyInstance(interfaceClass.getClassLoader(),
@@ -291,6 +488,8 @@ public final class DynamicCode {
 
 		URLClassLoader classLoader;
 
+		String classpathFingerprint;
+
 		/**
 		 * Constructor for SourceDir.
 		 * 
@@ -307,8 +506,8 @@ public final class DynamicCode {
 			this.binDir.mkdirs();
 
 			// prepare compiler
-			this.javac = new Javac(compileClasspath.replace("%20", " "),
-					binDir.getAbsolutePath());
+			this.javac = new Javac(getClasspath(), binDir.getAbsolutePath());
+			this.classpathFingerprint = fingerprint(getClasspath());
 
 			// class loader
 			recreateClassLoader();
@@ -323,6 +522,367 @@ public final class DynamicCode {
 			}
 		}
 
+		/**
+		 * Method getClasspath.
+		 * 
+		 * @return String the classpath to compile against.
+		 */
+		String getClasspath() {
+			return compileClasspath.replace("%20", " ");
+		}
+
+		/**
+		 * Method fingerprint. The classpath and the size and time of each jar
+		 * on it, so a cached class is compiled again when a jar it was
+		 * compiled against changes.
+		 * 
+		 * @param classpath
+		 *            String
+		 * @return String
+		 */
+		String fingerprint(String classpath) {
+			StringBuffer fingerprint = new StringBuffer(classpath);
+			for (String entry : classpath.split(File.pathSeparator)) {
+				File file = new File(entry);
+				if (file.isFile()) {
+					fingerprint.append("|" + file.length() + ":"
+							+ file.lastModified());
+				}
+			}
+			return fingerprint.toString();
+		}
+
+		/**
+		 * Method listSourceFiles.
+		 * 
+		 * @return List<File> all the .java files in this directory.
+		 */
+		List<File> listSourceFiles() {
+			final List<File> srcFiles = new ArrayList<File>();
+			try {
+				Files.walkFileTree(srcDir.toPath(),
+						new SimpleFileVisitor<Path>() {
+							public FileVisitResult visitFile(Path path,
+									BasicFileAttributes attrs) {
+								if (path.toString().endsWith(".java"))
+									srcFiles.add(path.toFile());
+								return FileVisitResult.CONTINUE;
+							}
+						});
+			} catch (IOException ex) {
+				_log.warn("Could not list DynaCode directory: " + srcDir
+						+ " Msg: " + ex.getMessage());
+			}
+			return srcFiles;
+		}
+
+		/**
+		 * Method getClassName.
+		 * 
+		 * @param srcFile
+		 *            File
+		 * @return String
+		 */
+		String getClassName(File srcFile) {
+			String path = srcDir.toPath().relativize(srcFile.toPath())
+					.toString();
+			return path.substring(0, path.length() - ".java".length())
+					.replace(File.separatorChar, '.');
+		}
+
+		/**
+		 * Method getHashFile. The content hash of the source the class file
+		 * was compiled from.
+		 * 
+		 * @param className
+		 *            String
+		 * @return File
+		 */
+		File getHashFile(String className) {
+			return new File(binDir, className.replace('.', '/') + ".hash");
+		}
+
+		/**
+		 * Method hash. A SHA-256 of the source and the classpath fingerprint
+		 * it is compiled against.
+		 * 
+		 * @param srcFile
+		 *            File
+		 * @return String
+		 */
+		String hash(File srcFile) {
+			try {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				digest.update(Files.readAllBytes(srcFile.toPath()));
+				digest.update(classpathFingerprint
+						.getBytes(StandardCharsets.UTF_8));
+				StringBuffer hash = new StringBuffer();
+				for (byte b : digest.digest()) {
+					hash.append(String.format("%02x", b));
+				}
+				return hash.toString();
+			} catch (Exception ex) {
+				return null;
+			}
+		}
+
+		/**
+		 * Method isCompiled.
+		 * 
+		 * @param srcFile
+		 *            File
+		 * @return boolean true if the class cache holds the class compiled
+		 *         from this source and classpath.
+		 */
+		boolean isCompiled(File srcFile) {
+			String className = getClassName(srcFile);
+			File binFile = new File(binDir, className.replace('.', '/')
+					+ ".class");
+			File hashFile = getHashFile(className);
+			if (!binFile.exists() || !hashFile.exists())
+				return false;
+			try {
+				String hash = hash(srcFile);
+				return null != hash
+						&& hash.equals(new String(Files.readAllBytes(hashFile
+								.toPath()), StandardCharsets.UTF_8));
+			} catch (IOException ex) {
+				return false;
+			}
+		}
+
+		/**
+		 * Method compile. Compile the source files in one compiler task and
+		 * write the classes and their source hash to the class cache. If some
+		 * files have errors the others are compiled again without them, if
+		 * they still fail i.e. they use a file with errors each one is
+		 * compiled on its own so the errors are reported per file.
+		 * 
+		 * @param srcFiles
+		 *            List<File>
+		 * @return Map<String, String> the compile errors by class name.
+		 */
+		Map<String, String> compile(List<File> srcFiles) {
+
+			Map<String, String> errors = new LinkedHashMap<String, String>();
+			JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+			if (null == compiler) {
+				/*
+				 * No compiler API in this runtime, compile them one at a time.
+				 */
+				for (File srcFile : srcFiles) {
+					String error = javac.compile(new File[] { srcFile });
+					if (null == error) {
+						writeHash(srcFile);
+					} else {
+						errors.put(getClassName(srcFile), error);
+					}
+				}
+				return errors;
+			}
+
+			List<File> toCompile = new ArrayList<File>(srcFiles);
+			while (!toCompile.isEmpty()) {
+
+				Map<String, StringBuffer> failed = new LinkedHashMap<String, StringBuffer>();
+				if (compile(compiler, toCompile, failed))
+					return errors;
+
+				List<File> remaining = new ArrayList<File>();
+				for (File srcFile : toCompile) {
+					String className = getClassName(srcFile);
+					if (failed.containsKey(className)) {
+						errors.put(className, failed.get(className).toString());
+					} else {
+						remaining.add(srcFile);
+					}
+				}
+
+				if (remaining.size() == toCompile.size()) {
+					/*
+					 * The errors are in files they use, compile each one on
+					 * its own.
+					 */
+					for (File srcFile : remaining) {
+						failed.clear();
+						if (!compile(compiler,
+								Collections.singletonList(srcFile), failed)) {
+							StringBuffer message = new StringBuffer();
+							for (StringBuffer error : failed.values()) {
+								message.append(error);
+							}
+							errors.put(getClassName(srcFile),
+									message.toString());
+						}
+					}
+					return errors;
+				}
+				toCompile = remaining;
+			}
+			return errors;
+		}
+
+		/**
+		 * Method compile. Run one compiler task with the classes kept in
+		 * memory, if it succeeds the classes are written to the class cache.
+		 * 
+		 * @param compiler
+		 *            JavaCompiler
+		 * @param srcFiles
+		 *            List<File>
+		 * @param failed
+		 *            Map<String, StringBuffer> the errors by class name.
+		 * @return boolean true if the task succeeded.
+		 */
+		boolean compile(JavaCompiler compiler, List<File> srcFiles,
+				Map<String, StringBuffer> failed) {
+
+			DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+			MemoryFileManager fileManager = new MemoryFileManager(
+					compiler.getStandardFileManager(diagnostics, null,
+							StandardCharsets.UTF_8));
+			List<String> options = new ArrayList<String>();
+			options.add("-classpath");
+			options.add(getClasspath());
+			options.add("-sourcepath");
+			options.add(srcDir.getAbsolutePath());
+			boolean success = false;
+			try {
+				success = compiler.getTask(
+						null,
+						fileManager,
+						diagnostics,
+						options,
+						null,
+						fileManager.getStandardFileManager()
+								.getJavaFileObjectsFromFiles(srcFiles)).call();
+			} catch (RuntimeException ex) {
+				for (File srcFile : srcFiles) {
+					failed.put(getClassName(srcFile),
+							new StringBuffer(String.valueOf(ex.getMessage())));
+				}
+				return false;
+			}
+
+			if (success) {
+				for (Map.Entry<String, byte[]> entry : fileManager.getClasses()
+						.entrySet()) {
+					writeFile(new File(binDir, entry.getKey().replace('.', '/')
+							+ ".class"), entry.getValue());
+				}
+				for (File srcFile : srcFiles) {
+					writeHash(srcFile);
+				}
+				return true;
+			}
+
+			for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics
+					.getDiagnostics()) {
+				if (Diagnostic.Kind.ERROR != diagnostic.getKind())
+					continue;
+				String className = null;
+				if (null != diagnostic.getSource()) {
+					className = getClassName(new File(diagnostic.getSource()
+							.toUri()));
+				}
+				StringBuffer message = failed.get(className);
+				if (null == message) {
+					message = new StringBuffer();
+					failed.put(className, message);
+				}
+				message.append((null == className ? "" : className + " ")
+						+ "line " + diagnostic.getLineNumber() + ": "
+						+ diagnostic.getMessage(null) + "\n");
+			}
+			return false;
+		}
+
+		/**
+		 * Method writeHash.
+		 * 
+		 * @param srcFile
+		 *            File
+		 */
+		void writeHash(File srcFile) {
+			String hash = hash(srcFile);
+			if (null != hash)
+				writeFile(getHashFile(getClassName(srcFile)),
+						hash.getBytes(StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Method writeFile.
+		 * 
+		 * @param file
+		 *            File
+		 * @param bytes
+		 *            byte[]
+		 */
+		void writeFile(File file, byte[] bytes) {
+			try {
+				file.getParentFile().mkdirs();
+				Files.write(file.toPath(), bytes);
+			} catch (IOException ex) {
+				_log.warn("Could not write DynaCode class cache file: " + file
+						+ " Msg: " + ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * A file manager that keeps the compiled classes in memory.
+	 */
+	private static class MemoryFileManager extends
+			ForwardingJavaFileManager<StandardJavaFileManager> {
+
+		private final Map<String, ByteArrayOutputStream> classes = new LinkedHashMap<String, ByteArrayOutputStream>();
+
+		/**
+		 * Constructor for MemoryFileManager.
+		 * 
+		 * @param fileManager
+		 *            StandardJavaFileManager
+		 */
+		MemoryFileManager(StandardJavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		/**
+		 * Method getStandardFileManager.
+		 * 
+		 * @return StandardJavaFileManager
+		 */
+		StandardJavaFileManager getStandardFileManager() {
+			return this.fileManager;
+		}
+
+		/**
+		 * Method getClasses.
+		 * 
+		 * @return Map<String, byte[]> the class bytes by class name.
+		 */
+		Map<String, byte[]> getClasses() {
+			Map<String, byte[]> bytes = new LinkedHashMap<String, byte[]>();
+			for (Map.Entry<String, ByteArrayOutputStream> entry : classes
+					.entrySet()) {
+				bytes.put(entry.getKey(), entry.getValue().toByteArray());
+			}
+			return bytes;
+		}
+
+		public JavaFileObject getJavaFileForOutput(Location location,
+				final String className, JavaFileObject.Kind kind,
+				FileObject sibling) {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			classes.put(className, bytes);
+			return new SimpleJavaFileObject(URI.create("mem:///"
+					+ className.replace('.', '/') + kind.extension), kind) {
+				public OutputStream openOutputStream() {
+					return bytes;
+				}
+			};
+		}
 	}
 
 	/**
@@ -370,10 +930,11 @@ public final class DynamicCode {
 				return; // class already loaded
 			}
 
-			// compile, if required
+			// compile, if the class cache does not hold this source
 			String error = null;
-			if (binFile.lastModified() < srcFile.lastModified()) {
-				error = srcDir.javac.compile(new File[] { srcFile });
+			if (!srcDir.isCompiled(srcFile)) {
+				error = srcDir.compile(Collections.singletonList(srcFile))
+						.get(className);
 			}
 
 			if (error != null) {
@@ -401,7 +962,11 @@ public final class DynamicCode {
 
 		String backendClassName;
 
-		Object backend;
+		/*
+		 * The implementation and its method handles for the generation they
+		 * were loaded in, swapped as one when the source changes.
+		 */
+		volatile Backend backend;
 		Vector<Object> parm;
 
 		/**
@@ -418,8 +983,9 @@ public final class DynamicCode {
 			backendClassName = className;
 			this.parm = parm;
 			try {
+				long current = generation;
 				Class<?> clz = loadClass(backendClassName);
-				backend = newDynaCodeInstance(clz);
+				backend = new Backend(newDynaCodeInstance(clz), current);
 
 			} catch (ClassNotFoundException e) {
 				throw new Exception(e);
@@ -437,8 +1003,9 @@ public final class DynamicCode {
 			backendClassName = className;
 
 			try {
+				long current = generation;
 				Class<?> clz = loadClass(backendClassName);
-				backend = newDynaCodeInstance(clz);
+				backend = new Backend(newDynaCodeInstance(clz), current);
 
 			} catch (ClassNotFoundException e) {
 				throw new Exception(e);
@@ -462,19 +1029,28 @@ public final class DynamicCode {
 		public Object invoke(Object proxy, Method method, Object[] args)
 				throws Throwable {
 
-			// check if class has been updated
-			Class<?> clz = loadClass(backendClassName);
-			if (backend.getClass() != clz) {
-				backend = newDynaCodeInstance(clz);
-			}
-
-			try {
-				// invoke on backend
-				return method.invoke(backend, args);
+			Backend current = backend;
+			long currentGeneration = generation;
 
-			} catch (InvocationTargetException e) {
-				throw e.getTargetException();
+			/*
+			 * Only check if class has been updated when the source has changed
+			 * or is not being watched.
+			 */
+			if (currentGeneration < 0
+					|| current.generation != currentGeneration) {
+				Class<?> clz = loadClass(backendClassName);
+				if (current.instance.getClass() != clz) {
+					current = new Backend(newDynaCodeInstance(clz),
+							currentGeneration);
+				} else {
+					current = new Backend(current, currentGeneration);
+				}
+				backend = current;
 			}
+
+			// invoke on backend
+			return (Object) current.getMethodHandle(method).invokeExact(
+					null == args ? NO_ARGS : args);
 		}
 
 		/**
@@ -497,6 +1073,71 @@ public final class DynamicCode {
 
 	}
 
+	/**
+	 * A dynamic implementation and the method handles used to call it.
+	 */
+	private static class Backend {
+
+		final Object instance;
+		final long generation;
+		final ConcurrentHashMap<Method, MethodHandle> methodHandles;
+
+		/**
+		 * Constructor for Backend.
+		 * 
+		 * @param instance
+		 *            Object
+		 * @param generation
+		 *            long
+		 */
+		Backend(Object instance, long generation) {
+			this.instance = instance;
+			this.generation = generation;
+			this.methodHandles = new ConcurrentHashMap<Method, MethodHandle>();
+		}
+
+		/**
+		 * Constructor for Backend. The same implementation seen in a later
+		 * generation.
+		 * 
+		 * @param backend
+		 *            Backend
+		 * @param generation
+		 *            long
+		 */
+		Backend(Backend backend, long generation) {
+			this.instance = backend.instance;
+			this.generation = generation;
+			this.methodHandles = backend.methodHandles;
+		}
+
+		/**
+		 * Method getMethodHandle. The handle is bound to the implementation
+		 * and takes the arguments as an array.
+		 * 
+		 * @param method
+		 *            Method
+		 * @return MethodHandle
+		 * @throws IllegalAccessException
+		 */
+		MethodHandle getMethodHandle(Method method)
+				throws IllegalAccessException {
+			MethodHandle methodHandle = methodHandles.get(method);
+			if (null == methodHandle) {
+				methodHandle = MethodHandles
+						.publicLookup()
+						.unreflect(method)
+						.bindTo(instance)
+						.asSpreader(Object[].class,
+								method.getParameterTypes().length)
+						.asType(MethodType.methodType(Object.class,
+								Object[].class));
+				methodHandles.put(method, methodHandle);
+			}
+			return methodHandle;
+		}
+	}
+
 	/**
 	 * Method getCreateClass.
 	 * 
@@ -591,6 +1232,12 @@ public final class DynamicCode {
 			cl = cl.getParent();
 		}
 
+		/*
+		 * From Java 9 the application class loader is not a URLClassLoader.
+		 */
+		if (buf.length() == 0)
+			return System.getProperty("java.class.path", "");
+
 		return buf.toString();
 	}
 
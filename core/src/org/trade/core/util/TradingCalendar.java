@@ -46,9 +46,12 @@ import java.time.ZonedDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.TemporalAdjusters;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,6 +87,15 @@ public class TradingCalendar {
 	private static Integer currentMonth = null;
 	private static Integer currentDay = null;
 
+	/*
+	 * The market time zone is set on the command line so it is resolved once.
+	 */
+	private static final ZoneId DEFAULT_ZONE_ID = TimeZone.getDefault()
+			.toZoneId();
+	private static final ConcurrentHashMap<String, DateTimeFormatter> FORMATTERS = new ConcurrentHashMap<String, DateTimeFormatter>();
+
+	private static CalendarTable CALENDAR = null;
+
 	/*
 	 * Initialize the calendar form the properties file. If values are not found
 	 * defaults will be used.
@@ -94,7 +106,7 @@ public class TradingCalendar {
 				String localTimeZone = ConfigProperties
 						.getPropAsString("trade.tws.timezone");
 				LOCAL_TIMEZONE = ZoneId.of(localTimeZone);
-				MKT_TIMEZONE = TimeZone.getDefault().toZoneId();
+				MKT_TIMEZONE = DEFAULT_ZONE_ID;
 				ZonedDateTime currentDateTime = ZonedDateTime
 						.now(LOCAL_TIMEZONE);
 				currentYear = new Integer(currentDateTime.getYear());
@@ -132,19 +144,29 @@ public class TradingCalendar {
 			_log.warn("Property trade.market.open/trade.market.close not set in config.properties will use default 9:30am EST");
 		}
 
+		int year = TradingCalendar.getDateTimeNowMarketTimeZone().getYear();
+		int fromYear = year - 10;
+		int toYear = year + 1;
 		try {
-			if (HOLIDAYS.isEmpty()) {
-				int year = TradingCalendar.getDateTimeNowMarketTimeZone()
-						.getYear();
+			fromYear = ConfigProperties
+					.getPropAsInt("trade.calendar.fromYear");
+			toYear = ConfigProperties.getPropAsInt("trade.calendar.toYear");
+		} catch (Exception ex) {
+			_log.warn("Property trade.calendar.fromYear/trade.calendar.toYear not set in config.properties will use "
+					+ fromYear + " to " + toYear);
+		}
+
+		for (int holidayYear = fromYear; holidayYear <= toYear; holidayYear++) {
+			try {
 				String holidaysString = ConfigProperties
-						.getPropAsString("trade.holidays." + year);
-				parseHolidayIntegerCSVString(HOLIDAYS, year, holidaysString);
+						.getPropAsString("trade.holidays." + holidayYear);
+				parseHolidayIntegerCSVString(HOLIDAYS, holidayYear,
+						holidaysString);
+			} catch (IOException ex) {
+				if (holidayYear == year)
+					_log.warn("Property trade.holidays." + year
+							+ " not set in org/trade/core/util/config.properties");
 			}
-
-		} catch (IOException ex) {
-			_log.warn("Property trade.holidays."
-					+ TradingCalendar.getDateTimeNowMarketTimeZone().getYear()
-					+ " not set in org/trade/core/util/config.properties");
 		}
 		try {
 			String nontradingdays = ConfigProperties
@@ -161,6 +183,8 @@ public class TradingCalendar {
 		} catch (IOException ex) {
 			_log.warn("Property trade.market.nontradingdays not set in config.properties");
 		}
+		CALENDAR = new CalendarTable(LocalDate.of(fromYear, 1, 1),
+				LocalDate.of(toYear, 12, 31));
 	}
 
 	/**
@@ -174,6 +198,11 @@ public class TradingCalendar {
 	 */
 	public static ZonedDateTime addTradingDays(ZonedDateTime date, int noDays) {
 		if ((date != null) && (noDays != 0)) {
+			long epochDay = date.toLocalDate().toEpochDay();
+			long tradingDay = CALENDAR.addTradingDays(epochDay, noDays);
+			if (tradingDay != Long.MIN_VALUE) {
+				return date.plusDays(tradingDay - epochDay);
+			}
 			if (noDays > 0) {
 				for (int i = 0; i < noDays; i++) {
 					date = date.plusDays(1);
@@ -205,6 +234,21 @@ public class TradingCalendar {
 	 * @return boolean
 	 */
 	public static boolean isTradingDay(ZonedDateTime date) {
+		long epochDay = date.toLocalDate().toEpochDay();
+		if (CALENDAR.contains(epochDay)) {
+			return CALENDAR.isTradingDay(epochDay);
+		}
+		return isTradingDay(date.toLocalDate());
+	}
+
+	/**
+	 * Method isTradingDay. Check the holidays and non trading days.
+	 * 
+	 * @param date
+	 *            LocalDate
+	 * @return boolean
+	 */
+	private static boolean isTradingDay(LocalDate date) {
 		if (isHoliday(date)) {
 			return false;
 		}
@@ -224,10 +268,8 @@ public class TradingCalendar {
 	 * @return ZonedDateTime
 	 */
 	public static ZonedDateTime getDateTimeNowMarketTimeZone() {
-		ZonedDateTime defaultZonedDateTime = ZonedDateTime.now(TimeZone
-				.getDefault().toZoneId());
-		return defaultZonedDateTime.withZoneSameInstant(TimeZone.getDefault()
-				.toZoneId());
+		ZonedDateTime defaultZonedDateTime = ZonedDateTime.now(DEFAULT_ZONE_ID);
+		return defaultZonedDateTime.withZoneSameInstant(DEFAULT_ZONE_ID);
 	}
 
 	/**
@@ -240,7 +282,7 @@ public class TradingCalendar {
 	 */
 	public static ZonedDateTime adjustDateTimeToMarketTimeZone(
 			ZonedDateTime dateTime) {
-		return dateTime.withZoneSameInstant(TimeZone.getDefault().toZoneId());
+		return dateTime.withZoneSameInstant(DEFAULT_ZONE_ID);
 	}
 
 	/**
@@ -254,7 +296,7 @@ public class TradingCalendar {
 	 * @exception * @see
 	 */
 	public static String getFormattedDate(LocalDate date, String format) {
-		return date.format(DateTimeFormatter.ofPattern(format));
+		return date.format(getFormatter(format));
 	}
 
 	/**
@@ -268,7 +310,7 @@ public class TradingCalendar {
 	 * @exception * @see
 	 */
 	public static String getFormattedDate(LocalDateTime date, String format) {
-		return date.format(DateTimeFormatter.ofPattern(format));
+		return date.format(getFormatter(format));
 	}
 
 	/**
@@ -282,7 +324,7 @@ public class TradingCalendar {
 	 * @exception * @see
 	 */
 	public static String getFormattedDate(ZonedDateTime date, String format) {
-		return date.format(DateTimeFormatter.ofPattern(format));
+		return date.format(getFormatter(format));
 	}
 
 	/**
@@ -300,7 +342,7 @@ public class TradingCalendar {
 	public static ZonedDateTime getZonedDateTimeFromDateString(String date,
 			String format, ZoneId zoneId) {
 		LocalDate localDate = LocalDate.parse(date,
-				DateTimeFormatter.ofPattern(format));
+				getFormatter(format));
 		return ZonedDateTime.of(localDate, LocalTime.of(0, 0), zoneId);
 	}
 
@@ -319,7 +361,7 @@ public class TradingCalendar {
 	public static ZonedDateTime getZonedDateTimeFromDateTimeString(
 			String dateTime, String format, ZoneId zoneId) {
 		LocalDateTime localDateTime = LocalDateTime.parse(dateTime,
-				DateTimeFormatter.ofPattern(format));
+				getFormatter(format));
 		return ZonedDateTime.of(localDateTime, zoneId);
 	}
 
@@ -336,9 +378,8 @@ public class TradingCalendar {
 	public static ZonedDateTime getZonedDateTimeFromDateTimeString(
 			String dateTime, String format) {
 		LocalDateTime localDateTime = LocalDateTime.parse(dateTime,
-				DateTimeFormatter.ofPattern(format));
-		return ZonedDateTime
-				.of(localDateTime, TimeZone.getDefault().toZoneId());
+				getFormatter(format));
+		return ZonedDateTime.of(localDateTime, DEFAULT_ZONE_ID);
 	}
 
 	/**
@@ -353,7 +394,7 @@ public class TradingCalendar {
 	 */
 	public static LocalDate getLocalDateFromDateString(String date,
 			String format) {
-		return LocalDate.parse(date, DateTimeFormatter.ofPattern(format));
+		return LocalDate.parse(date, getFormatter(format));
 	}
 
 	/**
@@ -369,7 +410,7 @@ public class TradingCalendar {
 	public static LocalDateTime getLocalDateTimeFromDateTimeString(
 			String dateTime, String format) {
 		return LocalDateTime.parse(dateTime,
-				DateTimeFormatter.ofPattern(format));
+				getFormatter(format));
 	}
 
 	/**
@@ -381,8 +422,7 @@ public class TradingCalendar {
 	 */
 	public static ZonedDateTime getTradingDayStart(ZonedDateTime date) {
 		return ZonedDateTime.of(date.getYear(), date.getMonthValue(), date
-				.getDayOfMonth(), openHour, openMinute, 0, 0, TimeZone
-				.getDefault().toZoneId());
+				.getDayOfMonth(), openHour, openMinute, 0, 0, DEFAULT_ZONE_ID);
 	}
 
 	/**
@@ -394,8 +434,8 @@ public class TradingCalendar {
 	 */
 	public static ZonedDateTime getTradingDayEnd(ZonedDateTime date) {
 		return ZonedDateTime.of(date.getYear(), date.getMonthValue(), date
-				.getDayOfMonth(), closeHour, closeMinute, 0, 0, TimeZone
-				.getDefault().toZoneId());
+				.getDayOfMonth(), closeHour, closeMinute, 0, 0,
+				DEFAULT_ZONE_ID);
 	}
 
 	/**
@@ -411,7 +451,7 @@ public class TradingCalendar {
 			ZonedDateTime atTime) {
 		return ZonedDateTime.of(date.getYear(), date.getMonthValue(),
 				date.getDayOfMonth(), atTime.getHour(), atTime.getMinute(),
-				atTime.getSecond(), 0, TimeZone.getDefault().toZoneId());
+				atTime.getSecond(), 0, DEFAULT_ZONE_ID);
 	}
 
 	/**
@@ -430,8 +470,8 @@ public class TradingCalendar {
 	public static ZonedDateTime getDateAtTime(ZonedDateTime date, int atHour,
 			int atMinute, int atSecond) {
 		return ZonedDateTime.of(date.getYear(), date.getMonthValue(), date
-				.getDayOfMonth(), atHour, atMinute, atSecond, 0, TimeZone
-				.getDefault().toZoneId());
+				.getDayOfMonth(), atHour, atMinute, atSecond, 0,
+				DEFAULT_ZONE_ID);
 	}
 
 	/**
@@ -473,8 +513,8 @@ public class TradingCalendar {
 	 */
 	public static ZonedDateTime getCurrentDayAtTime(ZonedDateTime time) {
 		return ZonedDateTime.of(currentYear, currentMonth, currentDay, time
-				.getHour(), time.getMinute(), time.getSecond(), 0, TimeZone
-				.getDefault().toZoneId());
+				.getHour(), time.getMinute(), time.getSecond(), 0,
+				DEFAULT_ZONE_ID);
 	}
 
 	/**
@@ -485,7 +525,7 @@ public class TradingCalendar {
 	public static ZonedDateTime getYearStart() {
 		return ZonedDateTime.of(TradingCalendar.getDateTimeNowMarketTimeZone()
 				.toLocalDate().with(TemporalAdjusters.firstDayOfYear())
-				.atStartOfDay(), TimeZone.getDefault().toZoneId());
+				.atStartOfDay(), DEFAULT_ZONE_ID);
 	}
 
 	/**
@@ -583,6 +623,11 @@ public class TradingCalendar {
 		ZonedDateTime currTradingDay = TradingCalendar
 				.getTradingDayStart(TradingCalendar
 						.getDateTimeNowMarketTimeZone());
+		long epochDay = currTradingDay.toLocalDate().toEpochDay();
+		long tradingDay = CALENDAR.getTradingDayOnOrBefore(epochDay);
+		if (tradingDay != Long.MIN_VALUE) {
+			return currTradingDay.plusDays(tradingDay - epochDay);
+		}
 		while (!TradingCalendar.isTradingDay(currTradingDay)) {
 			currTradingDay = currTradingDay.minusDays(1);
 		}
@@ -599,6 +644,11 @@ public class TradingCalendar {
 	public static ZonedDateTime getPrevTradingDay(ZonedDateTime input) {
 		ZonedDateTime prevTradingDay = TradingCalendar
 				.getTradingDayStart(input);
+		long epochDay = prevTradingDay.toLocalDate().toEpochDay();
+		long tradingDay = CALENDAR.addTradingDays(epochDay, -1);
+		if (tradingDay != Long.MIN_VALUE) {
+			return prevTradingDay.plusDays(tradingDay - epochDay);
+		}
 		prevTradingDay = prevTradingDay.minusDays(1);
 		while (!TradingCalendar.isTradingDay(prevTradingDay)) {
 			prevTradingDay = prevTradingDay.minusDays(1);
@@ -616,6 +666,11 @@ public class TradingCalendar {
 	public static ZonedDateTime getNextTradingDay(ZonedDateTime input) {
 		ZonedDateTime nextTradingday = TradingCalendar
 				.getTradingDayStart(input);
+		long epochDay = nextTradingday.toLocalDate().toEpochDay();
+		long tradingDay = CALENDAR.addTradingDays(epochDay, 1);
+		if (tradingDay != Long.MIN_VALUE) {
+			return nextTradingday.plusDays(tradingDay - epochDay);
+		}
 		nextTradingday = nextTradingday.plusDays(1);
 
 		while (!TradingCalendar.isTradingDay(nextTradingday)) {
@@ -632,6 +687,21 @@ public class TradingCalendar {
 	 * @return boolean
 	 */
 	public static boolean isHoliday(ZonedDateTime date) {
+		long epochDay = date.toLocalDate().toEpochDay();
+		if (CALENDAR.contains(epochDay)) {
+			return CALENDAR.isHoliday(epochDay);
+		}
+		return isHoliday(date.toLocalDate());
+	}
+
+	/**
+	 * Method isHoliday.
+	 * 
+	 * @param date
+	 *            LocalDate
+	 * @return boolean
+	 */
+	private static boolean isHoliday(LocalDate date) {
 
 		int year = date.getYear();
 		int[] hols = HOLIDAYS.get(year);
@@ -675,8 +745,7 @@ public class TradingCalendar {
 	 */
 	public static ZonedDateTime getZonedDateTimeFromMilli(long millis) {
 		Instant instant = Instant.ofEpochMilli(millis);
-		return ZonedDateTime.ofInstant(instant, TimeZone.getDefault()
-				.toZoneId());
+		return ZonedDateTime.ofInstant(instant, DEFAULT_ZONE_ID);
 	}
 
 	/**
@@ -758,4 +827,150 @@ public class TradingCalendar {
 			HOLIDAYS.put(year, dates);
 		}
 	}
+
+	/**
+	 * Method getFormatter. Formatters are immutable so one is kept per format
+	 * string.
+	 * 
+	 * @param format
+	 *            String
+	 * @return DateTimeFormatter
+	 */
+	private static DateTimeFormatter getFormatter(String format) {
+		DateTimeFormatter formatter = FORMATTERS.get(format);
+		if (null == formatter) {
+			formatter = DateTimeFormatter.ofPattern(format);
+			FORMATTERS.putIfAbsent(format, formatter);
+		}
+		return formatter;
+	}
+
+	/**
+	 * The trading calendar for the configured years. Each day holds the number
+	 * of trading days on or before it, so the n'th trading day from any date
+	 * is found by arithmetic on these ordinals rather than walking the days.
+	 */
+	private static class CalendarTable {
+
+		private final long firstEpochDay;
+		private final long lastEpochDay;
+		private final BitSet holidays;
+		private final int[] ordinals;
+		private final long[] tradingDays;
+
+		/**
+		 * Constructor for CalendarTable.
+		 * 
+		 * @param from
+		 *            LocalDate
+		 * @param to
+		 *            LocalDate
+		 */
+		CalendarTable(LocalDate from, LocalDate to) {
+			this.firstEpochDay = from.toEpochDay();
+			this.lastEpochDay = Math.max(to.toEpochDay(),
+					this.firstEpochDay - 1);
+			int size = (int) (this.lastEpochDay - this.firstEpochDay + 1);
+			this.holidays = new BitSet(size);
+			this.ordinals = new int[size];
+			long[] days = new long[size];
+			int count = 0;
+			LocalDate date = from;
+			for (int i = 0; i < size; i++) {
+				if (TradingCalendar.isHoliday(date)) {
+					this.holidays.set(i);
+				}
+				if (TradingCalendar.isTradingDay(date)) {
+					days[count++] = this.firstEpochDay + i;
+				}
+				this.ordinals[i] = count;
+				date = date.plusDays(1);
+			}
+			this.tradingDays = Arrays.copyOf(days, count);
+		}
+
+		/**
+		 * Method contains.
+		 * 
+		 * @param epochDay
+		 *            long
+		 * @return boolean
+		 */
+		boolean contains(long epochDay) {
+			return epochDay >= this.firstEpochDay
+					&& epochDay <= this.lastEpochDay;
+		}
+
+		/**
+		 * Method isHoliday.
+		 * 
+		 * @param epochDay
+		 *            long
+		 * @return boolean
+		 */
+		boolean isHoliday(long epochDay) {
+			return this.holidays.get((int) (epochDay - this.firstEpochDay));
+		}
+
+		/**
+		 * Method isTradingDay.
+		 * 
+		 * @param epochDay
+		 *            long
+		 * @return boolean
+		 */
+		boolean isTradingDay(long epochDay) {
+			int index = (int) (epochDay - this.firstEpochDay);
+			return this.ordinals[index] != (index == 0 ? 0
+					: this.ordinals[index - 1]);
+		}
+
+		/**
+		 * Method addTradingDays.
+		 * 
+		 * @param epochDay
+		 *            long
+		 * @param noDays
+		 *            int
+		 * @return long the epoch day or Long.MIN_VALUE if the result is not
+		 *         in the calendar.
+		 */
+		long addTradingDays(long epochDay, int noDays) {
+			if (!contains(epochDay)) {
+				return Long.MIN_VALUE;
+			}
+			int ordinal = this.ordinals[(int) (epochDay - this.firstEpochDay)];
+			if (noDays > 0) {
+				ordinal = ordinal + noDays;
+			} else {
+				if (isTradingDay(epochDay)) {
+					ordinal--;
+				}
+				ordinal = ordinal + noDays + 1;
+			}
+			if (ordinal < 1 || ordinal > this.tradingDays.length) {
+				return Long.MIN_VALUE;
+			}
+			return this.tradingDays[ordinal - 1];
+		}
+
+		/**
+		 * Method getTradingDayOnOrBefore.
+		 * 
+		 * @param epochDay
+		 *            long
+		 * @return long the epoch day or Long.MIN_VALUE if the result is not
+		 *         in the calendar.
+		 */
+		long getTradingDayOnOrBefore(long epochDay) {
+			if (!contains(epochDay)) {
+				return Long.MIN_VALUE;
+			}
+			int ordinal = this.ordinals[(int) (epochDay - this.firstEpochDay)];
+			if (ordinal < 1) {
+				return Long.MIN_VALUE;
+			}
+			return this.tradingDays[ordinal - 1];
+		}
+	}
 }
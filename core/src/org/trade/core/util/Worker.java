@@ -68,9 +68,23 @@ public abstract class Worker {
 	private Object value; // see getValue(), setValue()
 	public Thread thread;
 	protected boolean isDone = false;
-	protected boolean isCancelled = false;
+	protected volatile boolean isCancelled = false;
 	protected static int threadCount = 0;
 
+	/*
+	 * Scheduled workers run their steps on the WorkerScheduler pool instead
+	 * of a dedicated thread.
+	 */
+	private volatile boolean isScheduled = false;
+	private volatile WorkerScheduler scheduler = null;
+	private volatile boolean isStepPending = false;
+	private volatile boolean isStepRunning = false;
+	private final Runnable doStep = new Runnable() {
+		public void run() {
+			step();
+		}
+	};
+
 	/**
 	 * Class to maintain reference to current worker thread under separate
 	 * synchronization control.
@@ -140,6 +154,104 @@ public abstract class Worker {
 	 */
 	protected abstract void done();
 
+	/**
+	 * Method isSchedulable. Workers that return true and implement runTask()
+	 * are run on the WorkerScheduler pool when it is enabled.
+	 * 
+	 * @return boolean
+	 */
+	protected boolean isSchedulable() {
+		return false;
+	}
+
+	/**
+	 * Method runTask. Perform one step of the work when running on the
+	 * WorkerScheduler pool. This is called in place of doInBackground() and
+	 * must not block waiting for work, instead call schedule() when there is
+	 * more work to do.
+	 * 
+	 * @return boolean true if there is more work ready i.e. run another step
+	 *         now.
+	 */
+	protected boolean runTask() {
+		setValue(doInBackground());
+		return false;
+	}
+
+	/**
+	 * Method getScheduleKey. Steps with the same key are run one at a time in
+	 * the order they were scheduled.
+	 * 
+	 * @return Object
+	 */
+	protected Object getScheduleKey() {
+		return this;
+	}
+
+	/**
+	 * Method schedule. Ask for a step to be run on the WorkerScheduler pool.
+	 * Requests made while a step is already waiting to run are merged into
+	 * that step. Does nothing if this worker is not scheduled.
+	 */
+	protected void schedule() {
+		if (!isScheduled)
+			return;
+		synchronized (doStep) {
+			if (isStepPending)
+				return;
+			isStepPending = true;
+		}
+		this.scheduler.submit(getScheduleKey(), doStep);
+	}
+
+	/**
+	 * Method step. Run one step for a scheduled worker, this is only ever
+	 * called from the mailbox for this worker.
+	 */
+	private void step() {
+		synchronized (doStep) {
+			isStepRunning = true;
+			isStepPending = false;
+		}
+		if (!isScheduled) {
+			isStepRunning = false;
+			return;
+		}
+		boolean more = false;
+		try {
+			if (!isCancelled)
+				more = runTask();
+		} catch (Throwable ex) {
+			isCancelled = true;
+			throw new RuntimeException(ex);
+		} finally {
+			isStepRunning = false;
+			if (isCancelled) {
+				finish();
+			} else if (more) {
+				schedule();
+			}
+		}
+	}
+
+	/**
+	 * Method finish. A scheduled worker has completed, call done() on the
+	 * event dispatching thread or for an inline scheduler on its thread.
+	 */
+	private void finish() {
+		synchronized (doStep) {
+			if (!isScheduled)
+				return;
+			isScheduled = false;
+		}
+		this.scheduler.finish(new Runnable() {
+			public void run() {
+				isDone = true;
+				done();
+			}
+		});
+	}
+
 	/**
 	 * Method isDone.
 	 * 
@@ -176,6 +288,9 @@ public abstract class Worker {
 	 */
 
 	public boolean isRunning() {
+		if (isScheduled)
+			return true;
+
 		Thread t = threadVar.get();
 		if (t == null)
 			return false;
@@ -216,6 +331,9 @@ public abstract class Worker {
 	 */
 
 	public boolean isWaiting() {
+		if (isScheduled)
+			return !isStepPending && !isStepRunning;
+
 		Thread t = threadVar.get();
 		if (t != null) {
 			if (t.getState().compareTo(Thread.State.WAITING) == 0
@@ -236,6 +354,11 @@ public abstract class Worker {
 			t.interrupt();
 		}
 		threadVar.clear();
+		/*
+		 * A scheduled worker that is not busy finishes now, one that is busy
+		 * finishes at the end of its current step.
+		 */
+		schedule();
 	}
 
 	/**
@@ -302,18 +425,32 @@ public abstract class Worker {
 				SwingUtilities.invokeLater(doFinished);
 			}
 		};
-		Thread t = new Thread(doConstruct, "WorkerThread" + threadCount++);
+		Thread t = WorkerScheduler.newThread(doConstruct, "WorkerThread"
+				+ threadCount++);
 		threadVar = new ThreadVar(t);
 	}
 
 	/**
-	 * Start the worker thread.
+	 * Start the worker thread. If the WorkerScheduler is enabled and this
+	 * worker supports it the first step is posted to the pool instead. A
+	 * worker executed on a thread with an inline WorkerScheduler bound to it
+	 * is always scheduled there.
 	 */
 	public void execute() {
 		Thread t = threadVar.get();
-		if (t != null) {
+		if (t != null && !isScheduled) {
 			isDone = false;
 			isCancelled = false;
+			WorkerScheduler bound = WorkerScheduler.getBound();
+			if (isSchedulable()
+					&& (null != bound || WorkerScheduler.isScheduled())) {
+				this.scheduler = (null == bound ? WorkerScheduler
+						.getInstance() : bound);
+				isScheduled = true;
+				threadVar.clear();
+				schedule();
+				return;
+			}
 			t.start();
 		} else {
 
@@ -0,0 +1,633 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.core.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.properties.ConfigProperties;
+
+/**
+ * Runs the steps of scheduled Workers on a bounded pool of threads rather than
+ * one thread per worker. Each worker posts its steps to a mailbox under a key,
+ * the steps in a mailbox are run one at a time in the order they were posted
+ * so a worker never runs on two threads at once. Mailboxes for different keys
+ * run in parallel up to the size of the pool.
+ * 
+ * In VIRTUAL mode workers keep their own thread but it is a virtual thread
+ * when the runtime supports them, so thousands of blocking workers share a
+ * small carrier pool. Otherwise a platform thread is used.
+ * 
+ * An inline scheduler has no threads of its own, the mailboxes are drained by
+ * the thread that owns it calling runPending(). Workers executed on a thread
+ * that has an inline scheduler bound to it are scheduled there whatever the
+ * mode, this is used by the event driven back test to run a whole trading day
+ * deterministically on one thread.
+ * 
+ * The mode and pool size are read from the config.properties
+ * trade.worker.scheduler and trade.worker.pool.size.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class WorkerScheduler {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(WorkerScheduler.class);
+
+	public static final String THREAD = "THREAD";
+	public static final String POOL = "POOL";
+	public static final String VIRTUAL = "VIRTUAL";
+
+	/*
+	 * The number of steps a mailbox runs before it gives its pool thread up to
+	 * the other mailboxes.
+	 */
+	private static final int MAX_STEPS_PER_DRAIN = 16;
+
+	private static String mode = THREAD;
+	private static int poolSize = 0;
+	private static WorkerScheduler m_instance = null;
+
+	/*
+	 * Thread.ofVirtual() and the builder methods, null if the runtime does not
+	 * have virtual threads. The code is built for Java 8 so these are found by
+	 * reflection.
+	 */
+	private static Method ofVirtual = null;
+	private static Method builderName = null;
+	private static Method builderUnstarted = null;
+
+	/*
+	 * The inline scheduler bound to the current thread if any.
+	 */
+	private static final ThreadLocal<WorkerScheduler> m_bound = new ThreadLocal<WorkerScheduler>();
+
+	private final Executor executor;
+	private final InlineExecutor inline;
+	private final int threads;
+	private final HashMap<Object, Mailbox> mailboxes = new HashMap<Object, Mailbox>();
+	private final AtomicInteger queueDepth = new AtomicInteger(0);
+	private final AtomicInteger activeCount = new AtomicInteger(0);
+	private final AtomicLong completedCount = new AtomicLong(0);
+	private int maxQueueDepth = 0;
+
+	/*
+	 * Initialize the scheduler form the properties file. If values are not
+	 * found defaults will be used.
+	 */
+	static {
+		try {
+			String value = ConfigProperties
+					.getPropAsString("trade.worker.scheduler");
+			if (null != value && value.trim().length() > 0)
+				mode = value.trim().toUpperCase();
+		} catch (Exception ex) {
+			_log.warn("Property trade.worker.scheduler not set in config.properties will use default: "
+					+ mode);
+		}
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = ofVirtual.getReturnType();
+			builderName = builder.getMethod("name", String.class);
+			builderUnstarted = builder.getMethod("unstarted", Runnable.class);
+		} catch (Exception ex) {
+			ofVirtual = null;
+		}
+		try {
+			poolSize = ConfigProperties.getPropAsInt("trade.worker.pool.size");
+		} catch (Exception ex) {
+			_log.warn("Property trade.worker.pool.size not set in config.properties will use default");
+		}
+	}
+
+	/**
+	 * Constructor for WorkerScheduler.
+	 * 
+	 * @param threads
+	 *            int the number of pool threads.
+	 */
+	protected WorkerScheduler(int threads) {
+		this.threads = threads;
+		this.inline = null;
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		this.executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "WorkerPool"
+								+ threadCount.getAndIncrement());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Constructor for WorkerScheduler. An inline scheduler whose steps are run
+	 * by the owning thread in runPending().
+	 * 
+	 * @param inline
+	 *            InlineExecutor
+	 */
+	private WorkerScheduler(InlineExecutor inline) {
+		this.threads = 0;
+		this.inline = inline;
+		this.executor = inline;
+	}
+
+	/**
+	 * Method newInlineScheduler.
+	 * 
+	 * @return WorkerScheduler a scheduler with no threads, steps are run by
+	 *         calling runPending().
+	 */
+	public static WorkerScheduler newInlineScheduler() {
+		return new WorkerScheduler(new InlineExecutor(null));
+	}
+
+	/**
+	 * Method newInlineScheduler.
+	 * 
+	 * @param onPending
+	 *            Runnable called after a step is posted, the owner uses this
+	 *            to start draining the scheduler if it is not already.
+	 * @return WorkerScheduler a scheduler with no threads, steps are run by
+	 *         calling runPending().
+	 */
+	public static WorkerScheduler newInlineScheduler(Runnable onPending) {
+		return new WorkerScheduler(new InlineExecutor(onPending));
+	}
+
+	/**
+	 * Method bind. Bind this inline scheduler to the current thread, workers
+	 * executed on this thread are scheduled here until unbind() is called.
+	 */
+	public void bind() {
+		if (!isInline())
+			throw new IllegalStateException(
+					"Only an inline WorkerScheduler can be bound to a thread");
+		m_bound.set(this);
+	}
+
+	/**
+	 * Method unbind. Remove the inline scheduler from the current thread.
+	 */
+	public static void unbind() {
+		m_bound.remove();
+	}
+
+	/**
+	 * Method getBound.
+	 * 
+	 * @return WorkerScheduler the inline scheduler bound to the current
+	 *         thread or null.
+	 */
+	public static WorkerScheduler getBound() {
+		return m_bound.get();
+	}
+
+	/**
+	 * Method isInline.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isInline() {
+		return null != this.inline;
+	}
+
+	/**
+	 * Method runPending. Run the posted steps on the calling thread until
+	 * there are none left, steps posted while running are run in turn.
+	 * 
+	 * @return int the number of mailbox drains run.
+	 */
+	public int runPending() {
+		int count = 0;
+		Runnable runnable = null;
+		while (null != (runnable = this.inline.poll())) {
+			runnable.run();
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Method hasPending.
+	 * 
+	 * @return boolean true if this inline scheduler has steps to run.
+	 */
+	public boolean hasPending() {
+		return this.inline.hasPending();
+	}
+
+	/**
+	 * Method awaitPending. Wait for a step to be posted to this inline
+	 * scheduler or for signal() to be called.
+	 * 
+	 * @param timeout
+	 *            long milliseconds to wait.
+	 * @return boolean true if there are steps to run.
+	 * @throws InterruptedException
+	 */
+	public boolean awaitPending(long timeout) throws InterruptedException {
+		return this.inline.await(timeout);
+	}
+
+	/**
+	 * Method signal. Wake the owning thread if it is waiting in
+	 * awaitPending().
+	 */
+	public void signal() {
+		this.inline.signal();
+	}
+
+	/**
+	 * Method finish. Run the completion of a worker, on the owning thread for
+	 * an inline scheduler otherwise on the event dispatching thread.
+	 * 
+	 * @param doFinished
+	 *            Runnable
+	 */
+	public void finish(Runnable doFinished) {
+		if (isInline()) {
+			this.executor.execute(doFinished);
+		} else {
+			SwingUtilities.invokeLater(doFinished);
+		}
+	}
+
+	/**
+	 * Method getInstance. The pool is created the first time a worker is
+	 * scheduled.
+	 * 
+	 * @return WorkerScheduler
+	 */
+	public static synchronized WorkerScheduler getInstance() {
+		if (null == m_instance) {
+			int threads = poolSize > 0 ? poolSize : Runtime.getRuntime()
+					.availableProcessors();
+			m_instance = new WorkerScheduler(threads);
+			_log.info("WorkerScheduler started mode: " + mode + " threads: "
+					+ threads);
+		}
+		return m_instance;
+	}
+
+	/**
+	 * Method isScheduled.
+	 * 
+	 * @return boolean true if workers that support it should run on the pool.
+	 */
+	public static boolean isScheduled() {
+		return POOL.equals(mode);
+	}
+
+	/**
+	 * Method isVirtualThreadSupported.
+	 * 
+	 * @return boolean true if the runtime can create virtual threads.
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return null != ofVirtual;
+	}
+
+	/**
+	 * Method newThread. Create the unstarted thread for a worker, this is a
+	 * virtual thread in VIRTUAL mode if the runtime supports them.
+	 * 
+	 * @param runnable
+	 *            Runnable
+	 * @param name
+	 *            String
+	 * @return Thread
+	 */
+	public static Thread newThread(Runnable runnable, String name) {
+		if (VIRTUAL.equals(mode) && isVirtualThreadSupported()) {
+			try {
+				Object builder = builderName.invoke(ofVirtual.invoke(null),
+						name);
+				return (Thread) builderUnstarted.invoke(builder, runnable);
+			} catch (Exception ex) {
+				_log.warn("Could not create virtual thread will use a platform thread Msg: "
+						+ ex.getMessage());
+			}
+		}
+		return new Thread(runnable, name);
+	}
+
+	/**
+	 * Method getMode.
+	 * 
+	 * @return String
+	 */
+	public static String getMode() {
+		return mode;
+	}
+
+	/**
+	 * Method setMode. Changes the mode for workers executed after this call.
+	 * 
+	 * @param mode
+	 *            String
+	 */
+	public static void setMode(String mode) {
+		WorkerScheduler.mode = mode;
+	}
+
+	/**
+	 * Method submit. Post a step to the mailbox for the key. The step will run
+	 * after any steps already posted for that key.
+	 * 
+	 * @param key
+	 *            Object
+	 * @param task
+	 *            Runnable
+	 */
+	public void submit(Object key, Runnable task) {
+		Mailbox mailbox = null;
+		synchronized (this.mailboxes) {
+			mailbox = this.mailboxes.get(key);
+			if (null == mailbox) {
+				mailbox = new Mailbox(key);
+				this.mailboxes.put(key, mailbox);
+			}
+			mailbox.tasks.add(task);
+			int depth = this.queueDepth.incrementAndGet();
+			if (depth > this.maxQueueDepth)
+				this.maxQueueDepth = depth;
+			if (mailbox.active)
+				return;
+			mailbox.active = true;
+		}
+		this.executor.execute(mailbox);
+	}
+
+	/**
+	 * Method getQueueDepth.
+	 * 
+	 * @return int the number of steps waiting to run across all mailboxes.
+	 */
+	public int getQueueDepth() {
+		return this.queueDepth.get();
+	}
+
+	/**
+	 * Method getQueueDepth.
+	 * 
+	 * @param key
+	 *            Object
+	 * @return int the number of steps waiting to run for the key.
+	 */
+	public int getQueueDepth(Object key) {
+		synchronized (this.mailboxes) {
+			Mailbox mailbox = this.mailboxes.get(key);
+			return null == mailbox ? 0 : mailbox.tasks.size();
+		}
+	}
+
+	/**
+	 * Method getMaxQueueDepth.
+	 * 
+	 * @return int the largest queue depth seen.
+	 */
+	public int getMaxQueueDepth() {
+		synchronized (this.mailboxes) {
+			return this.maxQueueDepth;
+		}
+	}
+
+	/**
+	 * Method getMailboxCount.
+	 * 
+	 * @return int the number of keys with steps queued or running.
+	 */
+	public int getMailboxCount() {
+		synchronized (this.mailboxes) {
+			return this.mailboxes.size();
+		}
+	}
+
+	/**
+	 * Method getActiveCount.
+	 * 
+	 * @return int the number of steps running now.
+	 */
+	public int getActiveCount() {
+		return this.activeCount.get();
+	}
+
+	/**
+	 * Method getCompletedCount.
+	 * 
+	 * @return long the number of steps run.
+	 */
+	public long getCompletedCount() {
+		return this.completedCount.get();
+	}
+
+	/**
+	 * Method getPoolSize.
+	 * 
+	 * @return int
+	 */
+	public int getPoolSize() {
+		return this.threads;
+	}
+
+	/**
+	 * Method shutdown. Stop the pool, steps already running are allowed to
+	 * finish.
+	 * 
+	 * @param timeout
+	 *            long milliseconds to wait.
+	 * @throws InterruptedException
+	 */
+	public static void shutdown(long timeout) throws InterruptedException {
+		WorkerScheduler scheduler = null;
+		synchronized (WorkerScheduler.class) {
+			scheduler = m_instance;
+			m_instance = null;
+		}
+		if (null != scheduler) {
+			ExecutorService executor = (ExecutorService) scheduler.executor;
+			executor.shutdown();
+			executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Method toString.
+	 * 
+	 * @return String
+	 */
+	public String toString() {
+		return "WorkerScheduler mode: " + (isInline() ? "INLINE" : mode)
+				+ " poolSize: " + this.threads + " mailboxes: "
+				+ getMailboxCount() + " queueDepth: "
+				+ getQueueDepth() + " maxQueueDepth: " + getMaxQueueDepth()
+				+ " active: " + getActiveCount() + " completed: "
+				+ getCompletedCount();
+	}
+
+	/**
+	 * The steps for one key. Only one pool thread drains a mailbox at a time.
+	 */
+	private class Mailbox implements Runnable {
+
+		private final Object key;
+		private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+		private boolean active = false;
+
+		/**
+		 * Constructor for Mailbox.
+		 * 
+		 * @param key
+		 *            Object
+		 */
+		Mailbox(Object key) {
+			this.key = key;
+		}
+
+		public void run() {
+			for (int steps = 0; steps < MAX_STEPS_PER_DRAIN; steps++) {
+				Runnable task = null;
+				synchronized (mailboxes) {
+					task = this.tasks.poll();
+					if (null == task) {
+						this.active = false;
+						mailboxes.remove(this.key);
+						return;
+					}
+					queueDepth.decrementAndGet();
+				}
+				activeCount.incrementAndGet();
+				try {
+					task.run();
+				} catch (Throwable ex) {
+					_log.error("Error running worker step key: " + this.key
+							+ " Msg: " + ex.getMessage(), ex);
+				} finally {
+					activeCount.decrementAndGet();
+					completedCount.incrementAndGet();
+				}
+			}
+			/*
+			 * Give the thread up to the other mailboxes, this one goes to the
+			 * back of the pool queue.
+			 */
+			executor.execute(this);
+		}
+	}
+
+	/**
+	 * The queue for an inline scheduler, drained by the thread that owns it.
+	 */
+	private static class InlineExecutor implements Executor {
+
+		private final ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+		private final Runnable onPending;
+		private boolean signalled = false;
+
+		/**
+		 * Constructor for InlineExecutor.
+		 * 
+		 * @param onPending
+		 *            Runnable may be null.
+		 */
+		InlineExecutor(Runnable onPending) {
+			this.onPending = onPending;
+		}
+
+		public void execute(Runnable runnable) {
+			synchronized (this) {
+				this.queue.add(runnable);
+				notifyAll();
+			}
+			if (null != this.onPending)
+				this.onPending.run();
+		}
+
+		/**
+		 * Method hasPending.
+		 * 
+		 * @return boolean
+		 */
+		synchronized boolean hasPending() {
+			return !this.queue.isEmpty();
+		}
+
+		/**
+		 * Method poll.
+		 * 
+		 * @return Runnable the next runnable or null if there are none.
+		 */
+		synchronized Runnable poll() {
+			return this.queue.poll();
+		}
+
+		/**
+		 * Method await.
+		 * 
+		 * @param timeout
+		 *            long
+		 * @return boolean true if there are runnables queued.
+		 * @throws InterruptedException
+		 */
+		synchronized boolean await(long timeout) throws InterruptedException {
+			if (this.queue.isEmpty() && !this.signalled)
+				wait(timeout);
+			this.signalled = false;
+			return !this.queue.isEmpty();
+		}
+
+		synchronized void signal() {
+			this.signalled = true;
+			notifyAll();
+		}
+	}
+}
@@ -35,12 +35,16 @@
  */
 package org.trade.core.valuetype;
 
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
 
 import org.trade.core.conversion.JavaTypeTranslator;
 import org.trade.core.dao.Aspect;
 import org.trade.core.lookup.Lookup;
+import org.trade.core.lookup.LookupException;
 import org.trade.core.lookup.LookupQualifier;
 import org.trade.core.lookup.LookupService;
 import org.trade.core.lookup.PropertiesLookup;
@@ -92,6 +96,21 @@ public class Decode extends ValueType implements Comparator<Decode>,
 
 	protected static Boolean m_ascending = new Boolean(true);
 
+	/*
+	 * Lookups already resolved by the LookupService keyed by identifier, code
+	 * decode type and optional. The map is never changed once published so
+	 * constructing a Decode is a map read and a clone.
+	 */
+	private static volatile Map<String, Lookup> m_internedLookups = Collections
+			.emptyMap();
+	private static final Object m_internedLock = new Object();
+
+	/*
+	 * Moved on by every clearInterned() so a lookup loaded before a clear is
+	 * not published after it.
+	 */
+	private static volatile long m_clearGeneration = 0;
+
 	/**
 	 * Default Constructor
 	 * 
@@ -164,13 +183,9 @@ public class Decode extends ValueType implements Comparator<Decode>,
 		m_codeDecodeType = codeDecodeType;
 		m_codeDecodeIdentifier = CODE_DECODE_IDENTIFIER;
 
-		final LookupQualifier qualifier = new LookupQualifier();
-
-		qualifier.setValue(m_codeDecodeIdentifier + _TYPE, m_codeDecodeType);
-
 		try {
-			m_lookup = LookupService.getLookup(m_codeDecodeIdentifier,
-					qualifier, optional);
+			m_lookup = getInternedLookup(m_codeDecodeIdentifier,
+					m_codeDecodeType, optional);
 		} catch (final Exception ex) {
 			m_lookup = new PropertiesLookup(null, null);
 		}
@@ -191,18 +206,65 @@ public class Decode extends ValueType implements Comparator<Decode>,
 		m_codeDecodeType = codeDecodeType;
 		m_codeDecodeIdentifier = identifier;
 
-		final LookupQualifier qualifier = new LookupQualifier();
-
-		qualifier.setValue(m_codeDecodeIdentifier + _TYPE, m_codeDecodeType);
-
 		try {
-			m_lookup = LookupService.getLookup(m_codeDecodeIdentifier,
-					qualifier, optional);
+			m_lookup = getInternedLookup(m_codeDecodeIdentifier,
+					m_codeDecodeType, optional);
 		} catch (final Exception ex) {
 			m_lookup = new PropertiesLookup(null, null);
 		}
 	}
 
+	/**
+	 * Method getInternedLookup. Returns a clone of the interned lookup,
+	 * going to the LookupService only the first time a lookup is used. A
+	 * lookup loaded while the lookups were cleared is used but not interned.
+	 * 
+	 * @param identifier
+	 *            String
+	 * @param codeDecodeType
+	 *            String
+	 * @param optional
+	 *            boolean
+	 * @return Lookup
+	 * @throws LookupException
+	 */
+	private static Lookup getInternedLookup(String identifier,
+			String codeDecodeType, boolean optional) throws LookupException {
+
+		final String key = identifier + "." + codeDecodeType + "." + optional;
+		Lookup lookup = m_internedLookups.get(key);
+		if (null == lookup) {
+			final long generation = m_clearGeneration;
+			final LookupQualifier qualifier = new LookupQualifier();
+			qualifier.setValue(identifier + _TYPE, codeDecodeType);
+			lookup = LookupService.getLookup(identifier, qualifier, optional);
+			if (null == lookup) {
+				return null;
+			}
+			synchronized (m_internedLock) {
+				if (generation == m_clearGeneration) {
+					final Map<String, Lookup> internedLookups = new HashMap<String, Lookup>(
+							m_internedLookups);
+					internedLookups.put(key, lookup);
+					m_internedLookups = Collections
+							.unmodifiableMap(internedLookups);
+				}
+			}
+		}
+		return (Lookup) lookup.clone();
+	}
+
+	/**
+	 * Method clearInterned. Drop the interned lookups so the next Decode goes
+	 * back to the LookupService. Called when the lookup caches are cleared.
+	 */
+	public static void clearInterned() {
+		synchronized (m_internedLock) {
+			m_clearGeneration++;
+			m_internedLookups = Collections.emptyMap();
+		}
+	}
+
 	/**
 	 * 
 	 * @return true, if the code within this object is empty. false if the code
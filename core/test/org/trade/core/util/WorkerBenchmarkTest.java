@@ -0,0 +1,288 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.core.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmark for the {@link Worker} class comparing the THREAD, VIRTUAL and
+ * POOL worker modes. Each worker waits for a candle in the same way as a
+ * strategy does, blocking on a condition in its own thread or running one
+ * step per candle on the pool. The strategies themselves need the database
+ * so they are not used here.
+ * 
+ * This is not part of the unit tests, it is skipped unless the system
+ * property trade.benchmark is true i.e. ant run-benchmarks. The results are
+ * logged one line per number of workers with the modes side by side.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class WorkerBenchmarkTest {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(WorkerBenchmarkTest.class);
+
+	@Rule
+	public TestName name = new TestName();
+
+	private static final int CANDLES = 20;
+	private static final int[] WORKERS = { 100, 1000, 5000 };
+
+	private String mode = null;
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Assume.assumeTrue(Boolean.getBoolean("trade.benchmark"));
+		mode = WorkerScheduler.getMode();
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		if (null != mode) {
+			WorkerScheduler.setMode(mode);
+			WorkerScheduler.shutdown(5000);
+		}
+	}
+
+	@Test
+	public void testWorkerModes() throws Exception {
+
+		List<String> modes = new ArrayList<String>();
+		modes.add(WorkerScheduler.THREAD);
+		if (WorkerScheduler.isVirtualThreadSupported()) {
+			modes.add(WorkerScheduler.VIRTUAL);
+		} else {
+			_log.info("Virtual threads not supported by this runtime VIRTUAL mode is not run.");
+		}
+		modes.add(WorkerScheduler.POOL);
+
+		StringBuilder report = new StringBuilder("Worker benchmark candles: "
+				+ CANDLES + " start ms / per candle us");
+		for (int workers : WORKERS) {
+			LinkedHashMap<String, long[]> results = new LinkedHashMap<String, long[]>();
+			for (String mode : modes) {
+				WorkerScheduler.setMode(mode);
+				results.put(mode, runBenchmark(workers));
+			}
+			report.append("\n workers: " + workers);
+			for (String mode : results.keySet()) {
+				long[] result = results.get(mode);
+				report.append(" " + mode + ": " + result[0] + " / "
+						+ result[1]);
+			}
+		}
+		// Warn so the results show with the default org.trade log level.
+		_log.warn(report.toString());
+	}
+
+	/**
+	 * Method runBenchmark. Start the workers then send each one the candles
+	 * waiting for every worker to process a candle before sending the next.
+	 * 
+	 * @param workers
+	 *            int
+	 * @return long[] the start time in ms and the time per candle in us.
+	 * @throws Exception
+	 */
+	private long[] runBenchmark(int workers) throws Exception {
+
+		AtomicLong processed = new AtomicLong(0);
+		List<CandleWorker> candleWorkers = new ArrayList<CandleWorker>(
+				workers);
+		long start = System.nanoTime();
+		for (int i = 0; i < workers; i++) {
+			CandleWorker worker = new CandleWorker(processed);
+			candleWorkers.add(worker);
+			worker.execute();
+		}
+		long started = System.nanoTime();
+		for (int candle = 0; candle < CANDLES; candle++) {
+			CountDownLatch latch = new CountDownLatch(workers);
+			for (CandleWorker worker : candleWorkers) {
+				worker.candle(latch);
+			}
+			assertTrue("Candle not processed by all workers mode: "
+					+ WorkerScheduler.getMode(),
+					latch.await(60, TimeUnit.SECONDS));
+		}
+		long finished = System.nanoTime();
+		for (CandleWorker worker : candleWorkers) {
+			worker.cancel();
+		}
+		for (CandleWorker worker : candleWorkers) {
+			worker.get();
+		}
+		assertEquals(WorkerScheduler.getMode(), (long) workers * CANDLES,
+				processed.get());
+		return new long[] {
+				TimeUnit.NANOSECONDS.toMillis(started - start),
+				TimeUnit.NANOSECONDS.toMicros((finished - started) / CANDLES) };
+	}
+
+	/**
+	 * A worker that waits for a candle. In its own thread it blocks until one
+	 * arrives, on the pool each candle schedules a step.
+	 */
+	private static class CandleWorker extends Worker {
+
+		private final ReentrantLock lockCandle = new ReentrantLock();
+		private final Condition candleChanged = lockCandle.newCondition();
+		private final AtomicLong processed;
+		private CountDownLatch latch = null;
+
+		/**
+		 * Constructor for CandleWorker.
+		 * 
+		 * @param processed
+		 *            AtomicLong
+		 */
+		CandleWorker(AtomicLong processed) {
+			this.processed = processed;
+		}
+
+		/**
+		 * Method candle.
+		 * 
+		 * @param latch
+		 *            CountDownLatch
+		 */
+		void candle(CountDownLatch latch) {
+			lockCandle.lock();
+			try {
+				this.latch = latch;
+				candleChanged.signal();
+			} finally {
+				lockCandle.unlock();
+			}
+			this.schedule();
+		}
+
+		public void cancel() {
+			this.setIsCancelled(true);
+			lockCandle.lock();
+			try {
+				candleChanged.signal();
+			} finally {
+				lockCandle.unlock();
+			}
+			this.schedule();
+		}
+
+		protected Object doInBackground() {
+			try {
+				do {
+					CountDownLatch current = null;
+					lockCandle.lock();
+					try {
+						while (null == this.latch && !this.isCancelled()) {
+							candleChanged.await();
+						}
+						current = this.latch;
+						this.latch = null;
+					} finally {
+						lockCandle.unlock();
+					}
+					process(current);
+				} while (!this.isCancelled());
+			} catch (InterruptedException interExp) {
+				// Do nothing.
+			}
+			return null;
+		}
+
+		protected boolean isSchedulable() {
+			return true;
+		}
+
+		protected boolean runTask() {
+			CountDownLatch current = null;
+			lockCandle.lock();
+			try {
+				current = this.latch;
+				this.latch = null;
+			} finally {
+				lockCandle.unlock();
+			}
+			process(current);
+			return false;
+		}
+
+		/**
+		 * Method process.
+		 * 
+		 * @param current
+		 *            CountDownLatch
+		 */
+		private void process(CountDownLatch current) {
+			if (null != current) {
+				this.processed.incrementAndGet();
+				current.countDown();
+			}
+		}
+
+		protected void done() {
+		}
+	}
+}
@@ -49,6 +49,8 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.event.EventListenerList;
 
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.PersistentModelException;
 import org.trade.persistent.dao.TradePosition;
 import org.trade.persistent.dao.TradeOrder;
 import org.trade.persistent.dao.Tradestrategy;
@@ -388,6 +390,48 @@ public abstract class AbstractBrokerModel implements BrokerModel, Cloneable,
 		this.brokerDataOnly = brokerDataOnly;
 	}
 
+	/**
+	 * Method getMaxHistoricalDataRequests. The SwingWorker has a maximum of 10
+	 * threads and the BrokerDataRequestMonitor uses one, so 8 leaves one
+	 * spare for the BrokerWorkers.
+	 * 
+	 * @return int
+	 * @see org.trade.broker.BrokerModel#getMaxHistoricalDataRequests()
+	 */
+	public int getMaxHistoricalDataRequests() {
+		return 8;
+	}
+
+	/**
+	 * Method getBackTestPersistentModel.
+	 * 
+	 * @return PersistentModel null each broker and strategy uses its own.
+	 * @see org.trade.broker.BrokerModel#getBackTestPersistentModel()
+	 */
+	public PersistentModel getBackTestPersistentModel() {
+		return null;
+	}
+
+	/**
+	 * Method flushBackTestPersistentModel.
+	 * 
+	 * @throws PersistentModelException
+	 * @see org.trade.broker.BrokerModel#flushBackTestPersistentModel()
+	 */
+	public void flushBackTestPersistentModel() throws PersistentModelException {
+		if (null != getBackTestPersistentModel())
+			getBackTestPersistentModel().flush();
+	}
+
+	/**
+	 * Method onBrokerDataSubmitted. Each request is run as it is sent so
+	 * there is nothing to do.
+	 * 
+	 * @see org.trade.broker.BrokerModel#onBrokerDataSubmitted()
+	 */
+	public void onBrokerDataSubmitted() {
+	}
+
 	/**
 	 * Returns a clone of the brokerManagerModel. The cloned brokerManagerModel
 	 * will NOT include the {@link BrokerChangeListener} references that have
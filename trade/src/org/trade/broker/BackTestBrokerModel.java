@@ -57,6 +57,7 @@ import org.trade.core.valuetype.Money;
 import org.trade.dictionary.valuetype.BarSize;
 import org.trade.dictionary.valuetype.ChartDays;
 import org.trade.dictionary.valuetype.OrderStatus;
+import org.trade.persistent.BackTestPersistentModel;
 import org.trade.persistent.PersistentModel;
 import org.trade.persistent.dao.Contract;
 import org.trade.persistent.dao.TradeOrder;
@@ -80,9 +81,9 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 			.getLogger(BackTestBrokerModel.class);
 
 	// Use getId as key
-	private static final ConcurrentHashMap<Integer, Tradestrategy> m_historyDataRequests = new ConcurrentHashMap<Integer, Tradestrategy>();
-	private static final ConcurrentHashMap<Integer, Contract> m_realTimeBarsRequests = new ConcurrentHashMap<Integer, Contract>();
-	private static final ConcurrentHashMap<Integer, Contract> m_contractRequests = new ConcurrentHashMap<Integer, Contract>();
+	private final ConcurrentHashMap<Integer, Tradestrategy> m_historyDataRequests = new ConcurrentHashMap<Integer, Tradestrategy>();
+	private final ConcurrentHashMap<Integer, Contract> m_realTimeBarsRequests = new ConcurrentHashMap<Integer, Contract>();
+	private final ConcurrentHashMap<Integer, Contract> m_contractRequests = new ConcurrentHashMap<Integer, Contract>();
 	private PersistentModel m_tradePersistentModel = null;
 
 	private ClientSocket m_client = null;
@@ -115,8 +116,8 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 		try {
 			m_client = new ClientSocket(this);
 			m_tradePersistentModel = (PersistentModel) ClassFactory
-					.getServiceForInterface(PersistentModel._persistentModel,
-							this);
+					.getServiceForInterface(
+							PersistentModel._backTestPersistentModel, this);
 			int maxKey = m_tradePersistentModel.findTradeOrderByMaxKey();
 			if (maxKey < 100000) {
 				maxKey = 100000;
@@ -128,6 +129,25 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 		}
 	}
 
+	/**
+	 * Method getClientSocket.
+	 * 
+	 * @return ClientSocket
+	 */
+	protected ClientSocket getClientSocket() {
+		return m_client;
+	}
+
+	/**
+	 * Method getTradePersistentModel.
+	 * 
+	 * @return PersistentModel the model the orders and fills of the back test
+	 *         are written to.
+	 */
+	protected PersistentModel getTradePersistentModel() {
+		return m_tradePersistentModel;
+	}
+
 	/**
 	 * Method getHistoricalData.
 	 * 
@@ -200,6 +220,22 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 		return m_client.getBackTestBroker(idTradestrategy);
 	}
 
+	/**
+	 * Method getBackTestPersistentModel. The model is only shared when it
+	 * holds the back test in memory, a database model would serialize the
+	 * writes of the brokers and strategies.
+	 * 
+	 * @return PersistentModel the model shared by the back test brokers and
+	 *         strategies of this broker model or null if they each use their
+	 *         own.
+	 * @see org.trade.broker.BrokerModel#getBackTestPersistentModel()
+	 */
+	public PersistentModel getBackTestPersistentModel() {
+		if (m_tradePersistentModel instanceof BackTestPersistentModel)
+			return m_tradePersistentModel;
+		return null;
+	}
+
 	/**
 	 * Method getNextRequestId.
 	 * 
@@ -210,6 +246,18 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 		return new Integer(orderKey.incrementAndGet());
 	}
 
+	/**
+	 * Method reserveRequestIds. Take a block of ids that will not be returned
+	 * by getNextRequestId().
+	 * 
+	 * @param count
+	 *            int the number of ids.
+	 * @return int the first id in the block.
+	 */
+	protected int reserveRequestIds(int count) {
+		return orderKey.getAndAdd(count) + 1;
+	}
+
 	/**
 	 * Method nextValidId.
 	 * 
@@ -219,7 +267,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 	 */
 	public void nextValidId(int orderId) {
 		try {
-			int maxKey = m_tradePersistentModel.findTradeOrderByMaxKey();
+			int maxKey = getTradePersistentModel().findTradeOrderByMaxKey();
 			if (maxKey < minOrderId) {
 				maxKey = minOrderId;
 			}
@@ -698,7 +746,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 				if (null == tradeOrder.getClientId()) {
 					tradeOrder.setClientId(999);
 				}
-				TradeOrder transientInstance = m_tradePersistentModel
+				TradeOrder transientInstance = getTradePersistentModel()
 						.persistTradeOrder(tradeOrder);
 				// Debug logging
 				_log.debug("Order Placed Key: "
@@ -762,7 +810,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 
 			BackTestBrokerModel.logExecution(execution);
 
-			TradeOrder transientInstance = m_tradePersistentModel
+			TradeOrder transientInstance = getTradePersistentModel()
 					.findTradeOrderByKey(execution.getTradeOrder()
 							.getOrderKey());
 			if (null == transientInstance) {
@@ -793,7 +841,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 					.getCumulativeQuantity());
 			transientInstance.setFilledDate(tradeOrderfill.getTime());
 			boolean isFilled = transientInstance.getIsFilled();
-			TradeOrder updatedOrder = m_tradePersistentModel
+			TradeOrder updatedOrder = getTradePersistentModel()
 					.persistTradeOrderfill(transientInstance);
 
 			// Let the controller know an order was filled
@@ -835,7 +883,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 
 		try {
 
-			TradeOrder transientInstance = m_tradePersistentModel
+			TradeOrder transientInstance = getTradePersistentModel()
 					.findTradeOrderByKey(tradeOrder.getOrderKey());
 			if (null == transientInstance) {
 				error(orderId, 3170, "Warning Order not found for Order Key: "
@@ -859,7 +907,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 					BackTestBrokerModel.logOrderState(orderState);
 					BackTestBrokerModel.logTradeOrder(tradeOrder);
 
-					TradeOrder updatedOrder = m_tradePersistentModel
+					TradeOrder updatedOrder = getTradePersistentModel()
 							.persistTradeOrder(transientInstance);
 
 					if (updatedOrder.hasTradePosition()
@@ -872,7 +920,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 							+ " state changed. Status:" + orderState.m_status);
 					BackTestBrokerModel.logOrderState(orderState);
 					BackTestBrokerModel.logTradeOrder(tradeOrder);
-					TradeOrder updatedOrder = m_tradePersistentModel
+					TradeOrder updatedOrder = getTradePersistentModel()
 							.persistTradeOrder(transientInstance);
 					if (OrderStatus.CANCELLED.equals(updatedOrder.getStatus())) {
 						// Let the controller know a position was closed
@@ -922,7 +970,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 			int remaining, double avgFillPrice, int permId, int parentId,
 			double lastFillPrice, int clientId, String whyHeld) {
 		try {
-			TradeOrder transientInstance = m_tradePersistentModel
+			TradeOrder transientInstance = getTradePersistentModel()
 					.findTradeOrderByKey(new Integer(orderId));
 			if (null == transientInstance) {
 				error(orderId, 3170, "Warning Order not found for Order Key: "
@@ -970,7 +1018,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 						lastFillPrice, clientId, whyHeld);
 
 				boolean isFilled = transientInstance.getIsFilled();
-				TradeOrder updatedOrder = m_tradePersistentModel
+				TradeOrder updatedOrder = getTradePersistentModel()
 						.persistTradeOrder(transientInstance);
 
 				if (OrderStatus.CANCELLED.equals(updatedOrder.getStatus())) {
@@ -1114,7 +1162,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 				BackTestBrokerModel.logContract(contractDetails);
 				if (BackTestBrokerModel.populateContract(contractDetails,
 						contract)) {
-					m_tradePersistentModel.persistContract(contract);
+					getTradePersistentModel().persistContract(contract);
 					synchronized (m_contractRequests) {
 						m_contractRequests.remove(reqId);
 					}
@@ -1186,7 +1234,7 @@ public class BackTestBrokerModel extends AbstractBrokerModel implements
 					 */
 					CandleSeries candleSeries = tradestrategy.getStrategyData()
 							.getBaseCandleSeries();
-					m_tradePersistentModel.persistCandleSeries(candleSeries);
+					getTradePersistentModel().persistCandleSeries(candleSeries);
 
 					_log.debug("HistoricalData complete Req Id: "
 							+ reqId
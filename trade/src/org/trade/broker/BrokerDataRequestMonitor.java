@@ -203,6 +203,7 @@ public class BrokerDataRequestMonitor extends SwingWorker<Void, String> {
 			_log.error("Error getting history data Msg: ", ex.getMessage());
 			this.firePropertyChange("error", new String("OK"), ex);
 		} finally {
+			this.brokerModel.onBrokerDataSubmitted();
 			synchronized (this.brokerModel.getHistoricalData()) {
 				while ((this.brokerModel.getHistoricalData().size() > 0)
 						&& !this.isCancelled()) {
@@ -218,6 +219,22 @@ public class BrokerDataRequestMonitor extends SwingWorker<Void, String> {
 					}
 				}
 			}
+			/*
+			 * Back test results may be held in memory by the back test
+			 * persistent model, write them out and release them now the back
+			 * test has completed. If it was cancelled the brokers may still
+			 * be running so leave them.
+			 */
+			if (!this.brokerModel.isBrokerDataOnly()
+					&& this.brokerModel.getHistoricalData().isEmpty()) {
+				try {
+					this.brokerModel.flushBackTestPersistentModel();
+				} catch (PersistentModelException ex) {
+					_log.error("Error flushing back test results Msg: {}",
+							ex.getMessage(), ex);
+					this.firePropertyChange("error", new String("OK"), ex);
+				}
+			}
 			setProgress(100);
 			message = "Completed Historical data total contracts processed: "
 					+ totalSumbitted + " in : "
@@ -312,11 +329,14 @@ public class BrokerDataRequestMonitor extends SwingWorker<Void, String> {
 		/*
 		 * The SwingWorker has a maximum of 10 threads to run and this process
 		 * uses one so we have 9 left for the BrokerWorkers. So wait while the
-		 * BrokerWorkers threads complete.
+		 * BrokerWorkers threads complete. The broker model says how many it
+		 * can have running.
 		 */
 		if (!this.isCancelled()) {
 			synchronized (this.brokerModel.getHistoricalData()) {
-				while (this.brokerModel.getHistoricalData().size() > 8) {
+				while (this.brokerModel.getHistoricalData().size() > this.brokerModel
+						.getMaxHistoricalDataRequests()) {
+					this.brokerModel.onBrokerDataSubmitted();
 					this.brokerModel.getHistoricalData().wait();
 				}
 			}
@@ -449,6 +469,7 @@ public class BrokerDataRequestMonitor extends SwingWorker<Void, String> {
 			 * Usually means we are submitting identical contracts.
 			 */
 			if (!this.isCancelled()) {
+				this.brokerModel.onBrokerDataSubmitted();
 				synchronized (this.brokerModel.getHistoricalData()) {
 					while (this.brokerModel.getHistoricalData().size() > 0) {
 						this.brokerModel.getHistoricalData().wait();
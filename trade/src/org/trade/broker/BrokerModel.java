@@ -40,6 +40,8 @@ import java.util.EventListener;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.trade.broker.client.Broker;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.PersistentModelException;
 import org.trade.persistent.dao.Contract;
 import org.trade.persistent.dao.TradeOrder;
 import org.trade.persistent.dao.Tradestrategy;
@@ -50,6 +52,8 @@ public interface BrokerModel {
 
 	public final static String _brokerTest = "BrokerTest";
 
+	public final static String _brokerEventTest = "BrokerEventTest";
+
 	public final static String _broker = "Broker";
 
 	/**
@@ -431,6 +435,37 @@ public interface BrokerModel {
 	 */
 	void setBrokerDataOnly(boolean brokerDataOnly);
 
+	/**
+	 * Method getMaxHistoricalDataRequests.
+	 * 
+	 * @return int the number of historical data requests that may be in
+	 *         progress at once.
+	 */
+	int getMaxHistoricalDataRequests();
+
+	/**
+	 * Method getBackTestPersistentModel.
+	 * 
+	 * @return PersistentModel the model shared by the back test brokers and
+	 *         strategies or null if they each use their own.
+	 */
+	PersistentModel getBackTestPersistentModel();
+
+	/**
+	 * Method flushBackTestPersistentModel. Write out and release the back
+	 * test results held by the back test persistent models.
+	 * 
+	 * @throws PersistentModelException
+	 */
+	void flushBackTestPersistentModel() throws PersistentModelException;
+
+	/**
+	 * Method onBrokerDataSubmitted. Called when a batch of onBrokerData
+	 * requests has been sent or before waiting for the requests in progress
+	 * to complete.
+	 */
+	void onBrokerDataSubmitted();
+
 	/**
 	 * Method validateBrokerData.
 	 * 
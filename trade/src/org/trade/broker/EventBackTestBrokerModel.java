@@ -0,0 +1,298 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker;
+
+import java.time.ZonedDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.broker.client.BackTestEngine;
+import org.trade.core.properties.ConfigProperties;
+import org.trade.persistent.BackTestPersistentModel;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.PersistentModelException;
+import org.trade.persistent.dao.Tradestrategy;
+
+/**
+ * A BackTestBrokerModel that runs the back test on the event driven
+ * BackTestEngine rather than a DBBroker thread for each tradestrategy. Broker
+ * data only requests are handled by the BackTestBrokerModel.
+ * 
+ * The tradestrategies can be split into shards by trading day or by contract,
+ * each shard has its own engine and block of order keys and the shards run in
+ * parallel on a fork join pool. The strategies in a shard run in candle time
+ * order on the shards engine. As every shard writes its trades to the same
+ * database the tradelog for the back test is the merge of the shards. The
+ * BrokerDataRequestMonitor never runs the same contract on two trading days
+ * at once so open positions, which are held on the contract, are not shared
+ * across shards. When the back test persistent model holds the results in
+ * memory each shard has its own, so the shards do not share the memory or
+ * the order versions, they are all flushed when the back test completes.
+ * 
+ * The engines are held while the BrokerDataRequestMonitor submits a batch of
+ * tradestrategies and released when the batch is submitted, so every stream
+ * in the batch is queued before any stream is moved on.
+ * 
+ * The sharding is set by the config.properties trade.backtest.shardBy (NONE,
+ * TRADINGDAY or CONTRACT) and trade.backtest.shards, the size of the pool.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class EventBackTestBrokerModel extends BackTestBrokerModel {
+
+	private static final long serialVersionUID = -2861640342581391543L;
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(EventBackTestBrokerModel.class);
+
+	public static final String NONE = "NONE";
+	public static final String TRADINGDAY = "TRADINGDAY";
+	public static final String CONTRACT = "CONTRACT";
+
+	/*
+	 * The number of order keys in the block given to each shard. A shard is
+	 * one trading day or one contract so this is far more orders than it will
+	 * place.
+	 */
+	private static final int SHARD_ORDER_KEYS = 100000;
+
+	private static String shardBy = NONE;
+	private static int shards = 0;
+
+	private final ConcurrentHashMap<Object, BackTestEngine> m_engines = new ConcurrentHashMap<Object, BackTestEngine>();
+	private final ConcurrentHashMap<BackTestEngine, PersistentModel> m_models = new ConcurrentHashMap<BackTestEngine, PersistentModel>();
+	private ForkJoinPool m_pool = null;
+
+	/*
+	 * Initialize the sharding form the properties file. If values are not
+	 * found defaults will be used.
+	 */
+	static {
+		try {
+			String value = ConfigProperties
+					.getPropAsString("trade.backtest.shardBy");
+			if (null != value && value.trim().length() > 0)
+				shardBy = value.trim().toUpperCase();
+		} catch (Exception ex) {
+			_log.warn("Property trade.backtest.shardBy not set in config.properties will use default: "
+					+ shardBy);
+		}
+		try {
+			shards = ConfigProperties.getPropAsInt("trade.backtest.shards");
+		} catch (Exception ex) {
+			_log.warn("Property trade.backtest.shards not set in config.properties will use default");
+		}
+	}
+
+	public EventBackTestBrokerModel() {
+		super();
+		int parallelism = NONE.equals(shardBy) ? 1 : (shards > 0 ? shards
+				: Runtime.getRuntime().availableProcessors());
+		m_pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Method onDisconnect.
+	 * 
+	 * @see org.trade.broker.BrokerModel#onDisconnect()
+	 */
+	public void onDisconnect() {
+		for (BackTestEngine engine : m_engines.values()) {
+			engine.stop();
+		}
+		m_pool.shutdownNow();
+		m_engines.clear();
+		m_models.clear();
+		super.onDisconnect();
+	}
+
+	/**
+	 * Method getNextRequestId. Orders placed by a strategy running on an
+	 * engine take their key from the engines block.
+	 * 
+	 * @return Integer
+	 * @see org.trade.broker.BrokerModel#getNextRequestId()
+	 */
+	public Integer getNextRequestId() {
+		BackTestEngine engine = BackTestEngine.getCurrent();
+		if (null != engine)
+			return engine.getNextOrderKey();
+		return super.getNextRequestId();
+	}
+
+	/**
+	 * Method getBackTestPersistentModel. The brokers and strategies running
+	 * on an engine use the model of that shard.
+	 * 
+	 * @return PersistentModel
+	 * @see org.trade.broker.BrokerModel#getBackTestPersistentModel()
+	 */
+	public PersistentModel getBackTestPersistentModel() {
+		PersistentModel model = getShardPersistentModel();
+		if (null != model)
+			return model;
+		return super.getBackTestPersistentModel();
+	}
+
+	/**
+	 * Method getTradePersistentModel. The orders and fills for a shard are
+	 * written to the model of that shard.
+	 * 
+	 * @return PersistentModel
+	 */
+	protected PersistentModel getTradePersistentModel() {
+		PersistentModel model = getShardPersistentModel();
+		if (null != model)
+			return model;
+		return super.getTradePersistentModel();
+	}
+
+	/**
+	 * Method flushBackTestPersistentModel. Flush the model of each shard.
+	 * 
+	 * @throws PersistentModelException
+	 * @see org.trade.broker.BrokerModel#flushBackTestPersistentModel()
+	 */
+	public void flushBackTestPersistentModel() throws PersistentModelException {
+		for (PersistentModel model : m_models.values()) {
+			model.flush();
+		}
+		super.flushBackTestPersistentModel();
+	}
+
+	/**
+	 * Method getShardPersistentModel.
+	 * 
+	 * @return PersistentModel the model of the shard whose engine is running
+	 *         on the current thread or null.
+	 */
+	private PersistentModel getShardPersistentModel() {
+		BackTestEngine engine = BackTestEngine.getCurrent();
+		if (null == engine)
+			return null;
+		return m_models.get(engine);
+	}
+
+	/**
+	 * Method getMaxHistoricalDataRequests. The engines do not use a thread
+	 * for each request and a batch must be submitted in full before the
+	 * engines are released, so there is no limit.
+	 * 
+	 * @return int
+	 * @see org.trade.broker.BrokerModel#getMaxHistoricalDataRequests()
+	 */
+	public int getMaxHistoricalDataRequests() {
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Method onBrokerDataSubmitted. Release the engines held while the batch
+	 * was submitted.
+	 * 
+	 * @see org.trade.broker.BrokerModel#onBrokerDataSubmitted()
+	 */
+	public void onBrokerDataSubmitted() {
+		for (BackTestEngine engine : m_engines.values()) {
+			engine.release();
+		}
+	}
+
+	/**
+	 * Method onBrokerData.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @throws BrokerModelException
+	 * @see org.trade.broker.BrokerModel#onBrokerData(Tradestrategy,
+	 *      ZonedDateTime)
+	 */
+	public void onBrokerData(final Tradestrategy tradestrategy,
+			final ZonedDateTime endDate) throws BrokerModelException {
+
+		if (this.isBrokerDataOnly()) {
+			super.onBrokerData(tradestrategy, endDate);
+			return;
+		}
+		if (this.isHistoricalDataRunning(tradestrategy)) {
+			throw new BrokerModelException(tradestrategy.getId(), 3010,
+					"Data request is already in progress for: "
+							+ tradestrategy.getContract().getSymbol()
+							+ " Please wait or cancel.");
+		}
+		getHistoricalData().put(tradestrategy.getId(), tradestrategy);
+		BackTestEngine engine = getEngine(tradestrategy);
+		engine.hold();
+		engine.submit(tradestrategy);
+	}
+
+	/**
+	 * Method getEngine. Find the engine for the shard the tradestrategy is
+	 * in, a new engine is created the first time a shard is seen.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @return BackTestEngine
+	 */
+	private BackTestEngine getEngine(Tradestrategy tradestrategy) {
+		Object shardKey = NONE;
+		if (TRADINGDAY.equals(shardBy)) {
+			shardKey = tradestrategy.getTradingday().getOpen().toLocalDate();
+		} else if (CONTRACT.equals(shardBy)) {
+			shardKey = tradestrategy.getContract().getIdContract();
+		}
+		BackTestEngine engine = m_engines.get(shardKey);
+		if (null == engine) {
+			synchronized (m_engines) {
+				engine = m_engines.get(shardKey);
+				if (null == engine) {
+					engine = new BackTestEngine(this, getClientSocket(),
+							m_pool, reserveRequestIds(SHARD_ORDER_KEYS));
+					if (super.getBackTestPersistentModel() instanceof BackTestPersistentModel)
+						m_models.put(engine, new BackTestPersistentModel());
+					m_engines.put(shardKey, engine);
+					_log.debug("BackTestEngine created for shard: " + shardKey
+							+ " shards: " + m_engines.size());
+				}
+			}
+		}
+		return engine;
+	}
+}
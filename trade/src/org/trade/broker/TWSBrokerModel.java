@@ -83,6 +83,7 @@ import org.trade.persistent.dao.TradeOrderfill;
 import org.trade.persistent.dao.Tradestrategy;
 import org.trade.strategy.data.CandleSeries;
 import org.trade.strategy.data.StrategyData;
+import org.trade.strategy.data.StrategyDataRegistry;
 import org.trade.strategy.data.candle.CandleItem;
 
 import com.ib.client.CommissionReport;
@@ -112,6 +113,8 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 	private static final ConcurrentHashMap<Integer, Contract> m_realTimeBarsRequests = new ConcurrentHashMap<Integer, Contract>();
 	private static final ConcurrentHashMap<Integer, Contract> m_marketDataRequests = new ConcurrentHashMap<Integer, Contract>();
 	private static final ConcurrentHashMap<Integer, Contract> m_contractRequests = new ConcurrentHashMap<Integer, Contract>();
+	// Shared StrategyData for tradestrategies on realtime bars
+	private static final StrategyDataRegistry m_strategyDataRegistry = new StrategyDataRegistry();
 	// Use account number as key
 	private static final ConcurrentHashMap<String, Account> m_accountRequests = new ConcurrentHashMap<String, Account>();
 
@@ -840,7 +843,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 		m_historyDataRequests.clear();
 		m_realTimeBarsRequests.clear();
 		m_marketDataRequests.clear();
-
+		m_strategyDataRegistry.clear();
 	}
 
 	/**
@@ -929,6 +932,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 					.getContract().getId());
 			for (Tradestrategy item : contract.getTradestrategies()) {
 				if (item.equals(tradestrategy)) {
+					m_strategyDataRegistry.unsubscribe(item);
 					contract.removeTradestrategy(tradestrategy);
 					break;
 				}
@@ -953,7 +957,8 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 			if (m_client.isConnected())
 				m_client.cancelRealTimeBars(contract.getId());
 			synchronized (m_realTimeBarsRequests) {
-				m_realTimeBarsRequests.remove(contract.getId());
+				unsubscribeStrategyData(m_realTimeBarsRequests.remove(contract
+						.getId()));
 			}
 		}
 	}
@@ -1628,7 +1633,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 		} else {
 			if (m_realTimeBarsRequests.containsKey(id)) {
 				synchronized (m_realTimeBarsRequests) {
-					m_realTimeBarsRequests.remove(id);
+					unsubscribeStrategyData(m_realTimeBarsRequests.remove(id));
 				}
 			}
 			if (m_marketDataRequests.containsKey(id)) {
@@ -2510,13 +2515,23 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 					synchronized (tradestrategy.getContract()
 							.getTradestrategies()) {
 
-						this.fireHistoricalDataComplete(tradestrategy);
-						if (tradestrategy
+						boolean realtime = tradestrategy
 								.getTradingday()
 								.getClose()
 								.isAfter(
 										TradingCalendar
-												.getDateTimeNowMarketTimeZone())) {
+												.getDateTimeNowMarketTimeZone());
+						/*
+						 * Tradestrategies on the same contract, bar size and
+						 * day with the same indicators share one StrategyData
+						 * for the realtime bars. This must happen before the
+						 * strategy is started.
+						 */
+						if (realtime)
+							subscribeStrategyData(tradestrategy);
+
+						this.fireHistoricalDataComplete(tradestrategy);
+						if (realtime) {
 							if (!this.isRealtimeBarsRunning(tradestrategy
 									.getContract())) {
 								tradestrategy.getContract().addTradestrategy(
@@ -2673,10 +2688,18 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 					Collections.sort(contract.getTradestrategies(),
 							Tradestrategy.TRADINGDAY_CONTRACT);
 					boolean updateCandleDB = true;
+					/*
+					 * Tradestrategies that share a StrategyData only need the
+					 * candle built once.
+					 */
+					List<StrategyData> updated = new ArrayList<StrategyData>(
+							contract.getTradestrategies().size());
 					for (Tradestrategy tradestrategy : contract
 							.getTradestrategies()) {
 						StrategyData strategyData = tradestrategy
 								.getStrategyData();
+						if (updated.contains(strategyData))
+							continue;
 
 						if (TradingCalendar.isMarketHours(tradestrategy
 								.getTradingday().getOpen(), tradestrategy
@@ -2699,6 +2722,7 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 									close, volume, vwap, tradeCount,
 									(tradestrategy.getBarSize() / 5),
 									lastUpdateDate);
+							updated.add(strategyData);
 
 							if (!strategyData.getBaseCandleSeries().isEmpty()) {
 								CandleItem candleItem = (CandleItem) strategyData
@@ -2722,6 +2746,45 @@ public class TWSBrokerModel extends AbstractBrokerModel implements EWrapper {
 		}
 	}
 
+	/**
+	 * Method subscribeStrategyData. Subscribe the tradestrategy to the shared
+	 * StrategyData for its contract, bar size, tradingday and indicators. If
+	 * another tradestrategy has already subscribed the tradestrategy takes
+	 * that StrategyData and its own is released.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 */
+	private void subscribeStrategyData(Tradestrategy tradestrategy) {
+		StrategyData strategyData = m_strategyDataRegistry
+				.subscribe(tradestrategy);
+		if (strategyData != tradestrategy.getStrategyData()) {
+			_log.debug("Tradestrategy Id: "
+					+ tradestrategy.getIdTradeStrategy()
+					+ " sharing StrategyData for Symbol: "
+					+ tradestrategy.getContract().getSymbol() + " subscribers: "
+					+ m_strategyDataRegistry.getSubscriberCount(tradestrategy));
+			tradestrategy.setStrategyData(strategyData);
+		}
+	}
+
+	/**
+	 * Method unsubscribeStrategyData. Unsubscribe all the tradestrategies of
+	 * the contract from the shared StrategyData.
+	 * 
+	 * @param contract
+	 *            Contract
+	 */
+	private void unsubscribeStrategyData(Contract contract) {
+		if (null == contract)
+			return;
+		synchronized (contract) {
+			for (Tradestrategy tradestrategy : contract.getTradestrategies()) {
+				m_strategyDataRegistry.unsubscribe(tradestrategy);
+			}
+		}
+	}
+
 	/**
 	 * Method currentTime.
 	 * 
@@ -0,0 +1,363 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker.client;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.util.WorkerScheduler;
+import org.trade.persistent.dao.Tradestrategy;
+
+/**
+ * An event driven back test. All the tradestrategies sent to the engine are
+ * run on one thread, each has an EventBroker that is its stream of candles.
+ * The engine always moves on the stream whose next candle is earliest so the
+ * streams are merged in time order. For each candle the candle is built into
+ * the StrategyData, the strategies run the rules and then the orders are
+ * filled, all inline on the engine thread. The strategies are scheduled on an
+ * inline WorkerScheduler bound to the engine thread so there are no thread
+ * hand offs or waits and the same data always gives the same trades.
+ * 
+ * The engine loop runs on the executor it is given while it has work and
+ * returns when it is idle, it is started again when a tradestrategy is
+ * submitted or a strategy step is posted. While the engine is held the
+ * submitted tradestrategies are started but no stream is moved on, so when a
+ * batch of tradestrategies is submitted under a hold they all join the merge
+ * before the first candle and the trades do not depend on the order or the
+ * timing of the submits. Several engines can share a pool so
+ * a back test can be split into shards that run in parallel. Each engine has
+ * its own block of order keys so the keys given to a shard do not depend on
+ * how the shards run against each other.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class BackTestEngine implements Runnable {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(BackTestEngine.class);
+
+	/*
+	 * The engine running on the current thread if any.
+	 */
+	private static final ThreadLocal<BackTestEngine> m_current = new ThreadLocal<BackTestEngine>();
+
+	private final ClientWrapper brokerModel;
+	private final ClientSocket client;
+	private final Executor executor;
+	private final WorkerScheduler scheduler = WorkerScheduler
+			.newInlineScheduler(new Runnable() {
+				public void run() {
+					wake();
+				}
+			});
+	private final ConcurrentLinkedQueue<Tradestrategy> requests = new ConcurrentLinkedQueue<Tradestrategy>();
+	private final PriorityQueue<EventBroker> streams = new PriorityQueue<EventBroker>(
+			11, new NextCandleComparator());
+	private final AtomicInteger orderKey;
+	private boolean running = false;
+	private boolean held = false;
+	private volatile boolean stopped = false;
+	private long candleCount = 0;
+
+	/**
+	 * Constructor for BackTestEngine.
+	 * 
+	 * @param brokerModel
+	 *            ClientWrapper
+	 * @param client
+	 *            ClientSocket the back test brokers are registered here.
+	 * @param executor
+	 *            Executor the engine loop is run on.
+	 * @param firstOrderKey
+	 *            int the first order key in the block for this engine.
+	 */
+	public BackTestEngine(ClientWrapper brokerModel, ClientSocket client,
+			Executor executor, int firstOrderKey) {
+		this.brokerModel = brokerModel;
+		this.client = client;
+		this.executor = executor;
+		this.orderKey = new AtomicInteger(firstOrderKey);
+	}
+
+	/**
+	 * Method getCurrent.
+	 * 
+	 * @return BackTestEngine the engine running on the current thread or
+	 *         null.
+	 */
+	public static BackTestEngine getCurrent() {
+		return m_current.get();
+	}
+
+	/**
+	 * Method getNextOrderKey.
+	 * 
+	 * @return Integer the next key from the block for this engine.
+	 */
+	public Integer getNextOrderKey() {
+		return this.orderKey.getAndIncrement();
+	}
+
+	/**
+	 * Method submit. Add a tradestrategy to the back test, the engine loop is
+	 * started if it is not running.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 */
+	public void submit(Tradestrategy tradestrategy) {
+		this.stopped = false;
+		this.requests.add(tradestrategy);
+		wake();
+	}
+
+	/**
+	 * Method hold. Stop the streams from being moved on until release() is
+	 * called, submitted tradestrategies are still started.
+	 */
+	public synchronized void hold() {
+		this.held = true;
+	}
+
+	/**
+	 * Method release. Let the streams be moved on and start the engine loop
+	 * if it is not running.
+	 */
+	public void release() {
+		synchronized (this) {
+			this.held = false;
+		}
+		wake();
+	}
+
+	/**
+	 * Method stop. Stop the engine loop, any streams not completed are
+	 * closed.
+	 */
+	public void stop() {
+		this.stopped = true;
+		release();
+	}
+
+	/**
+	 * Method isRunning.
+	 * 
+	 * @return boolean true if the engine loop is running or about to run.
+	 */
+	public synchronized boolean isRunning() {
+		return this.running;
+	}
+
+	/**
+	 * Method wake. Start the engine loop on the executor if it is not
+	 * running.
+	 */
+	private synchronized void wake() {
+		if (!this.running) {
+			this.running = true;
+			this.executor.execute(this);
+		}
+	}
+
+	/**
+	 * Method run. The engine loop, this returns when there are no requests or
+	 * strategy steps left and no streams or the engine is held.
+	 */
+	public void run() {
+		m_current.set(this);
+		this.scheduler.bind();
+		boolean idle = false;
+		try {
+			while (true) {
+				if (this.stopped) {
+					this.requests.clear();
+					while (!this.streams.isEmpty()) {
+						closeStream(this.streams.poll());
+					}
+				}
+				Tradestrategy tradestrategy = null;
+				while (null != (tradestrategy = this.requests.poll())) {
+					startStream(tradestrategy);
+				}
+				EventBroker broker = null;
+				synchronized (this) {
+					if (!this.held)
+						broker = this.streams.poll();
+				}
+				if (null == broker) {
+					/*
+					 * Nothing to back test or the engine is held but strategies
+					 * may still be killed from the UI so run their steps before
+					 * going idle.
+					 */
+					this.scheduler.runPending();
+					synchronized (this) {
+						if (this.requests.isEmpty()
+								&& (this.held || this.streams.isEmpty())
+								&& !this.scheduler.hasPending()) {
+							/*
+							 * Clear the flag under the lock so a wake either
+							 * sees it clear and starts a new loop or adds its
+							 * request before this check.
+							 */
+							this.running = false;
+							idle = true;
+							return;
+						}
+					}
+					continue;
+				}
+				boolean more = false;
+				try {
+					this.candleCount++;
+					more = broker.nextCandle();
+				} catch (Exception ex) {
+					_log.error("Error BackTestEngine Symbol: "
+							+ broker.getTradestrategy().getContract()
+									.getSymbol() + " Msg: " + ex.getMessage(),
+							ex);
+				}
+				if (more) {
+					this.streams.add(broker);
+				} else {
+					closeStream(broker);
+				}
+			}
+		} finally {
+			WorkerScheduler.unbind();
+			m_current.remove();
+			if (!idle) {
+				/*
+				 * The loop failed, restart it if there is still work so no
+				 * request or stream is stranded.
+				 */
+				synchronized (this) {
+					this.running = false;
+					if (!this.requests.isEmpty()
+							|| (!this.held && !this.streams.isEmpty())
+							|| this.scheduler.hasPending()) {
+						this.running = true;
+						this.executor.execute(this);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method startStream. Load the candles for the tradestrategy, tell the
+	 * broker model the history is complete so the strategy is created and
+	 * started on this thread then add the stream to the engine.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 */
+	private void startStream(Tradestrategy tradestrategy) {
+
+		EventBroker broker = null;
+		try {
+			if (tradestrategy.getTrade()) {
+				broker = new EventBroker(tradestrategy.getStrategyData(),
+						tradestrategy.getIdTradeStrategy(), this.brokerModel,
+						this.scheduler);
+				this.client.addBackTestBroker(tradestrategy.getId(), broker);
+				broker.load();
+			}
+			this.brokerModel.historicalData(tradestrategy.getId(),
+					"finished- at yyyyMMdd HH:mm:ss", 0, 0, 0, 0, 0, 0, 0,
+					false);
+			this.scheduler.runPending();
+			if (null == broker)
+				return;
+
+			if (broker.getStrategiesRunning() < 1) {
+				_log.warn("No strategy started for back test Symbol: "
+						+ tradestrategy.getContract().getSymbol());
+				closeStream(broker);
+			} else if (broker.open()) {
+				this.streams.add(broker);
+			} else {
+				closeStream(broker);
+			}
+		} catch (Exception ex) {
+			_log.error("Error starting BackTestEngine Symbol: "
+					+ tradestrategy.getContract().getSymbol() + " Msg: "
+					+ ex.getMessage(), ex);
+			if (null != broker)
+				closeStream(broker);
+		}
+	}
+
+	/**
+	 * Method closeStream.
+	 * 
+	 * @param broker
+	 *            EventBroker
+	 */
+	private void closeStream(EventBroker broker) {
+		broker.close();
+		this.scheduler.runPending();
+		if (null != broker.getTradestrategy())
+			_log.debug("BackTestEngine stream complete Symbol: "
+					+ broker.getTradestrategy().getContract().getSymbol()
+					+ " streams: " + this.streams.size() + " candles: "
+					+ this.candleCount);
+	}
+
+	/**
+	 * Orders the streams by the start of their next candle, streams with a
+	 * candle at the same time are ordered by tradestrategy.
+	 */
+	private static class NextCandleComparator implements
+			Comparator<EventBroker> {
+
+		public int compare(EventBroker o1, EventBroker o2) {
+			int returnVal = o1.getNextStartPeriod().compareTo(
+					o2.getNextStartPeriod());
+			if (returnVal == 0) {
+				returnVal = o1.getTradestrategy().getIdTradeStrategy()
+						.compareTo(o2.getTradestrategy().getIdTradeStrategy());
+			}
+			return returnVal;
+		}
+	}
+}
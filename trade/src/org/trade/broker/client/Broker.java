@@ -1,6 +1,8 @@
 package org.trade.broker.client;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.swing.SwingWorker;
 
@@ -13,7 +15,9 @@ public abstract class Broker extends SwingWorker<Void, Void> implements
 
 	protected AtomicInteger ruleComplete = new AtomicInteger(0);
 	protected AtomicInteger strategiesRunning = new AtomicInteger(0);
-	protected final Object lockBackTestWorker = new Object();
+	protected final ReentrantLock lockBackTestWorker = new ReentrantLock();
+	protected final Condition backTestChanged = lockBackTestWorker
+			.newCondition();
 
 	public Broker() {
 
@@ -28,11 +32,14 @@ public abstract class Broker extends SwingWorker<Void, Void> implements
 	 *            Tradestrategy
 	 * @see org.trade.strategy.StrategyChangeListener#strategyComplete(Tradestrategy)
 	 */
-	public synchronized void strategyComplete(String strategyClassName,
+	public void strategyComplete(String strategyClassName,
 			Tradestrategy tradestrategy) {
-		synchronized (lockBackTestWorker) {
+		lockBackTestWorker.lock();
+		try {
 			strategiesRunning.getAndDecrement();
-			lockBackTestWorker.notifyAll();
+			backTestChanged.signalAll();
+		} finally {
+			lockBackTestWorker.unlock();
 		}
 	}
 
@@ -45,11 +52,14 @@ public abstract class Broker extends SwingWorker<Void, Void> implements
 	 *            Tradestrategy
 	 * @see org.trade.strategy.StrategyChangeListener#strategyStarted(Tradestrategy)
 	 */
-	public synchronized void strategyStarted(String strategyClassName,
+	public void strategyStarted(String strategyClassName,
 			Tradestrategy tradestrategy) {
-		synchronized (lockBackTestWorker) {
+		lockBackTestWorker.lock();
+		try {
 			strategiesRunning.getAndIncrement();
-			lockBackTestWorker.notifyAll();
+			backTestChanged.signalAll();
+		} finally {
+			lockBackTestWorker.unlock();
 		}
 	}
 
@@ -60,10 +70,13 @@ public abstract class Broker extends SwingWorker<Void, Void> implements
 	 *            Tradestrategy
 	 * @see org.trade.strategy.StrategyChangeListener#ruleComplete(Tradestrategy)
 	 */
-	public synchronized void ruleComplete(Tradestrategy tradestrategy) {
-		synchronized (lockBackTestWorker) {
+	public void ruleComplete(Tradestrategy tradestrategy) {
+		lockBackTestWorker.lock();
+		try {
 			ruleComplete.getAndIncrement();
-			lockBackTestWorker.notifyAll();
+			backTestChanged.signalAll();
+		} finally {
+			lockBackTestWorker.unlock();
 		}
 	}
 
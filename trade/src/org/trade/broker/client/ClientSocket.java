@@ -122,6 +122,19 @@ public class ClientSocket {
 		}
 	}
 
+	/**
+	 * Method addBackTestBroker. Register a broker that is driven by the caller
+	 * rather than started here.
+	 * 
+	 * @param idTradestrategy
+	 *            Integer
+	 * @param broker
+	 *            Broker
+	 */
+	public void addBackTestBroker(Integer idTradestrategy, Broker broker) {
+		m_backTestBroker.put(idTradestrategy, broker);
+	}
+
 	/**
 	 * Method getBackTestBroker.
 	 * 
@@ -35,12 +35,15 @@
  */
 package org.trade.broker.client;
 
+import org.trade.persistent.PersistentModel;
 import org.trade.persistent.dao.Contract;
 import org.trade.persistent.dao.TradeOrder;
 import org.trade.persistent.dao.TradeOrderfill;
 import org.trade.persistent.dao.Tradestrategy;
 
 public interface ClientWrapper {
+	PersistentModel getBackTestPersistentModel();
+
 	void error(Exception e);
 
 	void error(String str);
@@ -51,6 +51,7 @@ import org.trade.dictionary.valuetype.Action;
 import org.trade.dictionary.valuetype.OrderStatus;
 import org.trade.dictionary.valuetype.OrderType;
 import org.trade.dictionary.valuetype.Side;
+import org.trade.persistent.CandleCache;
 import org.trade.persistent.PersistentModel;
 import org.trade.persistent.PersistentModelException;
 import org.trade.persistent.dao.Candle;
@@ -79,6 +80,10 @@ public class DBBroker extends Broker {
 	private ClientWrapper brokerModel = null;
 	private BigDecimal trailAmount = null;
 	private BigDecimal trailLimitOffsetAmount = null;
+	private final OrderTriggerIndex orderTriggerIndex = new OrderTriggerIndex();
+	private boolean useOrderTriggerIndex = true;
+	private TradestrategyOrders positionOrders = null;
+	private long positionOrdersVersion = -1;
 
 	private long execId = TradingCalendar
 			.geMillisFromZonedDateTime(TradingCalendar
@@ -122,143 +127,51 @@ public class DBBroker extends Broker {
 
 		try {
 
-			this.tradePersistentModel = (PersistentModel) ClassFactory
-					.getServiceForInterface(PersistentModel._persistentModel,
-							this);
-			this.tradestrategy = this.tradePersistentModel
-					.findTradestrategyById(this.idTradestrategy);
-			this.strategyData.clearBaseCandleDataset();
-			this.tradestrategy.setStrategyData(this.strategyData);
-
-			ZonedDateTime endDate = TradingCalendar.getDateAtTime(
-					TradingCalendar.getPrevTradingDay(tradestrategy
-							.getTradingday().getClose()), tradestrategy
-							.getTradingday().getClose());
-			ZonedDateTime startDate = TradingCalendar.addTradingDays(
-					tradestrategy.getTradingday().getClose(),
-					(-1 * (tradestrategy.getChartDays() - 1)));
-			startDate = TradingCalendar.getDateAtTime(startDate, tradestrategy
-					.getTradingday().getOpen());
-			endDate = TradingCalendar.addTradingDays(endDate, -1);
-
-			List<Candle> candles = new ArrayList<>();
-			List<Candle> candlesTradingday = new ArrayList<>();
-			candles = this.getCandles(this.tradestrategy, startDate, endDate,
-					this.tradestrategy.getBarSize());
-
-			if (_backTestBarSize > 0) {
-
-				/*
-				 * Try and find the candles in the database with the matching
-				 * barSize or the next lowest.
-				 */
-				candlesTradingday = this.getCandles(this.tradestrategy,
-						this.tradestrategy.getTradingday().getOpen(),
-						this.tradestrategy.getTradingday().getOpen(),
-						_backTestBarSize);
-
-				if (candlesTradingday.isEmpty()) {
-					_log.warn("No backTestBarSize = " + _backTestBarSize
-							+ " data available for "
-							+ this.tradestrategy.getContract().getSymbol()
-							+ " and Tradingday: "
-							+ this.tradestrategy.getTradingday().getOpen()
-							+ " will use barSize = "
-							+ this.tradestrategy.getBarSize()
-							+ " data if avaialble.");
-					candlesTradingday = this.getCandles(this.tradestrategy,
-							this.tradestrategy.getTradingday().getOpen(),
-							this.tradestrategy.getTradingday().getOpen(),
-							this.tradestrategy.getBarSize());
-				}
-
-			} else {
-				candlesTradingday = this.getCandles(this.tradestrategy,
-						this.tradestrategy.getTradingday().getOpen(),
-						this.tradestrategy.getTradingday().getOpen(),
-						this.tradestrategy.getBarSize());
-			}
+			List<Candle> candles = loadCandles();
+			List<Candle> candlesTradingday = loadTradingdayCandles();
 
 			/*
 			 * Wait for the strategy to start.
 			 */
-			synchronized (lockBackTestWorker) {
+			lockBackTestWorker.lock();
+			try {
 				while (strategiesRunning.get() < 1) {
-					lockBackTestWorker.wait();
+					backTestChanged.await();
 				}
+			} finally {
+				lockBackTestWorker.unlock();
 			}
-			if (candlesTradingday.isEmpty()) {
-				_log.warn("No data available to run a backtest for Symbol: "
-						+ this.tradestrategy.getContract().getSymbol()
-						+ " and Tradingday: "
-						+ this.tradestrategy.getTradingday().getOpen());
-				/*
-				 * Poke the strategy this will kill it as there is no data.
-				 */
-				this.tradestrategy.getStrategyData().getBaseCandleSeries()
-						.fireSeriesChanged();
-			} else {
-				for (Candle candle : candlesTradingday) {
-					candles.add(candle);
-				}
-				candlesTradingday.clear();
-				/*
-				 * Populate any child datasets.
-				 */
-				populateIndicatorCandleSeries(tradestrategy, this.tradestrategy
-						.getTradingday().getOpen(), this.tradestrategy
-						.getTradingday().getOpen());
-
-			}
+			addTradingdayCandles(candles, candlesTradingday);
 
 			TradestrategyOrders positionOrders = null;
 
 			for (Candle candle : candles) {
-				/*
-				 * We use the direct add to BaseCandle data-set rather than
-				 * going via the BrokerModel because the BrokerModel is in
-				 * another thread and so this thread tends to be blocked by
-				 * other activities.
-				 */
 
 				ruleComplete.set(0);
 
-				this.tradestrategy.getStrategyData().getBaseCandleSeries()
-						.getContract().setLastAskPrice(candle.getClose());
-				this.tradestrategy.getStrategyData().getBaseCandleSeries()
-						.getContract().setLastBidPrice(candle.getClose());
-				this.tradestrategy.getStrategyData().getBaseCandleSeries()
-						.getContract().setLastPrice(candle.getClose());
-
-				this.tradestrategy.getStrategyData().buildCandle(
-						candle.getStartPeriod(),
-						candle.getOpen().doubleValue(),
-						candle.getHigh().doubleValue(),
-						candle.getLow().doubleValue(),
-						candle.getClose().doubleValue(), candle.getVolume(),
-						candle.getVwap().doubleValue(), candle.getTradeCount(),
-						this.tradestrategy.getBarSize() / candle.getBarSize(),
-						candle.getLastUpdateDate());
+				publishCandle(candle);
 
 				/*
 				 * Wait for the candle to be processed by the strategy.
 				 */
-				synchronized (lockBackTestWorker) {
+				lockBackTestWorker.lock();
+				try {
 					/*
 					 * Wait for the rule to be completed by the strategy. note
 					 * this worker is listening to the strategy worker.
 					 */
 					while ((strategiesRunning.get() > 0)
 							&& (ruleComplete.get() < 1)) {
-						lockBackTestWorker.wait();
+						backTestChanged.await();
 					}
+				} finally {
+					lockBackTestWorker.unlock();
 				}
 				if (candle.getStartPeriod().isBefore(
 						this.tradestrategy.getTradingday().getOpen()))
 					continue;
 
-				positionOrders = this.tradePersistentModel
-						.findPositionOrdersByTradestrategyId(this.idTradestrategy);
+				positionOrders = getPositionOrders();
 
 				/*
 				 * The new candle may create an order so this call fills it and
@@ -286,15 +199,17 @@ public class DBBroker extends Broker {
 					 * the trade that we weren't stopped out on the entry
 					 * candle.
 					 */
-					positionOrders = this.tradePersistentModel
-							.findPositionOrdersByTradestrategyId(this.idTradestrategy);
+					positionOrders = getPositionOrders();
 
 					if (this.tradestrategy.getStrategy().hasStrategyManager()) {
-						synchronized (lockBackTestWorker) {
+						lockBackTestWorker.lock();
+						try {
 							while (strategiesRunning.get() < 1
 									&& positionOrders.hasOpenTradePosition()) {
-								lockBackTestWorker.wait();
+								backTestChanged.await();
 							}
+						} finally {
+							lockBackTestWorker.unlock();
 						}
 					}
 					if (positionOrders.hasOpenTradePosition()) {
@@ -314,8 +229,7 @@ public class DBBroker extends Broker {
 								 * Refresh the orders as the other thread may
 								 * have added orders that need to be filled.
 								 */
-								positionOrders = this.tradePersistentModel
-										.findPositionOrdersByTradestrategyId(this.idTradestrategy);
+								positionOrders = getPositionOrders();
 								filledOrders(this.tradestrategy.getContract(),
 										positionOrders, candle);
 							}
@@ -326,10 +240,13 @@ public class DBBroker extends Broker {
 					 * We now have an open position so we wait for the strategy
 					 * that got us into this position to close.
 					 */
-					synchronized (lockBackTestWorker) {
+					lockBackTestWorker.lock();
+					try {
 						while (strategiesRunning.get() > 1) {
-							lockBackTestWorker.wait();
+							backTestChanged.await();
 						}
+					} finally {
+						lockBackTestWorker.unlock();
 					}
 				}
 				if (strategiesRunning.get() == 0
@@ -359,6 +276,263 @@ public class DBBroker extends Broker {
 				+ this.tradestrategy.getIdTradeStrategy());
 	}
 
+	/**
+	 * Method loadCandles. Load the tradestrategy and the candles for the chart
+	 * days before the trading day.
+	 * 
+	 * @return List<Candle>
+	 * @throws Exception
+	 */
+	protected List<Candle> loadCandles() throws Exception {
+
+		this.tradePersistentModel = this.brokerModel
+				.getBackTestPersistentModel();
+		if (null == this.tradePersistentModel)
+			this.tradePersistentModel = (PersistentModel) ClassFactory
+					.getServiceForInterface(PersistentModel._persistentModel,
+							this);
+		this.tradestrategy = this.tradePersistentModel
+				.findTradestrategyById(this.idTradestrategy);
+		this.strategyData.clearBaseCandleDataset();
+		this.tradestrategy.setStrategyData(this.strategyData);
+
+		ZonedDateTime endDate = TradingCalendar.getDateAtTime(
+				TradingCalendar.getPrevTradingDay(tradestrategy
+						.getTradingday().getClose()), tradestrategy
+						.getTradingday().getClose());
+		ZonedDateTime startDate = TradingCalendar.addTradingDays(
+				tradestrategy.getTradingday().getClose(),
+				(-1 * (tradestrategy.getChartDays() - 1)));
+		startDate = TradingCalendar.getDateAtTime(startDate, tradestrategy
+				.getTradingday().getOpen());
+		endDate = TradingCalendar.addTradingDays(endDate, -1);
+
+		return this.getCandles(this.tradestrategy, startDate, endDate,
+				this.tradestrategy.getBarSize());
+	}
+
+	/**
+	 * Method loadTradingdayCandles. Load the candles for the trading day,
+	 * these are at the trade.backtest.barSize if available.
+	 * 
+	 * @return List<Candle>
+	 * @throws PersistentModelException
+	 */
+	protected List<Candle> loadTradingdayCandles()
+			throws PersistentModelException {
+
+		List<Candle> candlesTradingday = new ArrayList<>();
+		if (_backTestBarSize > 0) {
+
+			/*
+			 * Try and find the candles in the database with the matching
+			 * barSize or the next lowest.
+			 */
+			candlesTradingday = this.getCandles(this.tradestrategy,
+					this.tradestrategy.getTradingday().getOpen(),
+					this.tradestrategy.getTradingday().getOpen(),
+					_backTestBarSize);
+
+			if (candlesTradingday.isEmpty()) {
+				_log.warn("No backTestBarSize = " + _backTestBarSize
+						+ " data available for "
+						+ this.tradestrategy.getContract().getSymbol()
+						+ " and Tradingday: "
+						+ this.tradestrategy.getTradingday().getOpen()
+						+ " will use barSize = "
+						+ this.tradestrategy.getBarSize()
+						+ " data if avaialble.");
+				candlesTradingday = this.getCandles(this.tradestrategy,
+						this.tradestrategy.getTradingday().getOpen(),
+						this.tradestrategy.getTradingday().getOpen(),
+						this.tradestrategy.getBarSize());
+			}
+
+		} else {
+			candlesTradingday = this.getCandles(this.tradestrategy,
+					this.tradestrategy.getTradingday().getOpen(),
+					this.tradestrategy.getTradingday().getOpen(),
+					this.tradestrategy.getBarSize());
+		}
+		return candlesTradingday;
+	}
+
+	/**
+	 * Method addTradingdayCandles. Add the trading day candles to the chart
+	 * day candles and populate any child datasets. If there are no candles
+	 * for the trading day the strategy is poked so it ends. The strategy must
+	 * be running.
+	 * 
+	 * @param candles
+	 *            List<Candle>
+	 * @param candlesTradingday
+	 *            List<Candle>
+	 * @throws PersistentModelException
+	 */
+	protected void addTradingdayCandles(List<Candle> candles,
+			List<Candle> candlesTradingday) throws PersistentModelException {
+		if (candlesTradingday.isEmpty()) {
+			_log.warn("No data available to run a backtest for Symbol: "
+					+ this.tradestrategy.getContract().getSymbol()
+					+ " and Tradingday: "
+					+ this.tradestrategy.getTradingday().getOpen());
+			/*
+			 * Poke the strategy this will kill it as there is no data.
+			 */
+			this.tradestrategy.getStrategyData().getBaseCandleSeries()
+					.fireSeriesChanged();
+		} else {
+			for (Candle candle : candlesTradingday) {
+				candles.add(candle);
+			}
+			candlesTradingday.clear();
+			/*
+			 * Populate any child datasets.
+			 */
+			populateIndicatorCandleSeries(tradestrategy, this.tradestrategy
+					.getTradingday().getOpen(), this.tradestrategy
+					.getTradingday().getOpen());
+
+		}
+	}
+
+	/**
+	 * Method publishCandle. Set the contracts last prices to the candle close
+	 * and add the candle to the base series, this fires the series changed
+	 * to the strategy.
+	 * 
+	 * We use the direct add to BaseCandle data-set rather than going via the
+	 * BrokerModel because the BrokerModel is in another thread and so this
+	 * thread tends to be blocked by other activities.
+	 * 
+	 * @param candle
+	 *            Candle
+	 */
+	protected void publishCandle(Candle candle) {
+		this.tradestrategy.getStrategyData().getBaseCandleSeries()
+				.getContract().setLastAskPrice(candle.getClose());
+		this.tradestrategy.getStrategyData().getBaseCandleSeries()
+				.getContract().setLastBidPrice(candle.getClose());
+		this.tradestrategy.getStrategyData().getBaseCandleSeries()
+				.getContract().setLastPrice(candle.getClose());
+
+		this.tradestrategy.getStrategyData().buildCandle(
+				candle.getStartPeriod(),
+				candle.getOpen().doubleValue(),
+				candle.getHigh().doubleValue(),
+				candle.getLow().doubleValue(),
+				candle.getClose().doubleValue(), candle.getVolume(),
+				candle.getVwap().doubleValue(), candle.getTradeCount(),
+				this.tradestrategy.getBarSize() / candle.getBarSize(),
+				candle.getLastUpdateDate());
+	}
+
+	/**
+	 * Method getTradestrategy.
+	 * 
+	 * @return Tradestrategy
+	 */
+	protected Tradestrategy getTradestrategy() {
+		return this.tradestrategy;
+	}
+
+	/**
+	 * Method getTradePersistentModel.
+	 * 
+	 * @return PersistentModel
+	 */
+	protected PersistentModel getTradePersistentModel() {
+		return this.tradePersistentModel;
+	}
+
+	/**
+	 * Method getPositionOrders. The orders are only read from the database if
+	 * they have been written since the last read. Trail orders have their
+	 * prices moved in memory as they are filled, these prices are carried
+	 * over to the orders that are read as long as the order has not been
+	 * written since.
+	 * 
+	 * @return TradestrategyOrders
+	 * @throws PersistentModelException
+	 */
+	protected TradestrategyOrders getPositionOrders()
+			throws PersistentModelException {
+		long version = getTradePersistentModel().getPositionOrdersVersion()
+				.get(getTradestrategy().getIdTradeStrategy(),
+						getTradestrategy().getContract().getIdContract());
+		if (null == this.positionOrders
+				|| this.positionOrdersVersion != version) {
+			TradestrategyOrders previous = this.positionOrders;
+			this.positionOrdersVersion = version;
+			this.positionOrders = getTradePersistentModel()
+					.findPositionOrdersByTradestrategyId(
+							getTradestrategy().getIdTradeStrategy());
+			if (null != previous)
+				moveTrailPrices(previous, this.positionOrders);
+		}
+		return this.positionOrders;
+	}
+
+	/**
+	 * Method clearPositionOrders. Drop the orders that have been read, the
+	 * next call to getPositionOrders reads them again.
+	 */
+	protected void clearPositionOrders() {
+		this.positionOrders = null;
+		this.positionOrdersVersion = -1;
+	}
+
+	/**
+	 * Method moveTrailPrices. Set the stop and limit prices of the active
+	 * trail orders that have been read to those moved in memory on the
+	 * previous orders.
+	 * 
+	 * @param previous
+	 *            TradestrategyOrders
+	 * @param positionOrders
+	 *            TradestrategyOrders
+	 */
+	private void moveTrailPrices(TradestrategyOrders previous,
+			TradestrategyOrders positionOrders) {
+		for (TradeOrder order : positionOrders.getTradeOrders()) {
+			if (!order.isActive()
+					|| !(OrderType.TRAIL.equals(order.getOrderType()) || OrderType.TRAILLIMIT
+							.equals(order.getOrderType())))
+				continue;
+			for (TradeOrder previousOrder : previous.getTradeOrders()) {
+				if (order.getOrderKey().equals(previousOrder.getOrderKey())) {
+					if (null != order.getVersion()
+							&& order.getVersion().equals(
+									previousOrder.getVersion())) {
+						order.setAuxPrice(previousOrder.getAuxPrice());
+						order.setLimitPrice(previousOrder.getLimitPrice());
+					}
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method setUseOrderTriggerIndex. When false every order is scanned for
+	 * each candle, this is used to check the index fills the same orders.
+	 * 
+	 * @param useOrderTriggerIndex
+	 *            boolean
+	 */
+	void setUseOrderTriggerIndex(boolean useOrderTriggerIndex) {
+		this.useOrderTriggerIndex = useOrderTriggerIndex;
+	}
+
+	/**
+	 * Method getOrderTriggerIndex.
+	 * 
+	 * @return OrderTriggerIndex
+	 */
+	OrderTriggerIndex getOrderTriggerIndex() {
+		return this.orderTriggerIndex;
+	}
+
 	/**
 	 * Method filledOrders.
 	 * 
@@ -371,28 +545,54 @@ public class DBBroker extends Broker {
 	 * @return boolean
 	 * @throws Exception
 	 */
-	private boolean filledOrders(Contract contract,
+	protected boolean filledOrders(Contract contract,
 			TradestrategyOrders positionOrders, Candle candle) throws Exception {
 
 		boolean orderfilled = false;
-		for (TradeOrder order : positionOrders.getTradeOrders()) {
-			if (OrderStatus.UNSUBMIT.equals(order.getStatus())) {
-				/*
-				 * Can't use the com.ib.client.OrderState as constructor is no
-				 * visible.
-				 */
-				OrderState orderState = new OrderState();
-				orderState.m_status = OrderStatus.SUBMITTED;
-				this.brokerModel.openOrder(order.getOrderKey(), contract,
-						order, orderState);
-				/*
-				 * TODO we should read the orders back after any call to the
-				 * broker interface.
-				 */
-				order.setStatus(OrderStatus.SUBMITTED);
+
+		/*
+		 * The submit pass and the index are only needed when the orders have
+		 * changed, the orders are submitted in memory so an index that is
+		 * current has no unsubmitted orders.
+		 */
+		long version = getTradePersistentModel().getPositionOrdersVersion()
+				.get(positionOrders.getIdTradeStrategy(),
+						contract.getIdContract());
+		boolean changed = !this.useOrderTriggerIndex
+				|| !this.orderTriggerIndex.isCurrent(
+						positionOrders.getTradeOrders(), version);
+		if (changed) {
+			for (TradeOrder order : positionOrders.getTradeOrders()) {
+				if (OrderStatus.UNSUBMIT.equals(order.getStatus())) {
+					/*
+					 * Can't use the com.ib.client.OrderState as constructor
+					 * is no visible.
+					 */
+					OrderState orderState = new OrderState();
+					orderState.m_status = OrderStatus.SUBMITTED;
+					this.brokerModel.openOrder(order.getOrderKey(), contract,
+							order, orderState);
+					/*
+					 * TODO we should read the orders back after any call to
+					 * the broker interface.
+					 */
+					order.setStatus(OrderStatus.SUBMITTED);
+				}
 			}
 		}
-		for (TradeOrder order : positionOrders.getTradeOrders()) {
+		/*
+		 * Only the orders whose trigger price is inside the candle range can
+		 * be filled. The index is rebuilt when the orders change.
+		 */
+		List<TradeOrder> triggered = positionOrders.getTradeOrders();
+		if (this.useOrderTriggerIndex) {
+			if (changed) {
+				this.orderTriggerIndex.build(positionOrders.getTradeOrders(),
+						version);
+			}
+			triggered = this.orderTriggerIndex.getTriggered(candle);
+		}
+		for (TradeOrder order : triggered) {
 			if (OrderStatus.SUBMITTED.equals(order.getStatus())
 					&& order.getTransmit()) {
 
@@ -406,8 +606,9 @@ public class DBBroker extends Broker {
 								candle.getStartPeriod());
 					} else {
 						// If OCA cancel other side
-						for (TradeOrder orderOCA : positionOrders
-								.getTradeOrders()) {
+						for (TradeOrder orderOCA : (this.useOrderTriggerIndex ? this.orderTriggerIndex
+								.getOCAGroup(order.getOcaGroupName())
+								: positionOrders.getTradeOrders())) {
 							if (orderOCA.isDirty())
 								continue;
 
@@ -788,11 +989,11 @@ public class DBBroker extends Broker {
 						tradestrategy.getBarSize());
 				childTradestrategy.setDirty(false);
 
-				List<Candle> indicatorCandles = this.tradePersistentModel
+				List<Candle> indicatorCandles = CandleCache
 						.findCandlesByContractDateRangeBarSize(
-								childTradestrategy.getContract()
-										.getIdContract(), startDate, endDate,
-								childTradestrategy.getBarSize());
+								this.tradePersistentModel,
+								childTradestrategy.getContract(), startDate,
+								endDate, childTradestrategy.getBarSize());
 				if (indicatorCandles.isEmpty()) {
 					_log.warn("No data available for "
 							+ childTradestrategy.getContract().getSymbol()
@@ -850,10 +1051,11 @@ public class DBBroker extends Broker {
 				 */
 				if ((Math.floor(tradestrategy.getBarSize() / (double) size) == (tradestrategy
 						.getBarSize() / (double) size))) {
-					candles = tradePersistentModel
+					candles = CandleCache
 							.findCandlesByContractDateRangeBarSize(
-									tradestrategy.getContract().getIdContract(),
-									startDate, endDate, size);
+									tradePersistentModel,
+									tradestrategy.getContract(), startDate,
+									endDate, size);
 					if (!candles.isEmpty()) {
 						break;
 					}
@@ -0,0 +1,215 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker.client;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import org.trade.core.util.WorkerScheduler;
+import org.trade.persistent.dao.Candle;
+import org.trade.persistent.dao.TradestrategyOrders;
+import org.trade.strategy.data.StrategyData;
+import org.trade.strategy.data.candle.CandleItem;
+
+/**
+ * The candle stream for one tradestrategy in an event driven back test. It
+ * has no thread of its own, the BackTestEngine moves it on one candle at a
+ * time with nextCandle(). The strategies for the tradestrategy are scheduled
+ * on the engines inline WorkerScheduler so after each candle is published
+ * they are run to completion on the engine thread before the orders are
+ * filled, there is no waiting on the strategy threads as in the DBBroker.
+ * 
+ * The stream completes by running the SwingWorker so isDone() is true and
+ * done() releases the tradestrategy in the same way as the DBBroker.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class EventBroker extends DBBroker {
+
+	private final WorkerScheduler scheduler;
+	private List<Candle> candles = null;
+	private List<Candle> candlesTradingday = null;
+	private int index = 0;
+
+	/**
+	 * Constructor for EventBroker.
+	 * 
+	 * @param strategyData
+	 *            StrategyData
+	 * @param idTradestrategy
+	 *            Integer
+	 * @param brokerModel
+	 *            ClientWrapper
+	 * @param scheduler
+	 *            WorkerScheduler the inline scheduler the strategies run on.
+	 */
+	public EventBroker(StrategyData strategyData, Integer idTradestrategy,
+			ClientWrapper brokerModel, WorkerScheduler scheduler) {
+		super(strategyData, idTradestrategy, brokerModel);
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Method doInBackground. The stream is driven by the BackTestEngine so
+	 * there is nothing to do here, this runs when the stream is closed.
+	 * 
+	 * @return Void
+	 */
+	public Void doInBackground() {
+		return null;
+	}
+
+	/**
+	 * Method load. Load the candles for the stream, this is done before the
+	 * strategy is created.
+	 * 
+	 * @throws Exception
+	 */
+	public void load() throws Exception {
+		this.candles = loadCandles();
+		this.candlesTradingday = loadTradingdayCandles();
+	}
+
+	/**
+	 * Method open. Add the trading day candles to the stream, the strategy
+	 * must have been started.
+	 * 
+	 * @return boolean true if there are candles to process.
+	 * @throws Exception
+	 */
+	public boolean open() throws Exception {
+		addTradingdayCandles(this.candles, this.candlesTradingday);
+		this.candlesTradingday = null;
+		this.scheduler.runPending();
+		return hasNextCandle();
+	}
+
+	/**
+	 * Method close. Complete the stream, done() is called on the event
+	 * dispatching thread.
+	 */
+	public void close() {
+		if (null != this.candles)
+			this.candles.clear();
+		clearPositionOrders();
+		this.run();
+	}
+
+	/**
+	 * Method hasNextCandle.
+	 * 
+	 * @return boolean
+	 */
+	public boolean hasNextCandle() {
+		return !isCancelled() && null != this.candles
+				&& this.index < this.candles.size();
+	}
+
+	/**
+	 * Method getNextStartPeriod.
+	 * 
+	 * @return ZonedDateTime the start of the next candle.
+	 */
+	public ZonedDateTime getNextStartPeriod() {
+		return this.candles.get(this.index).getStartPeriod();
+	}
+
+	/**
+	 * Method getStrategiesRunning.
+	 * 
+	 * @return int the number of strategies listening to this stream.
+	 */
+	public int getStrategiesRunning() {
+		return strategiesRunning.get();
+	}
+
+	/**
+	 * Method nextCandle. Publish the next candle, run the strategies and fill
+	 * any orders.
+	 * 
+	 * @return boolean true if the stream has more to do.
+	 * @throws Exception
+	 */
+	public boolean nextCandle() throws Exception {
+
+		Candle candle = this.candles.get(this.index++);
+		publishCandle(candle);
+		this.scheduler.runPending();
+
+		if (candle.getStartPeriod().isBefore(
+				getTradestrategy().getTradingday().getOpen()))
+			return hasNextCandle();
+
+		/*
+		 * The new candle may create an order so this call fills it and return
+		 * whether this is opening a position.
+		 */
+		if (filledOrders(getTradestrategy().getContract(),
+				getPositionOrders(), candle)) {
+
+			/*
+			 * Let the strategies react to the fill, this ends the entry
+			 * strategy and starts the PositionManagerStrategy which creates
+			 * the OCA orders. As in the DBBroker these orders are only filled
+			 * on the entry candle if the candle is against the trade.
+			 */
+			this.scheduler.runPending();
+			TradestrategyOrders orders = getPositionOrders();
+			if (orders.hasOpenTradePosition()
+					&& !getTradestrategy().getStrategyData()
+							.getBaseCandleSeries().isEmpty()) {
+				CandleItem candleItem = (CandleItem) getTradestrategy()
+						.getStrategyData()
+						.getBaseCandleSeries()
+						.getDataItem(
+								getTradestrategy().getStrategyData()
+										.getBaseCandleSeries().getItemCount() - 1);
+				if (!candleItem.isSide(orders.getOpenTradePosition()
+						.getSide())) {
+					filledOrders(getTradestrategy().getContract(), orders,
+							candle);
+					this.scheduler.runPending();
+				}
+			}
+		}
+		if (strategiesRunning.get() == 0
+				&& !getPositionOrders().hasOpenTradePosition())
+			return false;
+
+		return hasNextCandle();
+	}
+}
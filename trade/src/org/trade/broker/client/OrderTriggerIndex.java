@@ -0,0 +1,246 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker.client;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.trade.dictionary.valuetype.Action;
+import org.trade.dictionary.valuetype.OrderType;
+import org.trade.persistent.dao.Candle;
+import org.trade.persistent.dao.TradeOrder;
+
+/**
+ * The working orders of a tradestrategy held in price order so a candle only
+ * visits the orders whose trigger price falls inside its low/high range.
+ * 
+ * Stop and limit orders are held in a TreeMap per side and type keyed by the
+ * trigger price i.e. the aux price for stops and the limit price for limits.
+ * Market and trailing orders are always returned as their fill price depends
+ * on the candle. OCA groups are linked by the OCA group name.
+ * 
+ * The orders are returned in the order they were in when indexed so fills
+ * happen in the same sequence as a scan of the orders.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class OrderTriggerIndex {
+
+	private final TreeMap<BigDecimal, List<TradeOrder>> stopSells = new TreeMap<BigDecimal, List<TradeOrder>>();
+	private final TreeMap<BigDecimal, List<TradeOrder>> stopBuys = new TreeMap<BigDecimal, List<TradeOrder>>();
+	private final TreeMap<BigDecimal, List<TradeOrder>> limitSells = new TreeMap<BigDecimal, List<TradeOrder>>();
+	private final TreeMap<BigDecimal, List<TradeOrder>> limitBuys = new TreeMap<BigDecimal, List<TradeOrder>>();
+	private final List<TradeOrder> always = new ArrayList<TradeOrder>();
+	private final HashMap<String, List<TradeOrder>> ocaGroups = new HashMap<String, List<TradeOrder>>();
+	private final IdentityHashMap<TradeOrder, Integer> sequence = new IdentityHashMap<TradeOrder, Integer>();
+
+	private final Comparator<TradeOrder> SEQUENCE_ORDER = new Comparator<TradeOrder>() {
+		public int compare(TradeOrder o1, TradeOrder o2) {
+			return sequence.get(o1).compareTo(sequence.get(o2));
+		}
+	};
+
+	private Object source = null;
+	private long version = -1;
+	private int buildCount = 0;
+
+	public OrderTriggerIndex() {
+	}
+
+	/**
+	 * Method isCurrent.
+	 * 
+	 * @param tradeOrders
+	 *            List<TradeOrder>
+	 * @param version
+	 *            long the PositionOrdersVersion of the orders.
+	 * @return boolean true if the index was built from these orders at this
+	 *         version.
+	 */
+	public boolean isCurrent(List<TradeOrder> tradeOrders, long version) {
+		return this.source == tradeOrders && this.version == version
+				&& this.sequence.size() == tradeOrders.size();
+	}
+
+	/**
+	 * Method build. Index the orders, any previous orders are removed.
+	 * 
+	 * @param tradeOrders
+	 *            List<TradeOrder>
+	 * @param version
+	 *            long the PositionOrdersVersion of the orders.
+	 */
+	public void build(List<TradeOrder> tradeOrders, long version) {
+		clear();
+		this.source = tradeOrders;
+		this.version = version;
+		this.buildCount++;
+		for (TradeOrder order : tradeOrders) {
+			this.sequence.put(order, this.sequence.size());
+
+			if (null != order.getOcaGroupName()) {
+				List<TradeOrder> ocaGroup = this.ocaGroups.get(order
+						.getOcaGroupName());
+				if (null == ocaGroup) {
+					ocaGroup = new ArrayList<TradeOrder>(2);
+					this.ocaGroups.put(order.getOcaGroupName(), ocaGroup);
+				}
+				ocaGroup.add(order);
+			}
+
+			boolean sell = Action.SELL.equals(order.getAction());
+			if ((OrderType.STP.equals(order.getOrderType()) || OrderType.STPLMT
+					.equals(order.getOrderType()))
+					&& null != order.getAuxPrice()) {
+				add(sell ? this.stopSells : this.stopBuys, order.getAuxPrice(),
+						order);
+			} else if (OrderType.LMT.equals(order.getOrderType())
+					&& null != order.getLimitPrice()) {
+				add(sell ? this.limitSells : this.limitBuys,
+						order.getLimitPrice(), order);
+			} else {
+				this.always.add(order);
+			}
+		}
+	}
+
+	/**
+	 * Method getBuildCount.
+	 * 
+	 * @return int the number of times the index has been built.
+	 */
+	public int getBuildCount() {
+		return this.buildCount;
+	}
+
+	/**
+	 * Method getTriggered.
+	 * 
+	 * @param candle
+	 *            Candle
+	 * @return List<TradeOrder> the orders that may be filled by this candle in
+	 *         the order they were indexed. Sell stops at or above the low,
+	 *         buy stops at or below the high, sell limits at or below the high
+	 *         and buy limits at or above the low.
+	 */
+	public List<TradeOrder> getTriggered(Candle candle) {
+		List<TradeOrder> triggered = new ArrayList<TradeOrder>(this.always);
+		addAll(triggered, this.stopSells.tailMap(candle.getLow(), true)
+				.values());
+		addAll(triggered, this.stopBuys.headMap(candle.getHigh(), true)
+				.values());
+		addAll(triggered, this.limitSells.headMap(candle.getHigh(), true)
+				.values());
+		addAll(triggered, this.limitBuys.tailMap(candle.getLow(), true)
+				.values());
+		if (triggered.size() > 1)
+			Collections.sort(triggered, SEQUENCE_ORDER);
+		return triggered;
+	}
+
+	/**
+	 * Method getOCAGroup.
+	 * 
+	 * @param ocaGroupName
+	 *            String
+	 * @return List<TradeOrder> the orders in the OCA group in the order they
+	 *         were indexed.
+	 */
+	public List<TradeOrder> getOCAGroup(String ocaGroupName) {
+		List<TradeOrder> ocaGroup = this.ocaGroups.get(ocaGroupName);
+		if (null == ocaGroup)
+			return Collections.emptyList();
+		return ocaGroup;
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public void clear() {
+		this.stopSells.clear();
+		this.stopBuys.clear();
+		this.limitSells.clear();
+		this.limitBuys.clear();
+		this.always.clear();
+		this.ocaGroups.clear();
+		this.sequence.clear();
+		this.source = null;
+		this.version = -1;
+	}
+
+	/**
+	 * Method add.
+	 * 
+	 * @param triggers
+	 *            TreeMap<BigDecimal, List<TradeOrder>>
+	 * @param price
+	 *            BigDecimal
+	 * @param order
+	 *            TradeOrder
+	 */
+	private static void add(TreeMap<BigDecimal, List<TradeOrder>> triggers,
+			BigDecimal price, TradeOrder order) {
+		List<TradeOrder> orders = triggers.get(price);
+		if (null == orders) {
+			orders = new ArrayList<TradeOrder>(1);
+			triggers.put(price, orders);
+		}
+		orders.add(order);
+	}
+
+	/**
+	 * Method addAll.
+	 * 
+	 * @param triggered
+	 *            List<TradeOrder>
+	 * @param orders
+	 *            Collection<List<TradeOrder>>
+	 */
+	private static void addAll(List<TradeOrder> triggered,
+			Collection<List<TradeOrder>> orders) {
+		for (List<TradeOrder> atPrice : orders) {
+			triggered.addAll(atPrice);
+		}
+	}
+}
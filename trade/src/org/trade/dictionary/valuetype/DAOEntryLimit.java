@@ -35,8 +35,11 @@
  */
 package org.trade.dictionary.valuetype;
 
-import java.util.Enumeration;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 import org.trade.core.valuetype.DAODecode;
 import org.trade.core.valuetype.Decode;
@@ -54,6 +57,8 @@ public class DAOEntryLimit extends DAODecode {
 	public static final String _TABLE_ID = "_TABLE_ID";
 	public static final String _COLUMN = "_COLUMN";
 
+	private static volatile PriceBands m_priceBands = null;
+
 	public DAOEntryLimit() {
 		super(DECODE);
 	}
@@ -77,28 +82,123 @@ public class DAOEntryLimit extends DAODecode {
 	 * @return Entrylimit
 	 */
 	public Entrylimit getValue(Money price) {
+		return findValue(price);
+	}
+
+	/**
+	 * Method findValue. Find the entry limit whose price band contains the
+	 * price.
+	 * 
+	 * @param price
+	 *            Money
+	 * @return Entrylimit null if no band contains the price.
+	 */
+	public static Entrylimit findValue(Money price) {
+		return getPriceBands().find(price.doubleValue());
+	}
+
+	/**
+	 * Method refresh. Rebuild the price band index from the Entrylimit table,
+	 * this should be called when the entry limits are saved. Lookups see
+	 * either the old or the new index never a mix.
+	 */
+	public static void refresh() {
+		m_priceBands = new PriceBands(new DAOEntryLimit());
+	}
+
+	/**
+	 * Method getPriceBands.
+	 * 
+	 * @return PriceBands
+	 */
+	private static PriceBands getPriceBands() {
+		PriceBands priceBands = m_priceBands;
+		if (null == priceBands) {
+			priceBands = new PriceBands(new DAOEntryLimit());
+			m_priceBands = priceBands;
+		}
+		return priceBands;
+	}
+
+	/**
+	 * The entry limits sorted by start price with the highest end price of
+	 * each band and the bands before it. Once built this is never changed so
+	 * it can be read by any thread without locking.
+	 */
+	private static class PriceBands {
+
+		private final double[] startPrices;
+		private final double[] endPrices;
+		private final double[] maxEndPrices;
+		private final Entrylimit[] entryLimits;
+
+		/**
+		 * Constructor for PriceBands.
+		 * 
+		 * @param decode
+		 *            DAOEntryLimit
+		 */
+		PriceBands(DAOEntryLimit decode) {
 
-		Vector<Decode> decodes;
-		try {
-			decodes = this.getCodesDecodes();
-			final Enumeration<Decode> enumDAODecode = decodes.elements();
-			while (enumDAODecode.hasMoreElements()) {
-				final Decode decode = enumDAODecode.nextElement();
-				final Entrylimit entryLimit = (Entrylimit) decode.getObject();
-				if ((entryLimit.getStartPrice()
-						.subtract(price.getBigDecimalValue()).doubleValue() <= 0)
-						&& (entryLimit.getEndPrice()
-								.subtract(price.getBigDecimalValue())
-								.doubleValue() >= 0)) {
-					return entryLimit;
+			List<Entrylimit> values = new ArrayList<Entrylimit>();
+			try {
+				for (Decode item : decode.getCodesDecodes()) {
+					Entrylimit entryLimit = (Entrylimit) item.getObject();
+					if (null != entryLimit.getStartPrice()
+							&& null != entryLimit.getEndPrice())
+						values.add(entryLimit);
 				}
+			} catch (final ValueTypeException e) {
+				/*
+				 * Do nothing is no code just report to log.
+				 */
 			}
-		} catch (final ValueTypeException e) {
+			Collections.sort(values, new Comparator<Entrylimit>() {
+				public int compare(Entrylimit o1, Entrylimit o2) {
+					return o1.getStartPrice().compareTo(o2.getStartPrice());
+				}
+			});
+			this.startPrices = new double[values.size()];
+			this.endPrices = new double[values.size()];
+			this.maxEndPrices = new double[values.size()];
+			this.entryLimits = values.toArray(new Entrylimit[values.size()]);
+			for (int i = 0; i < this.entryLimits.length; i++) {
+				this.startPrices[i] = this.entryLimits[i].getStartPrice()
+						.doubleValue();
+				this.endPrices[i] = this.entryLimits[i].getEndPrice()
+						.doubleValue();
+				this.maxEndPrices[i] = (i == 0 ? this.endPrices[i] : Math.max(
+						this.maxEndPrices[i - 1], this.endPrices[i]));
+			}
+		}
+
+		/**
+		 * Method find.
+		 * 
+		 * @param price
+		 *            double
+		 * @return Entrylimit
+		 */
+		Entrylimit find(double price) {
 			/*
-			 * Do nothing is no code just report to log.
+			 * Find the last band that starts at or before the price then work
+			 * back in case the bands overlap, stopping when no earlier band
+			 * ends at or after the price.
 			 */
-
+			int index = Arrays.binarySearch(this.startPrices, price);
+			if (index < 0) {
+				index = -index - 2;
+			} else {
+				while (index + 1 < this.startPrices.length
+						&& this.startPrices[index + 1] == price) {
+					index++;
+				}
+			}
+			for (int i = index; i > -1 && this.maxEndPrices[i] >= price; i--) {
+				if (this.endPrices[i] >= price)
+					return this.entryLimits[i];
+			}
+			return null;
 		}
-		return null;
 	}
-}
\ No newline at end of file
+}
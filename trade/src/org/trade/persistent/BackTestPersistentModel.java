@@ -0,0 +1,923 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.dao.Aspect;
+import org.trade.core.properties.ConfigProperties;
+import org.trade.persistent.dao.ContractLite;
+import org.trade.persistent.dao.Portfolio;
+import org.trade.persistent.dao.TradeOrder;
+import org.trade.persistent.dao.TradeOrderfill;
+import org.trade.persistent.dao.TradePosition;
+import org.trade.persistent.dao.TradelogReport;
+import org.trade.persistent.dao.Tradestrategy;
+import org.trade.persistent.dao.TradestrategyLite;
+import org.trade.persistent.dao.TradestrategyOrders;
+
+/**
+ * A PersistentModel for back testing that holds the trade orders, fills,
+ * positions, the open position on each contract, the tradestrategy status and
+ * the order keys in memory. The order and position rules are those of the
+ * TradePersistentModel, only the reads and writes of these aspects are
+ * replaced. Everything else i.e. contracts, strategies, tradingdays and
+ * candles is read from and written to the database model.
+ * 
+ * The memory belongs to the instance. The back test broker model creates one
+ * and shares it with its brokers and strategies so all the components of a
+ * back test see the same orders, nothing else uses it. An order, position or
+ * status read from memory is the instance that was written, not a copy.
+ * The writes move this instance's PositionOrdersVersion on, so they only make
+ * the components of this back test reload their orders.
+ * 
+ * When the back test completes flush() is called, if the config.properties
+ * trade.backtest.flush is true the results are written to the database in
+ * one pass. Either way the memory is then cleared for the next run.
+ * 
+ * Select this model for back testing by setting
+ * BackTestPersistentModel=org.trade.persistent.BackTestPersistentModel.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class BackTestPersistentModel extends TradePersistentModel {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(BackTestPersistentModel.class);
+
+	/*
+	 * The memory of this instance, guarded by m_lock. Aspects created in
+	 * memory get a negative id until they are flushed.
+	 */
+	private final Object m_lock = new Object();
+	private final AtomicInteger m_nextId = new AtomicInteger(0);
+	private final HashMap<Integer, TradestrategyOrders> m_positionOrders = new HashMap<Integer, TradestrategyOrders>();
+	private final HashMap<Integer, TradestrategyLite> m_tradestrategyLites = new HashMap<Integer, TradestrategyLite>();
+	private final HashMap<Integer, TradeOrder> m_tradeOrders = new HashMap<Integer, TradeOrder>();
+	private final HashMap<String, TradeOrderfill> m_tradeOrderfills = new HashMap<String, TradeOrderfill>();
+	private final HashMap<Integer, TradePosition> m_tradePositions = new HashMap<Integer, TradePosition>();
+	private final HashMap<Integer, ContractLite> m_openPositions = new HashMap<Integer, ContractLite>();
+	private final LinkedHashSet<Aspect> m_unflushed = new LinkedHashSet<Aspect>();
+	private final LinkedHashSet<Integer> m_unflushedStatus = new LinkedHashSet<Integer>();
+	private Integer m_maxOrderKey = null;
+
+	private final PersistentModel m_database;
+	private final PositionOrdersVersion m_version;
+	private final boolean m_flush;
+
+	private static boolean flush = true;
+
+	/*
+	 * Initialize the flush form the properties file. If values are not found
+	 * defaults will be used.
+	 */
+	static {
+		try {
+			flush = ConfigProperties.getPropAsBoolean("trade.backtest.flush");
+		} catch (Exception ex) {
+			_log.warn("Property trade.backtest.flush not set in config.properties will use default: "
+					+ flush);
+		}
+	}
+
+	/**
+	 * Constructor for BackTestPersistentModel. The aspects not held in memory
+	 * are read from and written to a TradePersistentModel.
+	 */
+	public BackTestPersistentModel() {
+		this(new TradePersistentModel(), flush);
+	}
+
+	/**
+	 * Constructor for BackTestPersistentModel.
+	 * 
+	 * @param database
+	 *            PersistentModel the model the aspects are read from the
+	 *            first time and flushed to.
+	 * @param flush
+	 *            boolean true if flush() writes the results to the database.
+	 */
+	public BackTestPersistentModel(PersistentModel database, boolean flush) {
+		super();
+		this.m_database = database;
+		this.m_version = new PositionOrdersVersion(
+				database.getPositionOrdersVersion());
+		this.m_flush = flush;
+	}
+
+	/**
+	 * Method getPositionOrdersVersion. The versions of the orders held in
+	 * memory, writes to the database model are also seen.
+	 * 
+	 * @return PositionOrdersVersion
+	 * @see org.trade.persistent.PersistentModel#getPositionOrdersVersion()
+	 */
+	public PositionOrdersVersion getPositionOrdersVersion() {
+		return this.m_version;
+	}
+
+	/**
+	 * Method findPositionOrdersByTradestrategyId. The orders are read from the
+	 * database the first time and from memory after that.
+	 * 
+	 * @param idTradestrategy
+	 *            Integer
+	 * @return TradestrategyOrders
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#findPositionOrdersByTradestrategyId(Integer)
+	 */
+	public TradestrategyOrders findPositionOrdersByTradestrategyId(
+			final Integer idTradestrategy) throws PersistentModelException {
+		synchronized (m_lock) {
+			TradestrategyOrders instance = m_positionOrders
+					.get(idTradestrategy);
+			if (null == instance) {
+				instance = this.m_database
+						.findPositionOrdersByTradestrategyId(idTradestrategy);
+				addPositionOrders(instance);
+			}
+			instance.getContract().setTradePosition(
+					getOpenPosition(instance.getContract()));
+			return instance;
+		}
+	}
+
+	/**
+	 * Method refreshPositionOrdersByTradestrategyId. The orders in memory are
+	 * always current.
+	 * 
+	 * @param positionOrders
+	 *            TradestrategyOrders
+	 * @return TradestrategyOrders
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#refreshPositionOrdersByTradestrategyId(TradestrategyOrders)
+	 */
+	public TradestrategyOrders refreshPositionOrdersByTradestrategyId(
+			final TradestrategyOrders positionOrders)
+			throws PersistentModelException {
+		return findPositionOrdersByTradestrategyId(positionOrders
+				.getIdTradeStrategy());
+	}
+
+	/**
+	 * Method findTradestrategyById. The status, orders and open position are
+	 * taken from memory.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @return Tradestrategy
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#findTradestrategyById(Tradestrategy)
+	 */
+	public Tradestrategy findTradestrategyById(final Tradestrategy tradestrategy)
+			throws PersistentModelException {
+		return overlayTradestrategy(this.m_database
+				.findTradestrategyById(tradestrategy));
+	}
+
+	/**
+	 * Method findTradestrategyById. The status, orders and open position are
+	 * taken from memory.
+	 * 
+	 * @param id
+	 *            Integer
+	 * @return Tradestrategy
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#findTradestrategyById(Integer)
+	 */
+	public Tradestrategy findTradestrategyById(final Integer id)
+			throws PersistentModelException {
+		return overlayTradestrategy(this.m_database.findTradestrategyById(id));
+	}
+
+	/**
+	 * Method findTradestrategyLiteById.
+	 * 
+	 * @param id
+	 *            Integer
+	 * @return TradestrategyLite
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#findTradestrategyLiteById(Integer)
+	 */
+	public TradestrategyLite findTradestrategyLiteById(final Integer id)
+			throws PersistentModelException {
+		synchronized (m_lock) {
+			TradestrategyLite instance = m_tradestrategyLites.get(id);
+			if (null == instance) {
+				instance = this.m_database.findTradestrategyLiteById(id);
+				m_tradestrategyLites.put(id, instance);
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * Method findTradePositionById.
+	 * 
+	 * @param id
+	 *            Integer
+	 * @return TradePosition
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#findTradePositionById(Integer)
+	 */
+	public TradePosition findTradePositionById(final Integer id)
+			throws PersistentModelException {
+		synchronized (m_lock) {
+			TradePosition instance = m_tradePositions.get(id);
+			if (null == instance) {
+				instance = this.m_database.findTradePositionById(id);
+				m_tradePositions.put(id, instance);
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * Method findTradeOrderById.
+	 * 
+	 * @param id
+	 *            Integer
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#findTradeOrderById(Integer)
+	 */
+	public TradeOrder findTradeOrderById(final Integer id)
+			throws PersistentModelException {
+		synchronized (m_lock) {
+			for (TradeOrder tradeOrder : m_tradeOrders.values()) {
+				if (id.equals(tradeOrder.getIdTradeOrder()))
+					return tradeOrder;
+			}
+		}
+		return this.m_database.findTradeOrderById(id);
+	}
+
+	/**
+	 * Method findTradeOrderByKey.
+	 * 
+	 * @param orderKey
+	 *            Integer
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#findTradeOrderByKey(Integer)
+	 */
+	public TradeOrder findTradeOrderByKey(final Integer orderKey)
+			throws PersistentModelException {
+		synchronized (m_lock) {
+			TradeOrder instance = m_tradeOrders.get(orderKey);
+			if (null == instance) {
+				instance = this.m_database.findTradeOrderByKey(orderKey);
+				if (null != instance)
+					addTradeOrder(instance);
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * Method findTradeOrderfillByExecId.
+	 * 
+	 * @param execId
+	 *            String
+	 * @return TradeOrderfill
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#findTradeOrderfillByExecId(String)
+	 */
+	public TradeOrderfill findTradeOrderfillByExecId(String execId)
+			throws PersistentModelException {
+		synchronized (m_lock) {
+			TradeOrderfill instance = m_tradeOrderfills.get(execId);
+			if (null != instance)
+				return instance;
+		}
+		return this.m_database.findTradeOrderfillByExecId(execId);
+	}
+
+	/**
+	 * Method findTradeOrderByMaxKey. The database is read the first time so
+	 * the keys do not clash with flushed orders, after that the largest key
+	 * is kept in memory as orders are added.
+	 * 
+	 * @return Integer the largest order key.
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#findTradeOrderByMaxKey()
+	 */
+	public Integer findTradeOrderByMaxKey() throws PersistentModelException {
+		synchronized (m_lock) {
+			if (null == m_maxOrderKey) {
+				Integer maxKey = this.m_database.findTradeOrderByMaxKey();
+				m_maxOrderKey = (null == maxKey ? 0 : maxKey);
+				for (Integer orderKey : m_tradeOrders.keySet()) {
+					m_maxOrderKey = Math.max(m_maxOrderKey, orderKey);
+				}
+			}
+			return m_maxOrderKey;
+		}
+	}
+
+	/**
+	 * Method findTradelogReport. Any results in memory are flushed first.
+	 * 
+	 * @param portfolio
+	 *            Portfolio
+	 * @param start
+	 *            ZonedDateTime
+	 * @param end
+	 *            ZonedDateTime
+	 * @param filter
+	 *            boolean
+	 * @param symbol
+	 *            String
+	 * @param winLossAmount
+	 *            BigDecimal
+	 * @return TradelogReport
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#findTradelogReport(Portfolio,
+	 *      ZonedDateTime, ZonedDateTime, boolean, String, BigDecimal)
+	 */
+	public TradelogReport findTradelogReport(final Portfolio portfolio,
+			ZonedDateTime start, ZonedDateTime end, boolean filter,
+			String symbol, BigDecimal winLossAmount)
+			throws PersistentModelException {
+		if (m_flush)
+			write();
+		return this.m_database.findTradelogReport(portfolio, start, end,
+				filter, symbol, winLossAmount);
+	}
+
+	/**
+	 * Method persistTradeOrder. The TradePersistentModel rules are run
+	 * against the orders and positions in memory.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#persistTradeOrder(TradeOrder)
+	 */
+	public TradeOrder persistTradeOrder(final TradeOrder tradeOrder)
+			throws PersistentModelException {
+		synchronized (m_lock) {
+			return super.persistTradeOrder(tradeOrder);
+		}
+	}
+
+	/**
+	 * Method persistTradeOrderfill.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return TradeOrder
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#persistTradeOrderfill(TradeOrder)
+	 */
+	public TradeOrder persistTradeOrderfill(final TradeOrder tradeOrder)
+			throws PersistentModelException {
+		synchronized (m_lock) {
+			return super.persistTradeOrderfill(tradeOrder);
+		}
+	}
+
+	/**
+	 * Method persistAspect. Orders, fills, positions, the open position on a
+	 * contract and the tradestrategy status are written to memory.
+	 * 
+	 * @param transientInstance
+	 *            Aspect
+	 * @return Aspect
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#persistAspect(Aspect)
+	 */
+	public <T extends Aspect> T persistAspect(final T transientInstance)
+			throws PersistentModelException {
+		return persistAspect(transientInstance, false);
+	}
+
+	/**
+	 * Method persistAspect.
+	 * 
+	 * @param transientInstance
+	 *            Aspect
+	 * @param overrideVersion
+	 *            boolean
+	 * @return Aspect
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#persistAspect(Aspect, boolean)
+	 */
+	public <T extends Aspect> T persistAspect(final T transientInstance,
+			boolean overrideVersion) throws PersistentModelException {
+
+		if (!isHeldInMemory(transientInstance)) {
+			T instance = this.m_database.persistAspect(transientInstance,
+					overrideVersion);
+			if (instance instanceof Tradestrategy) {
+				synchronized (m_lock) {
+					setStatus(((Tradestrategy) instance).getIdTradeStrategy(),
+							((Tradestrategy) instance).getStatus(),
+							((Tradestrategy) instance).getLastUpdateDate());
+				}
+			}
+			return instance;
+		}
+		synchronized (m_lock) {
+			if (null == transientInstance.getId())
+				transientInstance.setId(m_nextId.decrementAndGet());
+			transientInstance.setVersion(null == transientInstance
+					.getVersion() ? 0 : transientInstance.getVersion() + 1);
+			transientInstance.setDirty(false);
+
+			if (transientInstance instanceof TradeOrder) {
+				TradeOrder tradeOrder = (TradeOrder) transientInstance;
+				for (TradeOrderfill tradeOrderfill : tradeOrder
+						.getTradeOrderfills()) {
+					if (null == tradeOrderfill.getId())
+						tradeOrderfill.setId(m_nextId.decrementAndGet());
+					tradeOrderfill.setTradeOrder(tradeOrder);
+				}
+				addTradeOrder(tradeOrder);
+				Integer idTradestrategy = getIdTradestrategy(tradeOrder);
+				TradestrategyOrders positionOrders = m_positionOrders
+						.get(idTradestrategy);
+				if (null != positionOrders)
+					addTradeOrder(positionOrders.getTradeOrders(), tradeOrder);
+				m_unflushed.add(tradeOrder);
+
+			} else if (transientInstance instanceof TradePosition) {
+				m_tradePositions.put(transientInstance.getId(),
+						(TradePosition) transientInstance);
+				m_unflushed.add(transientInstance);
+
+			} else if (transientInstance instanceof ContractLite) {
+				ContractLite contract = (ContractLite) transientInstance;
+				m_openPositions.put(contract.getIdContract(), contract);
+				m_unflushed.add(contract);
+
+			} else if (transientInstance instanceof TradestrategyOrders) {
+				TradestrategyOrders positionOrders = (TradestrategyOrders) transientInstance;
+				setStatus(positionOrders.getIdTradeStrategy(),
+						positionOrders.getStatus(),
+						positionOrders.getLastUpdateDate());
+				m_unflushedStatus.add(positionOrders.getIdTradeStrategy());
+
+			} else if (transientInstance instanceof TradestrategyLite) {
+				TradestrategyLite tradestrategy = (TradestrategyLite) transientInstance;
+				m_tradestrategyLites.put(tradestrategy.getIdTradeStrategy(),
+						tradestrategy);
+				setStatus(tradestrategy.getIdTradeStrategy(),
+						tradestrategy.getStatus(),
+						tradestrategy.getLastUpdateDate());
+				m_unflushedStatus.add(tradestrategy.getIdTradeStrategy());
+			}
+		}
+		m_version.changed(transientInstance);
+		return transientInstance;
+	}
+
+	/**
+	 * Method removeAspect. Aspects held in memory are removed from memory and
+	 * from the database if they have been flushed.
+	 * 
+	 * @param transientInstance
+	 *            Aspect
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#removeAspect(Aspect)
+	 */
+	public void removeAspect(final Aspect transientInstance)
+			throws PersistentModelException {
+		if (isHeldInMemory(transientInstance)) {
+			synchronized (m_lock) {
+				m_unflushed.remove(transientInstance);
+				if (transientInstance instanceof TradeOrder) {
+					TradeOrder tradeOrder = (TradeOrder) transientInstance;
+					m_tradeOrders.remove(tradeOrder.getOrderKey());
+					TradestrategyOrders positionOrders = m_positionOrders
+							.get(getIdTradestrategy(tradeOrder));
+					if (null != positionOrders)
+						positionOrders.getTradeOrders().remove(tradeOrder);
+				} else if (transientInstance instanceof TradePosition) {
+					m_tradePositions.remove(transientInstance.getId());
+				}
+			}
+			if (isInMemoryOnly(transientInstance)) {
+				m_version.changed(transientInstance);
+				return;
+			}
+		}
+		this.m_database.removeAspect(transientInstance);
+	}
+
+	/**
+	 * Method removeTradestrategyTradeOrders. Remove the orders from the
+	 * database and memory.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#removeTradestrategyTradeOrders(Tradestrategy)
+	 */
+	public void removeTradestrategyTradeOrders(final Tradestrategy tradestrategy)
+			throws PersistentModelException {
+		synchronized (m_lock) {
+			Integer idTradestrategy = tradestrategy.getIdTradeStrategy();
+			List<TradeOrder> tradeOrders = new ArrayList<TradeOrder>();
+			for (TradeOrder tradeOrder : m_tradeOrders.values()) {
+				if (idTradestrategy.equals(getIdTradestrategy(tradeOrder)))
+					tradeOrders.add(tradeOrder);
+			}
+			for (TradeOrder tradeOrder : tradeOrders) {
+				m_tradeOrders.remove(tradeOrder.getOrderKey());
+				m_unflushed.remove(tradeOrder);
+				for (TradeOrderfill tradeOrderfill : tradeOrder
+						.getTradeOrderfills()) {
+					m_tradeOrderfills.remove(tradeOrderfill.getExecId());
+				}
+				if (tradeOrder.hasTradePosition()) {
+					TradePosition tradePosition = tradeOrder.getTradePosition();
+					m_tradePositions.remove(tradePosition.getId());
+					m_unflushed.remove(tradePosition);
+					Integer idContract = tradePosition.getContract()
+							.getIdContract();
+					ContractLite contract = m_openPositions.get(idContract);
+					if (null != contract
+							&& tradePosition.equals(contract.getTradePosition())) {
+						m_openPositions.remove(idContract);
+						m_unflushed.remove(contract);
+					}
+				}
+			}
+			m_positionOrders.remove(idTradestrategy);
+			m_tradestrategyLites.remove(idTradestrategy);
+			m_unflushedStatus.remove(idTradestrategy);
+		}
+		this.m_database.removeTradestrategyTradeOrders(tradestrategy);
+	}
+
+	/**
+	 * Method flush. Called when the back test completes, if
+	 * trade.backtest.flush is true the orders, fills, positions and
+	 * tradestrategy status held in memory are written to the database. The
+	 * memory is then cleared.
+	 * 
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#flush()
+	 */
+	public void flush() throws PersistentModelException {
+		synchronized (m_lock) {
+			try {
+				if (m_flush)
+					write();
+			} finally {
+				clear();
+			}
+		}
+		m_version.changed();
+	}
+
+	/**
+	 * Method write. Write the orders, fills, positions and tradestrategy
+	 * status held in memory to the database, then clear the memory so they
+	 * are read back from the database.
+	 * 
+	 * @throws PersistentModelException
+	 */
+	private void write() throws PersistentModelException {
+		synchronized (m_lock) {
+			if (m_unflushed.isEmpty() && m_unflushedStatus.isEmpty())
+				return;
+			long startTime = System.currentTimeMillis();
+			int count = 0;
+			/*
+			 * Positions first as the orders and contracts refer to them.
+			 * Persisting a new aspect sets its id on the instance so the
+			 * references pick up the new ids.
+			 */
+			for (Aspect aspect : m_unflushed) {
+				if (aspect instanceof TradePosition) {
+					flushAspect(aspect);
+					count++;
+				}
+			}
+			for (Aspect aspect : m_unflushed) {
+				if (aspect instanceof TradeOrder) {
+					for (TradeOrderfill tradeOrderfill : ((TradeOrder) aspect)
+							.getTradeOrderfills()) {
+						if (isInMemoryOnly(tradeOrderfill)) {
+							tradeOrderfill.setId(null);
+							tradeOrderfill.setVersion(null);
+						}
+					}
+					flushAspect(aspect);
+					count++;
+				}
+			}
+			for (Aspect aspect : m_unflushed) {
+				if (aspect instanceof ContractLite) {
+					flushAspect(aspect);
+					count++;
+				}
+			}
+			for (Integer idTradestrategy : m_unflushedStatus) {
+				TradestrategyLite instance = this.m_database
+						.findTradestrategyLiteById(idTradestrategy);
+				TradestrategyLite tradestrategy = m_tradestrategyLites
+						.get(idTradestrategy);
+				if (null != tradestrategy) {
+					instance.setStatus(tradestrategy.getStatus());
+					instance.setLastUpdateDate(tradestrategy
+							.getLastUpdateDate());
+				} else {
+					TradestrategyOrders positionOrders = m_positionOrders
+							.get(idTradestrategy);
+					instance.setStatus(positionOrders.getStatus());
+					instance.setLastUpdateDate(positionOrders
+							.getLastUpdateDate());
+				}
+				this.m_database.persistAspect(instance, true);
+				count++;
+			}
+			clear();
+			_log.info("BackTestPersistentModel flushed: " + count
+					+ " aspects in: "
+					+ (System.currentTimeMillis() - startTime) + "ms");
+		}
+		m_version.changed();
+	}
+
+	/**
+	 * Method clear. Drop everything held in memory.
+	 */
+	public void clear() {
+		synchronized (m_lock) {
+			m_positionOrders.clear();
+			m_tradestrategyLites.clear();
+			m_tradeOrders.clear();
+			m_tradeOrderfills.clear();
+			m_tradePositions.clear();
+			m_openPositions.clear();
+			m_unflushed.clear();
+			m_unflushedStatus.clear();
+			m_maxOrderKey = null;
+		}
+	}
+
+	/**
+	 * Method flushAspect.
+	 * 
+	 * @param aspect
+	 *            Aspect
+	 * @throws PersistentModelException
+	 */
+	private void flushAspect(Aspect aspect) throws PersistentModelException {
+		if (isInMemoryOnly(aspect)) {
+			aspect.setId(null);
+			aspect.setVersion(null);
+			this.m_database.persistAspect(aspect, false);
+		} else {
+			this.m_database.persistAspect(aspect, true);
+		}
+	}
+
+	/**
+	 * Method addPositionOrders. Add orders read from the database to memory,
+	 * orders already in memory replace those read and orders created in
+	 * memory for the tradestrategy are added.
+	 * 
+	 * @param positionOrders
+	 *            TradestrategyOrders
+	 */
+	private void addPositionOrders(TradestrategyOrders positionOrders) {
+		List<TradeOrder> tradeOrders = new ArrayList<TradeOrder>();
+		for (TradeOrder tradeOrder : positionOrders.getTradeOrders()) {
+			TradeOrder instance = m_tradeOrders.get(tradeOrder.getOrderKey());
+			if (null == instance) {
+				addTradeOrder(tradeOrder);
+				instance = tradeOrder;
+			}
+			tradeOrders.add(instance);
+		}
+		for (TradeOrder tradeOrder : m_tradeOrders.values()) {
+			if (positionOrders.getIdTradeStrategy().equals(
+					getIdTradestrategy(tradeOrder)))
+				addTradeOrder(tradeOrders, tradeOrder);
+		}
+		positionOrders.setTradeOrders(tradeOrders);
+		m_positionOrders.put(positionOrders.getIdTradeStrategy(),
+				positionOrders);
+		TradestrategyLite tradestrategy = m_tradestrategyLites
+				.get(positionOrders.getIdTradeStrategy());
+		if (null != tradestrategy) {
+			positionOrders.setStatus(tradestrategy.getStatus());
+			positionOrders.setLastUpdateDate(tradestrategy.getLastUpdateDate());
+		}
+	}
+
+	/**
+	 * Method addTradeOrder. Add the order and its fills to memory, the
+	 * position is replaced by the one in memory.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 */
+	private void addTradeOrder(TradeOrder tradeOrder) {
+		m_tradeOrders.put(tradeOrder.getOrderKey(), tradeOrder);
+		if (null != m_maxOrderKey)
+			m_maxOrderKey = Math.max(m_maxOrderKey, tradeOrder.getOrderKey());
+		for (TradeOrderfill tradeOrderfill : tradeOrder.getTradeOrderfills()) {
+			m_tradeOrderfills.put(tradeOrderfill.getExecId(), tradeOrderfill);
+		}
+		if (tradeOrder.hasTradePosition()) {
+			TradePosition tradePosition = m_tradePositions.get(tradeOrder
+					.getTradePosition().getId());
+			if (null == tradePosition) {
+				m_tradePositions.put(tradeOrder.getTradePosition().getId(),
+						tradeOrder.getTradePosition());
+			} else {
+				tradeOrder.setTradePosition(tradePosition);
+			}
+		}
+	}
+
+	/**
+	 * Method addTradeOrder. Add or replace the order in the list by order
+	 * key.
+	 * 
+	 * @param tradeOrders
+	 *            List<TradeOrder>
+	 * @param tradeOrder
+	 *            TradeOrder
+	 */
+	private static void addTradeOrder(List<TradeOrder> tradeOrders,
+			TradeOrder tradeOrder) {
+		for (int i = 0; i < tradeOrders.size(); i++) {
+			if (tradeOrders.get(i).getOrderKey()
+					.equals(tradeOrder.getOrderKey())) {
+				tradeOrders.set(i, tradeOrder);
+				return;
+			}
+		}
+		tradeOrders.add(tradeOrder);
+	}
+
+	/**
+	 * Method getOpenPosition.
+	 * 
+	 * @param contract
+	 *            ContractLite
+	 * @return TradePosition the open position for the contract in memory or
+	 *         as read if it has not been written.
+	 */
+	private TradePosition getOpenPosition(ContractLite contract) {
+		ContractLite instance = m_openPositions.get(contract.getIdContract());
+		TradePosition tradePosition = (null == instance ? contract
+				.getTradePosition() : instance.getTradePosition());
+		if (null != tradePosition) {
+			TradePosition memory = m_tradePositions.get(tradePosition.getId());
+			if (null == memory) {
+				m_tradePositions.put(tradePosition.getId(), tradePosition);
+			} else {
+				tradePosition = memory;
+			}
+		}
+		return tradePosition;
+	}
+
+	/**
+	 * Method overlayTradestrategy. Set the status, orders and open position
+	 * held in memory on a tradestrategy read from the database.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @return Tradestrategy
+	 */
+	private Tradestrategy overlayTradestrategy(Tradestrategy tradestrategy) {
+		synchronized (m_lock) {
+			TradestrategyLite lite = m_tradestrategyLites.get(tradestrategy
+					.getIdTradeStrategy());
+			if (null != lite) {
+				tradestrategy.setStatus(lite.getStatus());
+				tradestrategy.setLastUpdateDate(lite.getLastUpdateDate());
+			}
+			TradestrategyOrders positionOrders = m_positionOrders
+					.get(tradestrategy.getIdTradeStrategy());
+			if (null != positionOrders) {
+				tradestrategy.setTradeOrders(new ArrayList<TradeOrder>(
+						positionOrders.getTradeOrders()));
+			}
+			ContractLite contract = m_openPositions.get(tradestrategy
+					.getContract().getIdContract());
+			if (null != contract) {
+				tradestrategy.getContract().setTradePosition(
+						contract.getTradePosition());
+			}
+			return tradestrategy;
+		}
+	}
+
+	/**
+	 * Method setStatus. Set the status on the tradestrategy views held in
+	 * memory.
+	 * 
+	 * @param idTradestrategy
+	 *            Integer
+	 * @param status
+	 *            String
+	 * @param lastUpdateDate
+	 *            ZonedDateTime
+	 */
+	private void setStatus(Integer idTradestrategy, String status,
+			ZonedDateTime lastUpdateDate) {
+		TradestrategyLite tradestrategy = m_tradestrategyLites
+				.get(idTradestrategy);
+		if (null != tradestrategy) {
+			tradestrategy.setStatus(status);
+			tradestrategy.setLastUpdateDate(lastUpdateDate);
+		}
+		TradestrategyOrders positionOrders = m_positionOrders
+				.get(idTradestrategy);
+		if (null != positionOrders) {
+			positionOrders.setStatus(status);
+			positionOrders.setLastUpdateDate(lastUpdateDate);
+		}
+	}
+
+	/**
+	 * Method getIdTradestrategy.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @return Integer
+	 */
+	private static Integer getIdTradestrategy(TradeOrder tradeOrder) {
+		if (null != tradeOrder.getTradestrategyId())
+			return tradeOrder.getTradestrategyId().getIdTradeStrategy();
+		return tradeOrder.getTradestrategy().getIdTradeStrategy();
+	}
+
+	/**
+	 * Method isHeldInMemory.
+	 * 
+	 * @param aspect
+	 *            Aspect
+	 * @return boolean
+	 */
+	private static boolean isHeldInMemory(Aspect aspect) {
+		return aspect instanceof TradeOrder || aspect instanceof TradePosition
+				|| aspect instanceof ContractLite
+				|| aspect instanceof TradestrategyOrders
+				|| aspect instanceof TradestrategyLite;
+	}
+
+	/**
+	 * Method isInMemoryOnly.
+	 * 
+	 * @param aspect
+	 *            Aspect
+	 * @return boolean true if the aspect was created in memory and has not
+	 *         been flushed.
+	 */
+	private static boolean isInMemoryOnly(Aspect aspect) {
+		return null != aspect.getId() && aspect.getId() < 0;
+	}
+}
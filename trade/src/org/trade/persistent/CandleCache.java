@@ -0,0 +1,547 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.properties.ConfigProperties;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.dao.Candle;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.Tradingday;
+
+/**
+ * A local read through cache of the candles for a contract, bar size and
+ * tradingday. Each key is held in one binary file of primitive columns under
+ * the config.properties trade.backtest.candleCache.dir i.e.
+ * dir/idContract/barSize/yyyy-MM-dd.cnd
+ * 
+ * A date range is read from the files if every trading day in the range is
+ * cached. Otherwise the range is read from the database in one query and a
+ * file is written for every trading day in the range that is before the
+ * current trading day, so days that are still being loaded are always read
+ * from the database. A day with no candles gets a file with no candles so
+ * the database is not queried for it again. The TradePersistentModel
+ * removes the files for a key when candles are written for it, a range read
+ * from the database
+ * while candles were being written is not cached. Candles written by another
+ * process are not seen, remove the dir after loading candles elsewhere.
+ * 
+ * The cache is off by default, set the dir to use it.
+ * 
+ * The candle period is not cached as it is not used once the candle has
+ * been read.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleCache {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(CandleCache.class);
+
+	private static final int MAGIC = 0x544D4343;
+	private static final int FORMAT = 1;
+	private static final String SUFFIX = ".cnd";
+	private static final long NULL_TIME = Long.MIN_VALUE;
+	private static final byte NULL_SCALE = -1;
+
+	private static final Object m_lock = new Object();
+	private static long m_invalidations = 0;
+
+	private static File _cacheDir = null;
+
+	/*
+	 * Initialize the cache dir form the properties file. If no value is found
+	 * the cache is not used.
+	 */
+	static {
+		try {
+			String dir = ConfigProperties
+					.getPropAsString("trade.backtest.candleCache.dir");
+			if (null != dir && dir.trim().length() > 0)
+				_cacheDir = new File(dir.trim());
+		} catch (Exception ex) {
+			_log.warn("Property trade.backtest.candleCache.dir not set in config.properties the candle cache will not be used.");
+		}
+	}
+
+	/**
+	 * Constructor for CandleCache.
+	 */
+	private CandleCache() {
+	}
+
+	/**
+	 * Method isEnabled.
+	 * 
+	 * @return boolean true if a cache dir is set.
+	 */
+	public static boolean isEnabled() {
+		return null != _cacheDir;
+	}
+
+	/**
+	 * Method findCandlesByContractDateRangeBarSize. Read the candles for the
+	 * contract whose tradingday opens between the start and end date from the
+	 * cache, or from the database if any trading day in the range is not
+	 * cached.
+	 * 
+	 * @param tradePersistentModel
+	 *            PersistentModel
+	 * @param contract
+	 *            Contract
+	 * @param startDate
+	 *            ZonedDateTime
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @param barSize
+	 *            Integer
+	 * @return List<Candle> in start period order.
+	 * @throws PersistentModelException
+	 */
+	public static List<Candle> findCandlesByContractDateRangeBarSize(
+			PersistentModel tradePersistentModel, Contract contract,
+			ZonedDateTime startDate, ZonedDateTime endDate, Integer barSize)
+			throws PersistentModelException {
+
+		if (!isEnabled())
+			return tradePersistentModel.findCandlesByContractDateRangeBarSize(
+					contract.getIdContract(), startDate, endDate, barSize);
+
+		List<LocalDate> tradingDays = getTradingDays(startDate, endDate);
+		long invalidations = getInvalidations();
+		List<Candle> candles = new ArrayList<Candle>();
+		try {
+			for (LocalDate tradingDay : tradingDays) {
+				File file = getFile(contract.getIdContract(), barSize,
+						tradingDay);
+				if (!file.exists()) {
+					candles = null;
+					break;
+				}
+				read(file, contract, barSize, candles);
+			}
+			if (null != candles)
+				return candles;
+		} catch (IOException ex) {
+			_log.warn("Error reading candle cache for idContract: "
+					+ contract.getIdContract() + " barSize: " + barSize
+					+ " Msg: " + ex.getMessage());
+		}
+
+		candles = tradePersistentModel.findCandlesByContractDateRangeBarSize(
+				contract.getIdContract(), startDate, endDate, barSize);
+
+		LocalDate today = TradingCalendar.getDateTimeNowMarketTimeZone()
+				.toLocalDate();
+		LinkedHashMap<LocalDate, List<Candle>> candlesByDay = new LinkedHashMap<LocalDate, List<Candle>>();
+		for (LocalDate tradingDay : tradingDays) {
+			if (tradingDay.isBefore(today))
+				candlesByDay.put(tradingDay, new ArrayList<Candle>());
+		}
+		for (Candle candle : candles) {
+			List<Candle> dayCandles = candlesByDay.get(candle.getTradingday()
+					.getOpen().toLocalDate());
+			if (null != dayCandles)
+				dayCandles.add(candle);
+		}
+		try {
+			synchronized (m_lock) {
+				/*
+				 * Candles written since the read started may not be in the
+				 * candles read.
+				 */
+				if (invalidations == m_invalidations) {
+					for (LocalDate tradingDay : candlesByDay.keySet()) {
+						write(getFile(contract.getIdContract(), barSize,
+								tradingDay), candlesByDay.get(tradingDay));
+					}
+				}
+			}
+		} catch (IOException ex) {
+			_log.warn("Error writing candle cache for idContract: "
+					+ contract.getIdContract() + " barSize: " + barSize
+					+ " Msg: " + ex.getMessage());
+		}
+		return candles;
+	}
+
+	/**
+	 * Method invalidate. Remove the cached candles for the contract, bar size
+	 * and tradingday.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @param tradingday
+	 *            Tradingday
+	 */
+	public static void invalidate(Integer idContract, Integer barSize,
+			Tradingday tradingday) {
+		if (!isEnabled() || null == idContract || null == barSize
+				|| null == tradingday || null == tradingday.getOpen())
+			return;
+		File file = getFile(idContract, barSize, tradingday.getOpen()
+				.toLocalDate());
+		synchronized (m_lock) {
+			m_invalidations++;
+			if (file.exists() && !file.delete())
+				_log.warn("Could not remove candle cache file: " + file);
+		}
+	}
+
+	/**
+	 * Method setCacheDir. Use the dir for the cache, null to turn the cache
+	 * off.
+	 * 
+	 * @param dir
+	 *            File
+	 */
+	static void setCacheDir(File dir) {
+		synchronized (m_lock) {
+			m_invalidations++;
+			_cacheDir = dir;
+		}
+	}
+
+	/**
+	 * Method getInvalidations.
+	 * 
+	 * @return long the number of invalidations so far.
+	 */
+	private static long getInvalidations() {
+		synchronized (m_lock) {
+			return m_invalidations;
+		}
+	}
+
+	/**
+	 * Method invalidate. Remove the cached candles for each contract, bar
+	 * size and tradingday in the list.
+	 * 
+	 * @param candles
+	 *            List<Candle>
+	 */
+	public static void invalidate(List<Candle> candles) {
+		if (!isEnabled())
+			return;
+		Set<String> keys = new HashSet<String>();
+		for (Candle candle : candles) {
+			if (null == candle.getContract() || null == candle.getTradingday()
+					|| null == candle.getTradingday().getOpen())
+				continue;
+			if (keys.add(candle.getContract().getIdContract() + "/"
+					+ candle.getBarSize() + "/"
+					+ candle.getTradingday().getOpen().toLocalDate()))
+				invalidate(candle.getContract().getIdContract(),
+						candle.getBarSize(), candle.getTradingday());
+		}
+	}
+
+	/**
+	 * Method getTradingDays.
+	 * 
+	 * @param startDate
+	 *            ZonedDateTime
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @return List<LocalDate> the trading days from the start to end date
+	 *         inclusive.
+	 */
+	private static List<LocalDate> getTradingDays(ZonedDateTime startDate,
+			ZonedDateTime endDate) {
+		List<LocalDate> tradingDays = new ArrayList<LocalDate>();
+		for (ZonedDateTime date = startDate; !date.toLocalDate().isAfter(
+				endDate.toLocalDate()); date = date.plusDays(1)) {
+			if (TradingCalendar.isTradingDay(date))
+				tradingDays.add(date.toLocalDate());
+		}
+		return tradingDays;
+	}
+
+	/**
+	 * Method getFile.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @param tradingDay
+	 *            LocalDate
+	 * @return File
+	 */
+	private static File getFile(Integer idContract, Integer barSize,
+			LocalDate tradingDay) {
+		return new File(_cacheDir, idContract + File.separator + barSize
+				+ File.separator + tradingDay + SUFFIX);
+	}
+
+	/**
+	 * Method read. Read the candles in the file and add them to the list.
+	 * 
+	 * @param file
+	 *            File
+	 * @param contract
+	 *            Contract
+	 * @param barSize
+	 *            Integer
+	 * @param candles
+	 *            List<Candle>
+	 * @throws IOException
+	 */
+	private static void read(File file, Contract contract, Integer barSize,
+			List<Candle> candles) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT)
+			throw new IOException("Not a candle cache file: " + file);
+
+		int count = buffer.getInt();
+		if (count == 0)
+			return;
+
+		Tradingday tradingday = new Tradingday(getTime(buffer.getLong()),
+				getTime(buffer.getLong()));
+		tradingday.setIdTradingDay(getInteger(buffer.getInt()));
+
+		Candle[] items = new Candle[count];
+		for (int i = 0; i < count; i++) {
+			Candle candle = new Candle();
+			candle.setContract(contract);
+			candle.setTradingday(tradingday);
+			candle.setBarSize(barSize);
+			items[i] = candle;
+		}
+		for (Candle candle : items)
+			candle.setIdCandle(getInteger(buffer.getInt()));
+		for (Candle candle : items)
+			candle.setVersion(getInteger(buffer.getInt()));
+		for (Candle candle : items)
+			candle.setStartPeriod(getTime(buffer.getLong()));
+		for (Candle candle : items)
+			candle.setEndPeriod(getTime(buffer.getLong()));
+		for (Candle candle : items)
+			candle.setLastUpdateDate(getTime(buffer.getLong()));
+		for (Candle candle : items)
+			candle.setOpen(getPrice(buffer));
+		for (Candle candle : items)
+			candle.setHigh(getPrice(buffer));
+		for (Candle candle : items)
+			candle.setLow(getPrice(buffer));
+		for (Candle candle : items)
+			candle.setClose(getPrice(buffer));
+		for (Candle candle : items)
+			candle.setVwap(getPrice(buffer));
+		for (Candle candle : items)
+			candle.setVolume(buffer.getLong());
+		for (Candle candle : items)
+			candle.setTradeCount(getInteger(buffer.getInt()));
+
+		for (Candle candle : items) {
+			candle.setDirty(false);
+			candles.add(candle);
+		}
+	}
+
+	/**
+	 * Method write. Write the candles for one tradingday to a temp file then
+	 * move it into place so readers never see a partial file.
+	 * 
+	 * @param file
+	 *            File
+	 * @param candles
+	 *            List<Candle>
+	 * @throws IOException
+	 */
+	private static void write(File file, List<Candle> candles)
+			throws IOException {
+
+		int count = candles.size();
+		ByteBuffer buffer = ByteBuffer.allocate(32 + (count * 104));
+		buffer.putInt(MAGIC);
+		buffer.putInt(FORMAT);
+		buffer.putInt(count);
+		if (count > 0) {
+			Tradingday tradingday = candles.get(0).getTradingday();
+			buffer.putLong(putTime(tradingday.getOpen()));
+			buffer.putLong(putTime(tradingday.getClose()));
+			buffer.putInt(putInteger(tradingday.getIdTradingDay()));
+
+			for (Candle candle : candles)
+				buffer.putInt(putInteger(candle.getIdCandle()));
+			for (Candle candle : candles)
+				buffer.putInt(putInteger(candle.getVersion()));
+			for (Candle candle : candles)
+				buffer.putLong(putTime(candle.getStartPeriod()));
+			for (Candle candle : candles)
+				buffer.putLong(putTime(candle.getEndPeriod()));
+			for (Candle candle : candles)
+				buffer.putLong(putTime(candle.getLastUpdateDate()));
+			for (Candle candle : candles)
+				putPrice(buffer, candle.getOpen());
+			for (Candle candle : candles)
+				putPrice(buffer, candle.getHigh());
+			for (Candle candle : candles)
+				putPrice(buffer, candle.getLow());
+			for (Candle candle : candles)
+				putPrice(buffer, candle.getClose());
+			for (Candle candle : candles)
+				putPrice(buffer, candle.getVwap());
+			for (Candle candle : candles)
+				buffer.putLong(null == candle.getVolume() ? 0 : candle
+						.getVolume());
+			for (Candle candle : candles)
+				buffer.putInt(putInteger(candle.getTradeCount()));
+		}
+
+		File dir = file.getParentFile();
+		if (!dir.exists() && !dir.mkdirs() && !dir.exists())
+			throw new IOException("Could not create dir: " + dir);
+		File temp = File.createTempFile(file.getName(), ".tmp", dir);
+		try {
+			Files.write(temp.toPath(),
+					Arrays.copyOf(buffer.array(), buffer.position()));
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Method getInteger.
+	 * 
+	 * @param value
+	 *            int
+	 * @return Integer null if the value is Integer.MIN_VALUE.
+	 */
+	private static Integer getInteger(int value) {
+		return value == Integer.MIN_VALUE ? null : value;
+	}
+
+	/**
+	 * Method putInteger.
+	 * 
+	 * @param value
+	 *            Integer
+	 * @return int Integer.MIN_VALUE if the value is null.
+	 */
+	private static int putInteger(Integer value) {
+		return null == value ? Integer.MIN_VALUE : value;
+	}
+
+	/**
+	 * Method getTime.
+	 * 
+	 * @param millis
+	 *            long
+	 * @return ZonedDateTime null if the millis is Long.MIN_VALUE.
+	 */
+	private static ZonedDateTime getTime(long millis) {
+		return millis == NULL_TIME ? null : TradingCalendar
+				.getZonedDateTimeFromMilli(millis);
+	}
+
+	/**
+	 * Method putTime.
+	 * 
+	 * @param date
+	 *            ZonedDateTime
+	 * @return long Long.MIN_VALUE if the date is null.
+	 */
+	private static long putTime(ZonedDateTime date) {
+		return null == date ? NULL_TIME : TradingCalendar
+				.geMillisFromZonedDateTime(date);
+	}
+
+	/**
+	 * Method getPrice. A price is held as its unscaled long value and scale
+	 * so it is read back exactly.
+	 * 
+	 * @param buffer
+	 *            ByteBuffer
+	 * @return BigDecimal
+	 */
+	private static BigDecimal getPrice(ByteBuffer buffer) {
+		long unscaled = buffer.getLong();
+		byte scale = buffer.get();
+		return scale == NULL_SCALE ? null : BigDecimal.valueOf(unscaled, scale);
+	}
+
+	/**
+	 * Method putPrice.
+	 * 
+	 * @param buffer
+	 *            ByteBuffer
+	 * @param price
+	 *            BigDecimal
+	 * @throws IOException
+	 *             if the price does not fit a long and byte scale.
+	 */
+	private static void putPrice(ByteBuffer buffer, BigDecimal price)
+			throws IOException {
+		if (null == price) {
+			buffer.putLong(0);
+			buffer.put(NULL_SCALE);
+			return;
+		}
+		BigInteger unscaled = price.unscaledValue();
+		if (unscaled.bitLength() > 63 || price.scale() < 0
+				|| price.scale() > Byte.MAX_VALUE)
+			throw new IOException("Price cannot be cached: " + price);
+		buffer.putLong(unscaled.longValue());
+		buffer.put((byte) price.scale());
+	}
+}
@@ -65,6 +65,8 @@ public interface PersistentModel {
 
 	public final static String _persistentModel = "PersistentModel";
 
+	public final static String _backTestPersistentModel = "BackTestPersistentModel";
+
 	/**
 	 * Method persistTradingday.
 	 * 
@@ -629,6 +631,22 @@ public interface PersistentModel {
 	 */
 	void removeAspect(Aspect aspect) throws PersistentModelException;
 
+	/**
+	 * Method flush. Write any aspects held in memory by the model to the
+	 * database.
+	 * 
+	 * @throws PersistentModelException
+	 */
+	void flush() throws PersistentModelException;
+
+	/**
+	 * Method getPositionOrdersVersion.
+	 * 
+	 * @return PositionOrdersVersion the change counters for the orders and
+	 *         positions written through this model.
+	 */
+	PositionOrdersVersion getPositionOrdersVersion();
+
 	/**
 	 * Method reassignStrategy.
 	 * 
@@ -0,0 +1,227 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.trade.core.dao.Aspect;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.ContractLite;
+import org.trade.persistent.dao.TradeOrder;
+import org.trade.persistent.dao.TradePosition;
+import org.trade.persistent.dao.Tradestrategy;
+import org.trade.persistent.dao.TradestrategyLite;
+import org.trade.persistent.dao.TradestrategyOrders;
+
+/**
+ * Change counters for the order and position state held in memory by the
+ * running strategies and brokers. There is a counter per tradestrategy for
+ * its orders and status and a counter per contract for the open position
+ * held on it, as a position can span the tradestrategies for a contract on
+ * many days. A strategy only reloads its TradestrategyOrders when the
+ * version for its tradestrategy and contract has changed since it last
+ * loaded them, so a write for one tradestrategy does not make the others
+ * reload. Reading a version takes no locks.
+ * 
+ * Each PersistentModel has a scope. The database models share one scope, a
+ * model that holds the orders in memory has its own scope on top of that so
+ * its writes are only seen by the components that use it.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class PositionOrdersVersion {
+
+	private static final PositionOrdersVersion m_database = new PositionOrdersVersion(
+			null);
+
+	private final PositionOrdersVersion parent;
+	private final AtomicLong all = new AtomicLong(0);
+	private final ConcurrentHashMap<Integer, AtomicLong> tradestrategies = new ConcurrentHashMap<Integer, AtomicLong>();
+	private final ConcurrentHashMap<Integer, AtomicLong> contracts = new ConcurrentHashMap<Integer, AtomicLong>();
+
+	/**
+	 * Constructor for PositionOrdersVersion.
+	 * 
+	 * @param parent
+	 *            PositionOrdersVersion the scope whose changes are also seen
+	 *            by this one, may be null.
+	 */
+	public PositionOrdersVersion(PositionOrdersVersion parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * Method getDatabase.
+	 * 
+	 * @return PositionOrdersVersion the scope shared by the database models.
+	 */
+	public static PositionOrdersVersion getDatabase() {
+		return m_database;
+	}
+
+	/**
+	 * Method get. The counters only ever go up so their sum changes when any
+	 * one of them does.
+	 * 
+	 * @param idTradestrategy
+	 *            Integer
+	 * @param idContract
+	 *            Integer
+	 * @return long the current version of the orders for the tradestrategy
+	 *         and the open position for the contract.
+	 */
+	public long get(Integer idTradestrategy, Integer idContract) {
+		long version = this.all.get() + get(this.tradestrategies, idTradestrategy)
+				+ get(this.contracts, idContract);
+		if (null != this.parent)
+			version = version + this.parent.get(idTradestrategy, idContract);
+		return version;
+	}
+
+	/**
+	 * Method changed. Called after a write that cannot be tied to a
+	 * tradestrategy or contract, every version moves on.
+	 */
+	public void changed() {
+		this.all.incrementAndGet();
+	}
+
+	/**
+	 * Method tradestrategyChanged. Called after the orders or status of a
+	 * tradestrategy have been written.
+	 * 
+	 * @param idTradestrategy
+	 *            Integer
+	 */
+	public void tradestrategyChanged(Integer idTradestrategy) {
+		changed(this.tradestrategies, idTradestrategy);
+	}
+
+	/**
+	 * Method contractChanged. Called after the open position of a contract
+	 * has been written.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 */
+	public void contractChanged(Integer idContract) {
+		changed(this.contracts, idContract);
+	}
+
+	/**
+	 * Method changed. Called after an aspect has been written, only orders,
+	 * positions, contracts and tradestrategies move a version on.
+	 * 
+	 * @param aspect
+	 *            Aspect
+	 */
+	public void changed(Aspect aspect) {
+		if (aspect instanceof TradeOrder) {
+			TradeOrder tradeOrder = (TradeOrder) aspect;
+			if (null != tradeOrder.getTradestrategyId()) {
+				tradestrategyChanged(tradeOrder.getTradestrategyId()
+						.getIdTradeStrategy());
+			} else if (null != tradeOrder.getTradestrategy()) {
+				tradestrategyChanged(tradeOrder.getTradestrategy()
+						.getIdTradeStrategy());
+			} else {
+				changed();
+			}
+		} else if (aspect instanceof TradePosition) {
+			ContractLite contract = ((TradePosition) aspect).getContract();
+			if (null != contract) {
+				contractChanged(contract.getIdContract());
+			} else {
+				changed();
+			}
+		} else if (aspect instanceof Contract) {
+			contractChanged(((Contract) aspect).getIdContract());
+		} else if (aspect instanceof ContractLite) {
+			contractChanged(((ContractLite) aspect).getIdContract());
+		} else if (aspect instanceof TradestrategyOrders) {
+			tradestrategyChanged(((TradestrategyOrders) aspect)
+					.getIdTradeStrategy());
+		} else if (aspect instanceof TradestrategyLite) {
+			tradestrategyChanged(((TradestrategyLite) aspect)
+					.getIdTradeStrategy());
+		} else if (aspect instanceof Tradestrategy) {
+			tradestrategyChanged(((Tradestrategy) aspect).getIdTradeStrategy());
+		}
+	}
+
+	/**
+	 * Method get.
+	 * 
+	 * @param counters
+	 *            ConcurrentHashMap<Integer, AtomicLong>
+	 * @param id
+	 *            Integer
+	 * @return long
+	 */
+	private static long get(ConcurrentHashMap<Integer, AtomicLong> counters,
+			Integer id) {
+		if (null == id)
+			return 0;
+		AtomicLong counter = counters.get(id);
+		return null == counter ? 0 : counter.get();
+	}
+
+	/**
+	 * Method changed.
+	 * 
+	 * @param counters
+	 *            ConcurrentHashMap<Integer, AtomicLong>
+	 * @param id
+	 *            Integer
+	 */
+	private void changed(ConcurrentHashMap<Integer, AtomicLong> counters,
+			Integer id) {
+		if (null == id) {
+			changed();
+			return;
+		}
+		AtomicLong counter = counters.get(id);
+		if (null == counter) {
+			AtomicLong added = new AtomicLong(0);
+			counter = counters.putIfAbsent(id, added);
+			if (null == counter)
+				counter = added;
+		}
+		counter.incrementAndGet();
+	}
+}
@@ -37,6 +37,7 @@ package org.trade.persistent;
 
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 
@@ -54,6 +55,7 @@ import org.trade.dictionary.valuetype.Side;
 import org.trade.dictionary.valuetype.TradestrategyStatus;
 import org.trade.persistent.dao.Candle;
 import org.trade.persistent.dao.CandleHome;
+import org.trade.persistent.dao.CandleSegmentStore;
 import org.trade.persistent.dao.CodeType;
 import org.trade.persistent.dao.CodeTypeHome;
 import org.trade.persistent.dao.Contract;
@@ -637,6 +639,10 @@ public class TradePersistentModel implements PersistentModel {
 			}
 
 			transientInstance.getTradeOrders().clear();
+			getPositionOrdersVersion().tradestrategyChanged(
+					transientInstance.getIdTradeStrategy());
+			getPositionOrdersVersion().contractChanged(
+					transientInstance.getContract().getIdContract());
 		} catch (OptimisticLockException ex1) {
 			throw new PersistentModelException(
 					"Error removing Tradestrategy TradePositions. Please refresh before remove.");
@@ -771,7 +777,9 @@ public class TradePersistentModel implements PersistentModel {
 				}
 			}
 
-			return m_aspectHome.persist(transientInstance, true);
+			Contract instance = m_aspectHome.persist(transientInstance, true);
+			getPositionOrdersVersion().changed(instance);
+			return instance;
 		} catch (OptimisticLockException ex1) {
 			throw new PersistentModelException(
 					"Error saving Contract please refresh before save.");
@@ -812,6 +820,18 @@ public class TradePersistentModel implements PersistentModel {
 			throw new PersistentModelException("Error saving CandleSeries: "
 					+ candleSeries.getDescription() + "\n Msg: "
 					+ e.getMessage());
+		} finally {
+			/*
+			 * The candles for these keys may have been deleted and
+			 * re-inserted so remove any cached copies.
+			 */
+			List<Candle> candles = new ArrayList<Candle>(
+					candleSeries.getItemCount());
+			for (int i = 0; i < candleSeries.getItemCount(); i++) {
+				candles.add(((CandleItem) candleSeries.getDataItem(i))
+						.getCandle());
+			}
+			CandleCache.invalidate(candles);
 		}
 	}
 
@@ -840,6 +860,13 @@ public class TradePersistentModel implements PersistentModel {
 					}
 					candle.setTradingday(tradingday);
 				}
+				if (CandleSegmentStore.isEnabled()) {
+					Candle item = m_candleHome.persistCandle(candle);
+					CandleCache.invalidate(candle.getContract()
+							.getIdContract(), candle.getBarSize(), candle
+							.getTradingday());
+					return item;
+				}
 				if (null == candle.getIdCandle()) {
 					Candle currCandle = m_candleHome.findByUniqueKey(candle
 							.getTradingday().getIdTradingDay(), candle
@@ -857,6 +884,8 @@ public class TradePersistentModel implements PersistentModel {
 				}
 				Candle item = m_aspectHome.persist(candle);
 				candle.setVersion(item.getVersion());
+				CandleCache.invalidate(candle.getContract().getIdContract(),
+						candle.getBarSize(), candle.getTradingday());
 				return item;
 			}
 		} catch (OptimisticLockException ex1) {
@@ -881,6 +910,12 @@ public class TradePersistentModel implements PersistentModel {
 
 		try {
 			m_tradingdayHome.persist(transientInstance);
+			if (null != transientInstance.getTradestrategies()) {
+				for (Tradestrategy tradestrategy : transientInstance
+						.getTradestrategies()) {
+					getPositionOrdersVersion().changed(tradestrategy);
+				}
+			}
 		} catch (OptimisticLockException ex1) {
 			throw new PersistentModelException(
 					"Error saving Tradingday please refresh before save.");
@@ -1424,7 +1459,9 @@ public class TradePersistentModel implements PersistentModel {
 	public <T extends Aspect> T persistAspect(final T transientInstance)
 			throws PersistentModelException {
 		try {
-			return m_aspectHome.persist(transientInstance);
+			T instance = m_aspectHome.persist(transientInstance);
+			getPositionOrdersVersion().changed(instance);
+			return instance;
 		} catch (OptimisticLockException ex1) {
 			throw new PersistentModelException("Error saving "
 					+ transientInstance.getClass().getSimpleName()
@@ -1451,7 +1488,10 @@ public class TradePersistentModel implements PersistentModel {
 	public <T extends Aspect> T persistAspect(final T transientInstance,
 			boolean overrideVersion) throws PersistentModelException {
 		try {
-			return m_aspectHome.persist(transientInstance, overrideVersion);
+			T instance = m_aspectHome.persist(transientInstance,
+					overrideVersion);
+			getPositionOrdersVersion().changed(instance);
+			return instance;
 		} catch (OptimisticLockException ex1) {
 			throw new PersistentModelException("Error saving "
 					+ transientInstance.getClass().getSimpleName()
@@ -1463,6 +1503,27 @@ public class TradePersistentModel implements PersistentModel {
 		}
 	};
 
+	/**
+	 * Method flush. Nothing is held in memory, every aspect is written to the
+	 * database as it is persisted.
+	 * 
+	 * @throws PersistentModelException
+	 * @see org.trade.persistent.PersistentModel#flush()
+	 */
+	public void flush() throws PersistentModelException {
+	}
+
+	/**
+	 * Method getPositionOrdersVersion. The database models share one scope as
+	 * they all see the same orders.
+	 * 
+	 * @return PositionOrdersVersion
+	 * @see org.trade.persistent.PersistentModel#getPositionOrdersVersion()
+	 */
+	public PositionOrdersVersion getPositionOrdersVersion() {
+		return PositionOrdersVersion.getDatabase();
+	}
+
 	/**
 	 * Method removeAspect.
 	 * 
@@ -1475,6 +1536,7 @@ public class TradePersistentModel implements PersistentModel {
 			throws PersistentModelException {
 		try {
 			m_aspectHome.remove(transientInstance);
+			getPositionOrdersVersion().changed(transientInstance);
 		} catch (OptimisticLockException ex1) {
 			throw new PersistentModelException("Error removing "
 					+ transientInstance.getClass().getSimpleName()
@@ -35,12 +35,21 @@
  */
 package org.trade.persistent.dao;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
@@ -49,7 +58,11 @@ import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.trade.core.dao.EntityManagerHelper;
+import org.trade.core.util.CoreUtils;
+import org.trade.persistent.dao.converter.ZonedDateTimeConverter;
 import org.trade.strategy.data.CandleSeries;
 import org.trade.strategy.data.candle.CandleItem;
 
@@ -58,6 +71,29 @@ import org.trade.strategy.data.candle.CandleItem;
 @Stateless
 public class CandleHome {
 
+	private final static Logger _log = LoggerFactory
+			.getLogger(CandleHome.class);
+
+	private static final int BATCH_SIZE = 500;
+
+	private static final String SQL_SELECT = "select idCandle, version, startPeriod, endPeriod, open, high, low, close, vwap, volume, tradeCount, period"
+			+ " from candle where idContract = ? and idTradingDay = ? and barSize = ?";
+
+	private static final String SQL_DELETE = "delete from candle where idCandle in (";
+
+	/*
+	 * The unique key is idContract, idTradingDay, startPeriod, endPeriod.
+	 */
+	private static final String SQL_INSERT = "insert into candle (idContract, idTradingDay, barSize, startPeriod, endPeriod, open, high, low, close, vwap, volume, tradeCount, period, lastUpdateDate, version) values ";
+
+	private static final String SQL_VALUES = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+	private static final String SQL_ON_DUPLICATE = " on duplicate key update barSize = values(barSize), open = values(open), high = values(high), low = values(low), close = values(close),"
+			+ " vwap = values(vwap), volume = values(volume), tradeCount = values(tradeCount), period = values(period),"
+			+ " lastUpdateDate = values(lastUpdateDate), version = ifnull(version, 0) + 1";
+
+	private static final ZonedDateTimeConverter m_dateConverter = new ZonedDateTimeConverter();
+
 	public CandleHome() {
 
 	}
@@ -71,7 +107,10 @@ public class CandleHome {
 	 */
 	public synchronized void persistCandleSeries(final CandleSeries candleSeries)
 			throws Exception {
-		Candle transientInstance = null;
+		if (CandleSegmentStore.isEnabled()) {
+			persistCandleSeriesToStore(candleSeries);
+			return;
+		}
 		try {
 			if (candleSeries.isEmpty())
 				return;
@@ -82,25 +121,12 @@ public class CandleHome {
 			Tradingday tradingday = null;
 			Contract contract = findContractById(candleSeries.getContract()
 					.getIdContract());
+			Integer barSize = candleSeries.getBarSize();
+			LinkedHashMap<Tradingday, List<Candle>> candlesByTradingday = new LinkedHashMap<Tradingday, List<Candle>>();
 			for (int i = 0; i < candleSeries.getItemCount(); i++) {
 
 				CandleItem candleItem = (CandleItem) candleSeries
 						.getDataItem(i);
-				if (null != candleItem.getCandle().getIdCandle()) {
-					Candle instance = entityManager.find(Candle.class,
-							candleItem.getCandle().getIdCandle());
-					if (instance.equals(candleItem.getCandle())) {
-						continue;
-					} else {
-						// This should never happen.
-						throw new Exception("Count: " + i + " Symbol: "
-								+ candleSeries.getSymbol() + "candleid: "
-								+ candleItem.getCandle().getIdCandle()
-								+ " open: "
-								+ candleItem.getCandle().getStartPeriod());
-					}
-				}
-
 				if (!candleItem.getCandle().getTradingday().equals(tradingday)) {
 
 					if (null == candleItem.getCandle().getTradingday()
@@ -115,38 +141,39 @@ public class CandleHome {
 					}
 
 					if (null == tradingday) {
+						/*
+						 * Flush so the tradingday is inserted in this
+						 * transaction before the candles.
+						 */
 						entityManager.persist(candleItem.getCandle()
 								.getTradingday());
-						entityManager.getTransaction().commit();
-						entityManager.getTransaction().begin();
+						entityManager.flush();
 						tradingday = candleItem.getCandle().getTradingday();
-					} else {
-						Integer idTradingday = tradingday.getIdTradingDay();
-						Integer idContract = contract.getIdContract();
-						Integer barSize = candleSeries.getBarSize();
-						String hqlDelete = "delete Candle where idContract = :idContract and idTradingday = :idTradingday and barSize = :barSize";
-						entityManager.createQuery(hqlDelete)
-								.setParameter("idContract", idContract)
-								.setParameter("idTradingday", idTradingday)
-								.setParameter("barSize", barSize)
-								.executeUpdate();
-						entityManager.getTransaction().commit();
-						entityManager.getTransaction().begin();
 					}
+					if (!candlesByTradingday.containsKey(tradingday))
+						candlesByTradingday.put(tradingday,
+								new ArrayList<Candle>());
 				}
 
-				transientInstance = candleItem.getCandle();
+				Candle transientInstance = candleItem.getCandle();
 				transientInstance.setTradingday(tradingday);
 				transientInstance.setContract(contract);
-				entityManager.persist(transientInstance);
+				candlesByTradingday.get(tradingday).add(transientInstance);
+			}
 
-				// Commit every 50 rows
-				if ((Math.floor(i / 50d) == (i / 50d)) && (i > 0)) {
-					entityManager.getTransaction().commit();
-					entityManager.getTransaction().begin();
-				}
+			int written = 0;
+			for (Tradingday item : candlesByTradingday.keySet()) {
+				written = written
+						+ upsertCandles(entityManager,
+								contract.getIdContract(),
+								item.getIdTradingDay(), barSize,
+								candlesByTradingday.get(item));
 			}
 			entityManager.getTransaction().commit();
+			_log.debug("persistCandleSeries Symbol: "
+					+ candleSeries.getSymbol() + " barSize: " + barSize
+					+ " candles: " + candleSeries.getItemCount()
+					+ " written: " + written);
 		} catch (Exception re) {
 			EntityManagerHelper.logError("Error persistCandleSeries failed :"
 					+ re.getMessage(), re);
@@ -157,6 +184,171 @@ public class CandleHome {
 		}
 	}
 
+	/**
+	 * Method upsertCandles. Replace the stored candles for the contract,
+	 * tradingday and bar size with the candles. The stored candles are read
+	 * first and only candles that are new or whose values changed are
+	 * written, BATCH_SIZE rows to each INSERT ... ON DUPLICATE KEY UPDATE.
+	 * Stored candles that are not in the list are deleted. The candles are
+	 * given the id and version of their row.
+	 * 
+	 * @param entityManager
+	 *            EntityManager
+	 * @param idContract
+	 *            Integer
+	 * @param idTradingday
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @param candles
+	 *            List<Candle>
+	 * @return int the number of candles written.
+	 */
+	private int upsertCandles(EntityManager entityManager, Integer idContract,
+			Integer idTradingday, Integer barSize, List<Candle> candles) {
+
+		HashMap<Long, CandleRow> rows = selectCandles(entityManager,
+				idContract, idTradingday, barSize);
+		List<Candle> changed = new ArrayList<Candle>();
+		List<Integer> deleted = new ArrayList<Integer>();
+		for (Candle candle : candles) {
+			CandleRow row = rows.remove(getMillis(candle.getStartPeriod()));
+			if (null != row) {
+				if (row.isSame(candle)) {
+					candle.setIdCandle(row.idCandle);
+					candle.setVersion(row.version);
+					continue;
+				}
+				/*
+				 * A different end period is a different unique key so the
+				 * row is replaced rather than updated.
+				 */
+				if (row.endPeriod != getMillis(candle.getEndPeriod()))
+					deleted.add(row.idCandle);
+			}
+			changed.add(candle);
+		}
+		for (CandleRow row : rows.values()) {
+			deleted.add(row.idCandle);
+		}
+
+		for (int from = 0; from < deleted.size(); from = from + BATCH_SIZE) {
+			List<Integer> batch = deleted.subList(from,
+					Math.min(from + BATCH_SIZE, deleted.size()));
+			StringBuilder sql = new StringBuilder(SQL_DELETE);
+			for (int i = 0; i < batch.size(); i++) {
+				sql.append(i == 0 ? "?" : ", ?");
+			}
+			sql.append(")");
+			Query query = entityManager.createNativeQuery(sql.toString());
+			int position = 1;
+			for (Integer idCandle : batch) {
+				query.setParameter(position++, idCandle);
+			}
+			query.executeUpdate();
+		}
+
+		for (int from = 0; from < changed.size(); from = from + BATCH_SIZE) {
+			List<Candle> batch = changed.subList(from,
+					Math.min(from + BATCH_SIZE, changed.size()));
+			StringBuilder sql = new StringBuilder(SQL_INSERT);
+			for (int i = 0; i < batch.size(); i++) {
+				sql.append(i == 0 ? SQL_VALUES : ", " + SQL_VALUES);
+			}
+			sql.append(SQL_ON_DUPLICATE);
+			Query query = entityManager.createNativeQuery(sql.toString());
+			int position = 1;
+			for (Candle candle : batch) {
+				query.setParameter(position++, idContract);
+				query.setParameter(position++, idTradingday);
+				query.setParameter(position++, barSize);
+				query.setParameter(position++,
+						getTimestamp(candle.getStartPeriod()));
+				query.setParameter(position++,
+						getTimestamp(candle.getEndPeriod()));
+				query.setParameter(position++, candle.getOpen());
+				query.setParameter(position++, candle.getHigh());
+				query.setParameter(position++, candle.getLow());
+				query.setParameter(position++, candle.getClose());
+				query.setParameter(position++, candle.getVwap());
+				query.setParameter(position++, null == candle.getVolume() ? null
+						: candle.getVolume().intValue());
+				query.setParameter(position++, candle.getTradeCount());
+				query.setParameter(position++, candle.getPeriod());
+				query.setParameter(position++,
+						getTimestamp(candle.getLastUpdateDate()));
+			}
+			query.executeUpdate();
+		}
+
+		if (!changed.isEmpty()) {
+			/*
+			 * Read back the ids and versions of the rows written.
+			 */
+			rows = selectCandles(entityManager, idContract, idTradingday,
+					barSize);
+			for (Candle candle : changed) {
+				CandleRow row = rows.get(getMillis(candle.getStartPeriod()));
+				if (null != row) {
+					candle.setIdCandle(row.idCandle);
+					candle.setVersion(row.version);
+				}
+			}
+		}
+		return changed.size();
+	}
+
+	/**
+	 * Method selectCandles.
+	 * 
+	 * @param entityManager
+	 *            EntityManager
+	 * @param idContract
+	 *            Integer
+	 * @param idTradingday
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @return HashMap<Long, CandleRow> the stored candles by start period.
+	 */
+	private HashMap<Long, CandleRow> selectCandles(
+			EntityManager entityManager, Integer idContract,
+			Integer idTradingday, Integer barSize) {
+		HashMap<Long, CandleRow> rows = new HashMap<Long, CandleRow>();
+		Query query = entityManager.createNativeQuery(SQL_SELECT);
+		query.setParameter(1, idContract);
+		query.setParameter(2, idTradingday);
+		query.setParameter(3, barSize);
+		for (Object item : query.getResultList()) {
+			CandleRow row = new CandleRow((Object[]) item);
+			rows.put(row.startPeriod, row);
+		}
+		return rows;
+	}
+
+	/**
+	 * Method getTimestamp.
+	 * 
+	 * @param date
+	 *            ZonedDateTime
+	 * @return Timestamp
+	 */
+	private static Timestamp getTimestamp(ZonedDateTime date) {
+		Date value = m_dateConverter.convertToDatabaseColumn(date);
+		return null == value ? null : new Timestamp(value.getTime());
+	}
+
+	/**
+	 * Method getMillis.
+	 * 
+	 * @param date
+	 *            ZonedDateTime
+	 * @return long
+	 */
+	private static long getMillis(ZonedDateTime date) {
+		return null == date ? Long.MIN_VALUE : date.toInstant().toEpochMilli();
+	}
+
 	/**
 	 * Method findByContractAndDateRange.
 	 * 
@@ -170,6 +362,17 @@ public class CandleHome {
 	 */
 	public List<Candle> findByContractAndDateRange(Integer idContract,
 			ZonedDateTime startPeriod, ZonedDateTime endPeriod, Integer barSize) {
+		if (CandleSegmentStore.isEnabled()) {
+			try {
+				Contract contract = getContract(idContract);
+				if (null == contract)
+					return new ArrayList<Candle>(0);
+				return CandleSegmentStore.findByPeriod(contract, startPeriod,
+						endPeriod, barSize);
+			} catch (IOException ex) {
+				throw new PersistenceException(ex.getMessage(), ex);
+			}
+		}
 
 		try {
 			EntityManager entityManager = EntityManagerHelper
@@ -233,6 +436,17 @@ public class CandleHome {
 	public List<Candle> findCandlesByContractDateRangeBarSize(
 			Integer idContract, ZonedDateTime startOpenDate,
 			ZonedDateTime endOpenDate, Integer barSize) {
+		if (CandleSegmentStore.isEnabled()) {
+			try {
+				Contract contract = getContract(idContract);
+				if (null == contract)
+					return new ArrayList<Candle>(0);
+				return CandleSegmentStore.findByTradingdayOpen(contract,
+						startOpenDate, endOpenDate, barSize);
+			} catch (IOException ex) {
+				throw new PersistenceException(ex.getMessage(), ex);
+			}
+		}
 
 		try {
 			EntityManager entityManager = EntityManagerHelper
@@ -323,6 +537,24 @@ public class CandleHome {
 	 */
 	public Candle findByUniqueKey(Integer idTradingday, Integer idContract,
 			ZonedDateTime startPeriod, ZonedDateTime endPeriod, Integer barSize) {
+		if (CandleSegmentStore.isEnabled()) {
+			try {
+				Contract contract = getContract(idContract);
+				if (null == contract || null == startPeriod)
+					return null;
+				Candle candle = CandleSegmentStore.findByStartPeriod(contract,
+						startPeriod, barSize);
+				if (null != candle
+						&& (null == endPeriod || endPeriod.equals(candle
+								.getEndPeriod()))
+						&& (null == idTradingday || idTradingday.equals(candle
+								.getTradingday().getIdTradingDay())))
+					return candle;
+				return null;
+			} catch (IOException ex) {
+				throw new PersistenceException(ex.getMessage(), ex);
+			}
+		}
 
 		try {
 			EntityManager entityManager = EntityManagerHelper
@@ -387,6 +619,13 @@ public class CandleHome {
 	 * @return Long
 	 */
 	public Long findCandleCount(Integer idTradingday, Integer idContract) {
+		if (CandleSegmentStore.isEnabled()) {
+			try {
+				return CandleSegmentStore.count(idContract, idTradingday);
+			} catch (IOException ex) {
+				throw new PersistenceException(ex.getMessage(), ex);
+			}
+		}
 
 		try {
 			EntityManager entityManager = EntityManagerHelper
@@ -430,6 +669,114 @@ public class CandleHome {
 		}
 	}
 
+	/**
+	 * Method persistCandle. Write one candle to the CandleSegmentStore
+	 * replacing any candle with the same start period. The tradingday must
+	 * have been persisted.
+	 * 
+	 * @param candle
+	 *            Candle
+	 * @return Candle
+	 * @throws IOException
+	 */
+	public Candle persistCandle(final Candle candle) throws IOException {
+		List<Candle> candles = new ArrayList<Candle>(1);
+		candles.add(candle);
+		CandleSegmentStore.write(candle.getContract().getIdContract(),
+				candle.getBarSize(), candles, false);
+		candle.setDirty(false);
+		return candle;
+	}
+
+	/**
+	 * Method persistCandleSeriesToStore. Write the candles to the
+	 * CandleSegmentStore, the candles for each tradingday in the series replace
+	 * those stored. The tradingdays are persisted to the database if they do
+	 * not exist.
+	 * 
+	 * @param candleSeries
+	 *            CandleSeries
+	 * @throws Exception
+	 */
+	private void persistCandleSeriesToStore(final CandleSeries candleSeries)
+			throws Exception {
+		if (candleSeries.isEmpty())
+			return;
+		List<Candle> candles = new ArrayList<Candle>(
+				candleSeries.getItemCount());
+		try {
+			EntityManager entityManager = EntityManagerHelper
+					.getEntityManager();
+			entityManager.getTransaction().begin();
+			Tradingday tradingday = null;
+			Contract contract = findContractById(candleSeries.getContract()
+					.getIdContract());
+			for (int i = 0; i < candleSeries.getItemCount(); i++) {
+
+				CandleItem candleItem = (CandleItem) candleSeries
+						.getDataItem(i);
+				if (!candleItem.getCandle().getTradingday().equals(tradingday)) {
+					if (null == candleItem.getCandle().getTradingday()
+							.getIdTradingDay()) {
+						tradingday = findTradingdayByDate(candleItem
+								.getCandle().getTradingday().getOpen(),
+								candleItem.getCandle().getTradingday()
+										.getClose());
+					} else {
+						tradingday = findTradingdayById(candleItem.getCandle()
+								.getTradingday().getIdTradingDay());
+					}
+					if (null == tradingday) {
+						entityManager.persist(candleItem.getCandle()
+								.getTradingday());
+						entityManager.getTransaction().commit();
+						entityManager.getTransaction().begin();
+						tradingday = candleItem.getCandle().getTradingday();
+					}
+				}
+				candleItem.getCandle().setTradingday(tradingday);
+				candleItem.getCandle().setContract(contract);
+				candles.add(candleItem.getCandle());
+			}
+			entityManager.getTransaction().commit();
+		} catch (Exception re) {
+			EntityManagerHelper.logError("Error persistCandleSeries failed :"
+					+ re.getMessage(), re);
+			EntityManagerHelper.rollback();
+			throw re;
+		} finally {
+			EntityManagerHelper.close();
+		}
+		CandleSegmentStore.write(candleSeries.getContract().getIdContract(),
+				candleSeries.getBarSize(), candles, true);
+	}
+
+	/**
+	 * Method getContract.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 * @return Contract null if the idContract is null or not found.
+	 */
+	private Contract getContract(Integer idContract) {
+
+		if (null == idContract)
+			return null;
+		try {
+			EntityManager entityManager = EntityManagerHelper
+					.getEntityManager();
+			entityManager.getTransaction().begin();
+			Contract instance = entityManager.find(Contract.class, idContract);
+			entityManager.getTransaction().commit();
+			return instance;
+		} catch (Exception re) {
+			EntityManagerHelper.rollback();
+			throw re;
+		} finally {
+			EntityManagerHelper.close();
+		}
+	}
+
 	/**
 	 * Method findContractById.
 	 * 
@@ -504,4 +851,81 @@ public class CandleHome {
 			throw re;
 		}
 	}
+
+	/**
+	 * A stored candle row used to find the candles that changed.
+	 */
+	private static final class CandleRow {
+
+		private final Integer idCandle;
+		private final Integer version;
+		private final long startPeriod;
+		private final long endPeriod;
+		private final BigDecimal open;
+		private final BigDecimal high;
+		private final BigDecimal low;
+		private final BigDecimal close;
+		private final BigDecimal vwap;
+		private final Integer volume;
+		private final Integer tradeCount;
+		private final String period;
+
+		/**
+		 * Constructor for CandleRow.
+		 * 
+		 * @param columns
+		 *            Object[] the SQL_SELECT columns.
+		 */
+		private CandleRow(Object[] columns) {
+			this.idCandle = ((Number) columns[0]).intValue();
+			this.version = getInteger(columns[1]);
+			this.startPeriod = null == columns[2] ? Long.MIN_VALUE
+					: ((Date) columns[2]).getTime();
+			this.endPeriod = null == columns[3] ? Long.MIN_VALUE
+					: ((Date) columns[3]).getTime();
+			this.open = (BigDecimal) columns[4];
+			this.high = (BigDecimal) columns[5];
+			this.low = (BigDecimal) columns[6];
+			this.close = (BigDecimal) columns[7];
+			this.vwap = (BigDecimal) columns[8];
+			this.volume = getInteger(columns[9]);
+			this.tradeCount = getInteger(columns[10]);
+			this.period = (String) columns[11];
+		}
+
+		private static Integer getInteger(Object value) {
+			return null == value ? null : ((Number) value).intValue();
+		}
+
+		/**
+		 * Method isSame.
+		 * 
+		 * @param candle
+		 *            Candle
+		 * @return boolean true if the candle would be stored as this row.
+		 *         Prices are compared at the scale of the column.
+		 */
+		private boolean isSame(Candle candle) {
+			return this.endPeriod == getMillis(candle.getEndPeriod())
+					&& isSame(this.open, candle.getOpen())
+					&& isSame(this.high, candle.getHigh())
+					&& isSame(this.low, candle.getLow())
+					&& isSame(this.close, candle.getClose())
+					&& isSame(this.vwap, candle.getVwap())
+					&& CoreUtils.nullSafeComparator(this.volume,
+							null == candle.getVolume() ? null : candle
+									.getVolume().intValue()) == 0
+					&& CoreUtils.nullSafeComparator(this.tradeCount,
+							candle.getTradeCount()) == 0
+					&& CoreUtils.nullSafeComparator(this.period,
+							candle.getPeriod()) == 0;
+		}
+
+		private static boolean isSame(BigDecimal stored, BigDecimal value) {
+			if (null == stored || null == value)
+				return stored == value;
+			return stored.compareTo(value.setScale(stored.scale(),
+					RoundingMode.HALF_UP)) == 0;
+		}
+	}
 }
@@ -0,0 +1,1231 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.properties.ConfigProperties;
+import org.trade.core.util.TradingCalendar;
+
+/**
+ * A candle store of memory mapped segment files that can be used in place of
+ * the candle table. There is one segment per contract and bar size i.e.
+ * dir/idContract/barSize-generation.seg under the config.properties
+ * trade.candle.store.dir, if this is blank the candle table is used.
+ * 
+ * A segment is a header followed by fixed width records of primitive values
+ * in start period order. Prices are held as the unscaled long value and
+ * scale. Every INDEX_INTERVAL record start period is held in a sparse index
+ * so a range read is a binary search of the index and a scan of the mapped
+ * records from there.
+ * 
+ * Writes of candles after the last record are appended past the committed
+ * count and the records are forced to disk before the header count is
+ * bumped, records that have been published are never overwritten. A write
+ * that only replaces candles with the same start period i.e. an update of
+ * the current bar, and any candles after it, are appended as patch records
+ * after the records. A view holds an overlay of the patch records over the
+ * records they replace, a reader with an earlier view does not see them.
+ * Any other write i.e. a tradingday being reloaded or a back fill of earlier
+ * tradingdays compacts the records and patches into a new generation file.
+ * The replaced records are dropped then, or when the segment is opened if
+ * there are more patches than records.
+ * 
+ * An update of the forming bar i.e. the last candle is not forced to disk,
+ * it is rewritten on every tick. The next write that is forced or closing
+ * the segment forces it, a patch that did not reach the disk is zero filled
+ * and the patches are read up to it when the segment is opened.
+ * 
+ * Readers use an immutable view of the mapped records, patches and index so
+ * they never wait for a writer. The tradingday table remains the system of
+ * record for tradingdays and the candles carry the tradingday id, open and
+ * close. The candle id and version are kept if the candle had them.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleSegmentStore {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(CandleSegmentStore.class);
+
+	private static final int MAGIC = 0x544D4353;
+	private static final int FORMAT = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int RECORD_SIZE = 112;
+	private static final int INDEX_INTERVAL = 64;
+	private static final String SUFFIX = ".seg";
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+	private static final long NULL_TIME = Long.MIN_VALUE;
+	private static final int NULL_INT = Integer.MIN_VALUE;
+	private static final byte NULL_SCALE = -1;
+
+	/*
+	 * Record layout.
+	 */
+	private static final int START = 0;
+	private static final int END = 8;
+	private static final int LAST_UPDATE = 16;
+	private static final int TRADINGDAY_OPEN = 24;
+	private static final int TRADINGDAY_CLOSE = 32;
+	private static final int ID_TRADINGDAY = 40;
+	private static final int ID_CANDLE = 44;
+	private static final int VERSION = 48;
+	private static final int TRADE_COUNT = 52;
+	private static final int VOLUME = 56;
+	private static final int OPEN = 64;
+	private static final int HIGH = 72;
+	private static final int LOW = 80;
+	private static final int CLOSE = 88;
+	private static final int VWAP = 96;
+	private static final int SCALES = 104;
+
+	private static final Comparator<byte[]> START_ORDER = new Comparator<byte[]>() {
+		public int compare(byte[] o1, byte[] o2) {
+			return Long.compare(ByteBuffer.wrap(o1).getLong(START), ByteBuffer
+					.wrap(o2).getLong(START));
+		}
+	};
+
+	private static final ConcurrentHashMap<String, Segment> m_segments = new ConcurrentHashMap<String, Segment>();
+
+	private static File _storeDir = null;
+
+	/*
+	 * Initialize the store dir form the properties file. If no value is found
+	 * the candle table is used.
+	 */
+	static {
+		try {
+			String dir = ConfigProperties
+					.getPropAsString("trade.candle.store.dir");
+			if (null != dir && dir.trim().length() > 0)
+				_storeDir = new File(dir.trim());
+		} catch (Exception ex) {
+			_log.warn("Property trade.candle.store.dir not set in config.properties the candle table will be used.");
+		}
+	}
+
+	/**
+	 * Constructor for CandleSegmentStore.
+	 */
+	private CandleSegmentStore() {
+	}
+
+	/**
+	 * Method isEnabled.
+	 * 
+	 * @return boolean true if the store dir is set.
+	 */
+	public static boolean isEnabled() {
+		return null != _storeDir;
+	}
+
+	/**
+	 * Method findByTradingdayOpen.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @param startOpenDate
+	 *            ZonedDateTime
+	 * @param endOpenDate
+	 *            ZonedDateTime
+	 * @param barSize
+	 *            Integer
+	 * @return List<Candle> the candles whose tradingday opens between the
+	 *         start and end date in start period order.
+	 * @throws IOException
+	 */
+	public static List<Candle> findByTradingdayOpen(Contract contract,
+			ZonedDateTime startOpenDate, ZonedDateTime endOpenDate,
+			Integer barSize) throws IOException {
+		long start = toMillis(startOpenDate);
+		long end = toMillis(endOpenDate);
+		List<Candle> candles = new ArrayList<Candle>();
+		for (Segment segment : getSegments(contract.getIdContract(), barSize)) {
+			View view = segment.getView();
+			HashMap<Long, Tradingday> tradingdays = new HashMap<Long, Tradingday>();
+			for (int i = view.lowerBound(start - DAY_MILLIS); i < view.count; i++) {
+				if (view.getStart(i) > end + (2 * DAY_MILLIS))
+					break;
+				long open = view.getTradingdayOpen(i);
+				if (open >= start && open <= end)
+					candles.add(view.getCandle(i, contract, segment.barSize,
+							tradingdays));
+			}
+		}
+		if (null == barSize)
+			sortByStartPeriod(candles);
+		return candles;
+	}
+
+	/**
+	 * Method findByPeriod.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @param startPeriod
+	 *            ZonedDateTime
+	 * @param endPeriod
+	 *            ZonedDateTime
+	 * @param barSize
+	 *            Integer
+	 * @return List<Candle> the candles that start on or after the start
+	 *         period and end on or before the end period.
+	 * @throws IOException
+	 */
+	public static List<Candle> findByPeriod(Contract contract,
+			ZonedDateTime startPeriod, ZonedDateTime endPeriod, Integer barSize)
+			throws IOException {
+		long start = (null == startPeriod ? Long.MIN_VALUE
+				: toMillis(startPeriod));
+		long end = (null == endPeriod ? Long.MAX_VALUE : toMillis(endPeriod));
+		List<Candle> candles = new ArrayList<Candle>();
+		for (Segment segment : getSegments(contract.getIdContract(), barSize)) {
+			View view = segment.getView();
+			HashMap<Long, Tradingday> tradingdays = new HashMap<Long, Tradingday>();
+			for (int i = view.lowerBound(start); i < view.count; i++) {
+				if (view.getStart(i) > end)
+					break;
+				if (view.getEnd(i) <= end)
+					candles.add(view.getCandle(i, contract, segment.barSize,
+							tradingdays));
+			}
+		}
+		if (null == barSize)
+			sortByStartPeriod(candles);
+		return candles;
+	}
+
+	/**
+	 * Method findByStartPeriod.
+	 * 
+	 * @param contract
+	 *            Contract
+	 * @param startPeriod
+	 *            ZonedDateTime
+	 * @param barSize
+	 *            Integer
+	 * @return Candle the candle that starts at the start period or null.
+	 * @throws IOException
+	 */
+	public static Candle findByStartPeriod(Contract contract,
+			ZonedDateTime startPeriod, Integer barSize) throws IOException {
+		long start = toMillis(startPeriod);
+		for (Segment segment : getSegments(contract.getIdContract(), barSize)) {
+			View view = segment.getView();
+			int i = view.lowerBound(start);
+			if (i < view.count && view.getStart(i) == start)
+				return view.getCandle(i, contract, segment.barSize,
+						new HashMap<Long, Tradingday>());
+		}
+		return null;
+	}
+
+	/**
+	 * Method count.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 * @param idTradingday
+	 *            Integer
+	 * @return long the number of candles for the contract and tradingday
+	 *         across all bar sizes.
+	 * @throws IOException
+	 */
+	public static long count(Integer idContract, Integer idTradingday)
+			throws IOException {
+		long count = 0;
+		for (Segment segment : getSegments(idContract, null)) {
+			View view = segment.getView();
+			if (null == idTradingday) {
+				count = count + view.count;
+				continue;
+			}
+			Integer days = view.days.get(idTradingday);
+			if (null != days)
+				count = count + days;
+		}
+		return count;
+	}
+
+	/**
+	 * Method write. Write the candles for one contract and bar size.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @param candles
+	 *            List<Candle>
+	 * @param replaceTradingdays
+	 *            boolean if true all the stored candles for the tradingdays
+	 *            of the candles are replaced, otherwise only the candles with
+	 *            the same start period are replaced.
+	 * @throws IOException
+	 */
+	public static void write(Integer idContract, Integer barSize,
+			List<Candle> candles, boolean replaceTradingdays)
+			throws IOException {
+		if (candles.isEmpty())
+			return;
+		List<byte[]> records = new ArrayList<byte[]>(candles.size());
+		for (Candle candle : candles) {
+			records.add(encode(candle));
+		}
+		Collections.sort(records, START_ORDER);
+		getSegment(idContract, barSize).write(records, replaceTradingdays);
+	}
+
+	/**
+	 * Method setStoreDir. Close the open segments and use the dir, null to use
+	 * the candle table.
+	 * 
+	 * @param dir
+	 *            File
+	 */
+	static void setStoreDir(File dir) {
+		close();
+		_storeDir = dir;
+	}
+
+	/**
+	 * Method getForceCount.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @return int the number of times the open segment has been forced to
+	 *         disk.
+	 * @throws IOException
+	 */
+	static int getForceCount(Integer idContract, Integer barSize)
+			throws IOException {
+		return getSegment(idContract, barSize).forces;
+	}
+
+	/**
+	 * Method close. Close all the open segments.
+	 */
+	public static void close() {
+		for (Segment segment : m_segments.values()) {
+			segment.close();
+		}
+		m_segments.clear();
+	}
+
+	/**
+	 * Method getSegments.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 * @param barSize
+	 *            Integer null for all bar sizes.
+	 * @return List<Segment> the existing segments.
+	 * @throws IOException
+	 */
+	private static List<Segment> getSegments(Integer idContract,
+			Integer barSize) throws IOException {
+		List<Segment> segments = new ArrayList<Segment>(1);
+		if (null != barSize) {
+			if (Segment.exists(idContract, barSize))
+				segments.add(getSegment(idContract, barSize));
+		} else {
+			File[] files = new File(_storeDir, String.valueOf(idContract))
+					.listFiles();
+			if (null != files) {
+				Set<Integer> barSizes = new HashSet<Integer>();
+				for (File file : files) {
+					String name = file.getName();
+					if (name.endsWith(SUFFIX) && name.indexOf('-') > 0)
+						barSizes.add(Integer.valueOf(name.substring(0,
+								name.indexOf('-'))));
+				}
+				for (Integer size : barSizes) {
+					segments.add(getSegment(idContract, size));
+				}
+			}
+		}
+		return segments;
+	}
+
+	/**
+	 * Method getSegment. Open the segment for the contract and bar size,
+	 * creating it if it does not exist.
+	 * 
+	 * @param idContract
+	 *            Integer
+	 * @param barSize
+	 *            Integer
+	 * @return Segment
+	 * @throws IOException
+	 */
+	private static Segment getSegment(Integer idContract, Integer barSize)
+			throws IOException {
+		String key = idContract + "/" + barSize;
+		Segment segment = m_segments.get(key);
+		if (null == segment) {
+			synchronized (m_segments) {
+				segment = m_segments.get(key);
+				if (null == segment) {
+					segment = new Segment(idContract, barSize);
+					m_segments.put(key, segment);
+				}
+			}
+		}
+		return segment;
+	}
+
+	/**
+	 * Method encode.
+	 * 
+	 * @param candle
+	 *            Candle
+	 * @return byte[] the fixed width record.
+	 * @throws IOException
+	 */
+	private static byte[] encode(Candle candle) throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		record.putLong(START, toMillis(candle.getStartPeriod()));
+		record.putLong(END, toMillis(candle.getEndPeriod()));
+		record.putLong(LAST_UPDATE, toMillis(candle.getLastUpdateDate()));
+		Tradingday tradingday = candle.getTradingday();
+		record.putLong(TRADINGDAY_OPEN, toMillis(tradingday.getOpen()));
+		record.putLong(TRADINGDAY_CLOSE, toMillis(tradingday.getClose()));
+		record.putInt(ID_TRADINGDAY, toInt(tradingday.getIdTradingDay()));
+		record.putInt(ID_CANDLE, toInt(candle.getIdCandle()));
+		record.putInt(VERSION, toInt(candle.getVersion()));
+		record.putInt(TRADE_COUNT, toInt(candle.getTradeCount()));
+		record.putLong(VOLUME,
+				null == candle.getVolume() ? 0 : candle.getVolume());
+		putPrice(record, OPEN, 0, candle.getOpen());
+		putPrice(record, HIGH, 1, candle.getHigh());
+		putPrice(record, LOW, 2, candle.getLow());
+		putPrice(record, CLOSE, 3, candle.getClose());
+		putPrice(record, VWAP, 4, candle.getVwap());
+		return record.array();
+	}
+
+	/**
+	 * Method putPrice.
+	 * 
+	 * @param record
+	 *            ByteBuffer
+	 * @param offset
+	 *            int
+	 * @param scaleIndex
+	 *            int
+	 * @param price
+	 *            BigDecimal
+	 * @throws IOException
+	 *             if the price does not fit a long and byte scale.
+	 */
+	private static void putPrice(ByteBuffer record, int offset,
+			int scaleIndex, BigDecimal price) throws IOException {
+		if (null == price) {
+			record.put(SCALES + scaleIndex, NULL_SCALE);
+			return;
+		}
+		BigInteger unscaled = price.unscaledValue();
+		if (unscaled.bitLength() > 63 || price.scale() < 0
+				|| price.scale() > Byte.MAX_VALUE)
+			throw new IOException("Price cannot be stored: " + price);
+		record.putLong(offset, unscaled.longValue());
+		record.put(SCALES + scaleIndex, (byte) price.scale());
+	}
+
+	/**
+	 * Method sortByStartPeriod.
+	 * 
+	 * @param candles
+	 *            List<Candle>
+	 */
+	private static void sortByStartPeriod(List<Candle> candles) {
+		Collections.sort(candles, new Comparator<Candle>() {
+			public int compare(Candle o1, Candle o2) {
+				return o1.getStartPeriod().compareTo(o2.getStartPeriod());
+			}
+		});
+	}
+
+	/**
+	 * Method toMillis.
+	 * 
+	 * @param date
+	 *            ZonedDateTime
+	 * @return long Long.MIN_VALUE if the date is null.
+	 */
+	private static long toMillis(ZonedDateTime date) {
+		return null == date ? NULL_TIME : TradingCalendar
+				.geMillisFromZonedDateTime(date);
+	}
+
+	/**
+	 * Method toDate.
+	 * 
+	 * @param millis
+	 *            long
+	 * @return ZonedDateTime null if the millis is Long.MIN_VALUE.
+	 */
+	private static ZonedDateTime toDate(long millis) {
+		return millis == NULL_TIME ? null : TradingCalendar
+				.getZonedDateTimeFromMilli(millis);
+	}
+
+	/**
+	 * Method toInt.
+	 * 
+	 * @param value
+	 *            Integer
+	 * @return int Integer.MIN_VALUE if the value is null.
+	 */
+	private static int toInt(Integer value) {
+		return null == value ? NULL_INT : value;
+	}
+
+	/**
+	 * Method toInteger.
+	 * 
+	 * @param value
+	 *            int
+	 * @return Integer null if the value is Integer.MIN_VALUE.
+	 */
+	private static Integer toInteger(int value) {
+		return value == NULL_INT ? null : value;
+	}
+
+	/**
+	 * An immutable view of the records in a segment and the sparse index of
+	 * their start periods. The patch records replace records with the same
+	 * start period or follow the last record, the view is indexed in start
+	 * period order across both. The number of candles for each tradingday id
+	 * is kept with the view so a count does not scan the records.
+	 */
+	private static final class View {
+
+		private final ByteBuffer buffer;
+		private final int count;
+		private final int records;
+		private final int patches;
+		private final long[] index;
+		private final HashMap<Integer, Integer> replaced;
+		private final int[] extras;
+		private final HashMap<Integer, Integer> days;
+
+		/**
+		 * Constructor for View.
+		 * 
+		 * @param buffer
+		 *            ByteBuffer the mapped records and patches.
+		 * @param records
+		 *            int the number of records.
+		 * @param patches
+		 *            int the number of patch records after the records.
+		 * @param index
+		 *            long[] the sparse index of the records.
+		 * @param replaced
+		 *            HashMap<Integer, Integer> the patch that replaces a
+		 *            record.
+		 * @param extras
+		 *            int[] the patches after the last record in start period
+		 *            order.
+		 * @param days
+		 *            HashMap<Integer, Integer> the number of candles for each
+		 *            tradingday id.
+		 */
+		private View(ByteBuffer buffer, int records, int patches,
+				long[] index, HashMap<Integer, Integer> replaced,
+				int[] extras, HashMap<Integer, Integer> days) {
+			this.buffer = buffer;
+			this.count = records + extras.length;
+			this.records = records;
+			this.patches = patches;
+			this.index = index;
+			this.replaced = replaced;
+			this.extras = extras;
+			this.days = days;
+		}
+
+		private int offset(int i) {
+			int record = i;
+			if (i >= this.records) {
+				record = this.extras[i - this.records];
+			} else if (!this.replaced.isEmpty()) {
+				Integer patch = this.replaced.get(i);
+				if (null != patch)
+					record = patch;
+			}
+			return HEADER_SIZE + (record * RECORD_SIZE);
+		}
+
+		private long getStart(int i) {
+			return this.buffer.getLong(offset(i) + START);
+		}
+
+		private long getEnd(int i) {
+			return this.buffer.getLong(offset(i) + END);
+		}
+
+		private long getTradingdayOpen(int i) {
+			return this.buffer.getLong(offset(i) + TRADINGDAY_OPEN);
+		}
+
+		private byte[] getRecord(int i) {
+			byte[] record = new byte[RECORD_SIZE];
+			ByteBuffer slice = this.buffer.duplicate();
+			slice.position(offset(i));
+			slice.get(record);
+			return record;
+		}
+
+		/**
+		 * Method lowerBound.
+		 * 
+		 * @param start
+		 *            long
+		 * @return int the first record that starts on or after the start.
+		 */
+		private int lowerBound(long start) {
+			if (this.records < this.count
+					&& (this.records == 0 || start > getStart(this.records - 1))) {
+				int low = this.records;
+				int high = this.count;
+				while (low < high) {
+					int mid = (low + high) >>> 1;
+					if (getStart(mid) < start) {
+						low = mid + 1;
+					} else {
+						high = mid;
+					}
+				}
+				return low;
+			}
+			int block = Arrays.binarySearch(this.index, start);
+			if (block < 0)
+				block = -block - 2;
+			int i = Math.max(0, block) * INDEX_INTERVAL;
+			while (i < this.count && getStart(i) < start)
+				i++;
+			return i;
+		}
+
+		/**
+		 * Method getCandle.
+		 * 
+		 * @param i
+		 *            int
+		 * @param contract
+		 *            Contract
+		 * @param barSize
+		 *            Integer
+		 * @param tradingdays
+		 *            HashMap<Long, Tradingday> the tradingdays already
+		 *            created for this read.
+		 * @return Candle
+		 */
+		private Candle getCandle(int i, Contract contract, Integer barSize,
+				HashMap<Long, Tradingday> tradingdays) {
+			int offset = offset(i);
+			long open = this.buffer.getLong(offset + TRADINGDAY_OPEN);
+			Tradingday tradingday = tradingdays.get(open);
+			if (null == tradingday) {
+				tradingday = new Tradingday(toDate(open), toDate(this.buffer
+						.getLong(offset + TRADINGDAY_CLOSE)));
+				tradingday.setIdTradingDay(toInteger(this.buffer
+						.getInt(offset + ID_TRADINGDAY)));
+				tradingday.setDirty(false);
+				tradingdays.put(open, tradingday);
+			}
+			Candle candle = new Candle();
+			candle.setContract(contract);
+			candle.setTradingday(tradingday);
+			candle.setBarSize(barSize);
+			candle.setIdCandle(toInteger(this.buffer.getInt(offset + ID_CANDLE)));
+			candle.setVersion(toInteger(this.buffer.getInt(offset + VERSION)));
+			candle.setStartPeriod(toDate(this.buffer.getLong(offset + START)));
+			candle.setEndPeriod(toDate(this.buffer.getLong(offset + END)));
+			candle.setLastUpdateDate(toDate(this.buffer.getLong(offset
+					+ LAST_UPDATE)));
+			candle.setTradeCount(toInteger(this.buffer.getInt(offset
+					+ TRADE_COUNT)));
+			candle.setVolume(this.buffer.getLong(offset + VOLUME));
+			candle.setOpen(getPrice(offset, OPEN, 0));
+			candle.setHigh(getPrice(offset, HIGH, 1));
+			candle.setLow(getPrice(offset, LOW, 2));
+			candle.setClose(getPrice(offset, CLOSE, 3));
+			candle.setVwap(getPrice(offset, VWAP, 4));
+			candle.setDirty(false);
+			return candle;
+		}
+
+		private BigDecimal getPrice(int offset, int field, int scaleIndex) {
+			byte scale = this.buffer.get(offset + SCALES + scaleIndex);
+			if (scale == NULL_SCALE)
+				return null;
+			return BigDecimal.valueOf(this.buffer.getLong(offset + field),
+					scale);
+		}
+	}
+
+	/**
+	 * The segment file for one contract and bar size. Writes are serialized
+	 * on the segment, reads use the current view.
+	 */
+	private static final class Segment {
+
+		private final Integer idContract;
+		private final Integer barSize;
+		private int generation = 0;
+		private FileChannel channel = null;
+		private volatile View view = null;
+		private boolean unforced = false;
+		private int forces = 0;
+
+		/**
+		 * Method exists.
+		 * 
+		 * @param idContract
+		 *            Integer
+		 * @param barSize
+		 *            Integer
+		 * @return boolean true if a segment file exists or is open.
+		 */
+		private static boolean exists(Integer idContract, Integer barSize) {
+			if (m_segments.containsKey(idContract + "/" + barSize))
+				return true;
+			return findGeneration(idContract, barSize) >= 0;
+		}
+
+		/**
+		 * Method findGeneration.
+		 * 
+		 * @param idContract
+		 *            Integer
+		 * @param barSize
+		 *            Integer
+		 * @return int the latest generation on disk or -1.
+		 */
+		private static int findGeneration(Integer idContract, Integer barSize) {
+			int generation = -1;
+			File[] files = new File(_storeDir, String.valueOf(idContract))
+					.listFiles();
+			if (null != files) {
+				String prefix = barSize + "-";
+				for (File file : files) {
+					String name = file.getName();
+					if (name.startsWith(prefix) && name.endsWith(SUFFIX)) {
+						try {
+							generation = Math.max(generation, Integer
+									.parseInt(name.substring(prefix.length(),
+											name.length() - SUFFIX.length())));
+						} catch (NumberFormatException ex) {
+							// Not a segment file.
+						}
+					}
+				}
+			}
+			return generation;
+		}
+
+		private Segment(Integer idContract, Integer barSize) throws IOException {
+			this.idContract = idContract;
+			this.barSize = barSize;
+			this.generation = Math.max(0, findGeneration(idContract, barSize));
+			open(getFile(this.generation));
+			removeOldGenerations();
+		}
+
+		private File getFile(int generation) {
+			return new File(new File(_storeDir, String.valueOf(idContract)),
+					barSize + "-" + generation + SUFFIX);
+		}
+
+		private View getView() {
+			return this.view;
+		}
+
+		/**
+		 * Method open. Open the segment file, writing the header if it is
+		 * new, and map the records and patches. If there are more patches
+		 * than records the segment is compacted.
+		 * 
+		 * @param file
+		 *            File
+		 * @throws IOException
+		 */
+		private void open(File file) throws IOException {
+			File dir = file.getParentFile();
+			if (!dir.exists() && !dir.mkdirs() && !dir.exists())
+				throw new IOException("Could not create dir: " + dir);
+			this.channel = FileChannel.open(file.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			int count = 0;
+			int patches = 0;
+			if (this.channel.size() < HEADER_SIZE) {
+				writeHeader(0, 0, true);
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				this.channel.read(header, 0);
+				if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT
+						|| header.getInt(8) != RECORD_SIZE)
+					throw new IOException("Not a candle segment file: " + file);
+				count = header.getInt(12);
+				patches = header.getInt(16);
+				/*
+				 * A write that did not complete leaves records past the
+				 * count and patches, these are ignored and overwritten.
+				 */
+				long size = (this.channel.size() - HEADER_SIZE) / RECORD_SIZE;
+				count = (int) Math.min(count, size);
+				patches = (int) Math.max(0, Math.min(patches, size - count));
+				patches = countWritten(count, patches);
+			}
+			this.view = map(count, patches, null);
+			if (patches > count)
+				compact(this.view, new ArrayList<byte[]>(),
+						new HashSet<Long>(), START);
+		}
+
+		/**
+		 * Method countWritten. A forming bar update that was not forced may
+		 * have reached the disk after the header, the patches end at the
+		 * first one that is zero filled.
+		 * 
+		 * @param count
+		 *            int the number of records.
+		 * @param patches
+		 *            int the number of patch records in the header.
+		 * @return int the number of patch records that were written.
+		 * @throws IOException
+		 */
+		private int countWritten(int count, int patches) throws IOException {
+			ByteBuffer times = ByteBuffer.allocate(LAST_UPDATE);
+			for (int patch = 0; patch < patches; patch++) {
+				times.clear();
+				this.channel.read(times, HEADER_SIZE
+						+ ((long) (count + patch) * RECORD_SIZE));
+				if (times.getLong(START) == 0 && times.getLong(END) == 0)
+					return patch;
+			}
+			return patches;
+		}
+
+		/**
+		 * Method map. Map the records and patches, build the sparse index of
+		 * the records and lay the patches over the records they replace.
+		 * 
+		 * @param count
+		 *            int the number of records.
+		 * @param patches
+		 *            int the number of patch records after the records.
+		 * @param view
+		 *            View the view of fewer records or of the same records
+		 *            with fewer patches or null.
+		 * @return View
+		 * @throws IOException
+		 */
+		private View map(int count, int patches, View view) throws IOException {
+			ByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_ONLY,
+					0, HEADER_SIZE + ((long) (count + patches) * RECORD_SIZE));
+			int blocks = (count + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+			long[] index = new long[blocks];
+			int block = 0;
+			if (null != view) {
+				block = Math.min(view.records / INDEX_INTERVAL,
+						view.index.length);
+				System.arraycopy(view.index, 0, index, 0,
+						Math.min(block, blocks));
+			}
+			for (; block < blocks; block++) {
+				index[block] = buffer.getLong(HEADER_SIZE
+						+ (block * INDEX_INTERVAL * RECORD_SIZE) + START);
+			}
+			HashMap<Integer, Integer> replaced = new HashMap<Integer, Integer>();
+			List<Integer> extras = new ArrayList<Integer>();
+			HashMap<Integer, Integer> days = new HashMap<Integer, Integer>();
+			int from = 0;
+			int counted = 0;
+			if (null != view && view.records == count) {
+				replaced.putAll(view.replaced);
+				for (int extra : view.extras) {
+					extras.add(extra);
+				}
+				from = view.patches;
+				days.putAll(view.days);
+				counted = count;
+			} else if (null != view && view.patches == 0
+					&& view.records < count) {
+				days.putAll(view.days);
+				counted = view.records;
+			}
+			for (int i = counted; i < count; i++) {
+				addDay(days, buffer, i, 1);
+			}
+
+			/*
+			 * The patches are replayed in the order they were written, a
+			 * patch replaces the record or earlier patch with the same start
+			 * period.
+			 */
+			View records = new View(buffer, count, 0, index,
+					new HashMap<Integer, Integer>(), new int[0], days);
+			for (int patch = count + from; patch < count + patches; patch++) {
+				long start = buffer.getLong(HEADER_SIZE + (patch * RECORD_SIZE)
+						+ START);
+				int i = records.lowerBound(start);
+				if (i < count && records.getStart(i) == start) {
+					Integer previous = replaced.put(i, patch);
+					addDay(days, buffer, null == previous ? i : previous, -1);
+					addDay(days, buffer, patch, 1);
+					continue;
+				}
+				int low = 0;
+				int high = extras.size();
+				while (low < high) {
+					int mid = (low + high) >>> 1;
+					if (buffer.getLong(HEADER_SIZE
+							+ (extras.get(mid) * RECORD_SIZE) + START) < start) {
+						low = mid + 1;
+					} else {
+						high = mid;
+					}
+				}
+				if (low < extras.size()
+						&& buffer.getLong(HEADER_SIZE
+								+ (extras.get(low) * RECORD_SIZE) + START) == start) {
+					addDay(days, buffer, extras.set(low, patch), -1);
+				} else {
+					extras.add(low, patch);
+				}
+				addDay(days, buffer, patch, 1);
+			}
+			int[] extraRecords = new int[extras.size()];
+			for (int i = 0; i < extraRecords.length; i++) {
+				extraRecords[i] = extras.get(i);
+			}
+			return new View(buffer.asReadOnlyBuffer(), count, patches, index,
+					replaced, extraRecords, days);
+		}
+
+		/**
+		 * Method addDay. Add to the number of candles for the tradingday id
+		 * of a record or patch.
+		 * 
+		 * @param days
+		 *            HashMap<Integer, Integer>
+		 * @param buffer
+		 *            ByteBuffer
+		 * @param record
+		 *            int the physical record.
+		 * @param delta
+		 *            int
+		 */
+		private static void addDay(HashMap<Integer, Integer> days,
+				ByteBuffer buffer, int record, int delta) {
+			Integer idTradingday = buffer.getInt(HEADER_SIZE
+					+ (record * RECORD_SIZE) + ID_TRADINGDAY);
+			Integer count = days.get(idTradingday);
+			days.put(idTradingday, (null == count ? 0 : count) + delta);
+		}
+
+		/**
+		 * Method write.
+		 * 
+		 * @param records
+		 *            List<byte[]> in start period order.
+		 * @param replaceTradingdays
+		 *            boolean
+		 * @throws IOException
+		 */
+		private synchronized void write(List<byte[]> records,
+				boolean replaceTradingdays) throws IOException {
+
+			Set<Long> keys = new HashSet<Long>();
+			long minStart = Long.MAX_VALUE;
+			long minOpen = Long.MAX_VALUE;
+			for (byte[] record : records) {
+				ByteBuffer buffer = ByteBuffer.wrap(record);
+				minStart = Math.min(minStart, buffer.getLong(START));
+				minOpen = Math.min(minOpen, buffer.getLong(TRADINGDAY_OPEN));
+				keys.add(buffer.getLong(replaceTradingdays ? TRADINGDAY_OPEN
+						: START));
+			}
+			int keyField = replaceTradingdays ? TRADINGDAY_OPEN : START;
+			View view = this.view;
+
+			/*
+			 * Find the first record that is replaced or is after the new
+			 * candles. If there is none the new candles are appended past the
+			 * count, the published records are never overwritten as readers
+			 * may still hold a view of them.
+			 */
+			int from = view.lowerBound(Math.min(minStart,
+					replaceTradingdays ? minOpen : minStart) - DAY_MILLIS);
+			int tail = view.count;
+			for (int i = from; i < view.count; i++) {
+				if (keys.contains(view.buffer.getLong(view.offset(i) + keyField))
+						|| view.getStart(i) >= minStart) {
+					tail = i;
+					break;
+				}
+			}
+			if (tail == view.count && view.patches == 0) {
+				writeRecords(records, tail, true);
+				writeHeader(tail + records.size(), 0, true);
+				this.view = map(tail + records.size(), 0, view);
+			} else if (tail == view.count
+					|| (!replaceTradingdays && isUpdate(view, records, tail))) {
+				boolean force = !isFormingBar(view, records);
+				writeRecords(records, view.records + view.patches, force);
+				writeHeader(view.records, view.patches + records.size(), force);
+				this.view = map(view.records, view.patches + records.size(),
+						view);
+			} else {
+				compact(view, records, keys, keyField);
+			}
+		}
+
+		/**
+		 * Method isUpdate.
+		 * 
+		 * @param view
+		 *            View
+		 * @param records
+		 *            List<byte[]> in start period order.
+		 * @param tail
+		 *            int the first record that is replaced.
+		 * @return boolean true if every record replaces the one with the same
+		 *         start period or is after the last record.
+		 */
+		private boolean isUpdate(View view, List<byte[]> records, int tail) {
+			int i = tail;
+			for (byte[] record : records) {
+				long start = ByteBuffer.wrap(record).getLong(START);
+				while (i < view.count && view.getStart(i) < start) {
+					i++;
+				}
+				if (i < view.count && view.getStart(i) != start)
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Method isFormingBar.
+		 * 
+		 * @param view
+		 *            View
+		 * @param records
+		 *            List<byte[]>
+		 * @return boolean true if the records are one update of the last
+		 *         candle.
+		 */
+		private boolean isFormingBar(View view, List<byte[]> records) {
+			return records.size() == 1
+					&& view.count > 0
+					&& view.getStart(view.count - 1) == ByteBuffer.wrap(
+							records.get(0)).getLong(START);
+		}
+
+		/**
+		 * Method writeRecords. Write the records from the first record
+		 * position.
+		 * 
+		 * @param records
+		 *            List<byte[]>
+		 * @param first
+		 *            int
+		 * @param force
+		 *            boolean true to force the records to disk.
+		 * @throws IOException
+		 */
+		private void writeRecords(List<byte[]> records, int first,
+				boolean force) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(records.size()
+					* RECORD_SIZE);
+			for (byte[] record : records) {
+				buffer.put(record);
+			}
+			buffer.flip();
+			long position = HEADER_SIZE + ((long) first * RECORD_SIZE);
+			while (buffer.hasRemaining()) {
+				position = position + this.channel.write(buffer, position);
+			}
+			force(force);
+		}
+
+		/**
+		 * Method compact. Write the records that are not replaced and the new
+		 * records to the next generation file in start period order.
+		 * 
+		 * @param view
+		 *            View
+		 * @param records
+		 *            List<byte[]>
+		 * @param keys
+		 *            Set<Long>
+		 * @param keyField
+		 *            int
+		 * @throws IOException
+		 */
+		private void compact(View view, List<byte[]> records, Set<Long> keys,
+				int keyField) throws IOException {
+			long startTime = System.currentTimeMillis();
+			List<byte[]> merged = new ArrayList<byte[]>(view.count
+					+ records.size());
+			for (int i = 0; i < view.count; i++) {
+				if (!keys.contains(view.buffer.getLong(view.offset(i)
+						+ keyField)))
+					merged.add(view.getRecord(i));
+			}
+			merged.addAll(records);
+			Collections.sort(merged, START_ORDER);
+
+			close();
+			this.generation++;
+			File file = getFile(this.generation);
+			file.delete();
+			open(file);
+			writeRecords(merged, 0, true);
+			writeHeader(merged.size(), 0, true);
+			this.view = map(merged.size(), 0, null);
+			removeOldGenerations();
+			_log.debug("Compacted candle segment idContract: "
+					+ this.idContract + " barSize: " + this.barSize
+					+ " records: " + merged.size() + " in: "
+					+ (System.currentTimeMillis() - startTime) + "ms");
+		}
+
+		/**
+		 * Method writeHeader. The count and patches are written after the
+		 * records have been forced to disk so a reader opening the file never
+		 * sees a partial record.
+		 * 
+		 * @param count
+		 *            int
+		 * @param patches
+		 *            int
+		 * @param force
+		 *            boolean true to force the header to disk.
+		 * @throws IOException
+		 */
+		private void writeHeader(int count, int patches, boolean force)
+				throws IOException {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(0, MAGIC);
+			header.putInt(4, FORMAT);
+			header.putInt(8, RECORD_SIZE);
+			header.putInt(12, count);
+			header.putInt(16, patches);
+			while (header.hasRemaining()) {
+				this.channel.write(header, header.position());
+			}
+			force(force);
+		}
+
+		/**
+		 * Method force. Force the segment to disk, or note that it has not
+		 * been so the next forced write or close does.
+		 * 
+		 * @param force
+		 *            boolean
+		 * @throws IOException
+		 */
+		private void force(boolean force) throws IOException {
+			if (force) {
+				this.channel.force(false);
+				this.unforced = false;
+				this.forces++;
+			} else {
+				this.unforced = true;
+			}
+		}
+
+		/**
+		 * Method removeOldGenerations. Old generations that are still mapped
+		 * by a reader may not be removed on some platforms, these are
+		 * removed on exit.
+		 */
+		private void removeOldGenerations() {
+			File[] files = new File(_storeDir, String.valueOf(this.idContract))
+					.listFiles();
+			if (null == files)
+				return;
+			File current = getFile(this.generation);
+			String prefix = this.barSize + "-";
+			for (File file : files) {
+				if (file.getName().startsWith(prefix)
+						&& file.getName().endsWith(SUFFIX)
+						&& !file.equals(current) && !file.delete())
+					file.deleteOnExit();
+			}
+		}
+
+		private synchronized void close() {
+			try {
+				if (null != this.channel) {
+					if (this.unforced)
+						force(true);
+					this.channel.close();
+				}
+			} catch (IOException ex) {
+				_log.warn("Error closing candle segment idContract: "
+						+ this.idContract + " barSize: " + this.barSize
+						+ " Msg: " + ex.getMessage());
+			}
+		}
+	}
+}
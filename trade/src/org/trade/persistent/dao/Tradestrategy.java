@@ -590,10 +590,17 @@ public class Tradestrategy extends Aspect implements Serializable, Cloneable {
 	 *            StrategyData
 	 */
 	public void setStrategyData(StrategyData strategyData) {
-		if (null != this.strategyData) {
+		/*
+		 * The StrategyData may be shared with other tradestrategies only
+		 * clear it down when this was the last reference.
+		 */
+		if (null != this.strategyData && this.strategyData.release()) {
 			this.strategyData.clearBaseCandleDataset();
 		}
 		this.strategyData = strategyData;
+		if (null != this.strategyData) {
+			this.strategyData.retain();
+		}
 	}
 
 	/**
@@ -38,6 +38,8 @@ package org.trade.strategy;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.swing.event.EventListenerList;
 
@@ -99,10 +101,12 @@ public abstract class AbstractStrategyRule extends Worker implements
 	private StrategyData strategyData = null;
 	private Tradestrategy tradestrategy = null;
 	private TradestrategyOrders tradestrategyOrders = null;
+	private long positionOrdersVersion = -1;
 	private Integer idTradestrategy = null;
 	private String symbol = null;
 	private boolean seriesChanged = false;
-	private final Object lockStrategyWorker = new Object();
+	private final ReentrantLock lockStrategyWorker = new ReentrantLock();
+	private final Condition candleChanged = lockStrategyWorker.newCondition();
 	private boolean listeningCandles = false;
 	private int currentCandleCount = -1;
 	private ZonedDateTime strategyLastFired = TradingCalendar
@@ -285,146 +289,27 @@ public abstract class AbstractStrategyRule extends Worker implements
 		 */
 		try {
 
-			this.tradePersistentModel = (PersistentModel) ClassFactory
-					.getServiceForInterface(PersistentModel._persistentModel,
-							this);
-			// Get an instances for this thread.
-			this.tradestrategy = this.tradePersistentModel
-					.findTradestrategyById(this.idTradestrategy);
-			this.tradestrategy.setStrategyData(this.strategyData);
-			this.symbol = this.tradestrategy.getContract().getSymbol();
-
-			_log.debug("Starting: " + this.getClass().getName()
-					+ " engine doInBackground Symbol: " + this.symbol
-					+ " idTradestrategy: " + this.idTradestrategy
-					+ " Tradingday Date: "
-					+ this.tradestrategy.getTradingday().getOpen());
-
-			/*
-			 * Process the current candle if there is one on startup.
-			 */
-
-			currentCandleCount = this.strategyData.getBaseCandleSeries()
-					.getItemCount() - 1;
+			initialise();
 
 			seriesChanged = true;
 
-			reFreshPositionOrders();
-
 			do {
 				/*
 				 * Lock until a candle arrives. First time in we process the
 				 * current candle.
 				 */
-				synchronized (lockStrategyWorker) {
+				lockStrategyWorker.lock();
+				try {
 					while (!seriesChanged) {
-						lockStrategyWorker.wait();
+						candleChanged.await();
 					}
 					seriesChanged = false;
+				} finally {
+					lockStrategyWorker.unlock();
 				}
 
 				if (!this.isCancelled()) {
-
-					/*
-					 * If candle count > than current we have a new candle
-					 * 
-					 * If equal then we have an updated candle.
-					 * 
-					 * The currentCandleCount is greater than the candle series.
-					 * Then another thread must have cleared the candle series
-					 * so shut down the strategy.
-					 */
-					CandleSeries candleSeries = this.tradestrategy
-							.getStrategyData().getBaseCandleSeries();
-
-					boolean newCandle = false;
-					if ((candleSeries.getItemCount() - 1) > currentCandleCount) {
-						/*
-						 * Add one to the currentCandleCount until we catch up
-						 * to the candleSeries candle count. As it is possible
-						 * the candle count in another thread gets ahead of this
-						 * thread and so this thread is playing catch up.
-						 */
-						currentCandleCount++;
-						newCandle = true;
-
-					} else if (currentCandleCount > (candleSeries
-							.getItemCount() - 1)) {
-
-						_log.debug("Cancelled due to candleSeries clear Symbol: "
-								+ getSymbol()
-								+ " class: "
-								+ this.getClass().getName());
-						this.cancel();
-						break;
-					} else if (currentCandleCount == (candleSeries
-							.getItemCount() - 1)) {
-						/*
-						 * We have an updated candle. If we are listening for
-						 * candles and none are arriving then close the
-						 * strategy.
-						 */
-						if (currentCandleCount == -1 && listeningCandles) {
-							this.cancel();
-							break;
-						}
-					}
-
-					if (currentCandleCount > -1) {
-						/*
-						 * Check the candle is during the trading range and fire
-						 * the rules.
-						 */
-						if (!getCurrentCandle()
-								.getPeriod()
-								.getStart()
-								.isBefore(
-										this.tradestrategy.getTradingday()
-												.getOpen())) {
-							/*
-							 * Refresh the orders in the positionOrders as these
-							 * may have been filled via another thread. This
-							 * gets the Orders/OpenPosition and Contract
-							 */
-							reFreshPositionOrders();
-							this.tradestrategy.getContract().setLastAskPrice(
-									candleSeries.getContract()
-											.getLastAskPrice());
-							this.tradestrategy.getContract().setLastBidPrice(
-									candleSeries.getContract()
-											.getLastBidPrice());
-							this.tradestrategy.getContract().setLastPrice(
-									candleSeries.getContract().getLastPrice());
-							runStrategy(candleSeries, newCandle);
-							strategyLastFired = TradingCalendar
-									.getDateTimeNowMarketTimeZone();
-						}
-					}
-					/*
-					 * First time in add a listener for new candle.
-					 */
-					if (!listeningCandles) {
-
-						/*
-						 * Start listening for new candles and candle changes.
-						 */
-						this.strategyData.getBaseCandleSeries()
-								.addChangeListener(this);
-						/*
-						 * Tell the worker if listening. Note only for back
-						 * testing that the strategy is running.
-						 */
-						this.fireStrategyStarted(this.getClass()
-								.getSimpleName(), this.tradestrategy);
-						listeningCandles = true;
-
-						_log.debug("Started: " + this.getClass().getName()
-								+ " engine doInBackground Symbol: "
-								+ this.symbol + " idTradestrategy: "
-								+ this.idTradestrategy);
-					} else {
-						this.fireRuleComplete(this.tradestrategy);
-					}
+					processCandle();
 				}
 
 			} while (!this.isDone() && !this.isCancelled());
@@ -444,6 +329,193 @@ public abstract class AbstractStrategyRule extends Worker implements
 		return null;
 	}
 
+	/**
+	 * Method isSchedulable. Strategies can run on the WorkerScheduler pool.
+	 * 
+	 * @return boolean
+	 * @see org.trade.core.util.Worker#isSchedulable()
+	 */
+	protected boolean isSchedulable() {
+		return true;
+	}
+
+	/**
+	 * Method getScheduleKey. The candles for a tradestrategy are processed one
+	 * at a time in the order they arrived.
+	 * 
+	 * @return Object
+	 * @see org.trade.core.util.Worker#getScheduleKey()
+	 */
+	protected Object getScheduleKey() {
+		if (null == this.idTradestrategy)
+			return this;
+		return "Tradestrategy:" + this.idTradestrategy;
+	}
+
+	/**
+	 * Method runTask. One step of the strategy when running on the
+	 * WorkerScheduler pool. The first step initializes the strategy and each
+	 * step after that processes one candle.
+	 * 
+	 * @return boolean true if the strategy is behind the candle series.
+	 * @see org.trade.core.util.Worker#runTask()
+	 */
+	protected boolean runTask() {
+		try {
+			if (null == this.tradestrategy) {
+				initialise();
+			}
+			processCandle();
+			if (!this.isCancelled()) {
+				return currentCandleCount < (this.strategyData
+						.getBaseCandleSeries().getItemCount() - 1);
+			}
+		} catch (Exception ex) {
+			_log.error(
+					"Error StrategyWorker exception: " + getSymbol()
+							+ " class: " + this.getClass().getName() + " Msg: "
+							+ ex.getMessage(), ex);
+			error(1, 100, "Error StrategyWorker exception: " + ex.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Method initialise. Get the tradestrategy for this worker and set up the
+	 * position orders.
+	 * 
+	 * @throws Exception
+	 */
+	private void initialise() throws Exception {
+
+		/*
+		 * A back test that holds its results in memory shares one model with
+		 * its brokers and strategies, otherwise this strategy has its own.
+		 */
+		this.tradePersistentModel = this.brokerModel
+				.getBackTestPersistentModel();
+		if (null == this.tradePersistentModel)
+			this.tradePersistentModel = (PersistentModel) ClassFactory
+					.getServiceForInterface(PersistentModel._persistentModel,
+							this);
+		this.tradestrategy = this.tradePersistentModel
+				.findTradestrategyById(this.idTradestrategy);
+		this.tradestrategy.setStrategyData(this.strategyData);
+		this.symbol = this.tradestrategy.getContract().getSymbol();
+
+		_log.debug("Starting: " + this.getClass().getName()
+				+ " engine doInBackground Symbol: " + this.symbol
+				+ " idTradestrategy: " + this.idTradestrategy
+				+ " Tradingday Date: "
+				+ this.tradestrategy.getTradingday().getOpen());
+
+		/*
+		 * Process the current candle if there is one on startup.
+		 */
+
+		currentCandleCount = this.strategyData.getBaseCandleSeries()
+				.getItemCount() - 1;
+
+		reFreshPositionOrders();
+	}
+
+	/**
+	 * Method processCandle. Process the next candle or the updated current
+	 * candle and fire the rules.
+	 * 
+	 * @throws Exception
+	 */
+	private void processCandle() throws Exception {
+
+		/*
+		 * If candle count > than current we have a new candle
+		 * 
+		 * If equal then we have an updated candle.
+		 * 
+		 * The currentCandleCount is greater than the candle series. Then
+		 * another thread must have cleared the candle series so shut down the
+		 * strategy.
+		 */
+		CandleSeries candleSeries = this.tradestrategy.getStrategyData()
+				.getBaseCandleSeries();
+
+		boolean newCandle = false;
+		if ((candleSeries.getItemCount() - 1) > currentCandleCount) {
+			/*
+			 * Add one to the currentCandleCount until we catch up to the
+			 * candleSeries candle count. As it is possible the candle count in
+			 * another thread gets ahead of this thread and so this thread is
+			 * playing catch up.
+			 */
+			currentCandleCount++;
+			newCandle = true;
+
+		} else if (currentCandleCount > (candleSeries.getItemCount() - 1)) {
+
+			_log.debug("Cancelled due to candleSeries clear Symbol: "
+					+ getSymbol() + " class: " + this.getClass().getName());
+			this.cancel();
+			return;
+		} else if (currentCandleCount == (candleSeries.getItemCount() - 1)) {
+			/*
+			 * We have an updated candle. If we are listening for candles and
+			 * none are arriving then close the strategy.
+			 */
+			if (currentCandleCount == -1 && listeningCandles) {
+				this.cancel();
+				return;
+			}
+		}
+
+		if (currentCandleCount > -1) {
+			/*
+			 * Check the candle is during the trading range and fire the rules.
+			 */
+			if (!getCurrentCandle().getPeriod().getStart()
+					.isBefore(this.tradestrategy.getTradingday().getOpen())) {
+				/*
+				 * Refresh the orders in the positionOrders as these may have
+				 * been filled via another thread. This gets the
+				 * Orders/OpenPosition and Contract, they are only read from
+				 * the database if they have changed since the last candle.
+				 */
+				reFreshPositionOrdersIfChanged();
+				this.tradestrategy.getContract().setLastAskPrice(
+						candleSeries.getContract().getLastAskPrice());
+				this.tradestrategy.getContract().setLastBidPrice(
+						candleSeries.getContract().getLastBidPrice());
+				this.tradestrategy.getContract().setLastPrice(
+						candleSeries.getContract().getLastPrice());
+				runStrategy(candleSeries, newCandle);
+				strategyLastFired = TradingCalendar
+						.getDateTimeNowMarketTimeZone();
+			}
+		}
+		/*
+		 * First time in add a listener for new candle.
+		 */
+		if (!listeningCandles) {
+
+			/*
+			 * Start listening for new candles and candle changes.
+			 */
+			this.strategyData.getBaseCandleSeries().addChangeListener(this);
+			/*
+			 * Tell the worker if listening. Note only for back testing that
+			 * the strategy is running.
+			 */
+			this.fireStrategyStarted(this.getClass().getSimpleName(),
+					this.tradestrategy);
+			listeningCandles = true;
+
+			_log.debug("Started: " + this.getClass().getName()
+					+ " engine doInBackground Symbol: " + this.symbol
+					+ " idTradestrategy: " + this.idTradestrategy);
+		} else {
+			this.fireRuleComplete(this.tradestrategy);
+		}
+	}
+
 	/**
 	 * Method cancel.
 	 * 
@@ -455,10 +527,14 @@ public abstract class AbstractStrategyRule extends Worker implements
 		 * Unlock the doInBackground that may be waiting for a candle. This will
 		 * cause a clean finish to the process.
 		 */
-		synchronized (lockStrategyWorker) {
+		lockStrategyWorker.lock();
+		try {
 			seriesChanged = true;
-			lockStrategyWorker.notify();
+			candleChanged.signal();
+		} finally {
+			lockStrategyWorker.unlock();
 		}
+		this.schedule();
 	}
 
 	/**
@@ -505,10 +581,14 @@ public abstract class AbstractStrategyRule extends Worker implements
 	 * @see org.jfree.data.general.SeriesChangeListener#seriesChanged(SeriesChangeEvent)
 	 */
 	public void seriesChanged(SeriesChangeEvent event) {
-		synchronized (lockStrategyWorker) {
+		lockStrategyWorker.lock();
+		try {
 			seriesChanged = true;
-			lockStrategyWorker.notify();
+			candleChanged.signal();
+		} finally {
+			lockStrategyWorker.unlock();
 		}
+		this.schedule();
 	}
 
 	/**
@@ -1576,6 +1656,11 @@ public abstract class AbstractStrategyRule extends Worker implements
 
 	public void reFreshPositionOrders() throws StrategyRuleException {
 		try {
+			/*
+			 * Take the version first so a change made while we are reading is
+			 * picked up on the next candle.
+			 */
+			this.positionOrdersVersion = getPositionOrdersVersion();
 			this.tradestrategyOrders = this.tradePersistentModel
 					.findPositionOrdersByTradestrategyId(this.idTradestrategy);
 		} catch (Exception ex) {
@@ -1584,6 +1669,32 @@ public abstract class AbstractStrategyRule extends Worker implements
 		}
 	}
 
+	/**
+	 * Method reFreshPositionOrdersIfChanged. Only refresh the orders if the
+	 * orders or status of this tradestrategy or the open position of its
+	 * contract have been written since they were last read.
+	 * 
+	 * @throws StrategyRuleException
+	 */
+	private void reFreshPositionOrdersIfChanged() throws StrategyRuleException {
+		if (null == this.tradestrategyOrders
+				|| this.positionOrdersVersion != getPositionOrdersVersion()) {
+			reFreshPositionOrders();
+		}
+	}
+
+	/**
+	 * Method getPositionOrdersVersion.
+	 * 
+	 * @return long the version of the orders for this tradestrategy and the
+	 *         open position for its contract.
+	 */
+	private long getPositionOrdersVersion() {
+		return this.tradePersistentModel.getPositionOrdersVersion().get(
+				this.idTradestrategy,
+				this.tradestrategy.getContract().getIdContract());
+	}
+
 	/**
 	 * Method getIndividualAccount. Return a refreshed trade account note this
 	 * is updated when connected to TWS every time the account values change.
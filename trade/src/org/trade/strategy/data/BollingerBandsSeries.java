@@ -36,7 +36,6 @@
 package org.trade.strategy.data;
 
 import java.math.BigDecimal;
-import java.util.LinkedList;
 
 import javax.persistence.DiscriminatorValue;
 import javax.persistence.Entity;
@@ -49,6 +48,7 @@ import org.trade.persistent.dao.Strategy;
 import org.trade.strategy.data.base.RegularTimePeriod;
 import org.trade.strategy.data.bollingerbands.BollingerBandsItem;
 import org.trade.strategy.data.candle.CandleItem;
+import org.trade.strategy.data.movingaverage.MovingVariance;
 
 /**
  * Developed by John Bollinger, Bollinger Bands are volatility bands placed
@@ -89,8 +89,7 @@ public class BollingerBandsSeries extends IndicatorSeries {
 	 * Vales used to calculate MA's. These need to be reset when the series is
 	 * cleared.
 	 */
-	private double sum = 0.0;
-	private LinkedList<Double> yyValues = new LinkedList<Double>();
+	private MovingVariance movingAverage = null;
 
 	/**
 	 * Creates a new empty series. By default, items added to the series will be
@@ -164,7 +163,7 @@ public class BollingerBandsSeries extends IndicatorSeries {
 	 */
 	public Object clone() throws CloneNotSupportedException {
 		BollingerBandsSeries clone = (BollingerBandsSeries) super.clone();
-		clone.yyValues = new LinkedList<Double>();
+		clone.movingAverage = null;
 		return clone;
 	}
 
@@ -175,8 +174,7 @@ public class BollingerBandsSeries extends IndicatorSeries {
 	 */
 	public void clear() {
 		super.clear();
-		sum = 0.0;
-		yyValues.clear();
+		movingAverage = null;
 	}
 
 	/**
@@ -307,6 +305,17 @@ public class BollingerBandsSeries extends IndicatorSeries {
 		this.isUpper = isUpper;
 	}
 
+	/**
+	 * Method getStateKey.
+	 * 
+	 * @return String the upper and lower bands are computed separately.
+	 * @see org.trade.strategy.data.IndicatorSeries#getStateKey()
+	 */
+	@Transient
+	protected String getStateKey() {
+		return "isUpper=" + this.isUpper;
+	}
+
 	/**
 	 * Method createSeries.
 	 * 
@@ -321,26 +330,52 @@ public class BollingerBandsSeries extends IndicatorSeries {
 			throw new IllegalArgumentException("Null source (CandleDataset).");
 		}
 
-		for (int i = 0; i < source.getSeries(seriesIndex).getItemCount(); i++) {
-			this.updateSeries(source.getSeries(seriesIndex), i, true);
-		}
+		this.createSeries(source.getSeries(seriesIndex));
 	}
 
 	/**
-	 * Method updateSeries.
+	 * Method computeAll.
 	 * 
 	 * @param source
 	 *            CandleSeries
-	 * @param skip
+	 * @param open
+	 *            double[]
+	 * @param high
+	 *            double[]
+	 * @param low
+	 *            double[]
+	 * @param close
+	 *            double[]
+	 * @param volume
+	 *            long[]
+	 * @param count
 	 *            int
-	 * @param newBar
-	 *            boolean
+	 * @return boolean
+	 * @see org.trade.strategy.data.IndicatorSeries#computeAll(CandleSeries,
+	 *      double[], double[], double[], double[], long[], int)
 	 */
-	public void updateSeries(CandleSeries source, int skip, boolean newBar) {
-
-		if (source == null) {
-			throw new IllegalArgumentException("Null source (CandleSeries).");
+	protected boolean computeAll(CandleSeries source, double[] open,
+			double[] high, double[] low, double[] close, long[] volume,
+			int count) {
+
+		checkParameters();
+		this.movingAverage = new MovingVariance(this.getLength());
+		BigDecimal numberOfSTD = this.getNumberOfSTD();
+		for (int i = 0; i < count; i++) {
+			double ma = this.movingAverage.update(close[i], true);
+			if (!Double.isNaN(ma)) {
+				this.append(new BollingerBandsItem(source.getPeriod(i),
+						new BigDecimal(calculateBBands(numberOfSTD, ma,
+								this.movingAverage.getStandardDeviation()))));
+			}
 		}
+		return true;
+	}
+
+	/**
+	 * Method checkParameters.
+	 */
+	private void checkParameters() {
 		if (getLength() == null || getLength() < 1) {
 			throw new IllegalArgumentException(
 					"MA period must be greater than zero.");
@@ -350,6 +385,24 @@ public class BollingerBandsSeries extends IndicatorSeries {
 			throw new IllegalArgumentException(
 					"Number of STD's must be greater than zero.");
 		}
+	}
+
+	/**
+	 * Method updateSeries.
+	 * 
+	 * @param source
+	 *            CandleSeries
+	 * @param skip
+	 *            int
+	 * @param newBar
+	 *            boolean
+	 */
+	public void updateSeries(CandleSeries source, int skip, boolean newBar) {
+
+		if (source == null) {
+			throw new IllegalArgumentException("Null source (CandleSeries).");
+		}
+		checkParameters();
 
 		if (source.getItemCount() > skip) {
 
@@ -360,48 +413,23 @@ public class BollingerBandsSeries extends IndicatorSeries {
 			Number yy = candleItem.getY();
 
 			if (null != yy) {
-				if (this.yyValues.size() == getLength()) {
-					/*
-					 * If the item does not exist in the series then this is a
-					 * new time period and so we need to remove the last in the
-					 * set and add the new periods values. Otherwise we just
-					 * update the last value in the set. Sum is just used for
-					 * performance save having to sum the last set of values
-					 * each time.
-					 */
-					if (newBar) {
-						sum = sum - this.yyValues.getLast() + yy.doubleValue();
-						this.yyValues.removeLast();
-						this.yyValues.addFirst(yy.doubleValue());
-
-					} else {
-						sum = sum - this.yyValues.getFirst() + yy.doubleValue();
-						this.yyValues.removeFirst();
-						this.yyValues.addFirst(yy.doubleValue());
-					}
-				} else {
-					if (newBar) {
-						sum = sum + yy.doubleValue();
-						this.yyValues.addFirst(yy.doubleValue());
-					} else {
-						sum = sum + yy.doubleValue() - this.yyValues.getFirst();
-						this.yyValues.removeFirst();
-						this.yyValues.addFirst(yy.doubleValue());
-					}
+				if (null == this.movingAverage) {
+					this.movingAverage = new MovingVariance(this.getLength());
 				}
+				double ma = this.movingAverage.update(yy.doubleValue(), newBar);
 
-				if (this.yyValues.size() == getLength()) {
-					double ma = calculateBBands(this.getNumberOfSTD(),
-							this.yyValues, sum);
+				if (!Double.isNaN(ma)) {
+					double bband = calculateBBands(this.getNumberOfSTD(), ma,
+							this.movingAverage.getStandardDeviation());
 					if (newBar) {
 						BollingerBandsItem dataItem = new BollingerBandsItem(
-								candleItem.getPeriod(), new BigDecimal(ma));
+								candleItem.getPeriod(), new BigDecimal(bband));
 						this.add(dataItem, false);
 
 					} else {
 						BollingerBandsItem dataItem = (BollingerBandsItem) this
 								.getDataItem(this.getItemCount() - 1);
-						dataItem.setBollingerBands(ma);
+						dataItem.setBollingerBands(bband);
 					}
 				}
 			}
@@ -409,39 +437,26 @@ public class BollingerBandsSeries extends IndicatorSeries {
 	}
 
 	/**
-	 * Method calculateMA.
+	 * Method calculateBBands.
 	 * 
 	 * @param numberOfSTD
 	 *            BigDecimal
-	 * @param yyValues
-	 *            LinkedList<Double>
-	 * @param volValues
-	 *            LinkedList<Long>
-	 * @param sum
-	 *            Double
+	 * @param mean
+	 *            double
+	 * @param standardDeviation
+	 *            double
 	 * @return double
 	 */
-	private double calculateBBands(BigDecimal numberOfSTD,
-			LinkedList<Double> yyValues, Double sum) {
+	private double calculateBBands(BigDecimal numberOfSTD, double mean,
+			double standardDeviation) {
 
 		if (this.isUpper) {
-			return ((sum / this.getLength()) + (standardDeviation(yyValues, sum) * this
-					.getNumberOfSTD().doubleValue()));
+			return (mean + (standardDeviation * numberOfSTD.doubleValue()));
 		} else {
-			return ((sum / this.getLength()) - (standardDeviation(yyValues, sum) * this
-					.getNumberOfSTD().doubleValue()));
+			return (mean - (standardDeviation * numberOfSTD.doubleValue()));
 		}
 	}
 
-	public double standardDeviation(LinkedList<Double> a, Double sum) {
-
-		double sumTotal = 0;
-		double mean = sum / (a.size() * 1.0);
-		for (Double i : a)
-			sumTotal += Math.pow((i - mean), 2);
-		return Math.sqrt(sumTotal / (a.size() - 1)); // sample
-	}
-
 	/**
 	 * Method printSeries.
 	 * 
@@ -327,8 +327,7 @@ public class CandleDataset extends AbstractXYDataset implements
 	 */
 	public double getOpenValue(int series, int item) {
 		CandleSeries s = (CandleSeries) this.data.get(series);
-		CandleItem di = (CandleItem) s.getDataItem(item);
-		return di.getOpen();
+		return s.getOpen(item);
 	}
 
 	/**
@@ -361,8 +360,7 @@ public class CandleDataset extends AbstractXYDataset implements
 	 */
 	public double getCloseValue(int series, int item) {
 		CandleSeries s = (CandleSeries) this.data.get(series);
-		CandleItem di = (CandleItem) s.getDataItem(item);
-		return di.getClose();
+		return s.getClose(item);
 	}
 
 	/**
@@ -395,8 +393,7 @@ public class CandleDataset extends AbstractXYDataset implements
 	 */
 	public double getHighValue(int series, int item) {
 		CandleSeries s = (CandleSeries) this.data.get(series);
-		CandleItem di = (CandleItem) s.getDataItem(item);
-		return di.getHigh();
+		return s.getHigh(item);
 	}
 
 	/**
@@ -429,8 +426,7 @@ public class CandleDataset extends AbstractXYDataset implements
 	 */
 	public double getLowValue(int series, int item) {
 		CandleSeries s = (CandleSeries) this.data.get(series);
-		CandleItem di = (CandleItem) s.getDataItem(item);
-		return di.getLow();
+		return s.getLow(item);
 	}
 
 	/**
@@ -481,8 +477,7 @@ public class CandleDataset extends AbstractXYDataset implements
 	 */
 	public double getVolumeValue(int series, int item) {
 		CandleSeries s = (CandleSeries) this.data.get(series);
-		CandleItem di = (CandleItem) s.getDataItem(item);
-		return di.getVolume();
+		return s.getVolume(item);
 	}
 
 	/**
@@ -500,8 +495,7 @@ public class CandleDataset extends AbstractXYDataset implements
 	 */
 	public double getVwapValue(int series, int item) {
 		CandleSeries s = (CandleSeries) this.data.get(series);
-		CandleItem di = (CandleItem) s.getDataItem(item);
-		return di.getVwap();
+		return s.getVwap(item);
 	}
 
 	/**
@@ -613,12 +607,9 @@ public class CandleDataset extends AbstractXYDataset implements
 	public static void populateSeries(StrategyData strategyData,
 			List<Candle> candles) {
 		strategyData.clearBaseCandleDataset();
-		for (Candle candle : candles) {
-			strategyData.buildCandle(candle.getStartPeriod(), candle.getOpen()
-					.doubleValue(), candle.getHigh().doubleValue(), candle
-					.getLow().doubleValue(), candle.getClose().doubleValue(),
-					candle.getVolume(), candle.getVwap().doubleValue(), candle
-							.getTradeCount(), 1, null);
+		strategyData.buildCandles(candles);
+		if (!candles.isEmpty()) {
+			Candle candle = candles.get(candles.size() - 1);
 			strategyData.getBaseCandleSeries().getContract()
 					.setLastAskPrice(candle.getClose());
 			strategyData.getBaseCandleSeries().getContract()
@@ -35,10 +35,7 @@
  */
 package org.trade.strategy.data;
 
-import java.math.BigDecimal;
 import java.time.ZonedDateTime;
-import java.util.Collections;
-import java.util.LinkedList;
 
 import javax.persistence.DiscriminatorValue;
 import javax.persistence.Entity;
@@ -49,15 +46,20 @@ import org.jfree.data.general.SeriesChangeEvent;
 import org.jfree.data.time.ohlc.OHLCSeriesCollection;
 import org.trade.core.util.TradingCalendar;
 import org.trade.core.valuetype.Percent;
-import org.trade.core.valuetype.ValueTypeException;
 import org.trade.persistent.dao.Candle;
 import org.trade.persistent.dao.CodeValue;
 import org.trade.persistent.dao.Contract;
 import org.trade.persistent.dao.Strategy;
 import org.trade.persistent.dao.Tradingday;
 import org.trade.strategy.data.base.RegularTimePeriod;
+import org.trade.strategy.data.candle.CandleIndex;
 import org.trade.strategy.data.candle.CandleItem;
 import org.trade.strategy.data.candle.CandlePeriod;
+import org.trade.strategy.data.candle.CandleRange;
+import org.trade.strategy.data.candle.CandleRangeIndex;
+import org.trade.strategy.data.candle.CandleStore;
+import org.trade.strategy.data.candle.RollingWindow;
+import org.trade.strategy.data.candle.SessionStatistics;
 
 /**
  * A list of (RegularTimePeriod, open, high, low, close) data items.
@@ -88,25 +90,33 @@ public class CandleSeries extends IndicatorSeries {
 	private ZonedDateTime endTime;
 	private int barSize = 0;
 
-	private Candle candleBar = null;
-	private Percent percentChangeFromClose = new Percent(0);
-	private Percent percentChangeFromOpen = new Percent(0);
+	/*
+	 * Columnar store for the candle values. While every item in the series
+	 * was created by this series and added in order the item index is also the
+	 * row in the store and the values can be read directly from the store.
+	 */
+	private CandleStore candleStore = new CandleStore();
+	private boolean storeOrdered = true;
+	private CandleIndex candleIndex = new CandleIndex();
+	private CandleRangeIndex candleRangeIndex = new CandleRangeIndex();
+
+	private SessionStatistics sessionStatistics = new SessionStatistics();
 
 	// Parms used for the rolling candle bar.
 	private RollingCandle rollingCandle = new RollingCandle();
 	private RollingCandle prevRollingCandle = null;
 
-	private Double sumVwapVolume = new Double(0);
-	private Long sumVolume = new Long(0);
-	private Integer sumTradeCount = new Integer(0);
+	private RollingWindow rollingWindow = new RollingWindow(1);
 
-	private LinkedList<RollingCandle> rollingCandleValues = new LinkedList<RollingCandle>();
-	private LinkedList<Double> openValues = new LinkedList<Double>();
-	private LinkedList<Double> highValues = new LinkedList<Double>();
-	private LinkedList<Double> lowValues = new LinkedList<Double>();
-	private LinkedList<Long> volumeValues = new LinkedList<Long>();
-	private LinkedList<Integer> tradeCountValues = new LinkedList<Integer>();
-	private LinkedList<Double> vwapVolumeValues = new LinkedList<Double>();
+	/*
+	 * Ring of rolling candle snapshots one per bar in the window, newest at
+	 * the head. The snapshot objects are reused as the window rolls. The
+	 * extra slot holds the snapshot last evicted i.e. the previous rolling
+	 * candle.
+	 */
+	private RollingCandle[] rollingCandleValues = new RollingCandle[2];
+	private int rollingCandleHead = 0;
+	private int rollingCandleCount = 0;
 
 	public CandleSeries() {
 		super(IndicatorSeries.CandleSeries, true, 0, false);
@@ -439,8 +449,9 @@ public class CandleSeries extends IndicatorSeries {
 						"Can't mix RegularTimePeriod class types.");
 			}
 		}
-		super.add(new CandleItem(contract, tradingday, period, open, high, low,
-				close, volume, vwap, tradeCount, lastUpdateDate), true);
+		this.add(new CandleItem(this.candleStore, contract, tradingday, period,
+				open, high, low, close, volume, vwap, tradeCount,
+				lastUpdateDate), true);
 	}
 
 	/**
@@ -461,32 +472,232 @@ public class CandleSeries extends IndicatorSeries {
 			}
 		}
 		super.add(candleItem, notify);
+		int index = this.getItemCount() - 1;
+		if (this.candleIndex.size() == index
+				&& this.getDataItem(index) == candleItem) {
+			this.candleIndex.add(candleItem.getPeriod().getStart());
+		} else {
+			this.candleIndex.reset();
+		}
+		if (this.storeOrdered) {
+			this.storeOrdered = candleItem.getStore() == this.candleStore
+					&& candleItem.getRow() == index
+					&& this.getDataItem(index) == candleItem;
+		}
+	}
+
+	/**
+	 * Removes the item at the specified index and sends a
+	 * {@link SeriesChangeEvent} to all registered listeners.
+	 * 
+	 * @param index
+	 *            the index.
+	 * @return The item removed.
+	 */
+	protected ComparableObjectItem remove(int index) {
+		this.storeOrdered = false;
+		this.candleIndex.reset();
+		return super.remove(index);
+	}
+
+	/**
+	 * Deletes data from start until end index (end inclusive).
+	 * 
+	 * @param start
+	 *            the index of the first period to delete.
+	 * @param end
+	 *            the index of the last period to delete.
+	 */
+	protected void delete(int start, int end) {
+		this.storeOrdered = false;
+		this.candleIndex.reset();
+		super.delete(start, end);
+	}
+
+	/**
+	 * Returns the open value for the item at the index.
+	 * 
+	 * @param index
+	 *            the item index.
+	 * @return double
+	 */
+	public double getOpen(int index) {
+		if (this.storeOrdered)
+			return this.candleStore.getOpen(index);
+		return ((CandleItem) getDataItem(index)).getOpen();
+	}
+
+	/**
+	 * Returns the high value for the item at the index.
+	 * 
+	 * @param index
+	 *            the item index.
+	 * @return double
+	 */
+	public double getHigh(int index) {
+		if (this.storeOrdered)
+			return this.candleStore.getHigh(index);
+		return ((CandleItem) getDataItem(index)).getHigh();
+	}
+
+	/**
+	 * Returns the low value for the item at the index.
+	 * 
+	 * @param index
+	 *            the item index.
+	 * @return double
+	 */
+	public double getLow(int index) {
+		if (this.storeOrdered)
+			return this.candleStore.getLow(index);
+		return ((CandleItem) getDataItem(index)).getLow();
+	}
+
+	/**
+	 * Returns the close value for the item at the index.
+	 * 
+	 * @param index
+	 *            the item index.
+	 * @return double
+	 */
+	public double getClose(int index) {
+		if (this.storeOrdered)
+			return this.candleStore.getClose(index);
+		return ((CandleItem) getDataItem(index)).getClose();
+	}
+
+	/**
+	 * Returns the vwap value for the item at the index.
+	 * 
+	 * @param index
+	 *            the item index.
+	 * @return double
+	 */
+	public double getVwap(int index) {
+		if (this.storeOrdered)
+			return this.candleStore.getVwap(index);
+		return ((CandleItem) getDataItem(index)).getVwap();
+	}
+
+	/**
+	 * Returns the volume value for the item at the index.
+	 * 
+	 * @param index
+	 *            the item index.
+	 * @return long
+	 */
+	public long getVolume(int index) {
+		if (this.storeOrdered)
+			return this.candleStore.getVolume(index);
+		return ((CandleItem) getDataItem(index)).getVolume();
+	}
+
+	/**
+	 * Returns the trade count value for the item at the index.
+	 * 
+	 * @param index
+	 *            the item index.
+	 * @return int
+	 */
+	public int getCount(int index) {
+		if (this.storeOrdered)
+			return this.candleStore.getTradeCount(index);
+		return ((CandleItem) getDataItem(index)).getCount();
+	}
+
+	/**
+	 * Method copyValues. Copy the values of the candles into primitive arrays
+	 * for the bulk computation of indicators. Each array must hold at least
+	 * getItemCount() values, a null array is skipped.
+	 * 
+	 * @param open
+	 *            double[]
+	 * @param high
+	 *            double[]
+	 * @param low
+	 *            double[]
+	 * @param close
+	 *            double[]
+	 * @param volume
+	 *            long[]
+	 * @param vwap
+	 *            double[]
+	 */
+	public void copyValues(double[] open, double[] high, double[] low,
+			double[] close, long[] volume, double[] vwap) {
+		for (int i = 0; i < this.getItemCount(); i++) {
+			if (null != open)
+				open[i] = getOpen(i);
+			if (null != high)
+				high[i] = getHigh(i);
+			if (null != low)
+				low[i] = getLow(i);
+			if (null != close)
+				close[i] = getClose(i);
+			if (null != volume)
+				volume[i] = getVolume(i);
+			if (null != vwap)
+				vwap[i] = getVwap(i);
+		}
 	}
 
 	/**
-	 * Returns the true/false if the date falls within a period.
+	 * Returns the start of the period for the item at the index in epoch
+	 * seconds.
+	 * 
+	 * @param index
+	 *            the item index.
+	 * @return long
+	 */
+	public long getStartEpochSecond(int index) {
+		CandleItem item = (CandleItem) getDataItem(index);
+		return item.getStore().getStartEpochSecond(item.getRow());
+	}
+
+	/**
+	 * Returns the index of the candle whose period contains the date. The
+	 * candle is found via the time index so the cost does not depend on the
+	 * length of the series.
 	 * 
 	 * @param date
 	 *            the date for which we want a period.
-	 * @return exists
+	 * @return the index of the candle or -1 if no candle contains the date.
 	 */
 	public int indexOf(ZonedDateTime date) {
 
-		for (int i = this.data.size(); i > 0; i--) {
-			CandleItem item = (CandleItem) this.data.get(i - 1);
-			if (date.isAfter(item.getPeriod().getEnd())) {
-				return -1;
-			}
-			if ((date.isAfter(item.getPeriod().getStart()) || date.equals(item
-					.getPeriod().getStart()))
-					&& (date.isBefore(item.getPeriod().getEnd()) || date
-							.equals(item.getPeriod().getEnd()))) {
-				return i - 1;
+		CandleIndex index = this.getCandleIndex();
+		int i = index.find(date, this.getBarSize());
+		if (i > -1) {
+			RegularTimePeriod period = ((CandleItem) this.data.get(i))
+					.getPeriod();
+			if (!date.isBefore(period.getStart())
+					&& !date.isAfter(period.getEnd())) {
+				return i;
 			}
 		}
 		return -1;
 	}
 
+	/**
+	 * Method getCandleIndex. Returns the time index for the series. If the
+	 * index is out of step with the series i.e. items have been inserted or
+	 * removed, it is rebuilt.
+	 * 
+	 * @return CandleIndex
+	 */
+	private CandleIndex getCandleIndex() {
+		if (this.candleIndex.size() != this.getItemCount()) {
+			synchronized (this.candleIndex) {
+				this.candleIndex.reset();
+				for (int i = 0; i < this.getItemCount(); i++) {
+					this.candleIndex.add(((CandleItem) this.data.get(i))
+							.getPeriod().getStart());
+				}
+			}
+		}
+		return this.candleIndex;
+	}
+
 	/**
 	 * Returns the last completed candle or -1 if still building.
 	 * 
@@ -569,8 +780,8 @@ public class CandleSeries extends IndicatorSeries {
 			this.rollCandle(period, rollupInterval, open, high, low, close,
 					volume, tradeCount, vwap, lastUpdateDate);
 
-			candleItem = new CandleItem(this.getContract(), tradingday, period,
-					open, high, low, close, volume,
+			candleItem = new CandleItem(this.candleStore, this.getContract(),
+					tradingday, period, open, high, low, close, volume,
 					this.rollingCandle.getVwap(), tradeCount, lastUpdateDate);
 			this.add(candleItem, false);
 
@@ -586,13 +797,20 @@ public class CandleSeries extends IndicatorSeries {
 	 * Clears down and resets all the Vwap calculated fields.
 	 */
 	public void clear() {
-		this.openValues.clear();
-		this.highValues.clear();
-		this.lowValues.clear();
-		this.volumeValues.clear();
-		this.tradeCountValues.clear();
-		this.vwapVolumeValues.clear();
-		this.rollingCandleValues.clear();
+		this.rollingCandle = new RollingCandle();
+		this.prevRollingCandle = null;
+		this.rollingWindow.reset(1, this.rollingCandle.high,
+				this.rollingCandle.low);
+		this.resetRollingCandleValues(1);
+		/*
+		 * Items may still be referenced by other series so leave their store
+		 * as is and start a new one.
+		 */
+		this.candleStore = new CandleStore();
+		this.storeOrdered = true;
+		this.candleIndex.reset();
+		this.candleRangeIndex.truncate(0);
+		this.sessionStatistics.reset();
 		super.clear();
 	}
 
@@ -613,6 +831,16 @@ public class CandleSeries extends IndicatorSeries {
 		clone.endTime = this.getEndTime();
 		clone.barSize = this.getBarSize();
 		clone.rollingCandle = new RollingCandle();
+		clone.prevRollingCandle = null;
+		clone.rollingWindow = new RollingWindow(1);
+		clone.rollingCandleValues = new RollingCandle[2];
+		clone.rollingCandleHead = 0;
+		clone.rollingCandleCount = 0;
+		clone.candleStore = new CandleStore();
+		clone.storeOrdered = true;
+		clone.candleIndex = new CandleIndex();
+		clone.candleRangeIndex = new CandleRangeIndex();
+		clone.sessionStatistics = new SessionStatistics();
 		return clone;
 	}
 
@@ -657,7 +885,7 @@ public class CandleSeries extends IndicatorSeries {
 	 */
 	@Transient
 	public RollingCandle getRollingCandle() {
-		return this.rollingCandleValues.getFirst();
+		return this.getRollingCandle(0);
 	}
 
 	/**
@@ -669,7 +897,13 @@ public class CandleSeries extends IndicatorSeries {
 	 */
 	@Transient
 	public RollingCandle getRollingCandle(int index) {
-		return this.rollingCandleValues.get(index);
+		if (index < 0 || index >= this.rollingCandleCount) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ this.rollingCandleCount);
+		}
+		int length = this.rollingCandleValues.length;
+		return this.rollingCandleValues[(this.rollingCandleHead - index + length)
+				% length];
 	}
 
 	/**
@@ -679,7 +913,7 @@ public class CandleSeries extends IndicatorSeries {
 	 */
 	@Transient
 	public int getRollingCandleSize() {
-		return this.rollingCandleValues.size();
+		return this.rollingCandleCount;
 	}
 
 	/**
@@ -723,9 +957,11 @@ public class CandleSeries extends IndicatorSeries {
 			if (newBar) {
 				this.add(candleItem, true);
 			} else {
-				CandleItem dataItem = (CandleItem) this.getDataItem(this
-						.getItemCount() - 1);
-				this.update(dataItem.getPeriod(), dataItem.getCandle());
+				/*
+				 * The item is shared with the source series so its values are
+				 * already current just notify the listeners.
+				 */
+				this.fireSeriesChanged();
 			}
 		}
 	}
@@ -744,71 +980,41 @@ public class CandleSeries extends IndicatorSeries {
 	public Candle getAverageBar(ZonedDateTime startDate, ZonedDateTime endDate,
 			boolean wieghted) {
 
-		int itemCount = this.getItemCount() - 1;
-		long sumVolume = 0;
-		int sunTradeCount = 0;
-		double sunHighPriceXVolume = 0;
-		double sunLowPriceXVolume = 0;
-		double sunOpenPriceXVolume = 0;
-		double sunClosePriceXVolume = 0;
-		double sunClosePriceXVolumeVwap = 0;
-		double numberOfCandles = 0;
-		CandleItem candle = null;
-		for (int i = itemCount; i > -1; i--) {
-			candle = (CandleItem) this.getDataItem(i);
-			if ((candle.getPeriod().getStart().equals(startDate) || candle
-					.getPeriod().getStart().isAfter(startDate))
-					&& (candle.getPeriod().getStart().equals(endDate) || candle
-							.getPeriod().getStart().isBefore(endDate))) {
-
-				if (candle.getVolume() > 0)
-					numberOfCandles++;
-
-				sunHighPriceXVolume = sunHighPriceXVolume
-						+ ((wieghted ? candle.getVolume() : 1) * candle
-								.getHigh());
-				sunLowPriceXVolume = sunLowPriceXVolume
-						+ ((wieghted ? candle.getVolume() : 1) * candle
-								.getLow());
-				sunOpenPriceXVolume = sunOpenPriceXVolume
-						+ ((wieghted ? candle.getVolume() : 1) * candle
-								.getOpen());
-				sunClosePriceXVolume = sunClosePriceXVolume
-						+ ((wieghted ? candle.getVolume() : 1) * candle
-								.getClose());
-				sunClosePriceXVolumeVwap = sunClosePriceXVolumeVwap
-						+ (candle.getVolume() * candle.getClose());
-				sumVolume = sumVolume + candle.getVolume();
-				sunTradeCount = sunTradeCount + candle.getCount();
-			}
-		}
-		if (numberOfCandles > 0 && sumVolume > 0) {
-
-			CandlePeriod period = new CandlePeriod(startDate, endDate);
-			Candle avgCandle = new Candle(getContract(), period, 0, 0, 0,
-					Double.MAX_VALUE,
+		CandleRange bar = new CandleRange();
+		if (this.getAverageBar(startDate, endDate, wieghted, bar)) {
+			return new Candle(getContract(), new CandlePeriod(startDate,
+					endDate), bar.getOpen(), bar.getHigh(), bar.getLow(),
+					bar.getClose(), bar.getVolume(), bar.getVwap(),
+					bar.getTradeCount(),
 					TradingCalendar.getDateTimeNowMarketTimeZone());
-			avgCandle.setHigh(new BigDecimal(
-					(sunHighPriceXVolume / (wieghted ? sumVolume
-							: numberOfCandles))));
-			avgCandle.setLow(new BigDecimal(
-					(sunLowPriceXVolume / (wieghted ? sumVolume
-							: numberOfCandles))));
-			avgCandle.setOpen(new BigDecimal(
-					(sunOpenPriceXVolume / (wieghted ? sumVolume
-							: numberOfCandles))));
-			avgCandle.setClose(new BigDecimal(
-					(sunClosePriceXVolume / (wieghted ? sumVolume
-							: numberOfCandles))));
-			avgCandle.setVwap(new BigDecimal(sunClosePriceXVolumeVwap
-					/ sumVolume));
-			avgCandle.setVolume(sumVolume);
-			avgCandle.setTradeCount(sunTradeCount);
-			return avgCandle;
 		}
 		return null;
 	}
 
+	/**
+	 * Method getAverageBar. The average of the candles that start between the
+	 * start and end date inclusive.
+	 * 
+	 * @param startDate
+	 *            Date
+	 * @param endDate
+	 *            Date
+	 * @param wieghted
+	 *            boolean true to weight by volume.
+	 * @param bar
+	 *            CandleRange the result.
+	 * @return boolean false if there are no candles with volume.
+	 */
+	public boolean getAverageBar(ZonedDateTime startDate,
+			ZonedDateTime endDate, boolean wieghted, CandleRange bar) {
+
+		CandleIndex index = this.getCandleIndex();
+		int from = index.floor(getCeilingSecond(startDate) - 1) + 1;
+		int to = index.floor(endDate.toEpochSecond()) + 1;
+		return this.getCandleRangeIndex().getAverageBar(from, to, wieghted,
+				bar);
+	}
+
 	/**
 	 * Method getBar.
 	 * 
@@ -820,63 +1026,88 @@ public class CandleSeries extends IndicatorSeries {
 	 */
 	public Candle getBar(ZonedDateTime startDate, ZonedDateTime endDate) {
 
-		if (null != this.candleBar) {
-			if (this.candleBar.getStartPeriod().equals(startDate)
-					&& this.candleBar.getEndPeriod().equals(endDate)) {
-				return this.candleBar;
-			} else {
-				this.candleBar = null;
-			}
+		CandleRange bar = new CandleRange();
+		if (this.getBar(startDate, endDate, bar)) {
+			ZonedDateTime start = ((CandleItem) this.getDataItem(bar
+					.getFirstIndex())).getPeriod().getStart();
+			ZonedDateTime end = ((CandleItem) this.getDataItem(bar
+					.getLastIndex())).getPeriod().getEnd();
+			return new Candle(getContract(), new CandlePeriod(start, end),
+					bar.getOpen(), bar.getHigh(), bar.getLow(), bar.getClose(),
+					bar.getVolume(), bar.getVwap(), bar.getTradeCount(),
+					TradingCalendar.getDateTimeNowMarketTimeZone());
 		}
+		return null;
+	}
 
-		int itemCount = this.getItemCount() - 1;
-		long sumVolume = 0;
-		int sumTradeCount = 0;
-		double sunClosePriceXVolumeVwap = 0;
-		CandleItem candle = null;
-		for (int i = itemCount; i > -1; i--) {
-			candle = (CandleItem) this.getDataItem(i);
-			if ((candle.getPeriod().getStart().equals(startDate) || candle
-					.getPeriod().getStart().isAfter(startDate))
-					&& (candle.getPeriod().getStart().isBefore(endDate))) {
-				if (null == this.candleBar) {
-					this.candleBar = new Candle(getContract(),
-							candle.getPeriod(), 0, 0, Double.MAX_VALUE, 0,
-							TradingCalendar.getDateTimeNowMarketTimeZone());
-					this.candleBar.setEndPeriod(candle.getPeriod().getEnd());
-				}
-
-				if (this.candleBar.getClose().doubleValue() == 0)
-					this.candleBar.setClose(new BigDecimal(candle.getClose()));
-
-				if (this.candleBar.getHigh().doubleValue() < candle.getHigh())
-					this.candleBar.setHigh(new BigDecimal(candle.getHigh()));
+	/**
+	 * Method getBar. The bar made from the candles that start on or after the
+	 * start date and before the end date.
+	 * 
+	 * @param startDate
+	 *            Date
+	 * @param endDate
+	 *            Date
+	 * @param bar
+	 *            CandleRange the result.
+	 * @return boolean false if there are no candles in the range.
+	 */
+	public boolean getBar(ZonedDateTime startDate, ZonedDateTime endDate,
+			CandleRange bar) {
 
-				if (this.candleBar.getLow().doubleValue() > candle.getLow())
-					this.candleBar.setLow(new BigDecimal(candle.getLow()));
+		CandleIndex index = this.getCandleIndex();
+		int from = index.floor(getCeilingSecond(startDate) - 1) + 1;
+		int to = index.floor(getCeilingSecond(endDate) - 1) + 1;
+		return this.getCandleRangeIndex().getBar(from, to, bar);
+	}
 
-				sunClosePriceXVolumeVwap = sunClosePriceXVolumeVwap
-						+ (candle.getVolume() * candle.getClose());
-				sumVolume = sumVolume + candle.getVolume();
-				sumTradeCount = sumTradeCount + candle.getCount();
+	/**
+	 * Method getCandleRangeIndex. Returns the range index for the series
+	 * brought up to date with any candles that have been added or revised. If
+	 * the item positions are not the store rows i.e. items have been inserted
+	 * or removed, it is rebuilt.
+	 * 
+	 * @return CandleRangeIndex
+	 */
+	private CandleRangeIndex getCandleRangeIndex() {
+		synchronized (this.candleRangeIndex) {
+			int from = 0;
+			if (this.storeOrdered) {
+				from = Math.min(this.candleStore.takeModifiedRow(),
+						this.candleRangeIndex.size());
 			}
-		}
-		if (null != candle) {
-			this.candleBar.setStartPeriod(candle.getPeriod().getStart());
-			this.candleBar.setOpen(new BigDecimal(candle.getOpen()));
-			this.candleBar.setTradeCount(sumTradeCount);
-			if (sumVolume > 0) {
-				this.candleBar.setVwap(new BigDecimal(sunClosePriceXVolumeVwap
-						/ sumVolume));
-				this.candleBar.setVolume(sumVolume);
-			} else {
-				this.candleBar
-						.setVwap(new BigDecimal(sunClosePriceXVolumeVwap));
-				this.candleBar.setVolume(0L);
+			int itemCount = this.getItemCount();
+			if (from < itemCount || itemCount != this.candleRangeIndex.size()) {
+				this.candleRangeIndex.truncate(from);
+				for (int i = from; i < itemCount; i++) {
+					this.candleRangeIndex.add(this.getOpen(i),
+							this.getHigh(i), this.getLow(i), this.getClose(i),
+							this.getVolume(i), this.getCount(i));
+				}
 			}
-
 		}
-		return this.candleBar;
+		return this.candleRangeIndex;
+	}
+
+	/**
+	 * Method getCeilingSecond.
+	 * 
+	 * @param date
+	 *            ZonedDateTime
+	 * @return long the epoch second at or after the date.
+	 */
+	private static long getCeilingSecond(ZonedDateTime date) {
+		return date.toEpochSecond() + (date.getNano() > 0 ? 1 : 0);
+	}
+
+	/**
+	 * Method getSessionStatistics.
+	 * 
+	 * @return SessionStatistics the statistics of the current trading day.
+	 */
+	@Transient
+	public SessionStatistics getSessionStatistics() {
+		return this.sessionStatistics;
 	}
 
 	/**
@@ -886,7 +1117,7 @@ public class CandleSeries extends IndicatorSeries {
 	 */
 	@Transient
 	public Percent getPercentChangeFromClose() {
-		return percentChangeFromClose;
+		return getPercent(this.sessionStatistics.getPercentChangeFromClose());
 	}
 
 	/**
@@ -896,62 +1127,31 @@ public class CandleSeries extends IndicatorSeries {
 	 */
 	@Transient
 	public Percent getPercentChangeFromOpen() {
-		return percentChangeFromOpen;
+		return getPercent(this.sessionStatistics.getPercentChangeFromOpen());
 	}
 
 	/**
-	 * Method updatePercentChanged.
+	 * Method updateSessionStatistics. Add or revise the candle at the index in
+	 * the session statistics.
 	 * 
-	 * @param candleItem
-	 *            CandleItem
+	 * @param index
+	 *            int
 	 */
-	public void updatePercentChanged(CandleItem candleItem) {
-
-		ZonedDateTime prevDay = TradingCalendar.getPrevTradingDay(candleItem
-				.getPeriod().getStart());
-		ZonedDateTime prevDayEnd = TradingCalendar.getDateAtTime(prevDay,
-				this.getEndTime());
-		prevDayEnd = prevDayEnd.minusSeconds(1);
-		ZonedDateTime prevDayStart = TradingCalendar.getDateAtTime(prevDay,
-				this.getStartTime());
-		ZonedDateTime todayOpen = TradingCalendar.getDateAtTime(candleItem
-				.getPeriod().getStart(), this.getStartTime());
-		int index = this.indexOf(todayOpen);
-		if (index > -1) {
-			CandleItem openCandleItem = (CandleItem) this.getDataItem(index);
-			try {
-				percentChangeFromOpen.setValue(new Percent((candleItem
-						.getClose() - openCandleItem.getOpen())
-						/ openCandleItem.getOpen()));
-			} catch (ValueTypeException ex) {
-				_log.error("Could not set ValueType Msg: " + ex.getMessage(),
-						ex);
-			}
-			if (candleItem.getPeriod().getStart().isAfter(prevDayEnd)) {
-				if (this.indexOf(prevDayStart) > -1
-						&& this.indexOf(prevDayEnd) > -1) {
-					Candle prevDayCandle = this
-							.getBar(prevDayStart, prevDayEnd);
-					// _log.info("prevDayCandle Start:"
-					// + prevDayCandle.getStartPeriod() + " End period: "
-					// + prevDayCandle.getEndPeriod() + " Open:"
-					// + prevDayCandle.getOpen() + " High: "
-					// + prevDayCandle.getHigh() + " Low:"
-					// + prevDayCandle.getLow() + " Close: "
-					// + prevDayCandle.getClose());
-					try {
-						percentChangeFromClose.setValue(new Percent((candleItem
-								.getClose() - prevDayCandle.getClose()
-								.doubleValue())
-								/ prevDayCandle.getClose().doubleValue()));
-					} catch (ValueTypeException ex) {
-						_log.error(
-								"Could not set ValueType Msg: "
-										+ ex.getMessage(), ex);
-					}
-				}
-			}
-		}
+	public void updateSessionStatistics(int index) {
+		this.sessionStatistics.update(this, index);
+	}
+
+	/**
+	 * Method getPercent.
+	 * 
+	 * @param value
+	 *            double
+	 * @return Percent zero if the value is not known.
+	 */
+	private static Percent getPercent(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			return new Percent(0);
+		return new Percent(value);
 	}
 
 	/**
@@ -1020,6 +1220,9 @@ public class CandleSeries extends IndicatorSeries {
 		if (rollupInterval != this.rollingCandle.rollupInterval
 				|| this.isEmpty()) {
 
+			long sumVolume = 0;
+			double sumVwapVolume = 0;
+			int sumTradeCount = 0;
 			/*
 			 * Going to a lower period i.e say we were 5 min bars now going to
 			 * 5sec bars within the current 5min bar.
@@ -1039,14 +1242,11 @@ public class CandleSeries extends IndicatorSeries {
 							candleItem.getCount(), candleItem.getVwap(),
 							lastUpdateDate);
 
-					this.sumVwapVolume = new Double(candleItem.getVwap()
-							* candleItem.getVolume());
-					this.sumVolume = candleItem.getVolume();
-					this.sumTradeCount = candleItem.getCount();
+					sumVwapVolume = candleItem.getVwap()
+							* candleItem.getVolume();
+					sumVolume = candleItem.getVolume();
+					sumTradeCount = candleItem.getCount();
 				} else {
-					this.sumVwapVolume = new Double(0);
-					this.sumVolume = new Long(0);
-					this.sumTradeCount = new Integer(0);
 					this.rollingCandle.rollupInterval = rollupInterval;
 				}
 				if (this.getItemCount() > 1) {
@@ -1065,18 +1265,12 @@ public class CandleSeries extends IndicatorSeries {
 			} else {
 				this.rollingCandle.rollupInterval = rollupInterval;
 				this.rollingCandle.open = open;
-				this.sumVwapVolume = new Double(0);
-				this.sumVolume = new Long(0);
-				this.sumTradeCount = new Integer(0);
 			}
 
-			this.openValues.clear();
-			this.highValues.clear();
-			this.lowValues.clear();
-			this.volumeValues.clear();
-			this.tradeCountValues.clear();
-			this.vwapVolumeValues.clear();
-			this.rollingCandleValues.clear();
+			this.rollingWindow.reset(rollupInterval, this.rollingCandle.high,
+					this.rollingCandle.low);
+			this.rollingWindow.setSums(sumVolume, sumVwapVolume, sumTradeCount);
+			this.resetRollingCandleValues(rollupInterval);
 		}
 
 		updateRollingCandle(period, rollupInterval, open, high, low, close,
@@ -1114,77 +1308,66 @@ public class CandleSeries extends IndicatorSeries {
 			double close, long volume, int tradeCount, double vwap,
 			ZonedDateTime lastUpdateDate) {
 
-		if (rollupInterval == this.rollingCandleValues.size()) {
-			this.prevRollingCandle = this.rollingCandleValues.removeLast();
+		this.rollingWindow.add(open, high, low, volume, tradeCount, vwap
+				* volume);
 
-			this.rollingCandle.open = this.openValues.removeLast();
-			if (this.openValues.isEmpty())
-				this.rollingCandle.open = open;
-
-			if (this.rollingCandle.high == this.highValues.removeLast()) {
-				if (this.highValues.isEmpty()) {
-					this.rollingCandle.high = high;
-				} else {
-					this.rollingCandle.high = Collections.max(this.highValues);
-				}
-			}
+		if (this.rollingWindow.isEvicted()) {
+			int length = this.rollingCandleValues.length;
+			this.prevRollingCandle = this.rollingCandleValues[(this.rollingCandleHead
+					- (this.rollingCandleCount - 1) + length)
+					% length];
+			this.rollingCandleCount--;
 
-			if (this.rollingCandle.low == this.lowValues.removeLast()) {
-				if (this.lowValues.isEmpty()) {
-					this.rollingCandle.low = low;
-				} else {
-					this.rollingCandle.low = Collections.min(this.lowValues);
-				}
+			if (this.rollingWindow.getCapacity() == 1) {
+				this.rollingCandle.open = open;
+			} else {
+				this.rollingCandle.open = this.rollingWindow.getEvictedOpen();
 			}
-
-			sumVolume = sumVolume - this.volumeValues.removeLast();
-			sumVwapVolume = sumVwapVolume - this.vwapVolumeValues.removeLast();
-			sumTradeCount = sumTradeCount - this.tradeCountValues.removeLast();
 		}
 
 		this.rollingCandle.period = period;
 		this.rollingCandle.lastUpdateDate = lastUpdateDate;
-
-		this.openValues.addFirst(open);
-
-		this.highValues.addFirst(high);
-		if (high > this.rollingCandle.high)
-			this.rollingCandle.high = high;
-
-		this.lowValues.addFirst(low);
-		if (low < this.rollingCandle.low)
-			this.rollingCandle.low = low;
-
+		this.rollingCandle.high = this.rollingWindow.getHigh();
+		this.rollingCandle.low = this.rollingWindow.getLow();
 		this.rollingCandle.close = close;
+		this.rollingCandle.tradeCount = this.rollingWindow.getSumTradeCount();
+		this.rollingCandle.volume = this.rollingWindow.getSumVolume();
 
-		this.tradeCountValues.addFirst(tradeCount);
-		sumTradeCount = sumTradeCount + tradeCount;
-		this.rollingCandle.tradeCount = sumTradeCount;
-
-		this.volumeValues.addFirst(volume);
-		sumVolume = sumVolume + volume;
-		this.rollingCandle.volume = sumVolume;
-
-		this.vwapVolumeValues.addFirst(vwap * volume);
-		sumVwapVolume = sumVwapVolume + this.vwapVolumeValues.getFirst();
-
-		if (sumVolume > 0) {
-			this.rollingCandle.vwap = sumVwapVolume / sumVolume;
+		if (this.rollingCandle.volume > 0) {
+			this.rollingCandle.vwap = this.rollingWindow.getSumVwapVolume()
+					/ this.rollingCandle.volume;
 		} else {
 			this.rollingCandle.vwap = this.rollingCandle.close;
 		}
 
-		// _log.info("**Date: " + period.getStart() + " sumVwapVolume: "
-		// + sumVwapVolume + " sumVolume: " + sumVolume + " volume: "
-		// + volume + " vwap: " + this.rollingCandle.vwap);
-		try {
-			this.rollingCandleValues
-					.addFirst((RollingCandle) this.rollingCandle.clone());
-		} catch (CloneNotSupportedException e) {
-			// TODO Auto-generated catch block
-			_log.error("Error updateRollingCandle cannot clone candle Msg: "
-					+ e.getMessage());
+		/*
+		 * Snapshot the rolling candle into the next slot of the ring.
+		 */
+		this.rollingCandleHead = (this.rollingCandleHead + 1)
+				% this.rollingCandleValues.length;
+		RollingCandle snapshot = this.rollingCandleValues[this.rollingCandleHead];
+		if (null == snapshot) {
+			snapshot = new RollingCandle();
+			this.rollingCandleValues[this.rollingCandleHead] = snapshot;
+		}
+		snapshot.copy(this.rollingCandle);
+		this.rollingCandleCount++;
+	}
+
+	/**
+	 * Method resetRollingCandleValues. Empty the ring of rolling candle
+	 * snapshots and size it for the rollup interval.
+	 * 
+	 * @param rollupInterval
+	 *            the rollup Interval.
+	 */
+	private void resetRollingCandleValues(int rollupInterval) {
+		int length = Math.max(1, rollupInterval) + 1;
+		if (this.rollingCandleValues.length != length) {
+			this.rollingCandleValues = new RollingCandle[length];
 		}
+		this.rollingCandleHead = 0;
+		this.rollingCandleCount = 0;
 	}
 
 	public class RollingCandle implements Cloneable {
@@ -1313,6 +1496,25 @@ public class CandleSeries extends IndicatorSeries {
 			return this.close >= this.open;
 		}
 
+		/**
+		 * Method copy. Set the values of this candle to those of another.
+		 * 
+		 * @param candle
+		 *            RollingCandle
+		 */
+		private void copy(RollingCandle candle) {
+			this.rollupInterval = candle.rollupInterval;
+			this.period = candle.period;
+			this.open = candle.open;
+			this.high = candle.high;
+			this.low = candle.low;
+			this.close = candle.close;
+			this.volume = candle.volume;
+			this.tradeCount = candle.tradeCount;
+			this.vwap = candle.vwap;
+			this.lastUpdateDate = candle.lastUpdateDate;
+		}
+
 		/**
 		 * Method clone.
 		 * 
@@ -0,0 +1,188 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.trade.persistent.dao.CodeValue;
+
+/**
+ * The indicators of a StrategyData as a dependency graph. Each node is an
+ * indicator keyed by its type, parameters (the CodeValues) and any other state
+ * that changes its values (see IndicatorSeries.getStateKey). Indicators
+ * with the same key are merged into one node, the first series added computes
+ * the values and the others become views that share its items. Nodes are held
+ * in the order they were added which is their topological order as every
+ * node depends only on the candle series or on nodes added before it.
+ * 
+ * CandleSeries are not indicators they are only updated via the API and are
+ * not held in the graph.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class IndicatorGraph {
+
+	private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+	private int unsharedCount = 0;
+
+	public IndicatorGraph() {
+	}
+
+	/**
+	 * Method add. Add the series to the graph.
+	 * 
+	 * @param series
+	 *            IndicatorSeries
+	 * @return IndicatorSeries the series that computes the values for this
+	 *         series. This will be the series itself if it is a new node.
+	 */
+	public synchronized IndicatorSeries add(IndicatorSeries series) {
+		String key = getKey(series);
+		if (null == key) {
+			key = series.getType() + "#" + (this.unsharedCount++);
+		}
+		Node node = this.nodes.get(key);
+		if (null == node) {
+			node = new Node(series);
+			this.nodes.put(key, node);
+		} else {
+			series.shareData(node.series);
+			node.views.add(series);
+		}
+		return node.series;
+	}
+
+	/**
+	 * Method updateSeries. Update each node once.
+	 * 
+	 * @param source
+	 *            CandleSeries
+	 * @param skip
+	 *            int
+	 * @param newBar
+	 *            boolean
+	 */
+	public synchronized void updateSeries(CandleSeries source, int skip,
+			boolean newBar) {
+		for (Node node : this.nodes.values()) {
+			node.series.updateSeries(source, skip, newBar);
+		}
+	}
+
+	/**
+	 * Method createSeries. Create each node from the source.
+	 * 
+	 * @param source
+	 *            CandleDataset
+	 * @param seriesIndex
+	 *            int
+	 */
+	public synchronized void createSeries(CandleDataset source, int seriesIndex) {
+		for (Node node : this.nodes.values()) {
+			node.series.createSeries(source, seriesIndex);
+			for (IndicatorSeries view : node.views) {
+				view.shareData(node.series);
+			}
+		}
+	}
+
+	/**
+	 * Method getNodeCount.
+	 * 
+	 * @return int the number of indicators that are computed.
+	 */
+	public synchronized int getNodeCount() {
+		return this.nodes.size();
+	}
+
+	/**
+	 * Method getSeriesCount.
+	 * 
+	 * @return int the number of indicator series including the views.
+	 */
+	public synchronized int getSeriesCount() {
+		int count = 0;
+		for (Node node : this.nodes.values()) {
+			count = count + 1 + node.views.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Method getKey. The type, the parameters sorted by name and the state.
+	 * 
+	 * @param series
+	 *            IndicatorSeries
+	 * @return String the key or null if the series has no parameters i.e. it
+	 *         was configured in code and cannot be compared.
+	 */
+	public static String getKey(IndicatorSeries series) {
+		if (null == series.getCodeValues() || series.getCodeValues().isEmpty())
+			return null;
+		List<String> parameters = new ArrayList<String>(series
+				.getCodeValues().size());
+		for (CodeValue codeValue : series.getCodeValues()) {
+			parameters.add(codeValue.getCodeAttribute().getName() + "="
+					+ codeValue.getCodeValue());
+		}
+		Collections.sort(parameters);
+		StringBuilder key = new StringBuilder(series.getType());
+		for (String parameter : parameters) {
+			key.append('|').append(parameter);
+		}
+		if (null != series.getStateKey())
+			key.append('#').append(series.getStateKey());
+		return key.toString();
+	}
+
+	/**
+	 */
+	private static class Node {
+
+		private final IndicatorSeries series;
+		private final List<IndicatorSeries> views = new ArrayList<IndicatorSeries>(
+				0);
+
+		Node(IndicatorSeries series) {
+			this.series = series;
+		}
+	}
+}
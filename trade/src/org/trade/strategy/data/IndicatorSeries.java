@@ -62,6 +62,8 @@ import javax.validation.constraints.NotNull;
 
 import org.jfree.data.ComparableObjectItem;
 import org.jfree.data.ComparableObjectSeries;
+import org.jfree.data.general.SeriesChangeEvent;
+import org.jfree.data.general.SeriesChangeListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.trade.persistent.dao.CodeValue;
@@ -116,6 +118,8 @@ public abstract class IndicatorSeries extends ComparableObjectSeries implements
 	protected Integer version;
 	private boolean dirty = false;
 	private List<CodeValue> codeValues = new ArrayList<>(0);
+	private transient IndicatorSeries sharedSeries = null;
+	private transient SeriesChangeListener sharedListener = null;
 
 	/**
 	 * Constructor for IndicatorSeries.
@@ -455,9 +459,48 @@ public abstract class IndicatorSeries extends ComparableObjectSeries implements
 
 		IndicatorSeries clone = (IndicatorSeries) super.clone();
 		clone.data = new ArrayList<Object>();
+		clone.sharedSeries = null;
+		clone.sharedListener = null;
 		return clone;
 	}
 
+	/**
+	 * Method shareData. Make this series a view onto the items of another
+	 * series with the same type and parameters. The items are computed once
+	 * by the other series, its change events are passed on to the listeners
+	 * of this series.
+	 * 
+	 * @param series
+	 *            IndicatorSeries
+	 */
+	void shareData(IndicatorSeries series) {
+		this.data = series.data;
+		if (series == this.sharedSeries)
+			return;
+		if (null == this.sharedListener) {
+			this.sharedListener = new SeriesChangeListener() {
+				public void seriesChanged(SeriesChangeEvent event) {
+					fireSeriesChanged();
+				}
+			};
+		}
+		if (null != this.sharedSeries)
+			this.sharedSeries.removeChangeListener(this.sharedListener);
+		this.sharedSeries = series;
+		series.addChangeListener(this.sharedListener);
+	}
+
+	/**
+	 * Method getStateKey. Any state of the series that changes its values
+	 * but is not held in the CodeValues i.e. the side of a band.
+	 * 
+	 * @return String the state or null if there is none.
+	 */
+	@Transient
+	protected String getStateKey() {
+		return null;
+	}
+
 	/**
 	 * Returns the data item at the specified index.
 	 * 
@@ -471,6 +514,81 @@ public abstract class IndicatorSeries extends ComparableObjectSeries implements
 		return super.getDataItem(index);
 	}
 
+	/**
+	 * Method createSeries. Create the series from all the candles in the
+	 * source. If the indicator has a bulk path (see computeAll) it is used,
+	 * otherwise each candle is replayed through updateSeries.
+	 * 
+	 * @param source
+	 *            CandleSeries
+	 */
+	protected void createSeries(CandleSeries source) {
+
+		int count = source.getItemCount();
+		if (count > 0 && this.isEmpty()) {
+			double[] open = new double[count];
+			double[] high = new double[count];
+			double[] low = new double[count];
+			double[] close = new double[count];
+			long[] volume = new long[count];
+			source.copyValues(open, high, low, close, volume, null);
+			if (this.computeAll(source, open, high, low, close, volume, count))
+				return;
+		}
+		for (int i = 0; i < count; i++) {
+			this.updateSeries(source, i, true);
+		}
+	}
+
+	/**
+	 * Method computeAll. The bulk path for createSeries. Compute the series in
+	 * one pass over the candle values and leave the indicator ready to carry
+	 * on with updateSeries for the candles that follow. This is only called
+	 * when the series is empty.
+	 * 
+	 * Indicators that do not override this return false and are created by
+	 * replaying updateSeries.
+	 * 
+	 * @param source
+	 *            CandleSeries the candles the values were copied from.
+	 * @param open
+	 *            double[]
+	 * @param high
+	 *            double[]
+	 * @param low
+	 *            double[]
+	 * @param close
+	 *            double[]
+	 * @param volume
+	 *            long[]
+	 * @param count
+	 *            int the number of candles.
+	 * @return boolean true if the series was computed.
+	 */
+	protected boolean computeAll(CandleSeries source, double[] open,
+			double[] high, double[] low, double[] close, long[] volume,
+			int count) {
+		return false;
+	}
+
+	/**
+	 * Method append. Add an item that is after the last item in the series.
+	 * This avoids the search for the position of the item when the series is
+	 * built in order.
+	 * 
+	 * @param item
+	 *            ComparableObjectItem
+	 */
+	@SuppressWarnings("unchecked")
+	protected void append(ComparableObjectItem item) {
+		if (this.data.isEmpty()
+				|| item.compareTo(this.data.get(this.data.size() - 1)) > 0) {
+			this.data.add(item);
+		} else {
+			this.add(item, false);
+		}
+	}
+
 	/**
 	 * Method updateSeries.
 	 * 
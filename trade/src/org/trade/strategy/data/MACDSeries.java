@@ -36,7 +36,6 @@
 package org.trade.strategy.data;
 
 import java.math.BigDecimal;
-import java.util.LinkedList;
 
 import javax.persistence.DiscriminatorValue;
 import javax.persistence.Entity;
@@ -49,6 +48,9 @@ import org.trade.persistent.dao.Strategy;
 import org.trade.strategy.data.base.RegularTimePeriod;
 import org.trade.strategy.data.candle.CandleItem;
 import org.trade.strategy.data.macd.MACDItem;
+import org.trade.strategy.data.movingaverage.ExponentialMovingAverage;
+import org.trade.strategy.data.movingaverage.MovingAverageKernel;
+import org.trade.strategy.data.movingaverage.SimpleMovingAverage;
 
 /**
  * Developed by Gerald Appel in the late seventies, the Moving Average
@@ -92,20 +94,12 @@ public class MACDSeries extends IndicatorSeries {
 	private Integer slowLength;
 	private Integer signalSmoothing;
 
-	private double fastSum = 0.0;
-	private double prevFastEMA = 0;
-	private double fastMultiplyer = Double.MAX_VALUE;
-	private LinkedList<Double> fastYYValues = new LinkedList<Double>();
-
-	private double slowSum = 0.0;
-	private double prevSlowEMA = 0;
-	private double slowMultiplyer = Double.MAX_VALUE;
-	private LinkedList<Double> slowYYValues = new LinkedList<Double>();
-
-	private double signalSmoothingSum = 0.0;
-	private double prevSignalSmoothingEMA = 0;
-	private double signalSmoothingMultiplyer = Double.MAX_VALUE;
-	private LinkedList<Double> signalSmoothingYYValues = new LinkedList<Double>();
+	/*
+	 * The fast EMA starts on the same bar as the slow EMA.
+	 */
+	private ExponentialMovingAverage fastEMA = null;
+	private ExponentialMovingAverage slowEMA = null;
+	private MovingAverageKernel signalSmoothingMA = null;
 
 	/**
 	 * Creates a new empty series. By default, items added to the series will be
@@ -180,7 +174,9 @@ public class MACDSeries extends IndicatorSeries {
 	 */
 	public Object clone() throws CloneNotSupportedException {
 		MACDSeries clone = (MACDSeries) super.clone();
-		clone.fastYYValues = new LinkedList<Double>();
+		clone.fastEMA = null;
+		clone.slowEMA = null;
+		clone.signalSmoothingMA = null;
 		return clone;
 	}
 
@@ -191,18 +187,9 @@ public class MACDSeries extends IndicatorSeries {
 	 */
 	public void clear() {
 		super.clear();
-		fastSum = 0.0;
-		fastMultiplyer = Double.MAX_VALUE;
-		fastYYValues.clear();
-		slowSum = 0.0;
-		slowMultiplyer = Double.MAX_VALUE;
-		slowYYValues.clear();
-		signalSmoothingSum = 0.0;
-		signalSmoothingMultiplyer = Double.MAX_VALUE;
-		signalSmoothingYYValues.clear();
-		prevFastEMA = 0;
-		prevSlowEMA = 0;
-		prevSignalSmoothingEMA = 0;
+		fastEMA = null;
+		slowEMA = null;
+		signalSmoothingMA = null;
 	}
 
 	/**
@@ -382,26 +369,72 @@ public class MACDSeries extends IndicatorSeries {
 			throw new IllegalArgumentException("Null source (CandleDataset).");
 		}
 
-		for (int i = 0; i < source.getSeries(seriesIndex).getItemCount(); i++) {
-			this.updateSeries(source.getSeries(seriesIndex), i, true);
-		}
+		this.createSeries(source.getSeries(seriesIndex));
 	}
 
 	/**
-	 * Method updateSeries.
+	 * Method computeAll.
 	 * 
 	 * @param source
 	 *            CandleSeries
-	 * @param skip
+	 * @param open
+	 *            double[]
+	 * @param high
+	 *            double[]
+	 * @param low
+	 *            double[]
+	 * @param close
+	 *            double[]
+	 * @param volume
+	 *            long[]
+	 * @param count
 	 *            int
-	 * @param newBar
-	 *            boolean
+	 * @return boolean
+	 * @see org.trade.strategy.data.IndicatorSeries#computeAll(CandleSeries,
+	 *      double[], double[], double[], double[], long[], int)
 	 */
-	public void updateSeries(CandleSeries source, int skip, boolean newBar) {
+	protected boolean computeAll(CandleSeries source, double[] open,
+			double[] high, double[] low, double[] close, long[] volume,
+			int count) {
+
+		checkParameters();
+		createMovingAverages();
+		for (int i = 0; i < count; i++) {
+			double fastEMA = this.fastEMA.update(close[i], true);
+			double slowEMA = this.slowEMA.update(close[i], true);
+			if (!Double.isNaN(slowEMA)) {
+				double MACD = fastEMA - slowEMA;
+				double signalLine = this.signalSmoothingMA.update(MACD, true);
+				this.append(new MACDItem(source.getPeriod(i), new BigDecimal(
+						MACD), (Double.isNaN(signalLine) ? null
+						: new BigDecimal(signalLine)),
+						(Double.isNaN(signalLine) ? null : new BigDecimal(MACD
+								- signalLine))));
+			}
+		}
+		return true;
+	}
 
-		if (source == null) {
-			throw new IllegalArgumentException("Null source (CandleSeries).");
+	/**
+	 * Method createMovingAverages.
+	 */
+	private void createMovingAverages() {
+		this.fastEMA = new ExponentialMovingAverage(this.getFastLength(),
+				this.getSlowLength());
+		this.slowEMA = new ExponentialMovingAverage(this.getSlowLength());
+		if (this.getSimpleMAType()) {
+			this.signalSmoothingMA = new SimpleMovingAverage(
+					this.getSignalSmoothing());
+		} else {
+			this.signalSmoothingMA = new ExponentialMovingAverage(
+					this.getSignalSmoothing());
 		}
+	}
+
+	/**
+	 * Method checkParameters.
+	 */
+	private void checkParameters() {
 		if (getFastLength() == null || getFastLength() < 1) {
 			throw new IllegalArgumentException(
 					"Fast MA must be greater than zero.");
@@ -421,6 +454,24 @@ public class MACDSeries extends IndicatorSeries {
 			throw new IllegalArgumentException(
 					"Fast MA must be greater than Slow MA.");
 		}
+	}
+
+	/**
+	 * Method updateSeries.
+	 * 
+	 * @param source
+	 *            CandleSeries
+	 * @param skip
+	 *            int
+	 * @param newBar
+	 *            boolean
+	 */
+	public void updateSeries(CandleSeries source, int skip, boolean newBar) {
+
+		if (source == null) {
+			throw new IllegalArgumentException("Null source (CandleSeries).");
+		}
+		checkParameters();
 
 		if (source.getItemCount() > skip) {
 
@@ -431,144 +482,23 @@ public class MACDSeries extends IndicatorSeries {
 			Number yy = candleItem.getY();
 
 			if (null != yy) {
-				if (this.fastYYValues.size() == getFastLength()) {
-					/*
-					 * If the item does not exist in the series then this is a
-					 * new time period and so we need to remove the last in the
-					 * set and add the new periods values. Otherwise we just
-					 * update the last value in the set. Sum is just used for
-					 * performance save having to sum the last set of values
-					 * each time.
-					 */
-					if (newBar) {
-						fastSum = fastSum - this.fastYYValues.getLast()
-								+ yy.doubleValue();
-						this.fastYYValues.removeLast();
-						this.fastYYValues.addFirst(yy.doubleValue());
-
-					} else {
-						fastSum = fastSum - this.fastYYValues.getFirst()
-								+ yy.doubleValue();
-						this.fastYYValues.removeFirst();
-						this.fastYYValues.addFirst(yy.doubleValue());
-					}
-				} else {
-					if (newBar) {
-						fastSum = fastSum + yy.doubleValue();
-						this.fastYYValues.addFirst(yy.doubleValue());
-					} else {
-						fastSum = fastSum + yy.doubleValue()
-								- this.fastYYValues.getFirst();
-						this.fastYYValues.removeFirst();
-						this.fastYYValues.addFirst(yy.doubleValue());
-					}
+				if (null == this.slowEMA) {
+					createMovingAverages();
 				}
-				if (this.slowYYValues.size() == getSlowLength()) {
-					/*
-					 * If the item does not exist in the series then this is a
-					 * new time period and so we need to remove the last in the
-					 * set and add the new periods values. Otherwise we just
-					 * update the last value in the set. Sum is just used for
-					 * performance save having to sum the last set of values
-					 * each time.
-					 */
-					if (newBar) {
-						slowSum = slowSum - this.slowYYValues.getLast()
-								+ yy.doubleValue();
-						this.slowYYValues.removeLast();
-						this.slowYYValues.addFirst(yy.doubleValue());
+				double fastEMA = this.fastEMA.update(yy.doubleValue(), newBar);
+				double slowEMA = this.slowEMA.update(yy.doubleValue(), newBar);
 
-					} else {
-						slowSum = slowSum - this.slowYYValues.getFirst()
-								+ yy.doubleValue();
-						this.slowYYValues.removeFirst();
-						this.slowYYValues.addFirst(yy.doubleValue());
-					}
-				} else {
-					if (newBar) {
-						slowSum = slowSum + yy.doubleValue();
-						this.slowYYValues.addFirst(yy.doubleValue());
-					} else {
-						slowSum = slowSum + yy.doubleValue()
-								- this.slowYYValues.getFirst();
-						this.slowYYValues.removeFirst();
-						this.slowYYValues.addFirst(yy.doubleValue());
-					}
-				}
+				if (!Double.isNaN(slowEMA)) {
 
-				if (this.slowYYValues.size() == getSlowLength()) {
-
-					double fastEMA = 0;
-					if (fastMultiplyer == Double.MAX_VALUE) {
-						fastEMA = fastSum / this.getFastLength();
-						fastMultiplyer = 2 / (this.getFastLength() + 1.0d);
-					} else {
-						fastEMA = ((this.fastYYValues.getFirst() - prevFastEMA) * fastMultiplyer)
-								+ prevFastEMA;
-					}
-					prevFastEMA = fastEMA;
-					double slowEMA = 0;
-					if (slowMultiplyer == Double.MAX_VALUE) {
-						slowEMA = slowSum / this.getSlowLength();
-						slowMultiplyer = 2 / (this.getSlowLength() + 1.0d);
-					} else {
-						slowEMA = ((this.slowYYValues.getFirst() - prevSlowEMA) * slowMultiplyer)
-								+ prevSlowEMA;
-					}
-					prevSlowEMA = slowEMA;
 					double MACD = fastEMA - slowEMA;
-					if (this.signalSmoothingYYValues.size() == this
-							.getSignalSmoothing()) {
-						/*
-						 * If the item does not exist in the series then this is
-						 * a new time period and so we need to remove the last
-						 * in the set and add the new periods values. Otherwise
-						 * we just update the last value in the set. Sum is just
-						 * used for performance save having to sum the last set
-						 * of values each time.
-						 */
-
-						if (newBar) {
-							signalSmoothingSum = signalSmoothingSum
-									- this.signalSmoothingYYValues.getLast()
-									+ MACD;
-							this.signalSmoothingYYValues.removeLast();
-							this.signalSmoothingYYValues.addFirst(MACD);
-
-						} else {
-							signalSmoothingSum = signalSmoothingSum
-									- this.signalSmoothingYYValues.getFirst()
-									+ MACD;
-							this.signalSmoothingYYValues.removeFirst();
-							this.signalSmoothingYYValues.addFirst(MACD);
-						}
-
-					} else {
-						if (newBar) {
-							signalSmoothingSum = signalSmoothingSum + MACD;
-							this.signalSmoothingYYValues.addFirst(MACD);
-						} else {
-							signalSmoothingSum = signalSmoothingSum + MACD
-									- this.signalSmoothingYYValues.getFirst();
-							this.signalSmoothingYYValues.removeFirst();
-							this.signalSmoothingYYValues.addFirst(MACD);
-						}
-					}
-					double signalLine = Double.MAX_VALUE;
-					if (this.signalSmoothingYYValues.size() == getSignalSmoothing()) {
-
-						signalLine = calculateSmoothingMA(
-								this.signalSmoothingYYValues.getFirst(),
-								this.prevSignalSmoothingEMA,
-								this.signalSmoothingSum);
-						this.prevSignalSmoothingEMA = signalLine;
-					}
+					double signalLine = this.signalSmoothingMA.update(MACD,
+							newBar);
 					if (newBar) {
 						MACDItem dataItem = new MACDItem(
 								candleItem.getPeriod(), new BigDecimal(MACD),
-								(signalLine == Double.MAX_VALUE ? null
+								(Double.isNaN(signalLine) ? null
 										: new BigDecimal(signalLine)),
-								(signalLine == Double.MAX_VALUE ? null
+								(Double.isNaN(signalLine) ? null
 										: new BigDecimal(MACD - signalLine)));
 						this.add(dataItem, false);
 
@@ -576,7 +506,7 @@ public class MACDSeries extends IndicatorSeries {
 						MACDItem dataItem = (MACDItem) this.getDataItem(this
 								.getItemCount() - 1);
 						dataItem.setMACD(MACD);
-						if (signalLine == Double.MAX_VALUE) {
+						if (!Double.isNaN(signalLine)) {
 							dataItem.setSignalLine(signalLine);
 							dataItem.setMACDHistogram(MACD - signalLine);
 						}
@@ -586,43 +516,6 @@ public class MACDSeries extends IndicatorSeries {
 		}
 	}
 
-	/**
-	 * Method calculateMA.
-	 * 
-	 * @param calcType
-	 *            String
-	 * @param yyValues
-	 *            LinkedList<Double>
-	 * @param volValues
-	 *            LinkedList<Long>
-	 * @param sum
-	 *            Double
-	 * @return double
-	 */
-	private double calculateSmoothingMA(double close,
-			double prevSignalSmoothingEMA, Double sum) {
-
-		double ma = 0;
-		if (this.getSimpleMAType()) {
-			ma = sum / getSignalSmoothing();
-		} else {
-			/*
-			 * Multiplier: (2 / (Time periods + 1) ) = (2 / (10 + 1) ) = 0.1818
-			 * (18.18%). EMA: {Close - EMA(previous day)} x * multiplier +
-			 * EMA(previous day).
-			 */
-			if (this.signalSmoothingMultiplyer == Double.MAX_VALUE) {
-				ma = sum / getSignalSmoothing();
-				this.signalSmoothingMultiplyer = 2 / (getSignalSmoothing() + 1.0d);
-			} else {
-				ma = ((close - prevSignalSmoothingEMA) * this.signalSmoothingMultiplyer)
-						+ prevSignalSmoothingEMA;
-			}
-
-		}
-		return ma;
-	}
-
 	/**
 	 * Method printSeries.
 	 * 
@@ -36,7 +36,6 @@
 package org.trade.strategy.data;
 
 import java.math.BigDecimal;
-import java.util.LinkedList;
 
 import javax.persistence.DiscriminatorValue;
 import javax.persistence.Entity;
@@ -44,12 +43,12 @@ import javax.persistence.Transient;
 
 import org.jfree.data.general.SeriesChangeEvent;
 import org.jfree.data.time.ohlc.OHLCSeriesCollection;
-import org.trade.dictionary.valuetype.CalculationType;
 import org.trade.persistent.dao.CodeValue;
 import org.trade.persistent.dao.Strategy;
 import org.trade.strategy.data.base.RegularTimePeriod;
 import org.trade.strategy.data.candle.CandleItem;
 import org.trade.strategy.data.movingaverage.MovingAverageItem;
+import org.trade.strategy.data.movingaverage.MovingAverageKernel;
 
 /**
  * A list of (RegularTimePeriod, open, high, low, close) data items.
@@ -78,10 +77,7 @@ public class MovingAverageSeries extends IndicatorSeries {
 	 * Vales used to calculate MA's. These need to be reset when the series is
 	 * cleared.
 	 */
-	private double sum = 0.0;
-	private double multiplyer = 0;
-	private LinkedList<Double> yyValues = new LinkedList<Double>();
-	private LinkedList<Long> volValues = new LinkedList<Long>();
+	private MovingAverageKernel movingAverage = null;
 
 	/**
 	 * Creates a new empty series. By default, items added to the series will be
@@ -153,8 +149,7 @@ public class MovingAverageSeries extends IndicatorSeries {
 	 */
 	public Object clone() throws CloneNotSupportedException {
 		MovingAverageSeries clone = (MovingAverageSeries) super.clone();
-		clone.yyValues = new LinkedList<Double>();
-		clone.volValues = new LinkedList<Long>();
+		clone.movingAverage = null;
 		return clone;
 	}
 
@@ -165,10 +160,7 @@ public class MovingAverageSeries extends IndicatorSeries {
 	 */
 	public void clear() {
 		super.clear();
-		sum = 0.0;
-		multiplyer = 0;
-		yyValues.clear();
-		volValues.clear();
+		movingAverage = null;
 	}
 
 	/**
@@ -318,9 +310,50 @@ public class MovingAverageSeries extends IndicatorSeries {
 			throw new IllegalArgumentException("Null source (CandleDataset).");
 		}
 
-		for (int i = 0; i < source.getSeries(seriesIndex).getItemCount(); i++) {
-			this.updateSeries(source.getSeries(seriesIndex), i, true);
+		this.createSeries(source.getSeries(seriesIndex));
+	}
+
+	/**
+	 * Method computeAll.
+	 * 
+	 * @param source
+	 *            CandleSeries
+	 * @param open
+	 *            double[]
+	 * @param high
+	 *            double[]
+	 * @param low
+	 *            double[]
+	 * @param close
+	 *            double[]
+	 * @param volume
+	 *            long[]
+	 * @param count
+	 *            int
+	 * @return boolean
+	 * @see org.trade.strategy.data.IndicatorSeries#computeAll(CandleSeries,
+	 *      double[], double[], double[], double[], long[], int)
+	 */
+	protected boolean computeAll(CandleSeries source, double[] open,
+			double[] high, double[] low, double[] close, long[] volume,
+			int count) {
+
+		checkParameters();
+		this.movingAverage = MovingAverageKernel.newInstance(this.getMAType(),
+				this.getLength());
+		int priceSource = this.getPriceSource();
+		for (int i = 0; i < count; i++) {
+			if (0 != close[i]) {
+				double ma = this.movingAverage.update(
+						getPrice(priceSource, open[i], high[i], low[i],
+								close[i]), volume[i], true);
+				if (!Double.isNaN(ma)) {
+					this.append(new MovingAverageItem(source.getPeriod(i),
+							new BigDecimal(ma)));
+				}
+			}
 		}
+		return true;
 	}
 
 	/**
@@ -338,53 +371,21 @@ public class MovingAverageSeries extends IndicatorSeries {
 		if (source == null) {
 			throw new IllegalArgumentException("Null source (CandleSeries).");
 		}
-		if (getLength() == null || getLength() < 1) {
-			throw new IllegalArgumentException(
-					"MA period must be greater than zero.");
-		}
+		checkParameters();
 
 		if (source.getItemCount() > skip) {
 			// get the current data item...
 			CandleItem candleItem = (CandleItem) source.getDataItem(skip);
 			if (0 != candleItem.getClose()) {
-				double price = this.getPrice(candleItem);
-				if (this.yyValues.size() == getLength()) {
-					/*
-					 * If the item does not exist in the series then this is a
-					 * new time period and so we need to remove the last in the
-					 * set and add the new periods values. Otherwise we just
-					 * update the last value in the set. Sum is just used for
-					 * performance save having to sum the last set of values
-					 * each time.
-					 */
-					if (newBar) {
-						sum = sum - this.yyValues.getLast() + price;
-						this.yyValues.removeLast();
-						this.yyValues.addFirst(price);
-						this.volValues.removeLast();
-						this.volValues.addFirst(candleItem.getVolume());
-					} else {
-						sum = sum - this.yyValues.getFirst() + price;
-						this.yyValues.removeFirst();
-						this.yyValues.addFirst(price);
-					}
-				} else {
-					if (newBar) {
-						sum = sum + price;
-						this.yyValues.addFirst(price);
-						this.volValues.addFirst(candleItem.getVolume());
-					} else {
-						sum = sum + price - this.yyValues.getFirst();
-						this.yyValues.removeFirst();
-						this.yyValues.addFirst(price);
-						this.volValues.removeFirst();
-						this.volValues.addFirst(candleItem.getVolume());
-					}
+				if (null == this.movingAverage) {
+					this.movingAverage = MovingAverageKernel.newInstance(
+							this.getMAType(), this.getLength());
 				}
+				double ma = this.movingAverage.update(
+						this.getPrice(candleItem), candleItem.getVolume(),
+						newBar);
 
-				if (this.yyValues.size() == getLength()) {
-					double ma = calculateMA(this.getMAType(), this.yyValues,
-							this.volValues, sum);
+				if (!Double.isNaN(ma)) {
 					if (newBar) {
 						MovingAverageItem dataItem = new MovingAverageItem(
 								candleItem.getPeriod(), new BigDecimal(ma));
@@ -400,6 +401,16 @@ public class MovingAverageSeries extends IndicatorSeries {
 		}
 	}
 
+	/**
+	 * Method checkParameters.
+	 */
+	private void checkParameters() {
+		if (getLength() == null || getLength() < 1) {
+			throw new IllegalArgumentException(
+					"MA period must be greater than zero.");
+		}
+	}
+
 	/**
 	 * Method printSeries.
 	 * 
@@ -415,125 +426,59 @@ public class MovingAverageSeries extends IndicatorSeries {
 	}
 
 	/**
-	 * Method calculateMA.
+	 * Method get the price.
 	 * 
-	 * @param calcType
-	 *            String
-	 * @param yyValues
-	 *            LinkedList<Double>
-	 * @param volValues
-	 *            LinkedList<Long>
-	 * @param sum
-	 *            Double
+	 * @param candle
+	 *            CandleItem
 	 * @return double
 	 */
-	private double calculateMA(String calcType, LinkedList<Double> yyValues,
-			LinkedList<Long> volValues, Double sum) {
-
-		double ma = 0;
-		if (CalculationType.LINEAR.equals(calcType)) {
-			ma = sum / getLength();
-		} else if (CalculationType.EXPONENTIAL.equals(calcType)) {
-			/*
-			 * Multiplier: (2 / (Time periods + 1) ) = (2 / (10 + 1) ) = 0.1818
-			 * (18.18%). EMA: {Close - EMA(previous day)} x * multiplier +
-			 * EMA(previous day).
-			 */
-			if (multiplyer == 0) {
-				ma = sum / getLength();
-				multiplyer = 2 / (getLength() + 1.0d);
-			} else {
-				ma = ((yyValues.getFirst() - yyValues.get(1)) * multiplyer)
-						+ yyValues.get(1);
-			}
-			/*
-			 * Use the EMA in the stored values as we need the previous one for
-			 * the calc.
-			 */
-			yyValues.removeFirst();
-			yyValues.addFirst(ma);
-
-		} else if (CalculationType.WEIGHTED.equals(calcType)) {
-
-			double sumYY = 0;
-			int count = 0;
-			for (int i = yyValues.size(); i > 0; i--) {
-				count = count + (getLength() + 1 - i);
-				sumYY = sumYY + (yyValues.get(i - 1) * (getLength() + 1 - i));
-			}
-			ma = sumYY / count;
-
-		} else if (CalculationType.WEIGHTED_VOLUME.equals(calcType)) {
-
-			double sumYY = 0;
-			double count = 0;
-			for (int i = yyValues.size(); i > 0; i--) {
-				count = count + ((getLength() + 1 - i) * volValues.get(i - 1));
-				sumYY = sumYY
-						+ (yyValues.get(i - 1) * volValues.get(i - 1) * (getLength() + 1 - i));
-			}
-			ma = sumYY / count;
-		} else if (CalculationType.TRIANGULAR.equals(calcType)) {
-
-			double sumYY = 0;
-			int count = 0;
-			int half = getLength() / 2;
-			int y = 0;
-			for (int x = 1; x <= half; x++) {
-				sumYY = sumYY + (yyValues.get(y) * x);
-				count = count + x;
-				y++;
-			}
-			if ((getLength() % 2) != 0) {
-				int z = half + 1;
-				sumYY = sumYY + (yyValues.get(y) * z);
-				count = count + z;
-				y++;
-			}
-			for (int x = half; x >= 1; x--) {
-				sumYY = sumYY + (yyValues.get(y) * x);
-				count = count + x;
-				y++;
-			}
-			ma = sumYY / count;
-		}
-		return ma;
+	private double getPrice(CandleItem candle) {
+		return getPrice(this.getPriceSource(), candle.getOpen(),
+				candle.getHigh(), candle.getLow(), candle.getClose());
 	}
 
 	/**
 	 * Method get the price.
 	 * 
-	 * @param candle
-	 *            CandleItem
+	 * @param priceSource
+	 *            int
+	 * @param open
+	 *            double
+	 * @param high
+	 *            double
+	 * @param low
+	 *            double
+	 * @param close
+	 *            double
 	 * @return double
 	 */
-	private double getPrice(CandleItem candle) {
+	private static double getPrice(int priceSource, double open, double high,
+			double low, double close) {
 
-		switch (this.getPriceSource()) {
+		switch (priceSource) {
 		case 1: {
-			return candle.getClose();
+			return close;
 		}
 		case 2: {
-			return candle.getOpen();
+			return open;
 		}
 		case 3: {
-			return candle.getHigh();
+			return high;
 		}
 		case 4: {
-			return candle.getLow();
+			return low;
 		}
 		case 5: {
-			return (candle.getHigh() + candle.getLow()) / 2.0d;
+			return (high + low) / 2.0d;
 		}
 		case 6: {
-			return (candle.getHigh() + candle.getLow() + candle.getClose()) / 3.0d;
+			return (high + low + close) / 3.0d;
 		}
 		case 7: {
-			return (candle.getOpen() + candle.getHigh() + candle.getLow() + candle
-					.getClose()) / 4.0d;
+			return (open + high + low + close) / 4.0d;
 		}
 		default: {
-			return candle.getClose();
+			return close;
 		}
 		}
 	}
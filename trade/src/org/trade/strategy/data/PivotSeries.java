@@ -337,7 +337,6 @@ public class PivotSeries extends IndicatorSeries {
 
 		PivotItem dataItem = null;
 		Hashtable<Long, Pair> userDataVector = new Hashtable<Long, Pair>();
-		DAOEntryLimit entryLimits = new DAOEntryLimit();
 
 		boolean pivot = false;
 		String side = null;
@@ -490,7 +489,7 @@ public class PivotSeries extends IndicatorSeries {
 			if (pivot && (null != pivotCandle)) {
 
 				try {
-					Entrylimit entryLimit = entryLimits.getValue(new Money(
+					Entrylimit entryLimit = DAOEntryLimit.findValue(new Money(
 							pivotCandle.getVwap()));
 					Money pivotRange = new Money(Math.abs((pivotRangeCandle
 							.getVwap() - pivotCandle.getVwap())));
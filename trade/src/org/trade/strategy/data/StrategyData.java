@@ -39,18 +39,22 @@ import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.trade.core.factory.ClassFactory;
 import org.trade.core.util.TradingCalendar;
 import org.trade.core.util.Worker;
+import org.trade.persistent.dao.Candle;
 import org.trade.persistent.dao.Strategy;
 import org.trade.persistent.dao.Tradestrategy;
 import org.trade.persistent.dao.Tradingday;
 import org.trade.strategy.data.base.RegularTimePeriod;
 import org.trade.strategy.data.candle.CandleItem;
 import org.trade.strategy.data.candle.CandlePeriod;
+import org.trade.strategy.data.candle.SessionStatistics;
 
 /**
  */
@@ -62,11 +66,14 @@ public class StrategyData extends Worker {
 	private CandleDataset baseCandleDataset = null;
 	private CandleDataset candleDataset = null;
 	private final List<IndicatorDataset> indicators = new ArrayList<IndicatorDataset>();
+	private final IndicatorGraph indicatorGraph = new IndicatorGraph();
 
 	private boolean seriesChanged = true;
-	private final Object lockStrategyWorker = new Object();
+	private final ReentrantLock lockStrategyWorker = new ReentrantLock();
+	private final Condition candleChanged = lockStrategyWorker.newCondition();
 	private int currentBaseCandleCount = -1;
 	private int lastBaseCandleProcessed = -1;
+	private int references = 0;
 
 	/**
 	 * Constructor for StrategyData.
@@ -93,7 +100,6 @@ public class StrategyData extends Worker {
 				 */
 				IndicatorSeries series = (IndicatorSeries) indicator.clone();
 				series.setKey(series.getName());
-				series.createSeries(candleDataset, 0);
 				IndicatorDataset indicatorDataset = this
 						.getIndicatorByType(indicator.getType());
 				if (null == indicatorDataset) {
@@ -112,8 +118,23 @@ public class StrategyData extends Worker {
 									+ datasetName, parm, this);
 					this.indicators.add(indicatorDataset);
 				}
+				int first = indicatorDataset.getSeriesCount();
 				indicatorDataset.addSeries(series);
 
+				/*
+				 * The dataset may hold more than one series for the indicator
+				 * i.e. the upper and lower bands. Indicators with the same
+				 * type and parameters are computed once, any others are views
+				 * onto those values.
+				 */
+				for (int i = first; i < indicatorDataset.getSeriesCount(); i++) {
+					IndicatorSeries added = indicatorDataset.getSeries(i);
+					if (IndicatorSeries.CandleSeries.equals(added.getType())
+							|| added == this.indicatorGraph.add(added)) {
+						added.createSeries(candleDataset, 0);
+					}
+				}
+
 			} catch (Exception ex) {
 				throw new IllegalArgumentException(
 						"Could not construct StrategyData Object. Either indicator was not found or was not clonable Msg: "
@@ -147,35 +168,19 @@ public class StrategyData extends Worker {
 				 * increase in value until we catch up then the thread will lock
 				 * until a new candle arrives.
 				 */
-				synchronized (lockStrategyWorker) {
+				lockStrategyWorker.lock();
+				try {
 					while ((!this.seriesChanged && currentBaseCandleCount == lastBaseCandleProcessed)
 							|| this.getBaseCandleSeries().isEmpty()) {
-						lockStrategyWorker.wait();
+						candleChanged.await();
 					}
 					this.seriesChanged = false;
+				} finally {
+					lockStrategyWorker.unlock();
 				}
 
 				if (!this.isCancelled()) {
-
-					if (!this.getBaseCandleSeries().isEmpty()) {
-
-						/*
-						 * Another candle has been added. Add the new candle to
-						 * the base series in the dataset.
-						 */
-						boolean newBar = false;
-						if (this.currentBaseCandleCount > this.lastBaseCandleProcessed) {
-							this.lastBaseCandleProcessed++;
-							newBar = true;
-						}
-						synchronized (this.getBaseCandleDataset()) {
-							this.getCandleDataset()
-									.getSeries(0)
-									.updateSeries(this.getBaseCandleSeries(),
-											this.lastBaseCandleProcessed,
-											newBar);
-						}
-					}
+					processCandle();
 				}
 
 			} while (!this.isDone() && !this.isCancelled());
@@ -183,19 +188,7 @@ public class StrategyData extends Worker {
 		} catch (InterruptedException interExp) {
 			// Do nothing.
 		} catch (Exception ex1) {
-			_log.error("Error processing candle symbol: "
-					+ this.getBaseCandleSeries().getSymbol()
-					+ " Base series size: "
-					+ this.getBaseCandleSeries().getItemCount() + " BarSize: "
-					+ this.getBaseCandleSeries().getBarSize()
-					+ " currentBaseCandleCount: " + this.currentBaseCandleCount
-					+ " Candle series size: "
-					+ this.getCandleDataset().getSeries(0).getItemCount()
-					+ " lastBaseCandleProcessed: "
-					+ this.lastBaseCandleProcessed + " BarSize: "
-					+ this.getCandleDataset().getSeries(0).getBarSize()
-					+ " Message: " + ex1.getMessage(), ex1);
-
+			logError(ex1);
 		} finally {
 			/*
 			 * Ok we are complete clean up.
@@ -204,16 +197,96 @@ public class StrategyData extends Worker {
 		return null;
 	}
 
+	/**
+	 * Method isSchedulable. Candles can be processed on the WorkerScheduler
+	 * pool.
+	 * 
+	 * @return boolean
+	 * @see org.trade.core.util.Worker#isSchedulable()
+	 */
+	protected boolean isSchedulable() {
+		return true;
+	}
+
+	/**
+	 * Method runTask. One step when running on the WorkerScheduler pool, this
+	 * processes the next base candle.
+	 * 
+	 * @return boolean true if there are more base candles to process.
+	 * @see org.trade.core.util.Worker#runTask()
+	 */
+	protected boolean runTask() {
+		try {
+			processCandle();
+			return this.currentBaseCandleCount > this.lastBaseCandleProcessed;
+		} catch (Exception ex1) {
+			logError(ex1);
+			this.setIsCancelled(true);
+		}
+		return false;
+	}
+
+	/**
+	 * Method processCandle. Add the next base candle or the updated current
+	 * base candle to the series in the dataset.
+	 */
+	private void processCandle() {
+
+		if (!this.getBaseCandleSeries().isEmpty()) {
+
+			/*
+			 * Another candle has been added. Add the new candle to the base
+			 * series in the dataset.
+			 */
+			boolean newBar = false;
+			if (this.currentBaseCandleCount > this.lastBaseCandleProcessed) {
+				this.lastBaseCandleProcessed++;
+				newBar = true;
+			}
+			synchronized (this.getBaseCandleDataset()) {
+				this.getCandleDataset()
+						.getSeries(0)
+						.updateSeries(this.getBaseCandleSeries(),
+								this.lastBaseCandleProcessed, newBar);
+			}
+		}
+	}
+
+	/**
+	 * Method logError.
+	 * 
+	 * @param ex1
+	 *            Exception
+	 */
+	private void logError(Exception ex1) {
+		_log.error("Error processing candle symbol: "
+				+ this.getBaseCandleSeries().getSymbol()
+				+ " Base series size: "
+				+ this.getBaseCandleSeries().getItemCount() + " BarSize: "
+				+ this.getBaseCandleSeries().getBarSize()
+				+ " currentBaseCandleCount: " + this.currentBaseCandleCount
+				+ " Candle series size: "
+				+ this.getCandleDataset().getSeries(0).getItemCount()
+				+ " lastBaseCandleProcessed: "
+				+ this.lastBaseCandleProcessed + " BarSize: "
+				+ this.getCandleDataset().getSeries(0).getBarSize()
+				+ " Message: " + ex1.getMessage(), ex1);
+	}
+
 	public void cancel() {
 		this.setIsCancelled(true);
 		/*
 		 * Unlock the doInBackground that may be waiting for a candle. This will
 		 * cause a clean finish to the process.
 		 */
-		synchronized (lockStrategyWorker) {
+		lockStrategyWorker.lock();
+		try {
 			seriesChanged = true;
-			lockStrategyWorker.notifyAll();
+			candleChanged.signalAll();
+		} finally {
+			lockStrategyWorker.unlock();
 		}
+		this.schedule();
 	}
 
 	protected void done() {
@@ -233,26 +306,24 @@ public class StrategyData extends Worker {
 		 * candle series.
 		 */
 		clearChartDatasets();
-		this.getCandleDataset().getSeries(0).setBarSize(newPeriod);
+		CandleSeries series = this.getCandleDataset().getSeries(0);
+		series.setBarSize(newPeriod);
+		int rollupInterval = series.getBarSize()
+				/ getBaseCandleSeries().getBarSize();
 		for (int i = 0; i < getBaseCandleSeries().getItemCount(); i++) {
 			CandleItem candelItem = (CandleItem) getBaseCandleSeries()
 					.getDataItem(i);
-			boolean newBar = this
-					.getCandleDataset()
-					.getSeries(0)
-					.buildCandle(
-							candelItem.getPeriod().getStart(),
-							candelItem.getOpen(),
-							candelItem.getHigh(),
-							candelItem.getLow(),
-							candelItem.getClose(),
-							candelItem.getVolume(),
-							candelItem.getVwap(),
-							candelItem.getCount(),
-							this.getCandleDataset().getSeries(0).getBarSize()
-									/ getBaseCandleSeries().getBarSize(), null);
-			updateIndicators(this.getCandleDataset(), newBar);
+			series.buildCandle(candelItem.getPeriod().getStart(),
+					candelItem.getOpen(), candelItem.getHigh(),
+					candelItem.getLow(), candelItem.getClose(),
+					candelItem.getVolume(), candelItem.getVwap(),
+					candelItem.getCount(), rollupInterval, null);
 		}
+		/*
+		 * Compute the indicators in one pass over the new candles rather than
+		 * revising them for every base candle.
+		 */
+		createIndicators(this.getCandleDataset());
 		this.getCandleDataset().getSeries(0).fireSeriesChanged();
 	}
 
@@ -294,9 +365,8 @@ public class StrategyData extends Worker {
 
 		this.currentBaseCandleCount = this.getBaseCandleSeries().getItemCount() - 1;
 
-		CandleItem candleItem = (CandleItem) this.getBaseCandleSeries()
-				.getDataItem(this.currentBaseCandleCount);
-		this.getBaseCandleSeries().updatePercentChanged(candleItem);
+		this.getBaseCandleSeries().updateSessionStatistics(
+				this.currentBaseCandleCount);
 		updateIndicators(this.getBaseCandleDataset(), newBar);
 		this.getBaseCandleSeries().fireSeriesChanged();
 		/*
@@ -310,10 +380,14 @@ public class StrategyData extends Worker {
 			 * Unlock the doInBackground that may be waiting for a candle. This
 			 * will cause a clean finish to the process.
 			 */
-			synchronized (lockStrategyWorker) {
+			lockStrategyWorker.lock();
+			try {
 				this.seriesChanged = true;
-				lockStrategyWorker.notifyAll();
+				candleChanged.signalAll();
+			} finally {
+				lockStrategyWorker.unlock();
 			}
+			this.schedule();
 			// _log.info("buildCandle symbol: "
 			// + this.getBaseCandleSeries().getSymbol() + " Count: "
 			// + this.currentCandleCount);
@@ -331,6 +405,58 @@ public class StrategyData extends Worker {
 		return newBar;
 	}
 
+	/**
+	 * Method buildCandles. Load the candles into the base series. The
+	 * indicators are computed in one pass once all the candles are in and the
+	 * listeners are told once at the end. Live candles then carry on via
+	 * buildCandle.
+	 * 
+	 * @param candles
+	 *            List<Candle>
+	 */
+	public void buildCandles(List<Candle> candles) {
+
+		/*
+		 * The indicators can only be computed in one pass from an empty
+		 * series.
+		 */
+		boolean bulk = this.getBaseCandleSeries().isEmpty();
+		for (Candle candle : candles) {
+			boolean newBar = this.getBaseCandleSeries().buildCandle(
+					candle.getStartPeriod(), candle.getOpen().doubleValue(),
+					candle.getHigh().doubleValue(),
+					candle.getLow().doubleValue(),
+					candle.getClose().doubleValue(), candle.getVolume(),
+					candle.getVwap().doubleValue(), candle.getTradeCount(), 1,
+					null);
+			this.currentBaseCandleCount = this.getBaseCandleSeries()
+					.getItemCount() - 1;
+			this.getBaseCandleSeries().updateSessionStatistics(
+					this.currentBaseCandleCount);
+			if (!bulk)
+				updateIndicators(this.getBaseCandleDataset(), newBar);
+			if (!this.isRunning()) {
+				synchronized (this.getBaseCandleDataset()) {
+					this.getCandleDataset().updateDataset(
+							this.getBaseCandleDataset(), 0, newBar);
+				}
+			}
+		}
+		if (bulk)
+			createIndicators(this.getBaseCandleDataset());
+		this.getBaseCandleSeries().fireSeriesChanged();
+		if (this.isRunning()) {
+			lockStrategyWorker.lock();
+			try {
+				this.seriesChanged = true;
+				candleChanged.signalAll();
+			} finally {
+				lockStrategyWorker.unlock();
+			}
+			this.schedule();
+		}
+	}
+
 	/**
 	 * Method updateIndicators. Update all the indicators before notifying any
 	 * strategy workers of this even.
@@ -343,15 +469,16 @@ public class StrategyData extends Worker {
 	 */
 	private void updateIndicators(CandleDataset source, boolean newBar) {
 
-		for (IndicatorDataset indicator : indicators) {
-			/*
-			 * CandleSeries are only updated via the API i.e. these are not true
-			 * indicators and are shared across Data-sets.
-			 */
-			if (!IndicatorSeries.CandleSeries.equals(indicator.getType(0))) {
-				indicator.updateDataset(source, 0, newBar);
-			}
+		if (source == null) {
+			throw new IllegalArgumentException("Null source (CandleDataset).");
 		}
+		/*
+		 * CandleSeries are only updated via the API i.e. these are not true
+		 * indicators and are shared across Data-sets. They are not in the
+		 * graph.
+		 */
+		this.indicatorGraph.updateSeries(source.getSeries(0), source
+				.getSeries(0).getItemCount() - 1, newBar);
 	}
 
 	/**
@@ -365,19 +492,33 @@ public class StrategyData extends Worker {
 	 *            boolean
 	 */
 	public void createIndicators(CandleDataset source) {
+		/*
+		 * CandleSeries are only updated via the API i.e. these are not true
+		 * indicators and are shared across Data-sets. They are not in the
+		 * graph.
+		 */
+		this.indicatorGraph.createSeries(source, 0);
+	}
 
-		for (IndicatorDataset indicator : indicators) {
-			if (!IndicatorSeries.CandleSeries.equals(indicator.getType(0))) {
-				for (int x = 0; x < indicator.getSeriesCount(); x++) {
-					IndicatorSeries series = indicator.getSeries(x);
-					/*
-					 * CandleSeries are only updated via the API i.e. these are
-					 * not true indicators and are shared across Data-sets.
-					 */
-					series.createSeries(source, 0);
-				}
-			}
-		}
+	/**
+	 * Method retain. Called when a tradestrategy takes a reference to this
+	 * StrategyData.
+	 */
+	public synchronized void retain() {
+		this.references++;
+	}
+
+	/**
+	 * Method release. Called when a tradestrategy drops its reference to this
+	 * StrategyData.
+	 * 
+	 * @return boolean true if no other tradestrategy holds a reference i.e.
+	 *         the datasets can be cleared.
+	 */
+	public synchronized boolean release() {
+		if (this.references > 0)
+			this.references--;
+		return (this.references == 0);
 	}
 
 	public synchronized void clearBaseCandleDataset() {
@@ -407,6 +548,15 @@ public class StrategyData extends Worker {
 		return indicators;
 	}
 
+	/**
+	 * Method getIndicatorGraph.
+	 * 
+	 * @return IndicatorGraph
+	 */
+	public IndicatorGraph getIndicatorGraph() {
+		return this.indicatorGraph;
+	}
+
 	/**
 	 * Method getIndicators.
 	 * 
@@ -442,6 +592,16 @@ public class StrategyData extends Worker {
 		return baseCandleDataset.getSeries(0);
 	}
 
+	/**
+	 * Method getSessionStatistics.
+	 * 
+	 * @return SessionStatistics the prior close, open, high/low and opening
+	 *         range of the current trading day of the base series.
+	 */
+	public SessionStatistics getSessionStatistics() {
+		return this.getBaseCandleSeries().getSessionStatistics();
+	}
+
 	/**
 	 * Method getCandleDataset.
 	 * 
@@ -0,0 +1,163 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.trade.persistent.dao.CodeValue;
+import org.trade.persistent.dao.Tradestrategy;
+
+/**
+ * A reference counted registry of the StrategyData that tradestrategies on
+ * the same contract, bar size and tradingday with the same indicator
+ * configuration can share. The first tradestrategy to subscribe registers its
+ * StrategyData, the ones that follow are handed that instance so the candles
+ * and indicators are built once for all of them. The entry is removed when
+ * the last subscriber unsubscribes.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class StrategyDataRegistry {
+
+	private final Map<String, Subscription> subscriptions = new HashMap<String, Subscription>();
+
+	public StrategyDataRegistry() {
+	}
+
+	/**
+	 * Method subscribe. Subscribe the tradestrategy to the StrategyData for
+	 * its key. If there is none the tradestrategy's StrategyData is
+	 * registered.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @return StrategyData the shared StrategyData.
+	 */
+	public synchronized StrategyData subscribe(Tradestrategy tradestrategy) {
+		String key = getKey(tradestrategy);
+		Subscription subscription = this.subscriptions.get(key);
+		if (null == subscription) {
+			subscription = new Subscription(tradestrategy.getStrategyData());
+			this.subscriptions.put(key, subscription);
+		}
+		subscription.count++;
+		return subscription.strategyData;
+	}
+
+	/**
+	 * Method unsubscribe.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @return boolean true if this was the last subscriber.
+	 */
+	public synchronized boolean unsubscribe(Tradestrategy tradestrategy) {
+		String key = getKey(tradestrategy);
+		Subscription subscription = this.subscriptions.get(key);
+		if (null == subscription
+				|| subscription.strategyData != tradestrategy
+						.getStrategyData())
+			return false;
+		subscription.count--;
+		if (subscription.count < 1) {
+			this.subscriptions.remove(key);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Method getSubscriberCount.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @return int the number of tradestrategies subscribed to the key of the
+	 *         tradestrategy.
+	 */
+	public synchronized int getSubscriberCount(Tradestrategy tradestrategy) {
+		Subscription subscription = this.subscriptions
+				.get(getKey(tradestrategy));
+		return (null == subscription ? 0 : subscription.count);
+	}
+
+	/**
+	 * Method clear.
+	 */
+	public synchronized void clear() {
+		this.subscriptions.clear();
+	}
+
+	/**
+	 * Method getKey. The contract, bar size, tradingday and the indicators of
+	 * the strategy i.e. type, name and parameters. Tradestrategies with
+	 * different indicators do not share.
+	 * 
+	 * @param tradestrategy
+	 *            Tradestrategy
+	 * @return String
+	 */
+	public static String getKey(Tradestrategy tradestrategy) {
+		StringBuilder key = new StringBuilder();
+		key.append(tradestrategy.getContract().getId()).append('|')
+				.append(tradestrategy.getBarSize()).append('|')
+				.append(tradestrategy.getTradingday().getOpen().toEpochSecond());
+		for (IndicatorSeries indicator : tradestrategy.getStrategy()
+				.getIndicatorSeries()) {
+			key.append('|').append(indicator.getType()).append(':')
+					.append(indicator.getName());
+			for (CodeValue codeValue : indicator.getCodeValues()) {
+				key.append(',')
+						.append(codeValue.getCodeAttribute().getName())
+						.append('=').append(codeValue.getCodeValue());
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 */
+	private static class Subscription {
+
+		private final StrategyData strategyData;
+		private int count = 0;
+
+		Subscription(StrategyData strategyData) {
+			this.strategyData = strategyData;
+		}
+	}
+}
@@ -44,11 +44,12 @@ import javax.persistence.Transient;
 
 import org.jfree.data.general.SeriesChangeEvent;
 import org.jfree.data.time.ohlc.OHLCSeriesCollection;
-import org.trade.dictionary.valuetype.CalculationType;
 import org.trade.persistent.dao.CodeValue;
 import org.trade.persistent.dao.Strategy;
 import org.trade.strategy.data.base.RegularTimePeriod;
 import org.trade.strategy.data.candle.CandleItem;
+import org.trade.strategy.data.movingaverage.MovingAverageKernel;
+import org.trade.strategy.data.movingaverage.SimpleMovingAverage;
 import org.trade.strategy.data.vostro.VostroItem;
 
 /**
@@ -83,16 +84,11 @@ public class VostroSeries extends IndicatorSeries {
 	 * cleared.
 	 */
 
-	private double multiplyer = 0;
-	private double sum = 0.0;
 	private double vostro1 = Double.MAX_VALUE;
 	private double vostro2 = Double.MAX_VALUE;
-	private LinkedList<Double> yyValues = new LinkedList<Double>();
-	private LinkedList<Long> volValues = new LinkedList<Long>();
-	private double highPlusLowSum = 0.0;
-	private LinkedList<Double> highPlusLowValues = new LinkedList<Double>();
-	private double highLessLowSum = 0.0;
-	private LinkedList<Double> highLessLowValues = new LinkedList<Double>();
+	private MovingAverageKernel movingAverage = null;
+	private SimpleMovingAverage highPlusLowValues = null;
+	private SimpleMovingAverage highLessLowValues = null;
 	private LinkedList<Double> vostro1Values = new LinkedList<Double>();
 	private LinkedList<Double> vostro2Values = new LinkedList<Double>();
 
@@ -166,10 +162,9 @@ public class VostroSeries extends IndicatorSeries {
 	 */
 	public Object clone() throws CloneNotSupportedException {
 		VostroSeries clone = (VostroSeries) super.clone();
-		clone.yyValues = new LinkedList<Double>();
-		clone.highPlusLowValues = new LinkedList<Double>();
-		clone.highLessLowValues = new LinkedList<Double>();
-		clone.volValues = new LinkedList<Long>();
+		clone.movingAverage = null;
+		clone.highPlusLowValues = null;
+		clone.highLessLowValues = null;
 		clone.vostro1Values = new LinkedList<Double>();
 		clone.vostro2Values = new LinkedList<Double>();
 		return clone;
@@ -182,16 +177,11 @@ public class VostroSeries extends IndicatorSeries {
 	 */
 	public void clear() {
 		super.clear();
-		multiplyer = 0;
-		sum = 0.0;
 		vostro1 = Double.MAX_VALUE;
 		vostro2 = Double.MAX_VALUE;
-		yyValues.clear();
-		volValues.clear();
-		highPlusLowSum = 0.0;
-		highPlusLowValues.clear();
-		highLessLowSum = 0.0;
-		highLessLowValues.clear();
+		movingAverage = null;
+		highPlusLowValues = null;
+		highLessLowValues = null;
 		vostro1Values.clear();
 		vostro2Values.clear();
 	}
@@ -482,126 +472,28 @@ public class VostroSeries extends IndicatorSeries {
 			// get the current data item...
 			CandleItem candleItem = (CandleItem) source.getDataItem(skip);
 			if (0 != this.getPrice(candleItem)) {
-				double price = this.getPrice(candleItem);
-				if (this.yyValues.size() == getLength()) {
-					/*
-					 * If the item does not exist in the series then this is a
-					 * new time period and so we need to remove the last in the
-					 * set and add the new periods values. Otherwise we just
-					 * update the last value in the set. Sum is just used for
-					 * performance save having to sum the last set of values
-					 * each time.
-					 */
-
-					if (newBar) {
-						sum = sum - this.yyValues.getLast() + price;
-						this.yyValues.removeLast();
-						this.yyValues.addFirst(price);
-						this.volValues.removeLast();
-						this.volValues.addFirst(candleItem.getVolume());
-					} else {
-						sum = sum - this.yyValues.getFirst() + price;
-						this.yyValues.removeFirst();
-						this.yyValues.addFirst(price);
-					}
-				} else {
-					if (newBar) {
-						sum = sum + price;
-						this.yyValues.addFirst(price);
-						this.volValues.addFirst(candleItem.getVolume());
-					} else {
-						sum = sum + price - this.yyValues.getFirst();
-						this.yyValues.removeFirst();
-						this.yyValues.addFirst(price);
-						this.volValues.removeFirst();
-						this.volValues.addFirst(candleItem.getVolume());
-					}
-				}
-
-				if (this.highPlusLowValues.size() == getVostroPeriod()) {
-					/*
-					 * If the item does not exist in the series then this is a
-					 * new time period and so we need to remove the last in the
-					 * set and add the new periods values. Otherwise we just
-					 * update the last value in the set. Sum is just used for
-					 * performance save having to sum the last set of values
-					 * each time.
-					 */
-
-					if (newBar) {
-						this.highPlusLowSum = this.highPlusLowSum
-								- this.highPlusLowValues.getLast()
-								+ (candleItem.getHigh() + candleItem.getLow());
-						this.highPlusLowValues.removeLast();
-						this.highPlusLowValues
-								.addFirst((candleItem.getHigh() + candleItem
-										.getLow()));
-
-						this.highLessLowSum = this.highLessLowSum
-								- this.highLessLowValues.getLast()
-								+ (candleItem.getHigh() - candleItem.getLow());
-						this.highLessLowValues.removeLast();
-						this.highLessLowValues
-								.addFirst((candleItem.getHigh() - candleItem
-										.getLow()));
-					} else {
-						this.highPlusLowSum = this.highPlusLowSum
-								- this.highPlusLowValues.getFirst()
-								+ (candleItem.getHigh() + candleItem.getLow());
-						this.highPlusLowValues.removeFirst();
-						this.highPlusLowValues
-								.addFirst((candleItem.getHigh() + candleItem
-										.getLow()));
-
-						this.highLessLowSum = this.highLessLowSum
-								- this.highLessLowValues.getFirst()
-								+ (candleItem.getHigh() - candleItem.getLow());
-						this.highLessLowValues.removeFirst();
-						this.highLessLowValues
-								.addFirst((candleItem.getHigh() - candleItem
-										.getLow()));
-					}
-				} else {
-					if (newBar) {
-						this.highPlusLowSum = this.highPlusLowSum
-								+ (candleItem.getHigh() + candleItem.getLow());
-						this.highPlusLowValues
-								.addFirst((candleItem.getHigh() + candleItem
-										.getLow()));
-
-						this.highLessLowSum = this.highLessLowSum
-								+ (candleItem.getHigh() - candleItem.getLow());
-						this.highLessLowValues
-								.addFirst((candleItem.getHigh() - candleItem
-										.getLow()));
-					} else {
-						this.highPlusLowSum = this.highPlusLowSum
-								+ (candleItem.getHigh() + candleItem.getLow())
-								- this.highPlusLowValues.getFirst();
-						this.highPlusLowValues.removeFirst();
-						this.highPlusLowValues
-								.addFirst((candleItem.getHigh() + candleItem
-										.getLow()));
-
-						this.highLessLowSum = this.highLessLowSum
-								+ (candleItem.getHigh() - candleItem.getLow())
-								- this.highLessLowValues.getFirst();
-						this.highLessLowValues.removeFirst();
-						this.highLessLowValues
-								.addFirst((candleItem.getHigh() - candleItem
-										.getLow()));
-					}
+				if (null == this.movingAverage) {
+					this.movingAverage = MovingAverageKernel.newInstance(
+							this.getMAType(), this.getLength());
+					this.highPlusLowValues = new SimpleMovingAverage(
+							this.getVostroPeriod());
+					this.highLessLowValues = new SimpleMovingAverage(
+							this.getVostroPeriod());
 				}
+				double ma = this.movingAverage.update(
+						this.getPrice(candleItem), candleItem.getVolume(),
+						newBar);
+				this.highPlusLowValues.update(
+						candleItem.getHigh() + candleItem.getLow(), newBar);
+				this.highLessLowValues.update(
+						candleItem.getHigh() - candleItem.getLow(), newBar);
 
-				if (this.yyValues.size() == getLength()) {
-
-					double ma = calculateMA(this.getMAType(), this.yyValues,
-							this.volValues, sum);
+				if (!Double.isNaN(ma)) {
 
-					double gd_128 = this.highPlusLowSum / 2.0d
+					double gd_128 = this.highPlusLowValues.getSum() / 2.0d
 							/ this.getVostroPeriod();
 
-					double gd_136 = (this.highLessLowSum / this
+					double gd_136 = (this.highLessLowValues.getSum() / this
 							.getVostroPeriod()) / this.getVostroPeriod();
 
 					if (newBar && this.vostro1 != Double.MAX_VALUE) {
@@ -696,69 +588,6 @@ public class VostroSeries extends IndicatorSeries {
 		}
 	}
 
-	/**
-	 * Method calculateMA.
-	 * 
-	 * @param calcType
-	 *            String
-	 * @param yyValues
-	 *            LinkedList<Double>
-	 * @param volValues
-	 *            LinkedList<Long>
-	 * @param sum
-	 *            Double
-	 * @return double
-	 */
-	private double calculateMA(String calcType, LinkedList<Double> yyValues,
-			LinkedList<Long> volValues, Double sum) {
-
-		double ma = 0;
-		if (CalculationType.LINEAR.equals(calcType)) {
-			ma = sum / getLength();
-		} else if (CalculationType.EXPONENTIAL.equals(calcType)) {
-			/*
-			 * Multiplier: (2 / (Time periods + 1) ) = (2 / (10 + 1) ) = 0.1818
-			 * (18.18%). EMA: {Close - EMA(previous day)} x * multiplier +
-			 * EMA(previous day).
-			 */
-			if (multiplyer == 0) {
-				ma = sum / getLength();
-				multiplyer = 2 / (getLength() + 1.0d);
-			} else {
-				ma = ((yyValues.getFirst() - yyValues.get(1)) * multiplyer)
-						+ yyValues.get(1);
-			}
-			/*
-			 * Use the EMA in the stored values as we need the previous one for
-			 * the calc.
-			 */
-			yyValues.removeFirst();
-			yyValues.addFirst(ma);
-
-		} else if (CalculationType.WEIGHTED.equals(calcType)) {
-
-			double sumYY = 0;
-			int count = 0;
-			for (int i = yyValues.size(); i > 0; i--) {
-				count = count + (getLength() + 1 - i);
-				sumYY = sumYY + (yyValues.get(i - 1) * (getLength() + 1 - i));
-			}
-			ma = sumYY / count;
-
-		} else if (CalculationType.WEIGHTED_VOLUME.equals(calcType)) {
-
-			double sumYY = 0;
-			double count = 0;
-			for (int i = yyValues.size(); i > 0; i--) {
-				count = count + ((getLength() + 1 - i) * volValues.get(i - 1));
-				sumYY = sumYY
-						+ (yyValues.get(i - 1) * volValues.get(i - 1) * (getLength() + 1 - i));
-			}
-			ma = sumYY / count;
-		}
-		return ma;
-	}
-
 	/**
 	 * Method get the price.
 	 * 
@@ -0,0 +1,291 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.candle;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * A time index for a candle series keyed by the epoch second of the start of
+ * each candle period. The index keeps the item position of the first candle of
+ * each trading day, so the position of a candle is found by arithmetic on the
+ * bar size from the start of its day. Where the day has gaps the start of the
+ * period is looked up in a hash table, as a last resort the candle is found by
+ * a binary search.
+ * 
+ * The index assumes candles are added in time order. Call reset if items are
+ * inserted or removed from the middle of the series.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleIndex implements Serializable {
+
+	private static final long serialVersionUID = 6119432271785316645L;
+
+	private static final int SECONDS_PER_DAY = 86400;
+	private static final int NOT_FOUND = -1;
+
+	private long[] starts = new long[64];
+	private int size = 0;
+	private final LongIntMap startIndex = new LongIntMap();
+	private final LongIntMap dayIndex = new LongIntMap();
+
+	public CandleIndex() {
+	}
+
+	/**
+	 * Method reset. Removes all entries from the index.
+	 */
+	public synchronized void reset() {
+		this.size = 0;
+		this.startIndex.clear();
+		this.dayIndex.clear();
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int the number of candles in the index.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Method add. Adds the next candle in the series to the index.
+	 * 
+	 * @param start
+	 *            ZonedDateTime the start of the candle period.
+	 * @return int the item position of the candle.
+	 */
+	public synchronized int add(ZonedDateTime start) {
+		long startSecond = start.toEpochSecond();
+		if (this.size == this.starts.length)
+			this.starts = Arrays.copyOf(this.starts, this.size
+					+ (this.size >> 1) + 1);
+		int index = this.size;
+		this.starts[index] = startSecond;
+		this.size++;
+		this.startIndex.put(startSecond, index);
+		long day = getDay(start);
+		if (this.dayIndex.get(day) == NOT_FOUND)
+			this.dayIndex.put(day, index);
+		return index;
+	}
+
+	/**
+	 * Method getStart.
+	 * 
+	 * @param index
+	 *            int
+	 * @return long the start of the candle period in epoch seconds.
+	 */
+	public long getStart(int index) {
+		return this.starts[index];
+	}
+
+	/**
+	 * Method find. Returns the item position of the candle whose period starts
+	 * at or immediately before the time i.e. the only candle that can contain
+	 * the time. Note the caller must check the time falls within the candle
+	 * period.
+	 * 
+	 * @param time
+	 *            ZonedDateTime
+	 * @param barSize
+	 *            int the length of the candles in seconds.
+	 * @return int the item position or -1 if the time is before the first
+	 *         candle.
+	 */
+	public synchronized int find(ZonedDateTime time, int barSize) {
+
+		if (this.size == 0)
+			return NOT_FOUND;
+
+		long second = time.toEpochSecond();
+		int last = this.size - 1;
+		if (second >= this.starts[last])
+			return last;
+
+		if (barSize > 0) {
+			int dayStart = this.dayIndex.get(getDay(time));
+			if (dayStart != NOT_FOUND) {
+				long dayStartSecond = this.starts[dayStart];
+				long slots = Math.floorDiv(second - dayStartSecond, barSize);
+				long slot = dayStart + slots;
+				if (slot >= 0 && slot < this.size
+						&& isAt(second, (int) slot)) {
+					return (int) slot;
+				}
+				int index = this.startIndex.get(dayStartSecond
+						+ (slots * barSize));
+				if (index != NOT_FOUND)
+					return index;
+			}
+		}
+		return binarySearch(second);
+	}
+
+	/**
+	 * Method floor.
+	 * 
+	 * @param second
+	 *            long epoch seconds.
+	 * @return int the position of the last candle to start at or before the
+	 *         second or -1 if there is none.
+	 */
+	public synchronized int floor(long second) {
+		return binarySearch(second);
+	}
+
+	/**
+	 * Method isAt.
+	 * 
+	 * @param second
+	 *            long
+	 * @param index
+	 *            int
+	 * @return boolean true if this is the last candle to start at or before
+	 *         the second.
+	 */
+	private boolean isAt(long second, int index) {
+		return this.starts[index] <= second
+				&& (index == this.size - 1 || this.starts[index + 1] > second);
+	}
+
+	/**
+	 * Method binarySearch.
+	 * 
+	 * @param second
+	 *            long
+	 * @return int the position of the last candle to start at or before the
+	 *         second or -1.
+	 */
+	private int binarySearch(long second) {
+		int low = 0;
+		int high = this.size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (this.starts[mid] <= second) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+
+	/**
+	 * Method getDay.
+	 * 
+	 * @param time
+	 *            ZonedDateTime
+	 * @return long the local day number of the time.
+	 */
+	private static long getDay(ZonedDateTime time) {
+		return Math.floorDiv(time.toEpochSecond()
+				+ time.getOffset().getTotalSeconds(), SECONDS_PER_DAY);
+	}
+
+	/**
+	 * An open addressing hash table of long keys to int values. This avoids
+	 * boxing the key and value on each look up.
+	 */
+	private static class LongIntMap implements Serializable {
+
+		private static final long serialVersionUID = -4213398658452380914L;
+
+		private long[] keys = new long[128];
+		private int[] values = new int[128];
+		private boolean[] used = new boolean[128];
+		private int count = 0;
+
+		void clear() {
+			Arrays.fill(this.used, false);
+			this.count = 0;
+		}
+
+		int get(long key) {
+			int mask = this.keys.length - 1;
+			int i = hash(key) & mask;
+			while (this.used[i]) {
+				if (this.keys[i] == key)
+					return this.values[i];
+				i = (i + 1) & mask;
+			}
+			return NOT_FOUND;
+		}
+
+		void put(long key, int value) {
+			if ((this.count + 1) * 2 > this.keys.length)
+				rehash(this.keys.length * 2);
+			int mask = this.keys.length - 1;
+			int i = hash(key) & mask;
+			while (this.used[i]) {
+				if (this.keys[i] == key) {
+					this.values[i] = value;
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			this.used[i] = true;
+			this.keys[i] = key;
+			this.values[i] = value;
+			this.count++;
+		}
+
+		private void rehash(int capacity) {
+			long[] oldKeys = this.keys;
+			int[] oldValues = this.values;
+			boolean[] oldUsed = this.used;
+			this.keys = new long[capacity];
+			this.values = new int[capacity];
+			this.used = new boolean[capacity];
+			this.count = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldUsed[i])
+					put(oldKeys[i], oldValues[i]);
+			}
+		}
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
@@ -48,6 +48,10 @@ import org.trade.strategy.data.base.RegularTimePeriod;
 /**
  * An item representing data in the form (period, open, high, low, close).
  * 
+ * The values are held in a row of a CandleStore rather than in a Candle
+ * entity. The Candle is only created when it is asked for i.e. when the item
+ * is persisted.
+ * 
  * @since 1.0.4
  * @author Simon Allen
  * @version $Revision: 1.0 $
@@ -59,6 +63,14 @@ public class CandleItem extends ComparableObjectItem {
 	 */
 	private static final long serialVersionUID = -3888996139640449109L;
 
+	private final CandleStore store;
+	private final int row;
+	private final Contract contract;
+	private final Tradingday tradingday;
+	private ZonedDateTime lastUpdateDate;
+	private Candle candle = null;
+	private boolean candleChanged = false;
+
 	/**
 	 * Creates a new instance of <code>CandleItem</code>.
 	 * 
@@ -89,8 +101,50 @@ public class CandleItem extends ComparableObjectItem {
 			RegularTimePeriod period, double open, double high, double low,
 			double close, long volume, double vwap, int count,
 			ZonedDateTime lastUpdateDate) {
-		super(period, new Candle(contract, tradingday, period, open, high, low,
-				close, volume, vwap, count, lastUpdateDate));
+		this(new CandleStore(1), contract, tradingday, period, open, high, low,
+				close, volume, vwap, count, lastUpdateDate);
+	}
+
+	/**
+	 * Creates a new instance of <code>CandleItem</code> whose values are held
+	 * in a new row of the store.
+	 * 
+	 * @param store
+	 *            the CandleStore that holds the values.
+	 * @param contract
+	 *            Contract
+	 * @param tradingday
+	 *            Tradingday
+	 * @param period
+	 *            the time period.
+	 * @param open
+	 *            the open-value.
+	 * @param high
+	 *            the high-value.
+	 * @param low
+	 *            the low-value.
+	 * @param close
+	 *            the close-value.
+	 * @param volume
+	 *            the volume value.
+	 * @param vwap
+	 *            the volume weighted price.
+	 * @param count
+	 *            int
+	 * @param lastUpdateDate
+	 *            Date
+	 */
+	public CandleItem(CandleStore store, Contract contract,
+			Tradingday tradingday, RegularTimePeriod period, double open,
+			double high, double low, double close, long volume, double vwap,
+			int count, ZonedDateTime lastUpdateDate) {
+		super(period, null);
+		this.store = store;
+		this.row = store.append(period.getStart().toEpochSecond(), open, high,
+				low, close, volume, vwap, count);
+		this.contract = contract;
+		this.tradingday = tradingday;
+		this.lastUpdateDate = lastUpdateDate;
 	}
 
 	/**
@@ -104,13 +158,75 @@ public class CandleItem extends ComparableObjectItem {
 	}
 
 	/**
-	 * Returns the period.
+	 * Returns the store that holds the values for this item.
 	 * 
+	 * @return CandleStore
+	 */
+	public CandleStore getStore() {
+		return this.store;
+	}
+
+	/**
+	 * Returns the row in the store that holds the values for this item.
 	 * 
-	 * @return The period (never <code>null</code>).
+	 * @return int
+	 */
+	public int getRow() {
+		return this.row;
+	}
+
+	/**
+	 * Returns the candle for this item. The Candle is created on first use
+	 * and brought up to date with the item values on each subsequent call.
+	 * 
+	 * 
+	 * @return The candle (never <code>null</code>).
+	 */
+	public synchronized Candle getCandle() {
+		if (null == this.candle) {
+			this.candle = new Candle(this.contract, this.tradingday,
+					getPeriod(), getOpen(), getHigh(), getLow(), getClose(),
+					getVolume(), getVwap(), getCount(), this.lastUpdateDate);
+		} else if (this.candleChanged) {
+			this.candle.setOpen(new BigDecimal(getOpen()));
+			this.candle.setHigh(new BigDecimal(getHigh()));
+			this.candle.setLow(new BigDecimal(getLow()));
+			this.candle.setClose(new BigDecimal(getClose()));
+			this.candle.setVolume(new Long(getVolume()));
+			this.candle.setVwap(new BigDecimal(getVwap()));
+			this.candle.setTradeCount(new Integer(getCount()));
+		}
+		this.candleChanged = false;
+		return this.candle;
+	}
+
+	/**
+	 * Method getObject. The object for this item is the candle.
+	 * 
+	 * @return Object
 	 */
-	public Candle getCandle() {
-		return (Candle) getObject();
+	protected Object getObject() {
+		return getCandle();
+	}
+
+	/**
+	 * Method setObject. Copy the values of the candle into this item.
+	 * 
+	 * @param object
+	 *            Object
+	 */
+	protected void setObject(Object object) {
+		if (object instanceof Candle && object != this.candle) {
+			Candle value = (Candle) object;
+			setOpen(value.getOpen().doubleValue());
+			setHigh(value.getHigh().doubleValue());
+			setLow(value.getLow().doubleValue());
+			setClose(value.getClose().doubleValue());
+			setVolume(value.getVolume());
+			setVwap(value.getVwap().doubleValue());
+			setCount(value.getTradeCount());
+			setLastUpdateDate(value.getLastUpdateDate());
+		}
 	}
 
 	/**
@@ -130,9 +246,7 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The open value.
 	 */
 	public double getOpen() {
-		if (null != getCandle())
-			return getCandle().getOpen().doubleValue();
-		return Double.NaN;
+		return this.store.getOpen(this.row);
 	}
 
 	/**
@@ -142,9 +256,7 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The high value.
 	 */
 	public double getHigh() {
-		if (null != getCandle())
-			return getCandle().getHigh().doubleValue();
-		return Double.NaN;
+		return this.store.getHigh(this.row);
 	}
 
 	/**
@@ -154,10 +266,7 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The low value.
 	 */
 	public double getLow() {
-		if (null != getCandle())
-			return getCandle().getLow().doubleValue();
-		return Double.NaN;
-
+		return this.store.getLow(this.row);
 	}
 
 	/**
@@ -167,10 +276,7 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The close value.
 	 */
 	public double getClose() {
-		if (null != getCandle())
-			return getCandle().getClose().doubleValue();
-		return Double.NaN;
-
+		return this.store.getClose(this.row);
 	}
 
 	/**
@@ -180,9 +286,7 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The volume value.
 	 */
 	public long getVolume() {
-		if (null != getCandle())
-			return getCandle().getVolume().longValue();
-		return 0;
+		return this.store.getVolume(this.row);
 	}
 
 	/**
@@ -192,9 +296,7 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The trade count value.
 	 */
 	public int getCount() {
-		if (null != getCandle())
-			return getCandle().getTradeCount().intValue();
-		return 0;
+		return this.store.getTradeCount(this.row);
 	}
 
 	/**
@@ -204,9 +306,7 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The Vwap value.
 	 */
 	public double getVwap() {
-		if (null != getCandle())
-			return getCandle().getVwap().doubleValue();
-		return 0;
+		return this.store.getVwap(this.row);
 	}
 
 	/**
@@ -217,8 +317,8 @@ public class CandleItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setVwap(double vwap) {
-		if (null != getCandle())
-			getCandle().setVwap(new BigDecimal(vwap));
+		this.store.setVwap(this.row, vwap);
+		this.candleChanged = true;
 	}
 
 	/**
@@ -229,8 +329,8 @@ public class CandleItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setOpen(double open) {
-		if (null != getCandle())
-			getCandle().setOpen(new BigDecimal(open));
+		this.store.setOpen(this.row, open);
+		this.candleChanged = true;
 	}
 
 	/**
@@ -241,8 +341,8 @@ public class CandleItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setClose(double close) {
-		if (null != getCandle())
-			getCandle().setClose(new BigDecimal(close));
+		this.store.setClose(this.row, close);
+		this.candleChanged = true;
 	}
 
 	/**
@@ -253,8 +353,8 @@ public class CandleItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setHigh(double high) {
-		if (null != getCandle())
-			getCandle().setHigh(new BigDecimal(high));
+		this.store.setHigh(this.row, high);
+		this.candleChanged = true;
 	}
 
 	/**
@@ -265,8 +365,8 @@ public class CandleItem extends ComparableObjectItem {
 	 *            int
 	 */
 	public void setCount(int count) {
-		if (null != getCandle())
-			getCandle().setTradeCount(new Integer(count));
+		this.store.setTradeCount(this.row, count);
+		this.candleChanged = true;
 	}
 
 	/**
@@ -277,8 +377,8 @@ public class CandleItem extends ComparableObjectItem {
 	 *            double
 	 */
 	public void setLow(double low) {
-		if (null != getCandle())
-			getCandle().setLow(new BigDecimal(low));
+		this.store.setLow(this.row, low);
+		this.candleChanged = true;
 	}
 
 	/**
@@ -289,8 +389,8 @@ public class CandleItem extends ComparableObjectItem {
 	 *            long
 	 */
 	public void setVolume(long volume) {
-		if (null != getCandle())
-			getCandle().setVolume(new Long(volume));
+		this.store.setVolume(this.row, volume);
+		this.candleChanged = true;
 	}
 
 	/**
@@ -324,8 +424,9 @@ public class CandleItem extends ComparableObjectItem {
 	 *            ZonedDateTime
 	 */
 	public void setLastUpdateDate(ZonedDateTime lastUpdateDate) {
-		if (null != getCandle())
-			getCandle().setLastUpdateDate(lastUpdateDate);
+		this.lastUpdateDate = lastUpdateDate;
+		if (null != this.candle)
+			this.candle.setLastUpdateDate(lastUpdateDate);
 	}
 
 	/**
@@ -335,10 +436,7 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The lastUpdateDate value.
 	 */
 	public ZonedDateTime getLastUpdateDate() {
-		if (null != getCandle())
-			return getCandle().getLastUpdateDate();
-		return null;
-
+		return this.lastUpdateDate;
 	}
 
 	/**
@@ -348,8 +446,7 @@ public class CandleItem extends ComparableObjectItem {
 	 *            Integer
 	 */
 	public void setVersion(Integer version) {
-		if (null != getCandle())
-			getCandle().setVersion(version);
+		getCandle().setVersion(version);
 	}
 
 	/**
@@ -359,8 +456,8 @@ public class CandleItem extends ComparableObjectItem {
 	 * @return The version value.
 	 */
 	public Integer getVersion() {
-		if (null != getCandle())
-			return getCandle().getVersion();
+		if (null != this.candle)
+			return this.candle.getVersion();
 		return null;
 
 	}
@@ -0,0 +1,145 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.candle;
+
+import java.io.Serializable;
+
+/**
+ * The values of a bar made from a range of candles in a series i.e. the
+ * previous day or the opening range. Held as primitives so the result of a
+ * range query can be reused without allocating.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleRange implements Serializable {
+
+	private static final long serialVersionUID = -6102946452861360791L;
+
+	protected int firstIndex = -1;
+	protected int lastIndex = -1;
+	protected double open = 0;
+	protected double high = 0;
+	protected double low = 0;
+	protected double close = 0;
+	protected long volume = 0;
+	protected double vwap = 0;
+	protected int tradeCount = 0;
+
+	public CandleRange() {
+	}
+
+	/**
+	 * Method getFirstIndex.
+	 * 
+	 * @return int the item position of the first candle in the range.
+	 */
+	public int getFirstIndex() {
+		return this.firstIndex;
+	}
+
+	/**
+	 * Method getLastIndex.
+	 * 
+	 * @return int the item position of the last candle in the range.
+	 */
+	public int getLastIndex() {
+		return this.lastIndex;
+	}
+
+	/**
+	 * Method getOpen.
+	 * 
+	 * @return double
+	 */
+	public double getOpen() {
+		return this.open;
+	}
+
+	/**
+	 * Method getHigh.
+	 * 
+	 * @return double
+	 */
+	public double getHigh() {
+		return this.high;
+	}
+
+	/**
+	 * Method getLow.
+	 * 
+	 * @return double
+	 */
+	public double getLow() {
+		return this.low;
+	}
+
+	/**
+	 * Method getClose.
+	 * 
+	 * @return double
+	 */
+	public double getClose() {
+		return this.close;
+	}
+
+	/**
+	 * Method getVolume.
+	 * 
+	 * @return long
+	 */
+	public long getVolume() {
+		return this.volume;
+	}
+
+	/**
+	 * Method getVwap.
+	 * 
+	 * @return double
+	 */
+	public double getVwap() {
+		return this.vwap;
+	}
+
+	/**
+	 * Method getTradeCount.
+	 * 
+	 * @return int
+	 */
+	public int getTradeCount() {
+		return this.tradeCount;
+	}
+}
@@ -0,0 +1,352 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.candle;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A range query index over the candles of a series by item position. Prefix
+ * sums are kept for the volume, trade count and the open/high/low/close prices
+ * both plain and x volume, and segment trees for the high and the low. So the
+ * bar or the average bar for any range of candles costs O(log n).
+ * 
+ * Candles are added in item order. When a candle is revised truncate the index
+ * to its position and add it and the candles after it again, as revisions are
+ * to the latest candle this is O(log n).
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleRangeIndex implements Serializable {
+
+	private static final long serialVersionUID = -1429373829361048307L;
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private int size = 0;
+	private int capacity = 0;
+
+	private double[] open;
+	private double[] close;
+
+	/*
+	 * Prefix sums, element i holds the sum of the candles before position i.
+	 */
+	private long[] sumVolume;
+	private long[] sumTradeCount;
+	private int[] sumTradedCandles;
+	private double[] sumOpen;
+	private double[] sumHigh;
+	private double[] sumLow;
+	private double[] sumClose;
+	private double[] sumOpenXVolume;
+	private double[] sumHighXVolume;
+	private double[] sumLowXVolume;
+	private double[] sumCloseXVolume;
+
+	/*
+	 * Segment trees, the candle at position i is the leaf at capacity + i.
+	 */
+	private double[] maxHigh;
+	private double[] minLow;
+
+	public CandleRangeIndex() {
+		allocate(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int the number of candles in the index.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Method truncate. Removes the candles from the position on.
+	 * 
+	 * @param size
+	 *            int the new number of candles.
+	 */
+	public synchronized void truncate(int size) {
+		if (size < this.size)
+			this.size = Math.max(0, size);
+	}
+
+	/**
+	 * Method add. Adds the next candle in the series to the index.
+	 * 
+	 * @param open
+	 *            double
+	 * @param high
+	 *            double
+	 * @param low
+	 *            double
+	 * @param close
+	 *            double
+	 * @param volume
+	 *            long
+	 * @param tradeCount
+	 *            int
+	 */
+	public synchronized void add(double open, double high, double low,
+			double close, long volume, int tradeCount) {
+
+		if (this.size == this.capacity)
+			allocate(this.capacity * 2);
+
+		int i = this.size;
+		this.open[i] = open;
+		this.close[i] = close;
+		this.sumVolume[i + 1] = this.sumVolume[i] + volume;
+		this.sumTradeCount[i + 1] = this.sumTradeCount[i] + tradeCount;
+		this.sumTradedCandles[i + 1] = this.sumTradedCandles[i]
+				+ (volume > 0 ? 1 : 0);
+		this.sumOpen[i + 1] = this.sumOpen[i] + open;
+		this.sumHigh[i + 1] = this.sumHigh[i] + high;
+		this.sumLow[i + 1] = this.sumLow[i] + low;
+		this.sumClose[i + 1] = this.sumClose[i] + close;
+		this.sumOpenXVolume[i + 1] = this.sumOpenXVolume[i] + (volume * open);
+		this.sumHighXVolume[i + 1] = this.sumHighXVolume[i] + (volume * high);
+		this.sumLowXVolume[i + 1] = this.sumLowXVolume[i] + (volume * low);
+		this.sumCloseXVolume[i + 1] = this.sumCloseXVolume[i]
+				+ (volume * close);
+
+		int node = this.capacity + i;
+		this.maxHigh[node] = high;
+		this.minLow[node] = low;
+		for (node = node >> 1; node > 0; node = node >> 1) {
+			this.maxHigh[node] = Math.max(this.maxHigh[2 * node],
+					this.maxHigh[(2 * node) + 1]);
+			this.minLow[node] = Math.min(this.minLow[2 * node],
+					this.minLow[(2 * node) + 1]);
+		}
+		this.size++;
+	}
+
+	/**
+	 * Method getBar. The bar made from the candles from position to position
+	 * i.e. the open of the first, the close of the last, the high/low and the
+	 * total volume and trade count. The vwap is the volume weighted close.
+	 * 
+	 * @param from
+	 *            int the position of the first candle.
+	 * @param to
+	 *            int the position after the last candle.
+	 * @param bar
+	 *            CandleRange the result.
+	 * @return boolean false if there are no candles in the range.
+	 */
+	public synchronized boolean getBar(int from, int to, CandleRange bar) {
+
+		from = Math.max(0, from);
+		to = Math.min(this.size, to);
+		if (from >= to)
+			return false;
+
+		bar.firstIndex = from;
+		bar.lastIndex = to - 1;
+		bar.open = this.open[from];
+		bar.close = this.close[to - 1];
+		bar.high = getHigh(from, to);
+		bar.low = getLow(from, to);
+		bar.volume = this.sumVolume[to] - this.sumVolume[from];
+		bar.tradeCount = (int) (this.sumTradeCount[to] - this.sumTradeCount[from]);
+		double sumCloseXVolume = this.sumCloseXVolume[to]
+				- this.sumCloseXVolume[from];
+		bar.vwap = bar.volume > 0 ? sumCloseXVolume / bar.volume
+				: sumCloseXVolume;
+		return true;
+	}
+
+	/**
+	 * Method getAverageBar. The bar whose open/high/low/close are the average
+	 * of the candles from position to position, either weighted by volume or
+	 * over the candles that traded. The vwap is the volume weighted close.
+	 * 
+	 * @param from
+	 *            int the position of the first candle.
+	 * @param to
+	 *            int the position after the last candle.
+	 * @param weighted
+	 *            boolean
+	 * @param bar
+	 *            CandleRange the result.
+	 * @return boolean false if there was no volume in the range.
+	 */
+	public synchronized boolean getAverageBar(int from, int to,
+			boolean weighted, CandleRange bar) {
+
+		from = Math.max(0, from);
+		to = Math.min(this.size, to);
+		if (from >= to)
+			return false;
+
+		long volume = this.sumVolume[to] - this.sumVolume[from];
+		int tradedCandles = this.sumTradedCandles[to]
+				- this.sumTradedCandles[from];
+		if (tradedCandles == 0 || volume <= 0)
+			return false;
+
+		bar.firstIndex = from;
+		bar.lastIndex = to - 1;
+		double sumCloseXVolume = this.sumCloseXVolume[to]
+				- this.sumCloseXVolume[from];
+		if (weighted) {
+			bar.open = (this.sumOpenXVolume[to] - this.sumOpenXVolume[from])
+					/ volume;
+			bar.high = (this.sumHighXVolume[to] - this.sumHighXVolume[from])
+					/ volume;
+			bar.low = (this.sumLowXVolume[to] - this.sumLowXVolume[from])
+					/ volume;
+			bar.close = sumCloseXVolume / volume;
+		} else {
+			bar.open = (this.sumOpen[to] - this.sumOpen[from]) / tradedCandles;
+			bar.high = (this.sumHigh[to] - this.sumHigh[from]) / tradedCandles;
+			bar.low = (this.sumLow[to] - this.sumLow[from]) / tradedCandles;
+			bar.close = (this.sumClose[to] - this.sumClose[from])
+					/ tradedCandles;
+		}
+		bar.volume = volume;
+		bar.vwap = sumCloseXVolume / volume;
+		bar.tradeCount = (int) (this.sumTradeCount[to] - this.sumTradeCount[from]);
+		return true;
+	}
+
+	/**
+	 * Method getHigh.
+	 * 
+	 * @param from
+	 *            int
+	 * @param to
+	 *            int
+	 * @return double the highest high of the candles from position to
+	 *         position.
+	 */
+	private double getHigh(int from, int to) {
+		double high = -Double.MAX_VALUE;
+		for (int l = from + this.capacity, r = to + this.capacity; l < r; l = l >> 1, r = r >> 1) {
+			if ((l & 1) == 1)
+				high = Math.max(high, this.maxHigh[l++]);
+			if ((r & 1) == 1)
+				high = Math.max(high, this.maxHigh[--r]);
+		}
+		return high;
+	}
+
+	/**
+	 * Method getLow.
+	 * 
+	 * @param from
+	 *            int
+	 * @param to
+	 *            int
+	 * @return double the lowest low of the candles from position to position.
+	 */
+	private double getLow(int from, int to) {
+		double low = Double.MAX_VALUE;
+		for (int l = from + this.capacity, r = to + this.capacity; l < r; l = l >> 1, r = r >> 1) {
+			if ((l & 1) == 1)
+				low = Math.min(low, this.minLow[l++]);
+			if ((r & 1) == 1)
+				low = Math.min(low, this.minLow[--r]);
+		}
+		return low;
+	}
+
+	/**
+	 * Method allocate. Size the arrays for the capacity keeping the current
+	 * candles and rebuild the segment trees.
+	 * 
+	 * @param capacity
+	 *            int a power of two.
+	 */
+	private void allocate(int capacity) {
+
+		int prefix = capacity + 1;
+		if (null == this.open) {
+			this.open = new double[capacity];
+			this.close = new double[capacity];
+			this.sumVolume = new long[prefix];
+			this.sumTradeCount = new long[prefix];
+			this.sumTradedCandles = new int[prefix];
+			this.sumOpen = new double[prefix];
+			this.sumHigh = new double[prefix];
+			this.sumLow = new double[prefix];
+			this.sumClose = new double[prefix];
+			this.sumOpenXVolume = new double[prefix];
+			this.sumHighXVolume = new double[prefix];
+			this.sumLowXVolume = new double[prefix];
+			this.sumCloseXVolume = new double[prefix];
+		} else {
+			this.open = Arrays.copyOf(this.open, capacity);
+			this.close = Arrays.copyOf(this.close, capacity);
+			this.sumVolume = Arrays.copyOf(this.sumVolume, prefix);
+			this.sumTradeCount = Arrays.copyOf(this.sumTradeCount, prefix);
+			this.sumTradedCandles = Arrays.copyOf(this.sumTradedCandles,
+					prefix);
+			this.sumOpen = Arrays.copyOf(this.sumOpen, prefix);
+			this.sumHigh = Arrays.copyOf(this.sumHigh, prefix);
+			this.sumLow = Arrays.copyOf(this.sumLow, prefix);
+			this.sumClose = Arrays.copyOf(this.sumClose, prefix);
+			this.sumOpenXVolume = Arrays.copyOf(this.sumOpenXVolume, prefix);
+			this.sumHighXVolume = Arrays.copyOf(this.sumHighXVolume, prefix);
+			this.sumLowXVolume = Arrays.copyOf(this.sumLowXVolume, prefix);
+			this.sumCloseXVolume = Arrays
+					.copyOf(this.sumCloseXVolume, prefix);
+		}
+
+		double[] maxHigh = new double[2 * capacity];
+		double[] minLow = new double[2 * capacity];
+		Arrays.fill(maxHigh, -Double.MAX_VALUE);
+		Arrays.fill(minLow, Double.MAX_VALUE);
+		if (null != this.maxHigh) {
+			System.arraycopy(this.maxHigh, this.capacity, maxHigh, capacity,
+					this.size);
+			System.arraycopy(this.minLow, this.capacity, minLow, capacity,
+					this.size);
+		}
+		for (int node = capacity - 1; node > 0; node--) {
+			maxHigh[node] = Math.max(maxHigh[2 * node], maxHigh[(2 * node) + 1]);
+			minLow[node] = Math.min(minLow[2 * node], minLow[(2 * node) + 1]);
+		}
+		this.maxHigh = maxHigh;
+		this.minLow = minLow;
+		this.capacity = capacity;
+	}
+}
@@ -0,0 +1,359 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.candle;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Columnar storage for the values of a candle series. Each candle occupies a
+ * row in a set of growable primitive arrays, so reading or updating a value
+ * does not allocate and indicator loops walk contiguous memory rather than
+ * chasing BigDecimal references.
+ * 
+ * Rows are append only. Once a row has been handed out it keeps its number
+ * for the life of the store, this allows a CandleItem to act as a view on to
+ * its row. To reset a series create a new store.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleStore implements Serializable {
+
+	private static final long serialVersionUID = -2187414391207742811L;
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private double[] open;
+	private double[] high;
+	private double[] low;
+	private double[] close;
+	private double[] vwap;
+	private long[] volume;
+	private int[] tradeCount;
+	private long[] startEpochSecond;
+	private int size = 0;
+	private int modifiedRow = Integer.MAX_VALUE;
+
+	public CandleStore() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor for CandleStore.
+	 * 
+	 * @param capacity
+	 *            int the initial number of rows.
+	 */
+	public CandleStore(int capacity) {
+		if (capacity < 1)
+			capacity = 1;
+		this.open = new double[capacity];
+		this.high = new double[capacity];
+		this.low = new double[capacity];
+		this.close = new double[capacity];
+		this.vwap = new double[capacity];
+		this.volume = new long[capacity];
+		this.tradeCount = new int[capacity];
+		this.startEpochSecond = new long[capacity];
+	}
+
+	/**
+	 * Method append. Adds a new row to the store.
+	 * 
+	 * @param startEpochSecond
+	 *            long the start of the candle period in epoch seconds.
+	 * @param open
+	 *            double
+	 * @param high
+	 *            double
+	 * @param low
+	 *            double
+	 * @param close
+	 *            double
+	 * @param volume
+	 *            long
+	 * @param vwap
+	 *            double
+	 * @param tradeCount
+	 *            int
+	 * @return int the row number of the new candle.
+	 */
+	public synchronized int append(long startEpochSecond, double open,
+			double high, double low, double close, long volume, double vwap,
+			int tradeCount) {
+		if (this.size == this.open.length)
+			grow();
+		int row = this.size;
+		this.startEpochSecond[row] = startEpochSecond;
+		this.open[row] = open;
+		this.high[row] = high;
+		this.low[row] = low;
+		this.close[row] = close;
+		this.volume[row] = volume;
+		this.vwap[row] = vwap;
+		this.tradeCount[row] = tradeCount;
+		this.size++;
+		return row;
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int the number of rows in the store.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Method getStartEpochSecond.
+	 * 
+	 * @param row
+	 *            int
+	 * @return long
+	 */
+	public long getStartEpochSecond(int row) {
+		return this.startEpochSecond[row];
+	}
+
+	/**
+	 * Method getOpen.
+	 * 
+	 * @param row
+	 *            int
+	 * @return double
+	 */
+	public double getOpen(int row) {
+		return this.open[row];
+	}
+
+	/**
+	 * Method setOpen.
+	 * 
+	 * @param row
+	 *            int
+	 * @param open
+	 *            double
+	 */
+	public void setOpen(int row, double open) {
+		this.open[row] = open;
+		modified(row);
+	}
+
+	/**
+	 * Method getHigh.
+	 * 
+	 * @param row
+	 *            int
+	 * @return double
+	 */
+	public double getHigh(int row) {
+		return this.high[row];
+	}
+
+	/**
+	 * Method setHigh.
+	 * 
+	 * @param row
+	 *            int
+	 * @param high
+	 *            double
+	 */
+	public void setHigh(int row, double high) {
+		this.high[row] = high;
+		modified(row);
+	}
+
+	/**
+	 * Method getLow.
+	 * 
+	 * @param row
+	 *            int
+	 * @return double
+	 */
+	public double getLow(int row) {
+		return this.low[row];
+	}
+
+	/**
+	 * Method setLow.
+	 * 
+	 * @param row
+	 *            int
+	 * @param low
+	 *            double
+	 */
+	public void setLow(int row, double low) {
+		this.low[row] = low;
+		modified(row);
+	}
+
+	/**
+	 * Method getClose.
+	 * 
+	 * @param row
+	 *            int
+	 * @return double
+	 */
+	public double getClose(int row) {
+		return this.close[row];
+	}
+
+	/**
+	 * Method setClose.
+	 * 
+	 * @param row
+	 *            int
+	 * @param close
+	 *            double
+	 */
+	public void setClose(int row, double close) {
+		this.close[row] = close;
+		modified(row);
+	}
+
+	/**
+	 * Method getVwap.
+	 * 
+	 * @param row
+	 *            int
+	 * @return double
+	 */
+	public double getVwap(int row) {
+		return this.vwap[row];
+	}
+
+	/**
+	 * Method setVwap.
+	 * 
+	 * @param row
+	 *            int
+	 * @param vwap
+	 *            double
+	 */
+	public void setVwap(int row, double vwap) {
+		this.vwap[row] = vwap;
+		modified(row);
+	}
+
+	/**
+	 * Method getVolume.
+	 * 
+	 * @param row
+	 *            int
+	 * @return long
+	 */
+	public long getVolume(int row) {
+		return this.volume[row];
+	}
+
+	/**
+	 * Method setVolume.
+	 * 
+	 * @param row
+	 *            int
+	 * @param volume
+	 *            long
+	 */
+	public void setVolume(int row, long volume) {
+		this.volume[row] = volume;
+		modified(row);
+	}
+
+	/**
+	 * Method getTradeCount.
+	 * 
+	 * @param row
+	 *            int
+	 * @return int
+	 */
+	public int getTradeCount(int row) {
+		return this.tradeCount[row];
+	}
+
+	/**
+	 * Method setTradeCount.
+	 * 
+	 * @param row
+	 *            int
+	 * @param tradeCount
+	 *            int
+	 */
+	public void setTradeCount(int row, int tradeCount) {
+		this.tradeCount[row] = tradeCount;
+		modified(row);
+	}
+
+	/**
+	 * Method takeModifiedRow. Returns the lowest row whose values have been
+	 * set since the last call, this allows a summary of the store to be
+	 * brought up to date from that row on.
+	 * 
+	 * @return int the row or Integer.MAX_VALUE if no rows have been set.
+	 */
+	public synchronized int takeModifiedRow() {
+		int row = this.modifiedRow;
+		this.modifiedRow = Integer.MAX_VALUE;
+		return row;
+	}
+
+	/**
+	 * Method modified.
+	 * 
+	 * @param row
+	 *            int
+	 */
+	private synchronized void modified(int row) {
+		if (row < this.modifiedRow)
+			this.modifiedRow = row;
+	}
+
+	/**
+	 * Method grow. Increase the capacity of all the columns by half again.
+	 */
+	private void grow() {
+		int capacity = this.open.length + (this.open.length >> 1) + 1;
+		this.open = Arrays.copyOf(this.open, capacity);
+		this.high = Arrays.copyOf(this.high, capacity);
+		this.low = Arrays.copyOf(this.low, capacity);
+		this.close = Arrays.copyOf(this.close, capacity);
+		this.vwap = Arrays.copyOf(this.vwap, capacity);
+		this.volume = Arrays.copyOf(this.volume, capacity);
+		this.tradeCount = Arrays.copyOf(this.tradeCount, capacity);
+		this.startEpochSecond = Arrays.copyOf(this.startEpochSecond, capacity);
+	}
+}
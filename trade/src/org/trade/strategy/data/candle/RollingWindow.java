@@ -0,0 +1,326 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.candle;
+
+import java.io.Serializable;
+
+/**
+ * A fixed length window over the last n bars used to roll up smaller bars
+ * into a rolling candle. i.e. 5sec bars rolled up to a 5min bar have a window
+ * of 60.
+ * 
+ * Values are held in primitive ring buffers. The high and low are kept with
+ * monotonic deques and the volume, vwap x volume and trade count as running
+ * sums, so each bar costs amortized O(1) and does not allocate.
+ * 
+ * The window may be seeded with a high/low that was reached before the window
+ * started i.e. the high/low of the current candle when moving from a larger
+ * to a smaller bar size. The seed is dropped when the window first evicts a
+ * bar.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class RollingWindow implements Serializable {
+
+	private static final long serialVersionUID = 3377085937604713472L;
+
+	private int capacity = 0;
+	private int size = 0;
+	private long sequence = 0;
+
+	private double[] opens;
+	private double[] highs;
+	private double[] lows;
+	private long[] volumes;
+	private int[] tradeCounts;
+	private double[] vwapVolumes;
+
+	/*
+	 * Deques of bar sequence numbers whose values are decreasing (high) or
+	 * increasing (low) from the front. The front is the window high/low.
+	 */
+	private long[] highDeque;
+	private int highFront = 0;
+	private int highCount = 0;
+	private long[] lowDeque;
+	private int lowFront = 0;
+	private int lowCount = 0;
+
+	private boolean seeded = false;
+	private double seedHigh = 0;
+	private double seedLow = Double.MAX_VALUE;
+
+	private long sumVolume = 0;
+	private double sumVwapVolume = 0;
+	private int sumTradeCount = 0;
+
+	private boolean evicted = false;
+	private double evictedOpen = 0;
+
+	/**
+	 * Constructor for RollingWindow.
+	 * 
+	 * @param capacity
+	 *            int the number of bars in the window.
+	 */
+	public RollingWindow(int capacity) {
+		reset(capacity, 0, Double.MAX_VALUE);
+	}
+
+	/**
+	 * Method reset. Empty the window and set its length and seed high/low.
+	 * 
+	 * @param capacity
+	 *            int the number of bars in the window.
+	 * @param seedHigh
+	 *            double
+	 * @param seedLow
+	 *            double
+	 */
+	public void reset(int capacity, double seedHigh, double seedLow) {
+		if (capacity < 1)
+			capacity = 1;
+		if (capacity != this.capacity) {
+			this.capacity = capacity;
+			this.opens = new double[capacity];
+			this.highs = new double[capacity];
+			this.lows = new double[capacity];
+			this.volumes = new long[capacity];
+			this.tradeCounts = new int[capacity];
+			this.vwapVolumes = new double[capacity];
+			this.highDeque = new long[capacity];
+			this.lowDeque = new long[capacity];
+		}
+		this.size = 0;
+		this.sequence = 0;
+		this.highFront = 0;
+		this.highCount = 0;
+		this.lowFront = 0;
+		this.lowCount = 0;
+		this.seeded = true;
+		this.seedHigh = seedHigh;
+		this.seedLow = seedLow;
+		this.sumVolume = 0;
+		this.sumVwapVolume = 0;
+		this.sumTradeCount = 0;
+		this.evicted = false;
+		this.evictedOpen = 0;
+	}
+
+	/**
+	 * Method setSums. Set the starting running sums of an empty window.
+	 * 
+	 * @param sumVolume
+	 *            long
+	 * @param sumVwapVolume
+	 *            double
+	 * @param sumTradeCount
+	 *            int
+	 */
+	public void setSums(long sumVolume, double sumVwapVolume, int sumTradeCount) {
+		this.sumVolume = sumVolume;
+		this.sumVwapVolume = sumVwapVolume;
+		this.sumTradeCount = sumTradeCount;
+	}
+
+	/**
+	 * Method add. Add the next bar to the window evicting the oldest bar if
+	 * the window is full.
+	 * 
+	 * @param open
+	 *            double
+	 * @param high
+	 *            double
+	 * @param low
+	 *            double
+	 * @param volume
+	 *            long
+	 * @param tradeCount
+	 *            int
+	 * @param vwapVolume
+	 *            double the vwap x volume of the bar.
+	 */
+	public void add(double open, double high, double low, long volume,
+			int tradeCount, double vwapVolume) {
+
+		this.evicted = (this.size == this.capacity);
+		if (this.evicted) {
+			long oldest = this.sequence - this.capacity;
+			int slot = (int) (oldest % this.capacity);
+			this.evictedOpen = this.opens[slot];
+			this.sumVolume = this.sumVolume - this.volumes[slot];
+			this.sumVwapVolume = this.sumVwapVolume - this.vwapVolumes[slot];
+			this.sumTradeCount = this.sumTradeCount - this.tradeCounts[slot];
+			if (this.highCount > 0 && this.highDeque[this.highFront] == oldest) {
+				this.highFront = (this.highFront + 1) % this.capacity;
+				this.highCount--;
+			}
+			if (this.lowCount > 0 && this.lowDeque[this.lowFront] == oldest) {
+				this.lowFront = (this.lowFront + 1) % this.capacity;
+				this.lowCount--;
+			}
+			this.seeded = false;
+			this.size--;
+		}
+
+		int slot = (int) (this.sequence % this.capacity);
+		this.opens[slot] = open;
+		this.highs[slot] = high;
+		this.lows[slot] = low;
+		this.volumes[slot] = volume;
+		this.tradeCounts[slot] = tradeCount;
+		this.vwapVolumes[slot] = vwapVolume;
+
+		this.sumTradeCount = this.sumTradeCount + tradeCount;
+		this.sumVolume = this.sumVolume + volume;
+		this.sumVwapVolume = this.sumVwapVolume + vwapVolume;
+
+		while (this.highCount > 0
+				&& this.highs[(int) (this.highDeque[(this.highFront
+						+ this.highCount - 1)
+						% this.capacity] % this.capacity)] <= high) {
+			this.highCount--;
+		}
+		this.highDeque[(this.highFront + this.highCount) % this.capacity] = this.sequence;
+		this.highCount++;
+
+		while (this.lowCount > 0
+				&& this.lows[(int) (this.lowDeque[(this.lowFront
+						+ this.lowCount - 1)
+						% this.capacity] % this.capacity)] >= low) {
+			this.lowCount--;
+		}
+		this.lowDeque[(this.lowFront + this.lowCount) % this.capacity] = this.sequence;
+		this.lowCount++;
+
+		this.sequence++;
+		this.size++;
+	}
+
+	/**
+	 * Method getCapacity.
+	 * 
+	 * @return int the number of bars in the window.
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int the number of bars currently in the window.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Method isEvicted.
+	 * 
+	 * @return boolean true if the last add evicted the oldest bar.
+	 */
+	public boolean isEvicted() {
+		return this.evicted;
+	}
+
+	/**
+	 * Method getEvictedOpen.
+	 * 
+	 * @return double the open of the bar evicted by the last add.
+	 */
+	public double getEvictedOpen() {
+		return this.evictedOpen;
+	}
+
+	/**
+	 * Method getHigh.
+	 * 
+	 * @return double the high of the window.
+	 */
+	public double getHigh() {
+		double high = this.seeded ? this.seedHigh : -Double.MAX_VALUE;
+		if (this.highCount > 0) {
+			double value = this.highs[(int) (this.highDeque[this.highFront] % this.capacity)];
+			if (value > high)
+				high = value;
+		}
+		return high;
+	}
+
+	/**
+	 * Method getLow.
+	 * 
+	 * @return double the low of the window.
+	 */
+	public double getLow() {
+		double low = this.seeded ? this.seedLow : Double.MAX_VALUE;
+		if (this.lowCount > 0) {
+			double value = this.lows[(int) (this.lowDeque[this.lowFront] % this.capacity)];
+			if (value < low)
+				low = value;
+		}
+		return low;
+	}
+
+	/**
+	 * Method getSumVolume.
+	 * 
+	 * @return long
+	 */
+	public long getSumVolume() {
+		return this.sumVolume;
+	}
+
+	/**
+	 * Method getSumVwapVolume.
+	 * 
+	 * @return double
+	 */
+	public double getSumVwapVolume() {
+		return this.sumVwapVolume;
+	}
+
+	/**
+	 * Method getSumTradeCount.
+	 * 
+	 * @return int
+	 */
+	public int getSumTradeCount() {
+		return this.sumTradeCount;
+	}
+}
@@ -0,0 +1,383 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.candle;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+import org.trade.core.util.TradingCalendar;
+import org.trade.strategy.data.CandleSeries;
+
+/**
+ * The statistics of the current trading session of a candle series i.e. the
+ * prior day close, today's open, high/low of the day, the opening range
+ * high/low and the gap.
+ * 
+ * The session times and the prior day close are worked out once when the
+ * first candle of a new day arrives. After that each candle is folded into the
+ * high/low in O(1). The latest candle may be revised, its values are held
+ * apart from the completed candles until the next candle starts. Candles that
+ * were added to the series without an update are caught up with on the next
+ * update.
+ * 
+ * Prices are NaN until they are known.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class SessionStatistics implements Serializable {
+
+	private static final long serialVersionUID = -4386012874413937064L;
+
+	public static final int OPENING_RANGE_SECONDS = 300;
+
+	private int openingRangeSeconds = OPENING_RANGE_SECONDS;
+
+	private long dayStart = Long.MAX_VALUE;
+	private long nextDayStart = Long.MIN_VALUE;
+	private long sessionStart = 0;
+	private long sessionEnd = 0;
+	private ZonedDateTime prevDayStart = null;
+	private ZonedDateTime prevDayEnd = null;
+
+	private int lastIndex = -1;
+	private int currentIndex = -1;
+	private int openIndex = -1;
+
+	private double priorClose = Double.NaN;
+	private double open = Double.NaN;
+	private double high = Double.NaN;
+	private double low = Double.NaN;
+	private double close = Double.NaN;
+	private double openingRangeHigh = Double.NaN;
+	private double openingRangeLow = Double.NaN;
+
+	/*
+	 * High/low of the completed candles of the session and of the opening
+	 * range.
+	 */
+	private double completedHigh = -Double.MAX_VALUE;
+	private double completedLow = Double.MAX_VALUE;
+	private double completedOpeningRangeHigh = -Double.MAX_VALUE;
+	private double completedOpeningRangeLow = Double.MAX_VALUE;
+
+	public SessionStatistics() {
+	}
+
+	/**
+	 * Method update. Add or revise the candle at the index in the series.
+	 * 
+	 * @param series
+	 *            CandleSeries
+	 * @param index
+	 *            int
+	 */
+	public synchronized void update(CandleSeries series, int index) {
+
+		if (null == series.getStartTime() || null == series.getEndTime()
+				|| index < 0 || index >= series.getItemCount())
+			return;
+
+		long start = series.getStartEpochSecond(index);
+		int from = this.lastIndex + 1;
+		if (start < this.dayStart || start >= this.nextDayStart) {
+			startSession(series, ((CandleItem) series.getDataItem(index))
+					.getPeriod().getStart());
+			from = index;
+			while (from > 0
+					&& series.getStartEpochSecond(from - 1) >= this.dayStart) {
+				from--;
+			}
+		}
+		for (int i = Math.max(0, from); i < index; i++) {
+			addCandle(series, i);
+		}
+		addCandle(series, index);
+
+		if (Double.isNaN(this.priorClose))
+			this.priorClose = getPriorClose(series);
+	}
+
+	/**
+	 * Method reset. Clear the statistics.
+	 */
+	public synchronized void reset() {
+		this.dayStart = Long.MAX_VALUE;
+		this.nextDayStart = Long.MIN_VALUE;
+		this.prevDayStart = null;
+		this.prevDayEnd = null;
+		this.priorClose = Double.NaN;
+		this.lastIndex = -1;
+		resetSession();
+	}
+
+	/**
+	 * Method getOpeningRangeSeconds.
+	 * 
+	 * @return int the length of the opening range.
+	 */
+	public int getOpeningRangeSeconds() {
+		return this.openingRangeSeconds;
+	}
+
+	/**
+	 * Method setOpeningRangeSeconds.
+	 * 
+	 * @param openingRangeSeconds
+	 *            int
+	 */
+	public void setOpeningRangeSeconds(int openingRangeSeconds) {
+		this.openingRangeSeconds = openingRangeSeconds;
+	}
+
+	/**
+	 * Method getPriorClose.
+	 * 
+	 * @return double the close of the previous trading day.
+	 */
+	public double getPriorClose() {
+		return this.priorClose;
+	}
+
+	/**
+	 * Method getOpen.
+	 * 
+	 * @return double the open of the candle at the start of the session.
+	 */
+	public double getOpen() {
+		return this.open;
+	}
+
+	/**
+	 * Method getHigh.
+	 * 
+	 * @return double the high of the session.
+	 */
+	public double getHigh() {
+		return this.high;
+	}
+
+	/**
+	 * Method getLow.
+	 * 
+	 * @return double the low of the session.
+	 */
+	public double getLow() {
+		return this.low;
+	}
+
+	/**
+	 * Method getClose.
+	 * 
+	 * @return double the close of the latest candle of the day.
+	 */
+	public double getClose() {
+		return this.close;
+	}
+
+	/**
+	 * Method getOpeningRangeHigh.
+	 * 
+	 * @return double
+	 */
+	public double getOpeningRangeHigh() {
+		return this.openingRangeHigh;
+	}
+
+	/**
+	 * Method getOpeningRangeLow.
+	 * 
+	 * @return double
+	 */
+	public double getOpeningRangeLow() {
+		return this.openingRangeLow;
+	}
+
+	/**
+	 * Method getGap.
+	 * 
+	 * @return double the open over the prior close as a fraction i.e. 0.02 is
+	 *         a 2% gap up.
+	 */
+	public double getGap() {
+		return (this.open - this.priorClose) / this.priorClose;
+	}
+
+	/**
+	 * Method getPercentChangeFromOpen.
+	 * 
+	 * @return double the change from the open as a fraction.
+	 */
+	public double getPercentChangeFromOpen() {
+		return (this.close - this.open) / this.open;
+	}
+
+	/**
+	 * Method getPercentChangeFromClose.
+	 * 
+	 * @return double the change from the prior close as a fraction.
+	 */
+	public double getPercentChangeFromClose() {
+		return (this.close - this.priorClose) / this.priorClose;
+	}
+
+	/**
+	 * Method startSession. Work out the session times for the day of the
+	 * candle and clear the intra day values.
+	 * 
+	 * @param series
+	 *            CandleSeries
+	 * @param time
+	 *            ZonedDateTime the start of the candle.
+	 */
+	private void startSession(CandleSeries series, ZonedDateTime time) {
+
+		ZonedDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+		this.dayStart = day.toEpochSecond();
+		this.nextDayStart = day.plusDays(1).toEpochSecond();
+		this.sessionStart = TradingCalendar.getDateAtTime(time,
+				series.getStartTime()).toEpochSecond();
+		this.sessionEnd = TradingCalendar.getDateAtTime(time,
+				series.getEndTime()).toEpochSecond();
+		ZonedDateTime prevDay = TradingCalendar.getPrevTradingDay(time);
+		this.prevDayStart = TradingCalendar.getDateAtTime(prevDay,
+				series.getStartTime());
+		this.prevDayEnd = TradingCalendar.getDateAtTime(prevDay,
+				series.getEndTime()).minusSeconds(1);
+		this.priorClose = Double.NaN;
+		resetSession();
+	}
+
+	/**
+	 * Method resetSession.
+	 */
+	private void resetSession() {
+		this.currentIndex = -1;
+		this.openIndex = -1;
+		this.open = Double.NaN;
+		this.high = Double.NaN;
+		this.low = Double.NaN;
+		this.close = Double.NaN;
+		this.openingRangeHigh = Double.NaN;
+		this.openingRangeLow = Double.NaN;
+		this.completedHigh = -Double.MAX_VALUE;
+		this.completedLow = Double.MAX_VALUE;
+		this.completedOpeningRangeHigh = -Double.MAX_VALUE;
+		this.completedOpeningRangeLow = Double.MAX_VALUE;
+	}
+
+	/**
+	 * Method addCandle. Fold a candle of the current day into the statistics.
+	 * A revision to a candle before the latest one is ignored.
+	 * 
+	 * @param series
+	 *            CandleSeries
+	 * @param index
+	 *            int
+	 */
+	private void addCandle(CandleSeries series, int index) {
+
+		if (index < this.lastIndex)
+			return;
+		this.lastIndex = index;
+		this.close = series.getClose(index);
+
+		long start = series.getStartEpochSecond(index);
+		long end = ((CandleItem) series.getDataItem(index)).getPeriod()
+				.getEnd().toEpochSecond();
+		if (end < this.sessionStart || start >= this.sessionEnd)
+			return;
+
+		if (index > this.currentIndex && this.currentIndex > -1) {
+			this.completedHigh = Math.max(this.completedHigh,
+					series.getHigh(this.currentIndex));
+			this.completedLow = Math.min(this.completedLow,
+					series.getLow(this.currentIndex));
+			if (isOpeningRange(series.getStartEpochSecond(this.currentIndex))) {
+				this.completedOpeningRangeHigh = Math.max(
+						this.completedOpeningRangeHigh,
+						series.getHigh(this.currentIndex));
+				this.completedOpeningRangeLow = Math.min(
+						this.completedOpeningRangeLow,
+						series.getLow(this.currentIndex));
+			}
+		}
+		if (this.currentIndex == -1 && start <= this.sessionStart)
+			this.openIndex = index;
+		this.currentIndex = index;
+
+		if (index == this.openIndex)
+			this.open = series.getOpen(index);
+		this.high = Math.max(this.completedHigh, series.getHigh(index));
+		this.low = Math.min(this.completedLow, series.getLow(index));
+		if (isOpeningRange(start)) {
+			this.openingRangeHigh = Math.max(this.completedOpeningRangeHigh,
+					series.getHigh(index));
+			this.openingRangeLow = Math.min(this.completedOpeningRangeLow,
+					series.getLow(index));
+		}
+	}
+
+	/**
+	 * Method isOpeningRange.
+	 * 
+	 * @param start
+	 *            long the start of a candle in epoch seconds.
+	 * @return boolean true if the candle starts in the opening range.
+	 */
+	private boolean isOpeningRange(long start) {
+		return start < (this.sessionStart + this.openingRangeSeconds);
+	}
+
+	/**
+	 * Method getPriorClose. The close of the previous trading day if the
+	 * series holds the whole day.
+	 * 
+	 * @param series
+	 *            CandleSeries
+	 * @return double the close or NaN.
+	 */
+	private double getPriorClose(CandleSeries series) {
+		if (null != this.prevDayStart && series.indexOf(this.prevDayStart) > -1
+				&& series.indexOf(this.prevDayEnd) > -1) {
+			CandleRange prevDayBar = new CandleRange();
+			if (series.getBar(this.prevDayStart, this.prevDayEnd, prevDayBar))
+				return prevDayBar.getClose();
+		}
+		return Double.NaN;
+	}
+}
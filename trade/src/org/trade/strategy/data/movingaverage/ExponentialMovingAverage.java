@@ -0,0 +1,135 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.movingaverage;
+
+/**
+ * Exponential moving average. The first value is the simple average of the
+ * window then EMA = (price - EMA(previous bar)) x multiplier + EMA(previous
+ * bar) where the multiplier is 2 / (length + 1).
+ * 
+ * The first value can be held back until more bars than the length have been
+ * seen i.e. the fast EMA of a MACD starts on the same bar as the slow EMA.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class ExponentialMovingAverage extends MovingAverageKernel {
+
+	private static final long serialVersionUID = -3420870693637541924L;
+
+	private final int warmup;
+	private final double multiplyer;
+	private double sum = 0.0;
+	private int seen = 0;
+	private boolean seedBar = false;
+	private double prevEMA = Double.NaN;
+	private double ema = Double.NaN;
+
+	/**
+	 * Constructor for ExponentialMovingAverage.
+	 * 
+	 * @param length
+	 *            int
+	 */
+	public ExponentialMovingAverage(int length) {
+		this(length, length);
+	}
+
+	/**
+	 * Constructor for ExponentialMovingAverage.
+	 * 
+	 * @param length
+	 *            int
+	 * @param warmup
+	 *            int the number of bars before the first value.
+	 */
+	public ExponentialMovingAverage(int length, int warmup) {
+		super(length);
+		this.warmup = Math.max(length, warmup);
+		this.multiplyer = 2 / (length + 1.0d);
+	}
+
+	public void reset() {
+		super.reset();
+		this.sum = 0.0;
+		this.seen = 0;
+		this.seedBar = false;
+		this.prevEMA = Double.NaN;
+		this.ema = Double.NaN;
+	}
+
+	protected double add(double price, long volume, boolean evicted,
+			double evictedPrice, long evictedVolume) {
+		if (evicted) {
+			this.sum = this.sum - evictedPrice + price;
+		} else {
+			this.sum = this.sum + price;
+		}
+		if (this.seen < this.warmup)
+			this.seen++;
+
+		if (!Double.isNaN(this.ema)) {
+			this.seedBar = false;
+			this.prevEMA = this.ema;
+			this.ema = ((price - this.prevEMA) * this.multiplyer)
+					+ this.prevEMA;
+		} else if (this.seen == this.warmup) {
+			this.seedBar = true;
+			this.ema = this.sum / getLength();
+		}
+		return this.ema;
+	}
+
+	protected double revise(double prevPrice, long prevVolume, double price,
+			long volume) {
+		this.sum = this.sum - prevPrice + price;
+		if (this.seedBar) {
+			this.ema = this.sum / getLength();
+		} else if (!Double.isNaN(this.ema)) {
+			this.ema = ((price - this.prevEMA) * this.multiplyer)
+					+ this.prevEMA;
+		}
+		return this.ema;
+	}
+
+	protected void recalculate() {
+		double sum = 0.0;
+		for (int i = size() - 1; i >= 0; i--) {
+			sum = sum + getPrice(i);
+		}
+		this.sum = sum;
+	}
+}
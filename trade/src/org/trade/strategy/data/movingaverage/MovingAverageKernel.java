@@ -0,0 +1,281 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.movingaverage;
+
+import java.io.Serializable;
+
+import org.trade.dictionary.valuetype.CalculationType;
+
+/**
+ * An incremental moving average over the last n values. The values (and their
+ * volumes) are held in primitive ring buffers and each calculation keeps its
+ * own running sums, so a new bar or an in-bar revision costs O(1) and does
+ * not allocate.
+ * 
+ * A new bar pushes the value into the window evicting the oldest once the
+ * window is full. A revision (newBar == false) replaces the current bar's
+ * value. The running sums are re-calculated from the window once every n bars
+ * so the rounding error cannot build up.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public abstract class MovingAverageKernel implements Serializable {
+
+	private static final long serialVersionUID = -2917735460193125384L;
+
+	private final int length;
+	private final double[] prices;
+	private final long[] volumes;
+	private int head = -1;
+	private int count = 0;
+	private int pushes = 0;
+	private double value = Double.NaN;
+
+	/**
+	 * Constructor for MovingAverageKernel.
+	 * 
+	 * @param length
+	 *            int the number of values in the window.
+	 */
+	protected MovingAverageKernel(int length) {
+		if (length < 1) {
+			throw new IllegalArgumentException(
+					"MA period must be greater than zero.");
+		}
+		this.length = length;
+		this.prices = new double[length];
+		this.volumes = new long[length];
+	}
+
+	/**
+	 * Method newInstance.
+	 * 
+	 * @param calcType
+	 *            String the CalculationType code.
+	 * @param length
+	 *            int
+	 * @return MovingAverageKernel
+	 */
+	public static MovingAverageKernel newInstance(String calcType, int length) {
+		if (CalculationType.LINEAR.equals(calcType)) {
+			return new SimpleMovingAverage(length);
+		} else if (CalculationType.EXPONENTIAL.equals(calcType)) {
+			return new ExponentialMovingAverage(length);
+		} else if (CalculationType.WEIGHTED.equals(calcType)) {
+			return new WeightedMovingAverage(length);
+		} else if (CalculationType.WEIGHTED_VOLUME.equals(calcType)) {
+			return new VolumeWeightedMovingAverage(length);
+		} else if (CalculationType.TRIANGULAR.equals(calcType)) {
+			return new TriangularMovingAverage(length);
+		}
+		throw new IllegalArgumentException("Unknown MA type: " + calcType);
+	}
+
+	/**
+	 * Method update.
+	 * 
+	 * @param price
+	 *            double
+	 * @param newBar
+	 *            boolean
+	 * @return double the moving average or NaN until it is available.
+	 */
+	public double update(double price, boolean newBar) {
+		return update(price, 0, newBar);
+	}
+
+	/**
+	 * Method update. Add a new bar or revise the current bar.
+	 * 
+	 * @param price
+	 *            double
+	 * @param volume
+	 *            long
+	 * @param newBar
+	 *            boolean
+	 * @return double the moving average or NaN until it is available.
+	 */
+	public double update(double price, long volume, boolean newBar) {
+
+		if (newBar || this.count == 0) {
+			boolean evicted = this.count == this.length;
+			this.head = (this.head + 1) % this.length;
+			double evictedPrice = this.prices[this.head];
+			long evictedVolume = this.volumes[this.head];
+			this.prices[this.head] = price;
+			this.volumes[this.head] = volume;
+			if (!evicted)
+				this.count++;
+			this.value = add(price, volume, evicted, evictedPrice,
+					evictedVolume);
+			if (++this.pushes >= this.length) {
+				this.pushes = 0;
+				recalculate();
+			}
+		} else {
+			double prevPrice = this.prices[this.head];
+			long prevVolume = this.volumes[this.head];
+			this.prices[this.head] = price;
+			this.volumes[this.head] = volume;
+			this.value = revise(prevPrice, prevVolume, price, volume);
+		}
+		return this.value;
+	}
+
+	/**
+	 * Method reset. Empty the window.
+	 */
+	public void reset() {
+		this.head = -1;
+		this.count = 0;
+		this.pushes = 0;
+		this.value = Double.NaN;
+	}
+
+	/**
+	 * Method getValue.
+	 * 
+	 * @return double the last moving average or NaN if not available.
+	 */
+	public double getValue() {
+		return this.value;
+	}
+
+	/**
+	 * Method getLength.
+	 * 
+	 * @return int
+	 */
+	public int getLength() {
+		return this.length;
+	}
+
+	/**
+	 * Method size.
+	 * 
+	 * @return int the number of values in the window.
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * Method isFull.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isFull() {
+		return this.count == this.length;
+	}
+
+	/**
+	 * Method getPrice.
+	 * 
+	 * @param index
+	 *            int 0 is the current bar.
+	 * @return double
+	 */
+	public double getPrice(int index) {
+		return this.prices[slot(index)];
+	}
+
+	/**
+	 * Method getVolume.
+	 * 
+	 * @param index
+	 *            int 0 is the current bar.
+	 * @return long
+	 */
+	public long getVolume(int index) {
+		return this.volumes[slot(index)];
+	}
+
+	/**
+	 * Method add. Update the running sums for a new bar.
+	 * 
+	 * @param price
+	 *            double
+	 * @param volume
+	 *            long
+	 * @param evicted
+	 *            boolean true if the window was full.
+	 * @param evictedPrice
+	 *            double the oldest price that left the window.
+	 * @param evictedVolume
+	 *            long the oldest volume that left the window.
+	 * @return double the moving average or NaN.
+	 */
+	protected abstract double add(double price, long volume, boolean evicted,
+			double evictedPrice, long evictedVolume);
+
+	/**
+	 * Method revise. Update the running sums for a change to the current bar.
+	 * 
+	 * @param prevPrice
+	 *            double
+	 * @param prevVolume
+	 *            long
+	 * @param price
+	 *            double
+	 * @param volume
+	 *            long
+	 * @return double the moving average or NaN.
+	 */
+	protected abstract double revise(double prevPrice, long prevVolume,
+			double price, long volume);
+
+	/**
+	 * Method recalculate. Rebuild the running sums from the window.
+	 */
+	protected abstract void recalculate();
+
+	/**
+	 * Method slot.
+	 * 
+	 * @param index
+	 *            int
+	 * @return int
+	 */
+	private int slot(int index) {
+		if (index < 0 || index >= this.count) {
+			throw new IndexOutOfBoundsException("Index: " + index + " Size: "
+					+ this.count);
+		}
+		int slot = this.head - index;
+		return slot < 0 ? slot + this.length : slot;
+	}
+}
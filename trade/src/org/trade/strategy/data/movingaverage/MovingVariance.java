@@ -0,0 +1,139 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.movingaverage;
+
+/**
+ * Simple moving average that also keeps the sample variance of the window.
+ * 
+ * The sum of squared differences from the mean (M2) is updated with Welford's
+ * method extended to a sliding window. When y leaves and x enters a window of
+ * n values M2 = M2 + (x - y) x (x - new mean + y - old mean), a new value or
+ * an in-bar revision is the same update. So each bar costs O(1) in place of
+ * summing the window. M2 is re-calculated from the window with the running
+ * sum once every n bars.
+ * 
+ * The rounding of the mean leaves M2 a little above zero when all the values
+ * in the window are the same, so an M2 below n x mean^2 x 1e-14 is taken as
+ * zero i.e. a standard deviation of less than 1e-7 of the price.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class MovingVariance extends SimpleMovingAverage {
+
+	private static final long serialVersionUID = 1497329184636518226L;
+
+	private static final double ROUNDING = 1e-14;
+
+	private double m2 = 0.0;
+
+	/**
+	 * Constructor for MovingVariance.
+	 * 
+	 * @param length
+	 *            int
+	 */
+	public MovingVariance(int length) {
+		super(length);
+	}
+
+	/**
+	 * Method getVariance.
+	 * 
+	 * @return double the sample variance of the window or NaN if there are
+	 *         less than two values.
+	 */
+	public double getVariance() {
+		if (size() < 2)
+			return Double.NaN;
+		double mean = getSum() / size();
+		if (this.m2 <= (size() * mean * mean * ROUNDING))
+			return 0;
+		return this.m2 / (size() - 1);
+	}
+
+	/**
+	 * Method getStandardDeviation.
+	 * 
+	 * @return double the sample standard deviation of the window or NaN if
+	 *         there are less than two values.
+	 */
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	public void reset() {
+		super.reset();
+		this.m2 = 0.0;
+	}
+
+	protected double add(double price, long volume, boolean evicted,
+			double evictedPrice, long evictedVolume) {
+		int n = size();
+		double prevMean = evicted ? getSum() / n : (n > 1 ? getSum()
+				/ (n - 1) : 0);
+		double ma = super.add(price, volume, evicted, evictedPrice,
+				evictedVolume);
+		double mean = getSum() / n;
+		if (evicted) {
+			this.m2 = this.m2 + ((price - evictedPrice)
+					* (price - mean + evictedPrice - prevMean));
+		} else {
+			this.m2 = this.m2 + ((price - prevMean) * (price - mean));
+		}
+		return ma;
+	}
+
+	protected double revise(double prevPrice, long prevVolume, double price,
+			long volume) {
+		double prevMean = getSum() / size();
+		double ma = super.revise(prevPrice, prevVolume, price, volume);
+		double mean = getSum() / size();
+		this.m2 = this.m2 + ((price - prevPrice)
+				* (price - mean + prevPrice - prevMean));
+		return ma;
+	}
+
+	protected void recalculate() {
+		super.recalculate();
+		double mean = getSum() / size();
+		double m2 = 0.0;
+		for (int i = size() - 1; i >= 0; i--) {
+			m2 = m2 + ((getPrice(i) - mean) * (getPrice(i) - mean));
+		}
+		this.m2 = m2;
+	}
+}
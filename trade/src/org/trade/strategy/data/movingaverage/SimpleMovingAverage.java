@@ -0,0 +1,106 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.movingaverage;
+
+/**
+ * Simple moving average i.e. the sum of the window over its length.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class SimpleMovingAverage extends MovingAverageKernel {
+
+	private static final long serialVersionUID = 5630287614392006573L;
+
+	private double sum = 0.0;
+
+	/**
+	 * Constructor for SimpleMovingAverage.
+	 * 
+	 * @param length
+	 *            int
+	 */
+	public SimpleMovingAverage(int length) {
+		super(length);
+	}
+
+	/**
+	 * Method getSum.
+	 * 
+	 * @return double the sum of the values in the window.
+	 */
+	public double getSum() {
+		return this.sum;
+	}
+
+	public void reset() {
+		super.reset();
+		this.sum = 0.0;
+	}
+
+	protected double add(double price, long volume, boolean evicted,
+			double evictedPrice, long evictedVolume) {
+		if (evicted) {
+			this.sum = this.sum - evictedPrice + price;
+		} else {
+			this.sum = this.sum + price;
+		}
+		return calculate();
+	}
+
+	protected double revise(double prevPrice, long prevVolume, double price,
+			long volume) {
+		this.sum = this.sum - prevPrice + price;
+		return calculate();
+	}
+
+	protected void recalculate() {
+		double sum = 0.0;
+		for (int i = size() - 1; i >= 0; i--) {
+			sum = sum + getPrice(i);
+		}
+		this.sum = sum;
+	}
+
+	/**
+	 * Method calculate.
+	 * 
+	 * @return double
+	 */
+	private double calculate() {
+		return isFull() ? this.sum / getLength() : Double.NaN;
+	}
+}
@@ -0,0 +1,145 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.movingaverage;
+
+/**
+ * Triangular moving average. The weights rise by one from each end of the
+ * window to the middle i.e. 1,2,3,2,1 for a length of 5 or 1,2,2,1 for a
+ * length of 4.
+ * 
+ * These are the weights of a p bar sum averaged over q bars where p = (length
+ * + 1) / 2 and q = length + 1 - p. So the last q p bar sums are kept in a ring
+ * and the moving average is their sum / (p x q).
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class TriangularMovingAverage extends MovingAverageKernel {
+
+	private static final long serialVersionUID = 4962409981317637054L;
+
+	private final int p;
+	private final int q;
+	private final double[] boxSums;
+	private int boxHead = -1;
+	private int boxCount = 0;
+	private double boxSum = 0.0;
+	private double sum = 0.0;
+
+	/**
+	 * Constructor for TriangularMovingAverage.
+	 * 
+	 * @param length
+	 *            int
+	 */
+	public TriangularMovingAverage(int length) {
+		super(length);
+		this.p = (length + 1) / 2;
+		this.q = length + 1 - this.p;
+		this.boxSums = new double[this.q];
+	}
+
+	public void reset() {
+		super.reset();
+		this.boxHead = -1;
+		this.boxCount = 0;
+		this.boxSum = 0.0;
+		this.sum = 0.0;
+	}
+
+	protected double add(double price, long volume, boolean evicted,
+			double evictedPrice, long evictedVolume) {
+
+		// The p bar sum, the price p bars back has left it.
+		if (this.p == getLength()) {
+			this.boxSum = this.boxSum + price - (evicted ? evictedPrice : 0);
+		} else {
+			this.boxSum = this.boxSum + price
+					- (size() > this.p ? getPrice(this.p) : 0);
+		}
+		this.boxHead = (this.boxHead + 1) % this.q;
+		if (this.boxCount == this.q) {
+			this.sum = this.sum - this.boxSums[this.boxHead] + this.boxSum;
+		} else {
+			this.sum = this.sum + this.boxSum;
+			this.boxCount++;
+		}
+		this.boxSums[this.boxHead] = this.boxSum;
+		return calculate();
+	}
+
+	protected double revise(double prevPrice, long prevVolume, double price,
+			long volume) {
+		double delta = price - prevPrice;
+		this.boxSum = this.boxSum + delta;
+		this.boxSums[this.boxHead] = this.boxSum;
+		this.sum = this.sum + delta;
+		return calculate();
+	}
+
+	protected void recalculate() {
+		/*
+		 * Box k is the sum of the prices k to k + p - 1 bars back, or as many
+		 * of those as were in the window when it was added.
+		 */
+		double box = 0.0;
+		for (int i = Math.min(this.p, size()) - 1; i >= 0; i--) {
+			box = box + getPrice(i);
+		}
+		this.boxSum = box;
+		double sum = 0.0;
+		for (int k = 0; k < this.boxCount; k++) {
+			if (k > 0) {
+				box = box - getPrice(k - 1);
+				if (k + this.p - 1 < size())
+					box = box + getPrice(k + this.p - 1);
+			}
+			int slot = this.boxHead - k;
+			this.boxSums[slot < 0 ? slot + this.q : slot] = box;
+			sum = sum + box;
+		}
+		this.sum = sum;
+	}
+
+	/**
+	 * Method calculate.
+	 * 
+	 * @return double
+	 */
+	private double calculate() {
+		return isFull() ? this.sum / (this.p * this.q) : Double.NaN;
+	}
+}
@@ -0,0 +1,152 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.movingaverage;
+
+/**
+ * Volume and linear weighted moving average. Each bar is weighted by its
+ * volume x its linear weight, the current bar has a linear weight of length
+ * and the oldest bar a weight of one.
+ * 
+ * If the window has no volume the linear weighted average of the price is
+ * used.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class VolumeWeightedMovingAverage extends MovingAverageKernel {
+
+	private static final long serialVersionUID = 2315646379263806145L;
+
+	private final int divisor;
+	private double sum = 0.0;
+	private double weightedSum = 0.0;
+	private double sumVolume = 0.0;
+	private double weightedSumVolume = 0.0;
+	private double sumPriceVolume = 0.0;
+	private double weightedSumPriceVolume = 0.0;
+
+	/**
+	 * Constructor for VolumeWeightedMovingAverage.
+	 * 
+	 * @param length
+	 *            int
+	 */
+	public VolumeWeightedMovingAverage(int length) {
+		super(length);
+		this.divisor = (length * (length + 1)) / 2;
+	}
+
+	public void reset() {
+		super.reset();
+		this.sum = 0.0;
+		this.weightedSum = 0.0;
+		this.sumVolume = 0.0;
+		this.weightedSumVolume = 0.0;
+		this.sumPriceVolume = 0.0;
+		this.weightedSumPriceVolume = 0.0;
+	}
+
+	protected double add(double price, long volume, boolean evicted,
+			double evictedPrice, long evictedVolume) {
+		double priceVolume = price * volume;
+		this.weightedSum = this.weightedSum - this.sum + (getLength() * price);
+		this.weightedSumVolume = this.weightedSumVolume - this.sumVolume
+				+ ((double) getLength() * volume);
+		this.weightedSumPriceVolume = this.weightedSumPriceVolume
+				- this.sumPriceVolume + (getLength() * priceVolume);
+		if (evicted) {
+			this.sum = this.sum - evictedPrice + price;
+			this.sumVolume = this.sumVolume - evictedVolume + volume;
+			this.sumPriceVolume = this.sumPriceVolume
+					- (evictedPrice * evictedVolume) + priceVolume;
+		} else {
+			this.sum = this.sum + price;
+			this.sumVolume = this.sumVolume + volume;
+			this.sumPriceVolume = this.sumPriceVolume + priceVolume;
+		}
+		return calculate();
+	}
+
+	protected double revise(double prevPrice, long prevVolume, double price,
+			long volume) {
+		double deltaVolume = (double) volume - prevVolume;
+		double deltaPriceVolume = (price * volume) - (prevPrice * prevVolume);
+		this.weightedSum = this.weightedSum + (getLength() * (price - prevPrice));
+		this.weightedSumVolume = this.weightedSumVolume
+				+ (getLength() * deltaVolume);
+		this.weightedSumPriceVolume = this.weightedSumPriceVolume
+				+ (getLength() * deltaPriceVolume);
+		this.sum = this.sum - prevPrice + price;
+		this.sumVolume = this.sumVolume + deltaVolume;
+		this.sumPriceVolume = this.sumPriceVolume + deltaPriceVolume;
+		return calculate();
+	}
+
+	protected void recalculate() {
+		this.sum = 0.0;
+		this.weightedSum = 0.0;
+		this.sumVolume = 0.0;
+		this.weightedSumVolume = 0.0;
+		this.sumPriceVolume = 0.0;
+		this.weightedSumPriceVolume = 0.0;
+		for (int i = size() - 1; i >= 0; i--) {
+			double price = getPrice(i);
+			long volume = getVolume(i);
+			int weight = getLength() - i;
+			this.sum = this.sum + price;
+			this.weightedSum = this.weightedSum + (price * weight);
+			this.sumVolume = this.sumVolume + volume;
+			this.weightedSumVolume = this.weightedSumVolume
+					+ ((double) volume * weight);
+			this.sumPriceVolume = this.sumPriceVolume + (price * volume);
+			this.weightedSumPriceVolume = this.weightedSumPriceVolume
+					+ (price * volume * weight);
+		}
+	}
+
+	/**
+	 * Method calculate.
+	 * 
+	 * @return double
+	 */
+	private double calculate() {
+		if (!isFull())
+			return Double.NaN;
+		if (this.weightedSumVolume == 0)
+			return this.weightedSum / this.divisor;
+		return this.weightedSumPriceVolume / this.weightedSumVolume;
+	}
+}
@@ -0,0 +1,110 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.movingaverage;
+
+/**
+ * Linear weighted moving average. The current bar has a weight of length and
+ * the oldest bar a weight of one.
+ * 
+ * When a bar is added every weight in the window drops by one, so the weighted
+ * sum becomes weighted sum - sum + length x price.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class WeightedMovingAverage extends MovingAverageKernel {
+
+	private static final long serialVersionUID = -8812376145120763397L;
+
+	private final int divisor;
+	private double sum = 0.0;
+	private double weightedSum = 0.0;
+
+	/**
+	 * Constructor for WeightedMovingAverage.
+	 * 
+	 * @param length
+	 *            int
+	 */
+	public WeightedMovingAverage(int length) {
+		super(length);
+		this.divisor = (length * (length + 1)) / 2;
+	}
+
+	public void reset() {
+		super.reset();
+		this.sum = 0.0;
+		this.weightedSum = 0.0;
+	}
+
+	protected double add(double price, long volume, boolean evicted,
+			double evictedPrice, long evictedVolume) {
+		this.weightedSum = this.weightedSum - this.sum + (getLength() * price);
+		if (evicted) {
+			this.sum = this.sum - evictedPrice + price;
+		} else {
+			this.sum = this.sum + price;
+		}
+		return calculate();
+	}
+
+	protected double revise(double prevPrice, long prevVolume, double price,
+			long volume) {
+		this.weightedSum = this.weightedSum + (getLength() * (price - prevPrice));
+		this.sum = this.sum - prevPrice + price;
+		return calculate();
+	}
+
+	protected void recalculate() {
+		double sum = 0.0;
+		double weightedSum = 0.0;
+		for (int i = size() - 1; i >= 0; i--) {
+			sum = sum + getPrice(i);
+			weightedSum = weightedSum + (getPrice(i) * (getLength() - i));
+		}
+		this.sum = sum;
+		this.weightedSum = weightedSum;
+	}
+
+	/**
+	 * Method calculate.
+	 * 
+	 * @return double
+	 */
+	private double calculate() {
+		return isFull() ? this.weightedSum / this.divisor : Double.NaN;
+	}
+}
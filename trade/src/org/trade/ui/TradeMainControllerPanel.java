@@ -47,6 +47,7 @@ import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
@@ -200,6 +201,7 @@ public class TradeMainControllerPanel extends TabbedAppPanel implements
 					.getPropAsString("trade.strategy.default.dir");
 			dynacode = new DynamicCode();
 			dynacode.addSourceDir(new File(strategyDir));
+			compileStrategies();
 
 			/**
 			 * Constructs a new Trading tab that contains all information
@@ -2045,6 +2047,25 @@ public class TradeMainControllerPanel extends TabbedAppPanel implements
 		}
 	}
 
+	/**
+	 * Method compileStrategies. Compile all the strategies in the background
+	 * at start up so they are ready when first run. Strategies that are
+	 * unchanged since the last run are taken from the class cache.
+	 */
+	private void compileStrategies() {
+		Thread compiler = new Thread(new Runnable() {
+			public void run() {
+				Map<String, String> errors = dynacode.compileAll();
+				for (String className : errors.keySet()) {
+					_log.error("Error compiling strategy: " + className
+							+ " Msg: " + errors.get(className));
+				}
+			}
+		}, "StrategyCompiler");
+		compiler.setDaemon(true);
+		compiler.start();
+	}
+
 	/**
 	 * Method createStrategy.
 	 * 
@@ -2113,7 +2134,7 @@ public class TradeMainControllerPanel extends TabbedAppPanel implements
 			if (BrokerModel._brokerTest.equals(model)) {
 
 				m_brokerModel = (BrokerModel) ClassFactory
-						.getServiceForInterface(BrokerModel._brokerTest, this);
+						.getServiceForInterface(getBackTestBrokerModel(), this);
 				tradingdayPanel.setConnected(false);
 				contractPanel.setConnected(false);
 				/*
@@ -2138,6 +2159,22 @@ public class TradeMainControllerPanel extends TabbedAppPanel implements
 		}
 	}
 
+	/**
+	 * Method getBackTestBrokerModel. The event driven back test is used when
+	 * trade.backtest.eventDriven is set in the config.properties.
+	 * 
+	 * @return String
+	 */
+	private String getBackTestBrokerModel() {
+		try {
+			if (ConfigProperties.getPropAsBoolean("trade.backtest.eventDriven"))
+				return BrokerModel._brokerEventTest;
+		} catch (Exception ex) {
+			_log.warn("Property trade.backtest.eventDriven not set in config.properties will use default: false");
+		}
+		return BrokerModel._brokerTest;
+	}
+
 	/**
 	 * Method setBrokerModel.
 	 * 
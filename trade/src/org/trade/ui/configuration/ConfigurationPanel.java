@@ -252,7 +252,8 @@ public class ConfigurationPanel extends BasePanel {
 				if (!exists)
 					m_tradePersistentModel.removeAspect(currAspect);
 			}
-			DBTableLookupServiceProvider.clearLookup();
+			DBTableLookupServiceProvider.refreshLookup();
+			DAOEntryLimit.refresh();
 			doRefresh();
 			if (selectedRow > -1)
 				m_table.setRowSelectionInterval(selectedRow, selectedRow);
@@ -361,8 +361,13 @@ public class StrategyPanel extends BasePanel implements TreeSelectionListener {
 			parm.add(new Integer(0));
 			DynamicCode dynacode = new DynamicCode();
 			dynacode.addSourceDir(new File("temp"));
-			dynacode.newProxyInstance(StrategyRule.class, StrategyRule.PACKAGE
-					+ rule.getStrategy().getClassName(), parm);
+			try {
+				dynacode.newProxyInstance(StrategyRule.class,
+						StrategyRule.PACKAGE
+								+ rule.getStrategy().getClassName(), parm);
+			} finally {
+				dynacode.close();
+			}
 
 			this.setStatusBarMessage("File compiled.", BasePanel.INFORMATION);
 
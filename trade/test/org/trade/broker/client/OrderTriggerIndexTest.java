@@ -0,0 +1,413 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.broker.client;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.util.TradingCalendar;
+import org.trade.dictionary.valuetype.Action;
+import org.trade.dictionary.valuetype.OrderStatus;
+import org.trade.dictionary.valuetype.OrderType;
+import org.trade.persistent.PersistentModel;
+import org.trade.persistent.PersistentModelTestUtils;
+import org.trade.persistent.PositionOrdersVersion;
+import org.trade.persistent.dao.Candle;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.TradeOrder;
+import org.trade.persistent.dao.TradeOrderfill;
+import org.trade.persistent.dao.Tradestrategy;
+import org.trade.persistent.dao.TradestrategyOrders;
+import org.trade.strategy.data.candle.CandlePeriod;
+
+/**
+ * Some tests for the {@link OrderTriggerIndex} class. The orders filled and
+ * cancelled by DBBroker.filledOrders() using the index are checked against
+ * a scan of all the orders.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class OrderTriggerIndexTest {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(OrderTriggerIndexTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private Contract contract = null;
+	private ZonedDateTime startPeriod = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.contract = new Contract();
+		this.contract.setIdContract(1);
+		this.startPeriod = TradingCalendar.getTradingDayStart(TradingCalendar
+				.getDateTimeNowMarketTimeZone());
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testIndexFillsAsScan() {
+		try {
+			for (long seed = 1; seed <= 20; seed++) {
+				List<Candle> candles = createCandles(seed, 60);
+
+				List<String> scanned = runFilledOrders(false, candles);
+				List<String> indexed = runFilledOrders(true, candles);
+
+				assertEquals("Seed: " + seed, scanned, indexed);
+				if (seed == 1) {
+					assertTrue("Filled", scanned.toString().contains(
+							OrderStatus.FILLED));
+					assertTrue("Cancelled", scanned.toString().contains(
+							OrderStatus.CANCELLED));
+				}
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testIndexReused() {
+		try {
+			final int[] reads = new int[1];
+			final PositionOrdersVersion version = new PositionOrdersVersion(null);
+			final PersistentModel persistentModel = PersistentModelTestUtils
+					.createPersistentModel(new Object() {
+						@SuppressWarnings("unused")
+						public PositionOrdersVersion getPositionOrdersVersion() {
+							return version;
+						}
+
+						@SuppressWarnings("unused")
+						public TradestrategyOrders findPositionOrdersByTradestrategyId(
+								Integer idTradestrategy) {
+							reads[0]++;
+							return createOrders();
+						}
+					});
+			final Tradestrategy tradestrategy = new Tradestrategy();
+			tradestrategy.setIdTradeStrategy(1);
+			tradestrategy.setContract(this.contract);
+			DBBroker broker = new DBBroker(null, 1, createBrokerModel(
+					new ArrayList<String>())) {
+				protected PersistentModel getTradePersistentModel() {
+					return persistentModel;
+				}
+
+				protected Tradestrategy getTradestrategy() {
+					return tradestrategy;
+				}
+			};
+
+			/*
+			 * Candles well away from the order prices so nothing is written,
+			 * the orders are read and indexed once.
+			 */
+			List<Candle> candles = createCandles(1, 60);
+			for (Candle candle : candles) {
+				candle.setHigh(new BigDecimal("15.00"));
+				candle.setLow(new BigDecimal("14.00"));
+				candle.setClose(new BigDecimal("14.50"));
+				candle.setOpen(new BigDecimal("14.50"));
+				TradestrategyOrders positionOrders = broker.getPositionOrders();
+				broker.filledOrders(this.contract, positionOrders, candle);
+			}
+			assertEquals(1, reads[0]);
+			assertEquals(1, broker.getOrderTriggerIndex().getBuildCount());
+
+			/*
+			 * A write to the orders moves the version on, they are read and
+			 * indexed again.
+			 */
+			version.tradestrategyChanged(1);
+			broker.filledOrders(this.contract, broker.getPositionOrders(),
+					candles.get(0));
+			broker.filledOrders(this.contract, broker.getPositionOrders(),
+					candles.get(1));
+			assertEquals(2, reads[0]);
+			assertEquals(2, broker.getOrderTriggerIndex().getBuildCount());
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method runFilledOrders. Run the candles through filledOrders() on a new
+	 * ladder of orders.
+	 * 
+	 * @param useOrderTriggerIndex
+	 *            boolean
+	 * @param candles
+	 *            List<Candle>
+	 * @return List<String> the open order and execution calls made on the
+	 *         broker model in the order they were made.
+	 * @throws Exception
+	 */
+	private List<String> runFilledOrders(boolean useOrderTriggerIndex,
+			List<Candle> candles) throws Exception {
+
+		final List<String> calls = new ArrayList<String>();
+		ClientWrapper brokerModel = createBrokerModel(calls);
+		final PositionOrdersVersion version = new PositionOrdersVersion(null);
+		final PersistentModel persistentModel = PersistentModelTestUtils
+				.createPersistentModel(new Object() {
+					@SuppressWarnings("unused")
+					public PositionOrdersVersion getPositionOrdersVersion() {
+						return version;
+					}
+				});
+		DBBroker broker = new DBBroker(null, 1, brokerModel) {
+			protected PersistentModel getTradePersistentModel() {
+				return persistentModel;
+			}
+		};
+		broker.setUseOrderTriggerIndex(useOrderTriggerIndex);
+
+		TradestrategyOrders positionOrders = createOrders();
+		for (Candle candle : candles) {
+			broker.filledOrders(this.contract, positionOrders, candle);
+		}
+		return calls;
+	}
+
+	/**
+	 * Method createBrokerModel.
+	 * 
+	 * @param calls
+	 *            List<String> the open order and execution calls made on the
+	 *            broker model in the order they were made.
+	 * @return ClientWrapper
+	 */
+	private ClientWrapper createBrokerModel(final List<String> calls) {
+		return (ClientWrapper) Proxy.newProxyInstance(
+				ClientWrapper.class.getClassLoader(),
+				new Class<?>[] { ClientWrapper.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						if ("openOrder".equals(method.getName())) {
+							TradeOrder order = (TradeOrder) args[2];
+							String status = ((OrderState) args[3]).m_status;
+							if (OrderStatus.FILLED.equals(status)) {
+								order.setStatus(status);
+								order.setIsFilled(true);
+							}
+							calls.add("openOrder " + args[0] + " " + status);
+						} else if ("execDetails".equals(method.getName())) {
+							TradeOrderfill execution = (TradeOrderfill) args[2];
+							calls.add("execDetails " + args[0] + " "
+									+ execution.getPrice().toPlainString()
+									+ " " + execution.getTime());
+						}
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * Method createOrders. A ladder of limit, stop, stop limit, OCA, trail
+	 * and market orders either side of 20.50.
+	 * 
+	 * @return TradestrategyOrders
+	 */
+	private TradestrategyOrders createOrders() {
+		TradestrategyOrders positionOrders = new TradestrategyOrders();
+		positionOrders.setIdTradeStrategy(1);
+		List<TradeOrder> tradeOrders = new ArrayList<TradeOrder>();
+		tradeOrders.add(createOrder(1, Action.BUY, OrderType.LMT, null,
+				"20.00", null));
+		tradeOrders.add(createOrder(2, Action.BUY, OrderType.STP, "21.00",
+				null, null));
+		tradeOrders.add(createOrder(3, Action.SELL, OrderType.LMT, null,
+				"22.00", "A"));
+		tradeOrders.add(createOrder(4, Action.SELL, OrderType.STP, "19.50",
+				null, "A"));
+		tradeOrders.add(createOrder(5, Action.SELL, OrderType.STPLMT,
+				"19.80", "19.70", null));
+		tradeOrders.add(createOrder(6, Action.BUY, OrderType.STPLMT, "21.50",
+				"21.60", null));
+		tradeOrders.add(createOrder(7, Action.SELL, OrderType.LMT, null,
+				"20.80", "B"));
+		tradeOrders.add(createOrder(8, Action.SELL, OrderType.STP, "20.30",
+				null, "B"));
+		tradeOrders.add(createOrder(9, Action.BUY, OrderType.LMT, null,
+				"20.20", "C"));
+		tradeOrders.add(createOrder(10, Action.BUY, OrderType.STP, "20.90",
+				null, "C"));
+		tradeOrders.add(createOrder(11, Action.SELL, OrderType.TRAIL, "0.12",
+				null, null));
+		tradeOrders.add(createOrder(12, Action.BUY, OrderType.MKT, null, null,
+				null));
+		TradeOrder unsubmitted = createOrder(13, Action.SELL, OrderType.LMT,
+				null, "20.60", null);
+		unsubmitted.setStatus(OrderStatus.UNSUBMIT);
+		tradeOrders.add(unsubmitted);
+		positionOrders.setTradeOrders(tradeOrders);
+		return positionOrders;
+	}
+
+	/**
+	 * Method createOrder.
+	 * 
+	 * @param orderKey
+	 *            int
+	 * @param action
+	 *            String
+	 * @param orderType
+	 *            String
+	 * @param auxPrice
+	 *            String
+	 * @param limitPrice
+	 *            String
+	 * @param ocaGroupName
+	 *            String
+	 * @return TradeOrder
+	 */
+	private TradeOrder createOrder(int orderKey, String action,
+			String orderType, String auxPrice, String limitPrice,
+			String ocaGroupName) {
+		TradeOrder order = new TradeOrder();
+		order.setOrderKey(orderKey);
+		order.setAction(action);
+		order.setOrderType(orderType);
+		order.setQuantity(100);
+		order.setAuxPrice(null == auxPrice ? null : new BigDecimal(auxPrice));
+		order.setLimitPrice(null == limitPrice ? null : new BigDecimal(
+				limitPrice));
+		order.setOcaGroupName(ocaGroupName);
+		order.setCreateDate(this.startPeriod);
+		order.setStatus(OrderStatus.SUBMITTED);
+		order.setTransmit(true);
+		return order;
+	}
+
+	/**
+	 * Method createCandles. A random walk of one minute candles from 20.50.
+	 * 
+	 * @param seed
+	 *            long
+	 * @param count
+	 *            int
+	 * @return List<Candle>
+	 */
+	private List<Candle> createCandles(long seed, int count) {
+		Random random = new Random(seed);
+		List<Candle> candles = new ArrayList<Candle>();
+		double close = 20.5d;
+		for (int i = 0; i < count; i++) {
+			double open = close;
+			close = round(open + (random.nextDouble() - 0.5d) * 0.4d);
+			double high = round(Math.max(open, close) + random.nextDouble()
+					* 0.2d);
+			double low = round(Math.min(open, close) - random.nextDouble()
+					* 0.2d);
+			CandlePeriod period = new CandlePeriod(
+					this.startPeriod.plusMinutes(i), 60);
+			candles.add(new Candle(this.contract, period, open, high, low,
+					close, 1000, close, 10, period.getEnd()));
+		}
+		return candles;
+	}
+
+	/**
+	 * Method round.
+	 * 
+	 * @param price
+	 *            double
+	 * @return double the price to ten cents so the candles often touch the
+	 *         order prices.
+	 */
+	private static double round(double price) {
+		return Math.round(price * 10d) / 10d;
+	}
+}
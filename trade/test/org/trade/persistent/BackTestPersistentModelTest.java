@@ -0,0 +1,408 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.dao.Aspect;
+import org.trade.core.util.TradingCalendar;
+import org.trade.dictionary.valuetype.Action;
+import org.trade.dictionary.valuetype.OrderStatus;
+import org.trade.dictionary.valuetype.OrderType;
+import org.trade.dictionary.valuetype.TradestrategyStatus;
+import org.trade.persistent.dao.ContractLite;
+import org.trade.persistent.dao.TradeOrder;
+import org.trade.persistent.dao.TradeOrderfill;
+import org.trade.persistent.dao.TradePosition;
+import org.trade.persistent.dao.TradestrategyLite;
+import org.trade.persistent.dao.TradestrategyOrders;
+
+/**
+ * Some tests for the {@link BackTestPersistentModel} class. The database is a
+ * fake PersistentModel that returns a tradestrategy with no orders and
+ * records the aspects written to it, so no database is needed.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class BackTestPersistentModelTest {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(BackTestPersistentModelTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private static final Integer ID_TRADESTRATEGY = 1;
+	private static final Integer ID_CONTRACT = 2;
+	private static final Integer MAX_ORDER_KEY = 1000;
+
+	private List<Aspect> persisted = null;
+	private PersistentModel database = null;
+	private int nextId = 0;
+	private PositionOrdersVersion databaseVersion = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.persisted = new ArrayList<Aspect>();
+		this.nextId = 100;
+		this.databaseVersion = new PositionOrdersVersion(null);
+		this.database = PersistentModelTestUtils
+				.createPersistentModel(new Database());
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testPersistAndFind() {
+		try {
+			BackTestPersistentModel model = new BackTestPersistentModel(
+					this.database, true);
+			assertEquals(MAX_ORDER_KEY, model.findTradeOrderByMaxKey());
+
+			TradeOrder tradeOrder = model.persistTradeOrder(getTradeOrder(
+					model, 1001, Action.BUY));
+			assertEquals(OrderStatus.UNSUBMIT, tradeOrder.getStatus());
+			assertTrue(tradeOrder.getIdTradeOrder() < 0);
+			assertSame(tradeOrder, model.findTradeOrderByKey(1001));
+			assertSame(tradeOrder,
+					model.findTradeOrderById(tradeOrder.getIdTradeOrder()));
+			TradestrategyOrders positionOrders = model
+					.findPositionOrdersByTradestrategyId(ID_TRADESTRATEGY);
+			assertEquals(1, positionOrders.getTradeOrders().size());
+			assertSame(tradeOrder, positionOrders.getTradeOrders().get(0));
+			assertEquals(new Integer(1001), model.findTradeOrderByMaxKey());
+
+			/*
+			 * The write moves the version of the tradestrategy on in the
+			 * model's scope only.
+			 */
+			long version = model.getPositionOrdersVersion().get(
+					ID_TRADESTRATEGY, ID_CONTRACT);
+			long otherVersion = model.getPositionOrdersVersion().get(
+					ID_TRADESTRATEGY + 1, ID_CONTRACT + 1);
+			long databaseVersion = this.databaseVersion.get(ID_TRADESTRATEGY,
+					ID_CONTRACT);
+			tradeOrder.setStatus(OrderStatus.SUBMITTED);
+			model.persistTradeOrder(tradeOrder);
+			assertTrue(version != model.getPositionOrdersVersion().get(
+					ID_TRADESTRATEGY, ID_CONTRACT));
+			assertEquals(otherVersion, model.getPositionOrdersVersion().get(
+					ID_TRADESTRATEGY + 1, ID_CONTRACT + 1));
+			assertEquals(databaseVersion,
+					this.databaseVersion.get(ID_TRADESTRATEGY, ID_CONTRACT));
+			assertEquals(1, model
+					.findPositionOrdersByTradestrategyId(ID_TRADESTRATEGY)
+					.getTradeOrders().size());
+			assertEquals(OrderStatus.SUBMITTED,
+					model.findTradeOrderByKey(1001).getStatus());
+			assertTrue(this.persisted.isEmpty());
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testFillsOpenAndClosePosition() {
+		try {
+			BackTestPersistentModel model = new BackTestPersistentModel(
+					this.database, true);
+			TradeOrder buyOrder = model.persistTradeOrder(getTradeOrder(model,
+					1001, Action.BUY));
+			addFill(buyOrder, "1001.1", "20.00");
+			model.persistTradeOrderfill(buyOrder);
+
+			TradestrategyOrders positionOrders = model
+					.findPositionOrdersByTradestrategyId(ID_TRADESTRATEGY);
+			assertEquals(TradestrategyStatus.OPEN, positionOrders.getStatus());
+			assertTrue(positionOrders.hasOpenTradePosition());
+			TradePosition tradePosition = buyOrder.getTradePosition();
+			assertNotNull(tradePosition);
+			assertTrue(tradePosition.getIdTradePosition() < 0);
+			assertSame(tradePosition, positionOrders.getOpenTradePosition());
+			assertSame(tradePosition,
+					model.findTradePositionById(tradePosition.getId()));
+			assertEquals(new Integer(100), tradePosition.getOpenQuantity());
+			assertSame(buyOrder.getTradeOrderfills().get(0),
+					model.findTradeOrderfillByExecId("1001.1"));
+
+			TradeOrder sellOrder = model.persistTradeOrder(getTradeOrder(
+					model, 1002, Action.SELL));
+			addFill(sellOrder, "1002.1", "20.50");
+			model.persistTradeOrderfill(sellOrder);
+
+			positionOrders = model
+					.findPositionOrdersByTradestrategyId(ID_TRADESTRATEGY);
+			assertEquals(TradestrategyStatus.CLOSED, positionOrders.getStatus());
+			assertFalse(positionOrders.hasOpenTradePosition());
+			assertSame(tradePosition, sellOrder.getTradePosition());
+			assertEquals(new Integer(0), tradePosition.getOpenQuantity());
+			assertEquals(0, new BigDecimal("50.00").compareTo(tradePosition
+					.getTotalNetValue()));
+			assertEquals(2, positionOrders.getTradeOrders().size());
+			assertTrue(this.persisted.isEmpty());
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testFlush() {
+		try {
+			BackTestPersistentModel model = new BackTestPersistentModel(
+					this.database, true);
+			TradeOrder buyOrder = model.persistTradeOrder(getTradeOrder(model,
+					1001, Action.BUY));
+			addFill(buyOrder, "1001.1", "20.00");
+			model.persistTradeOrderfill(buyOrder);
+			TradeOrder sellOrder = model.persistTradeOrder(getTradeOrder(
+					model, 1002, Action.SELL));
+			model.flush();
+
+			/*
+			 * The position is written before the orders that refer to it and
+			 * everything created in memory gets a database id.
+			 */
+			List<Class<?>> classes = new ArrayList<Class<?>>();
+			for (Aspect aspect : this.persisted) {
+				classes.add(aspect.getClass());
+				assertTrue(aspect.getId() > 0);
+			}
+			assertEquals(TradePosition.class, classes.get(0));
+			assertTrue(classes.indexOf(TradeOrder.class) > 0);
+			assertTrue(this.persisted.contains(buyOrder));
+			assertTrue(this.persisted.contains(sellOrder));
+			assertTrue(classes.contains(ContractLite.class));
+			TradestrategyLite tradestrategy = (TradestrategyLite) this.persisted
+					.get(this.persisted.size() - 1);
+			assertEquals(TradestrategyStatus.OPEN, tradestrategy.getStatus());
+			assertTrue(buyOrder.getTradePosition().getId() > 0);
+			assertTrue(buyOrder.getTradeOrderfills().get(0).getId() > 0);
+
+			/*
+			 * The memory is cleared so the orders are read from the database.
+			 */
+			assertNull(model.findTradeOrderByKey(1001));
+			assertTrue(model
+					.findPositionOrdersByTradestrategyId(ID_TRADESTRATEGY)
+					.getTradeOrders().isEmpty());
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testFlushOffClears() {
+		try {
+			BackTestPersistentModel model = new BackTestPersistentModel(
+					this.database, false);
+			TradeOrder buyOrder = model.persistTradeOrder(getTradeOrder(model,
+					1001, Action.BUY));
+			addFill(buyOrder, "1001.1", "20.00");
+			model.persistTradeOrderfill(buyOrder);
+			assertEquals(new Integer(1001), model.findTradeOrderByMaxKey());
+			model.flush();
+
+			assertTrue(this.persisted.isEmpty());
+			assertNull(model.findTradeOrderByKey(1001));
+			assertNull(model.findTradeOrderfillByExecId("1001.1"));
+			TradestrategyOrders positionOrders = model
+					.findPositionOrdersByTradestrategyId(ID_TRADESTRATEGY);
+			assertTrue(positionOrders.getTradeOrders().isEmpty());
+			assertFalse(positionOrders.hasOpenTradePosition());
+			assertNull(positionOrders.getStatus());
+			assertEquals(MAX_ORDER_KEY, model.findTradeOrderByMaxKey());
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * The database, the reads return a new instance each time as a query
+	 * would.
+	 */
+	private class Database {
+
+		public TradestrategyOrders findPositionOrdersByTradestrategyId(
+				Integer idTradestrategy) {
+			TradestrategyOrders positionOrders = new TradestrategyOrders();
+			positionOrders.setIdTradeStrategy(ID_TRADESTRATEGY);
+			positionOrders.setVersion(0);
+			positionOrders.setContract(new ContractLite(ID_CONTRACT));
+			positionOrders.getContract().setIdContract(ID_CONTRACT);
+			return positionOrders;
+		}
+
+		public TradestrategyLite findTradestrategyLiteById(Integer id) {
+			TradestrategyLite tradestrategy = new TradestrategyLite(
+					ID_TRADESTRATEGY, 0);
+			tradestrategy.setIdTradeStrategy(ID_TRADESTRATEGY);
+			return tradestrategy;
+		}
+
+		public PositionOrdersVersion getPositionOrdersVersion() {
+			return databaseVersion;
+		}
+
+		public Integer findTradeOrderByMaxKey() {
+			return MAX_ORDER_KEY;
+		}
+
+		public TradeOrder findTradeOrderByKey(Integer orderKey) {
+			return null;
+		}
+
+		public TradeOrderfill findTradeOrderfillByExecId(String execId) {
+			return null;
+		}
+
+		public Aspect persistAspect(Aspect aspect) {
+			if (null == aspect.getId()) {
+				aspect.setId(nextId++);
+				aspect.setVersion(0);
+				if (aspect instanceof TradeOrder) {
+					for (TradeOrderfill tradeOrderfill : ((TradeOrder) aspect)
+							.getTradeOrderfills()) {
+						if (null == tradeOrderfill.getId())
+							tradeOrderfill.setId(nextId++);
+					}
+				}
+			}
+			persisted.add(aspect);
+			return aspect;
+		}
+
+		public Aspect persistAspect(Aspect aspect, boolean overrideVersion) {
+			return persistAspect(aspect);
+		}
+	}
+
+	/**
+	 * Method getTradeOrder.
+	 * 
+	 * @param model
+	 *            PersistentModel
+	 * @param orderKey
+	 *            int
+	 * @param action
+	 *            String
+	 * @return TradeOrder a new market order for 100.
+	 * @throws PersistentModelException
+	 */
+	private TradeOrder getTradeOrder(PersistentModel model, int orderKey,
+			String action) throws PersistentModelException {
+		TradeOrder tradeOrder = new TradeOrder();
+		tradeOrder.setOrderKey(orderKey);
+		tradeOrder.setAction(action);
+		tradeOrder.setOrderType(OrderType.MKT);
+		tradeOrder.setQuantity(100);
+		tradeOrder.setTradestrategyId(model
+				.findTradestrategyLiteById(ID_TRADESTRATEGY));
+		tradeOrder.setCreateDate(TradingCalendar
+				.getDateTimeNowMarketTimeZone());
+		return tradeOrder;
+	}
+
+	/**
+	 * Method addFill. Fill the whole order at the price.
+	 * 
+	 * @param tradeOrder
+	 *            TradeOrder
+	 * @param execId
+	 *            String
+	 * @param price
+	 *            String
+	 */
+	private void addFill(TradeOrder tradeOrder, String execId, String price) {
+		ZonedDateTime time = TradingCalendar.getDateTimeNowMarketTimeZone();
+		TradeOrderfill tradeOrderfill = new TradeOrderfill(tradeOrder,
+				"DU12345", new BigDecimal(price), tradeOrder.getQuantity(),
+				"SMART", execId, new BigDecimal(price),
+				tradeOrder.getQuantity(), tradeOrder.getAction(), time);
+		tradeOrder.addTradeOrderfill(tradeOrderfill);
+	}
+}
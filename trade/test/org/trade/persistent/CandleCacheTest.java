@@ -0,0 +1,382 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent;
+
+import static org.junit.Assert.*;
+import static org.trade.persistent.dao.CandleTestUtils.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.dao.Candle;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.Tradingday;
+
+/**
+ * Some tests for the {@link CandleCache} class. The database is a
+ * fake PersistentModel that returns the candles held for each day and counts
+ * the queries.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleCacheTest {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(CandleCacheTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private static final Integer ID_CONTRACT = 7;
+	private static final Integer BAR_SIZE = 300;
+	private static final int CANDLES_PER_DAY = 78;
+
+	private File cacheDir = null;
+	private Contract contract = null;
+	private PersistentModel database = null;
+	private TreeMap<LocalDate, List<Candle>> candlesByDay = null;
+	private int queries = 0;
+	private Runnable duringQuery = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.cacheDir = Files.createTempDirectory("candlecache").toFile();
+		CandleCache.setCacheDir(this.cacheDir);
+		this.contract = new Contract();
+		this.contract.setIdContract(ID_CONTRACT);
+		this.candlesByDay = new TreeMap<LocalDate, List<Candle>>();
+		this.queries = 0;
+		this.duringQuery = null;
+		this.database = PersistentModelTestUtils
+				.createPersistentModel(new Object() {
+					@SuppressWarnings("unused")
+					public List<Candle> findCandlesByContractDateRangeBarSize(
+							Integer idContract, ZonedDateTime startDate,
+							ZonedDateTime endDate, Integer barSize) {
+						return findCandles(startDate, endDate);
+					}
+				});
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		CandleCache.setCacheDir(null);
+		delete(this.cacheDir);
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testRoundTrip() {
+		try {
+			addDay(8, "35.27");
+			addDay(9, "36.01");
+			List<Candle> candles = this.candlesByDay.get(getOpen(8)
+					.toLocalDate());
+			candles.get(1).setVwap(null);
+			candles.get(1).setTradeCount(null);
+			candles.get(2).setClose(new BigDecimal("0.8512"));
+			candles.get(3).setIdCandle(null);
+
+			List<Candle> expected = read(8, 9);
+			assertEquals(1, this.queries);
+			assertEquals(2 * CANDLES_PER_DAY, expected.size());
+
+			List<Candle> cached = read(8, 9);
+			assertEquals(1, this.queries);
+			assertEquals(expected.size(), cached.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertSameCandle(expected.get(i), cached.get(i));
+			}
+			assertEquals(CANDLES_PER_DAY, read(9, 9).size());
+			assertEquals(1, this.queries);
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testEmptyDayCached() {
+		try {
+			addDay(8, "35.27");
+			addDay(10, "36.01");
+			assertEquals(2 * CANDLES_PER_DAY, read(8, 10).size());
+			assertTrue(getFile(8).exists());
+			assertTrue(getFile(9).exists());
+			assertTrue(getFile(10).exists());
+			assertEquals(2 * CANDLES_PER_DAY, read(8, 10).size());
+			assertEquals(0, read(9, 9).size());
+			assertEquals(1, this.queries);
+
+			/*
+			 * The day is loaded later, writing the candles removes the empty
+			 * file and the next read sees them.
+			 */
+			addDay(9, "35.50");
+			CandleCache.invalidate(this.candlesByDay.get(getOpen(9)
+					.toLocalDate()));
+			assertFalse(getFile(9).exists());
+			assertEquals(3 * CANDLES_PER_DAY, read(8, 10).size());
+			assertEquals(2, this.queries);
+			assertTrue(getFile(9).exists());
+			assertEquals(3 * CANDLES_PER_DAY, read(8, 10).size());
+			assertEquals(2, this.queries);
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testCurrentTradingDayNotCached() {
+		try {
+			ZonedDateTime today = TradingCalendar
+					.getDateTimeNowMarketTimeZone();
+			while (!TradingCalendar.isTradingDay(today)) {
+				today = today.plusDays(1);
+			}
+			ZonedDateTime open = today.withHour(9).withMinute(30)
+					.withSecond(0).withNano(0);
+			this.candlesByDay.put(open.toLocalDate(),
+					getCandles(open, "35.27"));
+			assertEquals(CANDLES_PER_DAY,
+					CandleCache.findCandlesByContractDateRangeBarSize(
+							this.database, this.contract, open, open,
+							BAR_SIZE).size());
+			assertEquals(CANDLES_PER_DAY,
+					CandleCache.findCandlesByContractDateRangeBarSize(
+							this.database, this.contract, open, open,
+							BAR_SIZE).size());
+			assertEquals(2, this.queries);
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testInvalidate() {
+		try {
+			addDay(8, "35.27");
+			addDay(9, "36.01");
+			read(8, 9);
+			assertEquals(1, this.queries);
+
+			/*
+			 * Candles are written for one day, only that day is removed.
+			 */
+			List<Candle> candles = this.candlesByDay.get(getOpen(9)
+					.toLocalDate());
+			for (Candle candle : candles) {
+				candle.setClose(new BigDecimal("37.00"));
+			}
+			CandleCache.invalidate(candles.subList(0, 1));
+			assertTrue(getFile(8).exists());
+			assertFalse(getFile(9).exists());
+
+			List<Candle> read = read(8, 9);
+			assertEquals(2, this.queries);
+			assertEquals(new BigDecimal("37.00"), read.get(read.size() - 1)
+					.getClose());
+			read(8, 9);
+			assertEquals(2, this.queries);
+
+			CandleCache.invalidate(ID_CONTRACT, BAR_SIZE, candles.get(0)
+					.getTradingday());
+			assertFalse(getFile(9).exists());
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testReadRacingWriteNotCached() {
+		try {
+			addDay(8, "35.27");
+			addDay(9, "36.01");
+
+			/*
+			 * Candles are written while the range is read from the database
+			 * so what was read may be stale.
+			 */
+			this.duringQuery = new Runnable() {
+				public void run() {
+					CandleCache.invalidate(ID_CONTRACT, BAR_SIZE, candlesByDay
+							.get(getOpen(9).toLocalDate()).get(0)
+							.getTradingday());
+				}
+			};
+			assertEquals(2 * CANDLES_PER_DAY, read(8, 9).size());
+			assertFalse(getFile(8).exists());
+			assertFalse(getFile(9).exists());
+
+			this.duringQuery = null;
+			read(8, 9);
+			assertTrue(getFile(8).exists());
+			assertTrue(getFile(9).exists());
+			assertEquals(2, this.queries);
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Method findCandles. The database query.
+	 * 
+	 * @param startDate
+	 *            ZonedDateTime
+	 * @param endDate
+	 *            ZonedDateTime
+	 * @return List<Candle> the candles whose tradingday opens between the
+	 *         start and end date.
+	 */
+	private List<Candle> findCandles(ZonedDateTime startDate,
+			ZonedDateTime endDate) {
+		this.queries++;
+		if (null != this.duringQuery)
+			this.duringQuery.run();
+		List<Candle> candles = new ArrayList<Candle>();
+		for (List<Candle> dayCandles : this.candlesByDay.subMap(
+				startDate.toLocalDate(), true, endDate.toLocalDate(), true)
+				.values()) {
+			candles.addAll(dayCandles);
+		}
+		return candles;
+	}
+
+	private List<Candle> read(int startDay, int endDay)
+			throws PersistentModelException {
+		return CandleCache.findCandlesByContractDateRangeBarSize(
+				this.database, this.contract, getOpen(startDay),
+				getOpen(endDay), BAR_SIZE);
+	}
+
+	private void addDay(int day, String price) {
+		this.candlesByDay.put(getOpen(day).toLocalDate(),
+				getCandles(getOpen(day), price));
+	}
+
+	/**
+	 * Method getCandles.
+	 * 
+	 * @param open
+	 *            ZonedDateTime
+	 * @param price
+	 *            String
+	 * @return List<Candle> five minute candles from the open.
+	 */
+	private List<Candle> getCandles(ZonedDateTime open, String price) {
+		Tradingday tradingday = new Tradingday(open, open.withHour(16)
+				.withMinute(0));
+		tradingday.setIdTradingDay(open.getDayOfMonth());
+		List<Candle> candles = new ArrayList<Candle>(CANDLES_PER_DAY);
+		for (int i = 0; i < CANDLES_PER_DAY; i++) {
+			Candle candle = new Candle();
+			candle.setContract(this.contract);
+			candle.setTradingday(tradingday);
+			candle.setBarSize(BAR_SIZE);
+			candle.setIdCandle(i + 1);
+			candle.setVersion(0);
+			candle.setStartPeriod(open.plusMinutes(i * 5));
+			candle.setEndPeriod(open.plusMinutes((i + 1) * 5).minusSeconds(1));
+			candle.setLastUpdateDate(open.plusMinutes((i + 1) * 5));
+			candle.setOpen(new BigDecimal(price));
+			candle.setHigh(new BigDecimal(price).add(new BigDecimal("0.10")));
+			candle.setLow(new BigDecimal(price).subtract(new BigDecimal("0.10")));
+			candle.setClose(new BigDecimal(price));
+			candle.setVwap(new BigDecimal(price));
+			candle.setVolume((long) i * 100);
+			candle.setTradeCount(i);
+			candles.add(candle);
+		}
+		return candles;
+	}
+
+	private File getFile(int day) {
+		return new File(this.cacheDir, ID_CONTRACT + File.separator + BAR_SIZE
+				+ File.separator + getOpen(day).toLocalDate() + ".cnd");
+	}
+}
@@ -0,0 +1,95 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * A fake PersistentModel for tests that do not use the database. The tests
+ * pass an object with the PersistentModel methods they need, any other
+ * method throws an UnsupportedOperationException so a test fails if the code
+ * under test reaches the database in a way it did not expect.
+ * 
+ * This is not a test, the build does not run *TestUtils classes.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class PersistentModelTestUtils {
+
+	/**
+	 * Constructor for PersistentModelTestUtils.
+	 */
+	private PersistentModelTestUtils() {
+	}
+
+	/**
+	 * Method createPersistentModel.
+	 * 
+	 * @param database
+	 *            Object has public methods with the same name and parameter
+	 *            types as the PersistentModel methods it answers.
+	 * @return PersistentModel
+	 */
+	public static PersistentModel createPersistentModel(final Object database) {
+		return (PersistentModel) Proxy.newProxyInstance(
+				PersistentModel.class.getClassLoader(),
+				new Class<?>[] { PersistentModel.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						Method answer = null;
+						try {
+							answer = database.getClass().getMethod(
+									method.getName(),
+									method.getParameterTypes());
+						} catch (NoSuchMethodException ex) {
+							throw new UnsupportedOperationException(
+									"Database method: " + method.getName());
+						}
+						try {
+							answer.setAccessible(true);
+							return answer.invoke(database, args);
+						} catch (InvocationTargetException ex) {
+							throw ex.getCause();
+						}
+					}
+				});
+	}
+}
@@ -0,0 +1,167 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.persistent.dao.ContractLite;
+import org.trade.persistent.dao.TradeOrder;
+import org.trade.persistent.dao.TradePosition;
+import org.trade.persistent.dao.TradestrategyLite;
+
+/**
+ * Some tests for the {@link PositionOrdersVersion} class.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class PositionOrdersVersionTest {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(PositionOrdersVersionTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testKeyedByTradestrategyAndContract() {
+		try {
+			PositionOrdersVersion versions = new PositionOrdersVersion(null);
+			long first = versions.get(1, 10);
+			long second = versions.get(2, 20);
+
+			TradeOrder tradeOrder = new TradeOrder();
+			tradeOrder.setTradestrategyId(new TradestrategyLite(1, 0));
+			versions.changed(tradeOrder);
+			assertTrue("1", first != versions.get(1, 10));
+			assertEquals("2", second, versions.get(2, 20));
+
+			/*
+			 * The open position is on the contract so it is seen by every
+			 * tradestrategy for the contract.
+			 */
+			first = versions.get(1, 10);
+			long sameContract = versions.get(3, 10);
+			TradePosition tradePosition = new TradePosition();
+			tradePosition.setContract(new ContractLite(10));
+			versions.changed(tradePosition);
+			assertTrue("3", first != versions.get(1, 10));
+			assertTrue("4", sameContract != versions.get(3, 10));
+			assertEquals("5", second, versions.get(2, 20));
+
+			versions.changed();
+			assertTrue("6", second != versions.get(2, 20));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testScopes() {
+		try {
+			PositionOrdersVersion database = new PositionOrdersVersion(null);
+			PositionOrdersVersion backTest1 = new PositionOrdersVersion(
+					database);
+			PositionOrdersVersion backTest2 = new PositionOrdersVersion(
+					database);
+			long version1 = backTest1.get(1, 10);
+			long version2 = backTest2.get(1, 10);
+			long versionDatabase = database.get(1, 10);
+
+			backTest1.tradestrategyChanged(1);
+			assertTrue("1", version1 != backTest1.get(1, 10));
+			assertEquals("2", version2, backTest2.get(1, 10));
+			assertEquals("3", versionDatabase, database.get(1, 10));
+
+			version1 = backTest1.get(1, 10);
+			database.contractChanged(10);
+			assertTrue("4", version1 != backTest1.get(1, 10));
+			assertTrue("5", version2 != backTest2.get(1, 10));
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+}
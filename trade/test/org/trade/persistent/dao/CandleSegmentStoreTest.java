@@ -0,0 +1,463 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent.dao;
+
+import static org.junit.Assert.*;
+import static org.trade.persistent.dao.CandleTestUtils.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Some tests for the {@link CandleSegmentStore} class. Each test uses a new
+ * store dir and one minute candles for a contract over a few tradingdays.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleSegmentStoreTest {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(CandleSegmentStoreTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private static final Integer ID_CONTRACT = 7;
+	private static final Integer BAR_SIZE = 60;
+	private static final int CANDLES_PER_DAY = 390;
+
+	private File storeDir = null;
+	private Contract contract = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.storeDir = Files.createTempDirectory("candlestore").toFile();
+		CandleSegmentStore.setStoreDir(this.storeDir);
+		this.contract = new Contract();
+		this.contract.setIdContract(ID_CONTRACT);
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		CandleSegmentStore.setStoreDir(null);
+		delete(this.storeDir);
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testRoundTrip() {
+		try {
+			List<Candle> candles = getCandles(9, CANDLES_PER_DAY, "35.27");
+			candles.get(1).setVwap(null);
+			candles.get(1).setTradeCount(null);
+			candles.get(2).setClose(new BigDecimal("0.8512"));
+			candles.get(3).setIdCandle(1234);
+			candles.get(3).setVersion(2);
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE, candles, true);
+
+			List<Candle> stored = CandleSegmentStore.findByTradingdayOpen(
+					this.contract, getOpen(9), getOpen(9), BAR_SIZE);
+			assertEquals(candles.size(), stored.size());
+			for (int i = 0; i < candles.size(); i++) {
+				assertSameCandle(candles.get(i), stored.get(i));
+			}
+			assertEquals(CANDLES_PER_DAY,
+					CandleSegmentStore.count(ID_CONTRACT, 9));
+			assertEquals(0, CandleSegmentStore.count(ID_CONTRACT, 10));
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testRangeAcrossIndexBoundaries() {
+		try {
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					getCandles(9, CANDLES_PER_DAY, "35.27"), true);
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					getCandles(10, CANDLES_PER_DAY, "36.01"), true);
+
+			/*
+			 * The sparse index has an entry every 64 records, read ranges that
+			 * start either side of an entry and span several.
+			 */
+			int[][] ranges = { { 0, 0 }, { 63, 64 }, { 64, 128 },
+					{ 60, 200 }, { 127, 129 }, { 300, 389 } };
+			for (int[] range : ranges) {
+				List<Candle> stored = CandleSegmentStore.findByPeriod(
+						this.contract, getOpen(9).plusMinutes(range[0]),
+						getOpen(9).plusMinutes(range[1] + 1).minusSeconds(1),
+						BAR_SIZE);
+				assertEquals(Arrays.toString(range), range[1] - range[0] + 1,
+						stored.size());
+				assertEquals(getOpen(9).plusMinutes(range[0]), stored.get(0)
+						.getStartPeriod());
+				assertEquals(getOpen(9).plusMinutes(range[1]),
+						stored.get(stored.size() - 1).getStartPeriod());
+			}
+			for (int i : new int[] { 0, 63, 64, 65, 128, 389 }) {
+				Candle candle = CandleSegmentStore.findByStartPeriod(
+						this.contract, getOpen(10).plusMinutes(i), BAR_SIZE);
+				assertNotNull(candle);
+				assertEquals(Long.valueOf(i), candle.getVolume());
+			}
+			assertNull(CandleSegmentStore.findByStartPeriod(this.contract,
+					getOpen(10).plusMinutes(CANDLES_PER_DAY), BAR_SIZE));
+			assertEquals(2 * CANDLES_PER_DAY,
+					CandleSegmentStore.findByTradingdayOpen(this.contract,
+							getOpen(9), getOpen(10), BAR_SIZE).size());
+			assertEquals(Arrays.asList(BAR_SIZE + "-0.seg"), getFiles());
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testTailReplacement() {
+		try {
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					getCandles(9, CANDLES_PER_DAY, "35.27"), true);
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					getCandles(10, CANDLES_PER_DAY, "36.01"), true);
+			List<Candle> before = CandleSegmentStore.findByTradingdayOpen(
+					this.contract, getOpen(10), getOpen(10), BAR_SIZE);
+
+			/*
+			 * Reload the last tradingday with fewer candles, the published
+			 * records are not overwritten so this is a new generation.
+			 */
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					getCandles(10, 200, "37.02"), true);
+			List<Candle> stored = CandleSegmentStore.findByTradingdayOpen(
+					this.contract, getOpen(10), getOpen(10), BAR_SIZE);
+			assertEquals(200, stored.size());
+			assertEquals(new BigDecimal("37.02"), stored.get(199).getClose());
+			assertEquals(CANDLES_PER_DAY + 200,
+					CandleSegmentStore.count(ID_CONTRACT, null));
+			assertEquals(Arrays.asList(BAR_SIZE + "-1.seg"), getFiles());
+			assertEquals(new BigDecimal("36.01"), before.get(0).getClose());
+
+			/*
+			 * Update the current bar, this is a patch in the same
+			 * generation.
+			 */
+			Candle last = getCandles(10, 200, "38.03").get(199);
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					Collections.singletonList(last), false);
+			assertEquals(new BigDecimal("38.03"),
+					CandleSegmentStore.findByStartPeriod(this.contract,
+							last.getStartPeriod(), BAR_SIZE).getClose());
+			assertEquals(new BigDecimal("37.02"),
+					CandleSegmentStore.findByStartPeriod(this.contract,
+							last.getStartPeriod().minusMinutes(1), BAR_SIZE)
+							.getClose());
+			assertEquals(CANDLES_PER_DAY + 200,
+					CandleSegmentStore.count(ID_CONTRACT, null));
+			assertEquals(Arrays.asList(BAR_SIZE + "-1.seg"), getFiles());
+
+			/*
+			 * A new bar is appended to the same generation.
+			 */
+			Candle next = getCandles(10, 201, "38.04").get(200);
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					Collections.singletonList(next), false);
+			assertEquals(CANDLES_PER_DAY + 201,
+					CandleSegmentStore.count(ID_CONTRACT, null));
+			assertEquals(Arrays.asList(BAR_SIZE + "-1.seg"), getFiles());
+			assertEquals(new BigDecimal("38.04"),
+					CandleSegmentStore.findByStartPeriod(this.contract,
+							next.getStartPeriod(), BAR_SIZE).getClose());
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testCompactAndReopen() {
+		try {
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					getCandles(9, CANDLES_PER_DAY, "35.27"), true);
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					getCandles(10, CANDLES_PER_DAY, "36.01"), true);
+
+			/*
+			 * Back fill an earlier tradingday, this compacts into a new
+			 * generation. Replacing one candle in the middle is a patch that
+			 * is read back when the segment is reopened.
+			 */
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					getCandles(8, 100, "34.50"), true);
+			assertEquals(Arrays.asList(BAR_SIZE + "-1.seg"), getFiles());
+			Candle middle = getCandles(9, 10, "99.99").get(5);
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					Collections.singletonList(middle), false);
+			assertEquals(Arrays.asList(BAR_SIZE + "-1.seg"), getFiles());
+
+			CandleSegmentStore.setStoreDir(this.storeDir);
+			List<Candle> stored = CandleSegmentStore.findByTradingdayOpen(
+					this.contract, getOpen(8), getOpen(10), BAR_SIZE);
+			assertEquals(100 + (2 * CANDLES_PER_DAY), stored.size());
+			for (int i = 1; i < stored.size(); i++) {
+				assertTrue(stored.get(i - 1).getStartPeriod()
+						.isBefore(stored.get(i).getStartPeriod()));
+			}
+			assertEquals(getOpen(8), stored.get(0).getStartPeriod());
+			assertEquals(new BigDecimal("34.50"), stored.get(0).getClose());
+			assertEquals(new BigDecimal("99.99"),
+					CandleSegmentStore.findByStartPeriod(this.contract,
+							middle.getStartPeriod(), BAR_SIZE).getClose());
+			assertEquals(100 + (2 * CANDLES_PER_DAY),
+					CandleSegmentStore.findByTradingdayOpen(this.contract,
+							getOpen(8), getOpen(10), null).size());
+			assertEquals(100, CandleSegmentStore.count(ID_CONTRACT, 8));
+			assertEquals(CANDLES_PER_DAY,
+					CandleSegmentStore.count(ID_CONTRACT, 9));
+			assertEquals(CANDLES_PER_DAY,
+					CandleSegmentStore.count(ID_CONTRACT, 10));
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testUpdateFormingBar() {
+		try {
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					getCandles(9, CANDLES_PER_DAY, "35.27"), true);
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					getCandles(10, 200, "36.01"), true);
+			assertEquals(Arrays.asList(BAR_SIZE + "-0.seg"), getFiles());
+
+			/*
+			 * Update the forming bar on every tick and start the next one
+			 * every ten ticks, none of these compact the segment. Only the
+			 * write that starts a bar forces the records and header.
+			 */
+			List<Candle> candles = getCandles(10, 210, "36.01");
+			int forces = CandleSegmentStore.getForceCount(ID_CONTRACT,
+					BAR_SIZE);
+			for (int tick = 0; tick < 100; tick++) {
+				Candle forming = candles.get(199 + (tick / 10));
+				forming.setClose(new BigDecimal("36.01").add(new BigDecimal(
+						tick).movePointLeft(2)));
+				CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+						Collections.singletonList(forming), false);
+				assertEquals(forming.getClose(), CandleSegmentStore
+						.findByStartPeriod(this.contract,
+								forming.getStartPeriod(), BAR_SIZE).getClose());
+				assertEquals(CANDLES_PER_DAY + 200 + (tick / 10),
+						CandleSegmentStore.count(ID_CONTRACT, null));
+				assertEquals(200 + (tick / 10),
+						CandleSegmentStore.count(ID_CONTRACT, 10));
+			}
+			assertEquals(forces + (9 * 2), CandleSegmentStore.getForceCount(
+					ID_CONTRACT, BAR_SIZE));
+			assertEquals(CANDLES_PER_DAY,
+					CandleSegmentStore.count(ID_CONTRACT, 9));
+			assertEquals(Arrays.asList(BAR_SIZE + "-0.seg"), getFiles());
+
+			CandleSegmentStore.setStoreDir(this.storeDir);
+			List<Candle> stored = CandleSegmentStore.findByTradingdayOpen(
+					this.contract, getOpen(10), getOpen(10), BAR_SIZE);
+			assertEquals(209, stored.size());
+			for (int i = 1; i < stored.size(); i++) {
+				assertTrue(stored.get(i - 1).getStartPeriod()
+						.isBefore(stored.get(i).getStartPeriod()));
+			}
+			assertEquals(new BigDecimal("36.01"), stored.get(198).getClose());
+			assertEquals(new BigDecimal("36.10"), stored.get(199).getClose());
+			assertEquals(new BigDecimal("37.00"), stored.get(208).getClose());
+			assertEquals(Arrays.asList(BAR_SIZE + "-0.seg"), getFiles());
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testFormingBarNotWritten() {
+		try {
+			List<Candle> candles = getCandles(9, CANDLES_PER_DAY, "35.27");
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE, candles, true);
+			Candle forming = candles.get(CANDLES_PER_DAY - 1);
+			forming.setClose(new BigDecimal("35.50"));
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					Collections.singletonList(forming), false);
+			CandleSegmentStore.setStoreDir(this.storeDir);
+
+			/*
+			 * The header of the next update reached the disk but its patch
+			 * record did not i.e. the file ends in a zero filled record.
+			 */
+			File file = new File(new File(this.storeDir,
+					String.valueOf(ID_CONTRACT)), BAR_SIZE + "-0.seg");
+			try (FileChannel channel = FileChannel.open(file.toPath(),
+					StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				long recordSize = (channel.size() - 64)
+						/ (CANDLES_PER_DAY + 1);
+				ByteBuffer patches = ByteBuffer.allocate(4);
+				channel.read(patches, 16);
+				assertEquals(1, patches.getInt(0));
+				patches.putInt(0, 2);
+				patches.rewind();
+				channel.write(patches, 16);
+				channel.write(ByteBuffer.allocate((int) recordSize),
+						channel.size());
+			}
+
+			assertEquals(CANDLES_PER_DAY,
+					CandleSegmentStore.count(ID_CONTRACT, null));
+			assertEquals(CANDLES_PER_DAY,
+					CandleSegmentStore.count(ID_CONTRACT, 9));
+			assertEquals(new BigDecimal("35.50"), CandleSegmentStore
+					.findByStartPeriod(this.contract,
+							forming.getStartPeriod(), BAR_SIZE).getClose());
+
+			forming.setClose(new BigDecimal("35.60"));
+			CandleSegmentStore.write(ID_CONTRACT, BAR_SIZE,
+					Collections.singletonList(forming), false);
+			CandleSegmentStore.setStoreDir(this.storeDir);
+			assertEquals(new BigDecimal("35.60"), CandleSegmentStore
+					.findByStartPeriod(this.contract,
+							forming.getStartPeriod(), BAR_SIZE).getClose());
+			assertEquals(CANDLES_PER_DAY,
+					CandleSegmentStore.count(ID_CONTRACT, null));
+		} catch (Exception ex) {
+			_log.error("Error " + name.getMethodName() + " Msg: "
+					+ ex.getMessage(), ex);
+			fail("Error " + name.getMethodName() + " Msg: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Method getCandles.
+	 * 
+	 * @param day
+	 *            int the day of September 2015 and the tradingday id.
+	 * @param count
+	 *            int
+	 * @param price
+	 *            String
+	 * @return List<Candle> one minute candles from the open.
+	 */
+	private List<Candle> getCandles(int day, int count, String price) {
+		ZonedDateTime open = getOpen(day);
+		Tradingday tradingday = new Tradingday(open, open.withHour(16)
+				.withMinute(0));
+		tradingday.setIdTradingDay(day);
+		List<Candle> candles = new ArrayList<Candle>(count);
+		for (int i = 0; i < count; i++) {
+			Candle candle = new Candle();
+			candle.setContract(this.contract);
+			candle.setTradingday(tradingday);
+			candle.setBarSize(BAR_SIZE);
+			candle.setStartPeriod(open.plusMinutes(i));
+			candle.setEndPeriod(open.plusMinutes(i + 1).minusSeconds(1));
+			candle.setLastUpdateDate(open.plusMinutes(i + 1));
+			candle.setOpen(new BigDecimal(price));
+			candle.setHigh(new BigDecimal(price).add(new BigDecimal("0.10")));
+			candle.setLow(new BigDecimal(price).subtract(new BigDecimal("0.10")));
+			candle.setClose(new BigDecimal(price));
+			candle.setVwap(new BigDecimal(price));
+			candle.setVolume((long) i);
+			candle.setTradeCount(i);
+			candles.add(candle);
+		}
+		return candles;
+	}
+
+	private List<String> getFiles() {
+		String[] files = new File(this.storeDir, String.valueOf(ID_CONTRACT))
+				.list();
+		Arrays.sort(files);
+		return Arrays.asList(files);
+	}
+}
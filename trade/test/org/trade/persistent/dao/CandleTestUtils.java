@@ -0,0 +1,119 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.persistent.dao;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.time.ZonedDateTime;
+
+import org.trade.core.util.TradingCalendar;
+
+/**
+ * Helpers shared by the candle cache and candle store tests.
+ * 
+ * This is not a test, the build does not run *TestUtils classes.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class CandleTestUtils {
+
+	/**
+	 * Constructor for CandleTestUtils.
+	 */
+	private CandleTestUtils() {
+	}
+
+	/**
+	 * Method getOpen.
+	 * 
+	 * @param day
+	 *            int the day of September 2015.
+	 * @return ZonedDateTime the market open on that day.
+	 */
+	public static ZonedDateTime getOpen(int day) {
+		return ZonedDateTime.of(2015, 9, day, 9, 30, 0, 0,
+				TradingCalendar.MKT_TIMEZONE);
+	}
+
+	/**
+	 * Method assertSameCandle. Every field that is written to disk must read
+	 * back the same.
+	 * 
+	 * @param expected
+	 *            Candle
+	 * @param actual
+	 *            Candle
+	 */
+	public static void assertSameCandle(Candle expected, Candle actual) {
+		assertEquals(expected.getStartPeriod(), actual.getStartPeriod());
+		assertEquals(expected.getEndPeriod(), actual.getEndPeriod());
+		assertEquals(expected.getLastUpdateDate(), actual.getLastUpdateDate());
+		assertEquals(expected.getTradingday().getOpen(), actual
+				.getTradingday().getOpen());
+		assertEquals(expected.getTradingday().getClose(), actual
+				.getTradingday().getClose());
+		assertEquals(expected.getTradingday().getIdTradingDay(), actual
+				.getTradingday().getIdTradingDay());
+		assertEquals(expected.getIdCandle(), actual.getIdCandle());
+		assertEquals(expected.getVersion(), actual.getVersion());
+		assertEquals(expected.getTradeCount(), actual.getTradeCount());
+		assertEquals(expected.getVolume(), actual.getVolume());
+		assertEquals(expected.getOpen(), actual.getOpen());
+		assertEquals(expected.getHigh(), actual.getHigh());
+		assertEquals(expected.getLow(), actual.getLow());
+		assertEquals(expected.getClose(), actual.getClose());
+		assertEquals(expected.getVwap(), actual.getVwap());
+		assertEquals(expected.getBarSize(), actual.getBarSize());
+	}
+
+	/**
+	 * Method delete. Delete a file or a directory and everything under it.
+	 * 
+	 * @param file
+	 *            File
+	 */
+	public static void delete(File file) {
+		File[] files = file.listFiles();
+		if (null != files) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,344 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.dao.Contract;
+import org.trade.strategy.data.bollingerbands.BollingerBandsItem;
+import org.trade.strategy.data.candle.CandleItem;
+
+/**
+ * Some tests for the {@link BollingerBandsSeries} class. The bands are checked
+ * against the sample standard deviation summed over the whole window for each
+ * bar and each in-bar revision.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class BollingerBandsSeriesTest {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(BollingerBandsSeriesTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	/*
+	 * Symbol, start price and the size of a tick i.e. a stock, a future with a
+	 * large price and small range and a penny stock.
+	 */
+	private static final Object[][] datasets = { { "NTAP", 35.27d, 0.01d },
+			{ "ES", 2051.25d, 0.25d }, { "CYTR", 0.8512d, 0.0001d } };
+
+	private static final int[] lengths = { 2, 20, 100 };
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testNewBars() {
+		try {
+			for (Object[] dataset : datasets) {
+				for (int length : lengths) {
+					runDataset(dataset, length, 0);
+				}
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testInBarRevisions() {
+		try {
+			for (Object[] dataset : datasets) {
+				for (int length : lengths) {
+					runDataset(dataset, length, 3);
+				}
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testClear() {
+		try {
+			CandleSeries candleSeries = createCandleSeries(
+					(String) datasets[0][0], (Double) datasets[0][1],
+					(Double) datasets[0][2]);
+			BollingerBandsSeries series = createSeries(20, true);
+			for (int i = 0; i < candleSeries.getItemCount(); i++) {
+				series.updateSeries(candleSeries, i, true);
+			}
+			int itemCount = series.getItemCount();
+			double lastBand = ((BollingerBandsItem) series.getDataItem(itemCount - 1))
+					.getBollingerBands();
+			series.clear();
+			assertEquals("1", 0, series.getItemCount());
+			for (int i = 0; i < candleSeries.getItemCount(); i++) {
+				series.updateSeries(candleSeries, i, true);
+			}
+			assertEquals("2", itemCount, series.getItemCount());
+			assertEquals("3", lastBand,
+					((BollingerBandsItem) series.getDataItem(itemCount - 1))
+							.getBollingerBands(), 0);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method runDataset. Build the upper and lower bands bar by bar revising
+	 * each bar revisions times and check them against the bands summed over
+	 * the window.
+	 * 
+	 * @param dataset
+	 *            Object[]
+	 * @param length
+	 *            int
+	 * @param revisions
+	 *            int
+	 */
+	private void runDataset(Object[] dataset, int length, int revisions) {
+
+		String symbol = (String) dataset[0];
+		double tick = (Double) dataset[2];
+		CandleSeries candleSeries = createCandleSeries(symbol,
+				(Double) dataset[1], tick);
+		BollingerBandsSeries upper = createSeries(length, true);
+		BollingerBandsSeries lower = createSeries(length, false);
+		LinkedList<Double> window = new LinkedList<Double>();
+		Random random = new Random(length);
+
+		for (int i = 0; i < candleSeries.getItemCount(); i++) {
+			CandleItem candleItem = (CandleItem) candleSeries.getDataItem(i);
+			double close = candleItem.getClose();
+			for (int revision = 0; revision <= revisions; revision++) {
+				boolean newBar = revision == 0;
+				if (!newBar) {
+					close = close + (tick * (random.nextInt(5) - 2));
+					candleItem.setClose(close);
+					window.removeFirst();
+				} else if (window.size() == length) {
+					window.removeLast();
+				}
+				window.addFirst(close);
+				upper.updateSeries(candleSeries, i, newBar);
+				lower.updateSeries(candleSeries, i, newBar);
+
+				if (window.size() == length) {
+					String msg = symbol + " length: " + length + " bar: " + i
+							+ " revision: " + revision;
+					double mean = mean(window);
+					double std = standardDeviation(window, mean);
+					assertBand(msg + " upper", mean + (2 * std), upper);
+					assertBand(msg + " lower", mean - (2 * std), lower);
+				}
+			}
+		}
+		assertEquals(symbol, candleSeries.getItemCount() - length + 1,
+				upper.getItemCount());
+	}
+
+	/**
+	 * Method assertBand.
+	 * 
+	 * @param msg
+	 *            String
+	 * @param expected
+	 *            double
+	 * @param series
+	 *            BollingerBandsSeries
+	 */
+	private void assertBand(String msg, double expected,
+			BollingerBandsSeries series) {
+		double actual = ((BollingerBandsItem) series.getDataItem(series
+				.getItemCount() - 1)).getBollingerBands();
+		assertEquals(msg, expected, actual, Math.abs(expected) * 1e-9);
+	}
+
+	/**
+	 * Method createSeries.
+	 * 
+	 * @param length
+	 *            int
+	 * @param isUpper
+	 *            boolean
+	 * @return BollingerBandsSeries
+	 */
+	private BollingerBandsSeries createSeries(int length, boolean isUpper) {
+		BollingerBandsSeries series = new BollingerBandsSeries();
+		series.setLength(length);
+		series.setNumberOfSTD(new BigDecimal(2));
+		series.setIsUpper(isUpper);
+		return series;
+	}
+
+	/**
+	 * Method createCandleSeries. Three days of 5min bars from a random walk in
+	 * ticks.
+	 * 
+	 * @param symbol
+	 *            String
+	 * @param price
+	 *            double
+	 * @param tick
+	 *            double
+	 * @return CandleSeries
+	 */
+	private CandleSeries createCandleSeries(String symbol, double price,
+			double tick) {
+
+		Contract contract = new Contract("STK", symbol, "SMART", "USD", null,
+				null);
+		ZonedDateTime startDate = TradingCalendar
+				.getTradingDayStart(TradingCalendar.getPrevTradingDay(TradingCalendar
+						.getDateTimeNowMarketTimeZone()));
+		CandleSeries candleSeries = new CandleSeries(symbol, contract, 300,
+				startDate, TradingCalendar.getTradingDayEnd(startDate));
+		Random random = new Random(symbol.hashCode());
+
+		for (int day = 0; day < 3; day++) {
+			ZonedDateTime time = TradingCalendar
+					.getTradingDayStart(TradingCalendar.addTradingDays(
+							startDate, day));
+			ZonedDateTime end = TradingCalendar.getTradingDayEnd(time);
+			while (time.isBefore(end)) {
+				double open = price;
+				price = Math.max(tick, price
+						+ (tick * (random.nextInt(21) - 10)));
+				double high = Math.max(open, price)
+						+ (tick * random.nextInt(5));
+				double low = Math.max(tick, Math.min(open, price)
+						- (tick * random.nextInt(5)));
+				candleSeries.buildCandle(time, open, high, low, price,
+						100 + random.nextInt(10000), (open + price) / 2,
+						1 + random.nextInt(50), 1, time.plusSeconds(300));
+				time = time.plusSeconds(300);
+			}
+		}
+		return candleSeries;
+	}
+
+	/**
+	 * Method mean.
+	 * 
+	 * @param values
+	 *            LinkedList<Double>
+	 * @return double
+	 */
+	private double mean(LinkedList<Double> values) {
+		double sum = 0;
+		for (Double value : values)
+			sum += value;
+		return sum / values.size();
+	}
+
+	/**
+	 * Method standardDeviation. The sample standard deviation summed over the
+	 * values.
+	 * 
+	 * @param values
+	 *            LinkedList<Double>
+	 * @param mean
+	 *            double
+	 * @return double
+	 */
+	private double standardDeviation(LinkedList<Double> values, double mean) {
+		double sumTotal = 0;
+		for (Double value : values)
+			sumTotal += Math.pow((value - mean), 2);
+		return Math.sqrt(sumTotal / (values.size() - 1));
+	}
+}
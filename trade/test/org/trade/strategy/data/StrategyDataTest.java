@@ -0,0 +1,317 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.jfree.data.general.SeriesChangeEvent;
+import org.jfree.data.general.SeriesChangeListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.core.util.TradingCalendar;
+import org.trade.persistent.dao.CodeAttribute;
+import org.trade.persistent.dao.CodeValue;
+import org.trade.persistent.dao.Contract;
+import org.trade.persistent.dao.Strategy;
+import org.trade.strategy.data.bollingerbands.BollingerBandsItem;
+import org.trade.strategy.data.candle.CandleItem;
+import org.trade.strategy.data.candle.CandlePeriod;
+
+/**
+ * Some tests for the {@link StrategyData} class. The indicators of a strategy
+ * are built through the indicator graph and checked on the datasets the
+ * charts and strategies read from.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class StrategyDataTest {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(StrategyDataTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private static final int LENGTH = 20;
+
+	private Contract contract = null;
+	private ZonedDateTime startDate = null;
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.contract = new Contract("STK", "NTAP", "SMART", "USD", null, null);
+		this.startDate = TradingCalendar.getTradingDayStart(TradingCalendar
+				.getPrevTradingDay(TradingCalendar
+						.getDateTimeNowMarketTimeZone()));
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testBollingerBandsBuildCandle() {
+		try {
+			StrategyData strategyData = createStrategyData();
+			Random random = new Random(1);
+			double price = 35.27d;
+			ZonedDateTime time = this.startDate;
+			ZonedDateTime end = TradingCalendar.getTradingDayEnd(time);
+			while (time.isBefore(end)) {
+				double open = price;
+				price = price + (0.01d * (random.nextInt(21) - 10));
+				strategyData.buildCandle(time, open, Math.max(open, price),
+						Math.min(open, price), price, 1000, price, 10, 1,
+						time.plusSeconds(300));
+				time = time.plusSeconds(300);
+			}
+			assertBands(strategyData);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testBollingerBandsCreateIndicators() {
+		try {
+			StrategyData strategyData = createStrategyData();
+			Random random = new Random(2);
+			double price = 35.27d;
+			ZonedDateTime time = this.startDate;
+			ZonedDateTime end = TradingCalendar.getTradingDayEnd(time);
+			while (time.isBefore(end)) {
+				double open = price;
+				price = price + (0.01d * (random.nextInt(21) - 10));
+				strategyData.getBaseCandleSeries().buildCandle(time, open,
+						Math.max(open, price), Math.min(open, price), price,
+						1000, price, 10, 1, time.plusSeconds(300));
+				time = time.plusSeconds(300);
+			}
+			strategyData.createIndicators(strategyData.getBaseCandleDataset());
+			assertBands(strategyData);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testViewSeriesChanged() {
+		try {
+			StrategyData strategyData = createStrategyData();
+			Random random = new Random(3);
+			double price = 35.27d;
+			ZonedDateTime time = this.startDate;
+			for (int i = 0; i < LENGTH; i++) {
+				double open = price;
+				price = price + (0.01d * (random.nextInt(21) - 10));
+				strategyData.getBaseCandleSeries().buildCandle(time, open,
+						Math.max(open, price), Math.min(open, price), price,
+						1000, price, 10, 1, time.plusSeconds(300));
+				time = time.plusSeconds(300);
+			}
+			strategyData.createIndicators(strategyData.getBaseCandleDataset());
+
+			/*
+			 * Series 2 is a view of series 0, it is told of every change to
+			 * the values once.
+			 */
+			IndicatorDataset dataset = strategyData
+					.getIndicatorByType(IndicatorSeries.BollingerBandsSeries);
+			final int[] events = new int[2];
+			dataset.getSeries(0).addChangeListener(new SeriesChangeListener() {
+				public void seriesChanged(SeriesChangeEvent event) {
+					events[0]++;
+				}
+			});
+			dataset.getSeries(2).addChangeListener(new SeriesChangeListener() {
+				public void seriesChanged(SeriesChangeEvent event) {
+					events[1]++;
+				}
+			});
+			BollingerBandsSeries series = (BollingerBandsSeries) dataset
+					.getSeries(0);
+			series.add(new CandlePeriod(time, 300), new BigDecimal("35.50"));
+			assertEquals(series.getItemCount(), dataset.getSeries(2)
+					.getItemCount());
+			assertEquals(1, events[0]);
+			assertEquals(1, events[1]);
+			series.clear();
+			assertEquals(0, dataset.getSeries(2).getItemCount());
+			assertEquals(2, events[0]);
+			assertEquals(2, events[1]);
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method assertBands. Both bands of both indicators are filled, the
+	 * second indicator shares the values of the first and the bands are
+	 * either side of the mean.
+	 * 
+	 * @param strategyData
+	 *            StrategyData
+	 */
+	private void assertBands(StrategyData strategyData) {
+
+		CandleSeries candleSeries = strategyData.getBaseCandleSeries();
+		IndicatorDataset dataset = strategyData
+				.getIndicatorByType(IndicatorSeries.BollingerBandsSeries);
+		assertEquals(4, dataset.getSeriesCount());
+		assertEquals(2, strategyData.getIndicatorGraph().getNodeCount());
+		assertEquals(4, strategyData.getIndicatorGraph().getSeriesCount());
+
+		int count = candleSeries.getItemCount() - LENGTH + 1;
+		assertTrue(count > 0);
+		for (int i = 0; i < dataset.getSeriesCount(); i++) {
+			assertEquals("Series: " + i, i % 2 == 0,
+					((BollingerBandsSeries) dataset.getSeries(i)).getIsUpper());
+			assertEquals("Series: " + i, count, dataset.getSeries(i)
+					.getItemCount());
+		}
+		for (int item = 0; item < count; item++) {
+			double upper = getBand(dataset, 0, item);
+			double lower = getBand(dataset, 1, item);
+			assertEquals(upper, getBand(dataset, 2, item), 0);
+			assertEquals(lower, getBand(dataset, 3, item), 0);
+			assertTrue("Item: " + item, upper >= lower);
+
+			double sum = 0;
+			for (int i = item; i < item + LENGTH; i++) {
+				sum = sum
+						+ ((CandleItem) candleSeries.getDataItem(i)).getClose();
+			}
+			assertEquals("Item: " + item, sum / LENGTH, (upper + lower) / 2,
+					1e-9);
+		}
+	}
+
+	/**
+	 * Method getBand.
+	 * 
+	 * @param dataset
+	 *            IndicatorDataset
+	 * @param series
+	 *            int
+	 * @param item
+	 *            int
+	 * @return double
+	 */
+	private double getBand(IndicatorDataset dataset, int series, int item) {
+		return ((BollingerBandsItem) dataset.getSeries(series).getDataItem(
+				item)).getBollingerBands();
+	}
+
+	/**
+	 * Method createStrategyData. A strategy with two Bollinger bands
+	 * indicators with the same parameters over 5min bars.
+	 * 
+	 * @return StrategyData
+	 */
+	private StrategyData createStrategyData() {
+		Strategy strategy = new Strategy("BBStrategy");
+		List<IndicatorSeries> indicators = new ArrayList<IndicatorSeries>();
+		for (int i = 0; i < 2; i++) {
+			BollingerBandsSeries series = new BollingerBandsSeries(strategy,
+					"BB" + i, IndicatorSeries.BollingerBandsSeries, "BB" + i,
+					true, 0, false, new BigDecimal(2), LENGTH);
+			List<CodeValue> codeValues = new ArrayList<CodeValue>();
+			codeValues.add(new CodeValue(new CodeAttribute(null, "Length",
+					null, null, null, null), String.valueOf(LENGTH), series));
+			codeValues.add(new CodeValue(new CodeAttribute(null,
+					"Number Of STD", null, null, null, null), "2", series));
+			series.setCodeValues(codeValues);
+			indicators.add(series);
+		}
+		strategy.setIndicatorSeries(indicators);
+
+		CandleDataset candleDataset = new CandleDataset();
+		candleDataset.addSeries(new CandleSeries(this.contract.getSymbol(),
+				this.contract, 300, this.startDate, TradingCalendar
+						.getTradingDayEnd(this.startDate)));
+		return new StrategyData(strategy, candleDataset);
+	}
+}
@@ -0,0 +1,425 @@
+/* ===========================================================
+ * Smart Trade System: a application to trade strategies for the Java(tm) platform
+ * ===========================================================
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Project Info:  org.trade
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Oracle, Inc.
+ * in the United States and other countries.]
+ *
+ * (C) Copyright 2011-2011, by Simon Allen and Contributors.
+ *
+ * Original Author:  Simon Allen;
+ * Contributor(s):   -;
+ *
+ * Changes
+ * -------
+ *
+ */
+package org.trade.strategy.data.movingaverage;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trade.dictionary.valuetype.CalculationType;
+
+/**
+ * Some tests for the {@link MovingAverageKernel} classes. Each kernel is
+ * checked against the LinkedList formulas MovingAverageSeries used before
+ * the kernels, summed over the whole window for each bar and each in-bar
+ * revision.
+ * 
+ * The old EMA compounded the previous EMA on an in-bar revision and the old
+ * VWMA kept the first volume of a full window's current bar, so for those the
+ * expected value is what the old formula gives for a new bar with the revised
+ * price and volume.
+ * 
+ * @author Simon Allen
+ * @version $Revision: 1.0 $
+ */
+public class MovingAverageKernelTest {
+
+	private final static Logger _log = LoggerFactory
+			.getLogger(MovingAverageKernelTest.class);
+	@Rule
+	public TestName name = new TestName();
+
+	private static final String[] calcTypes = { CalculationType.LINEAR,
+			CalculationType.EXPONENTIAL, CalculationType.WEIGHTED,
+			CalculationType.WEIGHTED_VOLUME, CalculationType.TRIANGULAR };
+
+	private static final int[] lengths = { 1, 2, 5, 8, 20 };
+
+	/**
+	 * Method setUpBeforeClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+	}
+
+	/**
+	 * Method setUp.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Method tearDown.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Method tearDownAfterClass.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+	}
+
+	@Test
+	public void testNewBars() {
+		try {
+			for (String calcType : calcTypes) {
+				for (int length : lengths) {
+					runPrices(calcType, length, 0, 500);
+				}
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testInBarRevisions() {
+		try {
+			for (String calcType : calcTypes) {
+				for (int length : lengths) {
+					runPrices(calcType, length, 3, 500);
+				}
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testLongRunDrift() {
+		try {
+			/*
+			 * Many passes of the running sums between each rebuild from the
+			 * window.
+			 */
+			for (String calcType : calcTypes) {
+				runPrices(calcType, 3, 1, 20000);
+				runPrices(calcType, 50, 1, 20000);
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testWarmup() {
+		try {
+			/*
+			 * The fast EMA of a MACD, the old MACDSeries started it on the bar
+			 * the slow window filled with the mean of the fast window.
+			 */
+			int fastLength = 12;
+			int slowLength = 26;
+			ExponentialMovingAverage kernel = new ExponentialMovingAverage(
+					fastLength, slowLength);
+			LinkedList<Double> prices = new LinkedList<Double>();
+			Random random = new Random(fastLength);
+			double price = 2051.25d;
+			double ema = Double.NaN;
+			for (int i = 0; i < 500; i++) {
+				price = price + (0.25d * (random.nextInt(21) - 10));
+				if (prices.size() == fastLength)
+					prices.removeLast();
+				prices.addFirst(price);
+				double actual = kernel.update(price, true);
+				if (i < slowLength - 1) {
+					assertTrue("bar: " + i, Double.isNaN(actual));
+					continue;
+				}
+				if (Double.isNaN(ema)) {
+					ema = mean(prices);
+				} else {
+					ema = ((price - ema) * (2 / (fastLength + 1.0d))) + ema;
+				}
+				assertEquals("bar: " + i, ema, actual, Math.abs(ema) * 1e-9);
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testReset() {
+		try {
+			for (String calcType : calcTypes) {
+				MovingAverageKernel kernel = MovingAverageKernel.newInstance(
+						calcType, 5);
+				Random random = new Random(calcType.hashCode());
+				double[] prices = new double[50];
+				long[] volumes = new long[50];
+				for (int i = 0; i < prices.length; i++) {
+					prices[i] = 20 + random.nextInt(500) / 100d;
+					volumes[i] = 100 + random.nextInt(10000);
+				}
+				for (int i = 0; i < prices.length; i++) {
+					kernel.update(prices[i], volumes[i], true);
+				}
+				double last = kernel.getValue();
+				kernel.reset();
+				assertEquals(calcType + " size", 0, kernel.size());
+				assertTrue(calcType + " value", Double.isNaN(kernel.getValue()));
+				for (int i = 0; i < prices.length; i++) {
+					kernel.update(prices[i], volumes[i], true);
+				}
+				assertEquals(calcType, last, kernel.getValue(), 0);
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	@Test
+	public void testNoVolume() {
+		try {
+			MovingAverageKernel vwma = MovingAverageKernel.newInstance(
+					CalculationType.WEIGHTED_VOLUME, 4);
+			MovingAverageKernel wma = MovingAverageKernel.newInstance(
+					CalculationType.WEIGHTED, 4);
+			double[] prices = { 10.5, 10.75, 10.25, 11.0, 11.5, 10.0 };
+			for (double price : prices) {
+				assertEquals("" + price, wma.update(price, true),
+						vwma.update(price, 0, true), 1e-9);
+			}
+		} catch (Exception | AssertionError ex) {
+			String msg = "Error running " + name.getMethodName() + " msg: "
+					+ ex.getMessage();
+			_log.error(msg);
+			fail(msg);
+		}
+	}
+
+	/**
+	 * Method runPrices. Feed a random walk of prices and volumes bar by bar
+	 * revising each bar revisions times and check the kernel against the old
+	 * formula summed over the window.
+	 * 
+	 * @param calcType
+	 *            String
+	 * @param length
+	 *            int
+	 * @param revisions
+	 *            int
+	 * @param bars
+	 *            int
+	 */
+	private void runPrices(String calcType, int length, int revisions,
+			int bars) {
+
+		MovingAverageKernel kernel = MovingAverageKernel.newInstance(calcType,
+				length);
+		LinkedList<Double> prices = new LinkedList<Double>();
+		LinkedList<Long> volumes = new LinkedList<Long>();
+		Random random = new Random(calcType.hashCode() + length);
+		double price = 35.27d;
+		double prevEMA = Double.NaN;
+		double ema = Double.NaN;
+
+		for (int i = 0; i < bars; i++) {
+			for (int revision = 0; revision <= revisions; revision++) {
+				boolean newBar = revision == 0;
+				price = Math.max(0.01d, price + (0.01d * (random.nextInt(21) - 10)));
+				long volume = random.nextInt(4) == 0 ? 0 : 100 + random
+						.nextInt(10000);
+				if (newBar) {
+					if (prices.size() == length) {
+						prices.removeLast();
+						volumes.removeLast();
+					}
+					prevEMA = ema;
+				} else {
+					prices.removeFirst();
+					volumes.removeFirst();
+				}
+				prices.addFirst(price);
+				volumes.addFirst(volume);
+
+				double actual = kernel.update(price, volume, newBar);
+				String msg = calcType + " length: " + length + " bar: " + i
+						+ " revision: " + revision;
+				if (prices.size() < length) {
+					assertTrue(msg, Double.isNaN(actual));
+					continue;
+				}
+				double expected;
+				if (CalculationType.EXPONENTIAL.equals(calcType)) {
+					/*
+					 * The first EMA is the mean of the window, then the old
+					 * recurrence from the EMA of the previous bar.
+					 */
+					if (Double.isNaN(prevEMA)) {
+						expected = mean(prices);
+					} else {
+						expected = ((price - prevEMA) * (2 / (length + 1.0d)))
+								+ prevEMA;
+					}
+					ema = expected;
+				} else {
+					expected = calculateMA(calcType, length, prices, volumes);
+				}
+				assertEquals(msg, expected, actual, Math.abs(expected) * 1e-9);
+			}
+		}
+	}
+
+	/**
+	 * Method calculateMA. The formulas from MovingAverageSeries before the
+	 * kernels, the values are newest first.
+	 * 
+	 * @param calcType
+	 *            String
+	 * @param length
+	 *            int
+	 * @param yyValues
+	 *            LinkedList<Double>
+	 * @param volValues
+	 *            LinkedList<Long>
+	 * @return double
+	 */
+	private double calculateMA(String calcType, int length,
+			LinkedList<Double> yyValues, LinkedList<Long> volValues) {
+
+		double ma = 0;
+		if (CalculationType.LINEAR.equals(calcType)) {
+			ma = mean(yyValues);
+		} else if (CalculationType.WEIGHTED.equals(calcType)) {
+			ma = weighted(length, yyValues);
+		} else if (CalculationType.WEIGHTED_VOLUME.equals(calcType)) {
+			double sumYY = 0;
+			double count = 0;
+			for (int i = yyValues.size(); i > 0; i--) {
+				count = count + ((length + 1 - i) * volValues.get(i - 1));
+				sumYY = sumYY
+						+ (yyValues.get(i - 1) * volValues.get(i - 1) * (length + 1 - i));
+			}
+			// The old formula failed with no volume.
+			ma = count == 0 ? weighted(length, yyValues) : sumYY / count;
+		} else if (CalculationType.TRIANGULAR.equals(calcType)) {
+			double sumYY = 0;
+			int count = 0;
+			int half = length / 2;
+			int y = 0;
+			for (int x = 1; x <= half; x++) {
+				sumYY = sumYY + (yyValues.get(y) * x);
+				count = count + x;
+				y++;
+			}
+			if ((length % 2) != 0) {
+				int z = half + 1;
+				sumYY = sumYY + (yyValues.get(y) * z);
+				count = count + z;
+				y++;
+			}
+			for (int x = half; x >= 1; x--) {
+				sumYY = sumYY + (yyValues.get(y) * x);
+				count = count + x;
+				y++;
+			}
+			ma = sumYY / count;
+		}
+		return ma;
+	}
+
+	/**
+	 * Method weighted. The linear weighted average, the current bar has a
+	 * weight of length.
+	 * 
+	 * @param length
+	 *            int
+	 * @param yyValues
+	 *            LinkedList<Double>
+	 * @return double
+	 */
+	private double weighted(int length, LinkedList<Double> yyValues) {
+		double sumYY = 0;
+		int count = 0;
+		for (int i = yyValues.size(); i > 0; i--) {
+			count = count + (length + 1 - i);
+			sumYY = sumYY + (yyValues.get(i - 1) * (length + 1 - i));
+		}
+		return sumYY / count;
+	}
+
+	/**
+	 * Method mean.
+	 * 
+	 * @param values
+	 *            LinkedList<Double>
+	 * @return double
+	 */
+	private double mean(LinkedList<Double> values) {
+		double sum = 0;
+		for (Double value : values)
+			sum += value;
+		return sum / values.size();
+	}
+}